@@ -0,0 +1,134 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link DynomiteInfoParser} with the previous json-simple based flattening on a synthetic Dynomite stats
+ * payload with one object per peer below <code>dyn_o_mite</code>.
+ *
+ * Run with <code>./gradlew :dynomitemanager:jmh -PjmhArgs="DynomiteInfoParserBenchmark -prof gc"</code> to also see
+ * the allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DynomiteInfoParserBenchmark {
+
+    private static final String[] PEER_FIELDS = { "server_eof", "server_err", "server_timedout",
+            "server_connections", "server_ejected_at", "requests", "request_bytes", "responses", "response_bytes",
+            "in_queue", "in_queue_bytes", "out_queue", "out_queue_bytes" };
+
+    private static final String[] POOL_FIELDS = { "client_eof", "client_err", "client_connections",
+            "client_read_requests", "client_write_requests", "client_dropped_requests", "server_ejects",
+            "dnode_client_eof", "dnode_client_err", "dnode_client_connections", "dnode_client_in_queue",
+            "dnode_client_out_queue", "peer_eof", "peer_err", "peer_timedout", "peer_connections", "peer_forward_error",
+            "peer_requests", "peer_responses", "peer_ejects", "forward_error", "fragments", "stats_count" };
+
+    @Param({ "200" })
+    private int peers;
+
+    private byte[] payload;
+    private ByteArrayInputStream stream;
+    private DynomiteInfoParser parser;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"service\":\"dynomite\", \"source\":\"dynomitemanager-i-16ca1846\", \"version\":\"0.5.7\", ");
+        sb.append("\"uptime\":40439, \"timestamp\":1399064677, \"rest_api_timestamp\":1399064677, ");
+        sb.append("\"latency_max\":1201, \"latency_999th\":953, \"latency_99th\":412, \"latency_95th\":120, ");
+        sb.append("\"latency_mean\":57, \"payload_size_max\":4096, \"payload_size_999th\":2048, ");
+        sb.append("\"payload_size_99th\":1024, \"payload_size_95th\":512, \"payload_size_mean\":128, ");
+        sb.append("\"alloc_msgs\":2048, \"free_msgs\":1900, \"average_cross_region_rtt\":0, ");
+        sb.append("\"99_cross_region_rtt\":0, \"server_in_queue_99\":0, \"dnode_client_out_queue_99\":0, ");
+        sb.append("\"alloc_mbufs\":4096, \"free_mbufs\":4000, \"dyn_memory\":0, \"datacenter\":\"us-east-1\", ");
+        sb.append("\"dyn_o_mite\": {");
+        for (int i = 0; i < POOL_FIELDS.length; i++) {
+            sb.append('"').append(POOL_FIELDS[i]).append("\":").append(1000 + i).append(", ");
+        }
+        for (int p = 0; p < peers; p++) {
+            sb.append("\"10.").append(p / 250).append('.').append(p % 250).append(".1\": {");
+            for (int i = 0; i < PEER_FIELDS.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append('"').append(PEER_FIELDS[i]).append("\":").append(p * 31L + i * 1_000_003L);
+            }
+            sb.append("}, ");
+        }
+        sb.append("\"127.0.0.1\": {\"server_eof\":0, \"server_connections\":1, \"requests\":12}}}");
+
+        payload = sb.toString().getBytes(StandardCharsets.UTF_8);
+        stream = new ByteArrayInputStream(payload);
+        parser = new DynomiteInfoParser();
+    }
+
+    /**
+     * The code path ServoMetricsTask used before: the body as a String, a json-simple tree and a recursive walk that
+     * concatenates every metric name before looking it up in the metric map.
+     */
+    @Benchmark
+    public Map<String, Long> legacyParser() throws Exception {
+        String json = new String(payload, StandardCharsets.UTF_8);
+        JSONObject obj = (JSONObject) new JSONParser().parse(json);
+        Map<String, Long> metrics = new HashMap<String, Long>();
+        String service = (String) obj.get("service");
+        flatten(service, (JSONObject) obj.get("dyn_o_mite"), metrics);
+        return metrics;
+    }
+
+    @Benchmark
+    public void streamingParser(Blackhole bh) throws Exception {
+        stream.reset();
+        int count = parser.parse(stream);
+        bh.consume(parser.getUptime().getValue());
+        for (DynomiteInfoParser.Metric field : parser.getFields()) {
+            bh.consume(field.getName());
+            bh.consume(field.getValue());
+        }
+        for (int i = 0; i < count; i++) {
+            DynomiteInfoParser.Metric stat = parser.getStat(i);
+            bh.consume(stat.getName());
+            bh.consume(stat.getValue());
+        }
+    }
+
+    private static void flatten(String namePrefix, JSONObject obj, Map<String, Long> metrics) {
+        for (Object key : obj.keySet()) {
+            Object val = obj.get(key);
+            if (val instanceof JSONObject) {
+                flatten(namePrefix + "__" + key, (JSONObject) val, metrics);
+            } else {
+                metrics.put(namePrefix + "__" + (String) key, (Long) val);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link RedisInfoParser} with the previous line based parser on <code>src/test/resources/redis_info.txt</code>.
+ *
+ * Run with <code>./gradlew :dynomitemanager:jmh -PjmhArgs="RedisInfoParserBenchmark -prof gc"</code> to also see the
+ * allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedisInfoParserBenchmark {
+
+    private String info;
+    private byte[] bulkReply;
+    private ByteArrayInputStream bulkStream;
+    private RedisInfoParser parser;
+
+    @Setup
+    public void setup() throws Exception {
+        info = new String(Files.readAllBytes(Paths.get("src/test/resources/redis_info.txt")), StandardCharsets.UTF_8);
+
+        byte[] payload = info.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("$" + payload.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(payload);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        bulkReply = out.toByteArray();
+        bulkStream = new ByteArrayInputStream(bulkReply);
+
+        parser = new RedisInfoParser();
+    }
+
+    /**
+     * The code path RedisInfoMetricsTask used before: a reader over a copy of the INFO string.
+     */
+    @Benchmark
+    public Map<String, Long> legacyParser() throws Exception {
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(info.getBytes()));
+        return new LegacyRedisInfoParser().parse(reader);
+    }
+
+    @Benchmark
+    public void streamingParserFromString(Blackhole bh) {
+        int count = parser.parse(info);
+        for (int i = 0; i < count; i++) {
+            bh.consume(parser.getName(i));
+            bh.consume(parser.getValue(i));
+        }
+    }
+
+    @Benchmark
+    public void streamingParserFromBulkReply(Blackhole bh) throws Exception {
+        bulkStream.reset();
+        int count = parser.parseBulkReply(bulkStream);
+        for (int i = 0; i < count; i++) {
+            bh.consume(parser.getName(i));
+            bh.consume(parser.getValue(i));
+        }
+    }
+}
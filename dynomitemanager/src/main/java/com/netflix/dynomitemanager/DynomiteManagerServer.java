@@ -21,8 +21,14 @@ import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
 import com.netflix.dynomitemanager.dynomite.DynomiteYamlTuneTask;
 import com.netflix.dynomitemanager.dynomite.IDynomiteProcess;
 import com.netflix.dynomitemanager.identity.InstanceIdentity;
+import com.netflix.dynomitemanager.monitoring.HighResolutionMetricsTask;
+import com.netflix.dynomitemanager.monitoring.MetricsPipeline;
+import com.netflix.dynomitemanager.monitoring.ProcessMetricsTask;
+import com.netflix.dynomitemanager.monitoring.RedisCommandStatsTask;
 import com.netflix.dynomitemanager.monitoring.RedisInfoMetricsTask;
+import com.netflix.dynomitemanager.monitoring.RedisLatencyTask;
 import com.netflix.dynomitemanager.monitoring.ServoMetricsTask;
+import com.netflix.dynomitemanager.monitoring.TcpMetricsTask;
 import com.netflix.dynomitemanager.sidecore.aws.UpdateSecuritySettings;
 import com.netflix.dynomitemanager.sidecore.backup.SnapshotTask;
 import com.netflix.dynomitemanager.sidecore.backup.RestoreTask;
@@ -31,6 +37,7 @@ import com.netflix.dynomitemanager.sidecore.utils.ProcessMonitorTask;
 import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
 import com.netflix.dynomitemanager.sidecore.utils.ProxyAndStorageResetTask;
 import com.netflix.dynomitemanager.sidecore.storage.Bootstrap;
+import com.netflix.dynomitemanager.sidecore.storage.KeyspaceAnalyzerTask;
 import com.netflix.dynomitemanager.sidecore.storage.StorageProcessManager;
 import com.netflix.dynomitemanager.sidecore.storage.WarmBootstrapTask;
 import com.netflix.servo.DefaultMonitorRegistry;
@@ -56,10 +63,31 @@ import com.netflix.servo.monitor.Monitors;
  * to master, and restart dynomite proxy (if necessary).
  * <li>{@link com.netflix.dynomitemanager.sidecore.backup.SnapshotTask}: If
  * backups are enabled, then add the backup snapshot task.
+ * <li>{@link com.netflix.dynomitemanager.monitoring.MetricsPipeline}: If
+ * enabled, then collect the metrics sources below (except the keyspace
+ * analyzer and high resolution metrics) in parallel, each within its deadline.
+ * Otherwise each source is scheduled as a task of its own.
  * <li>{@link com.netflix.dynomitemanager.monitoring.ServoMetricsTask}: Publish
  * metrics via Servo.
  * <li>{@link com.netflix.dynomitemanager.monitoring.RedisInfoMetricsTask}:
  * Update metrics obtained via Redis INFO command.
+ * <li>{@link com.netflix.dynomitemanager.monitoring.RedisLatencyTask}: If
+ * enabled, then collect the Redis slow log and latency monitor into latency
+ * histograms.
+ * <li>{@link com.netflix.dynomitemanager.monitoring.RedisCommandStatsTask}:
+ * If enabled, then publish per command statistics of Redis.
+ * <li>{@link com.netflix.dynomitemanager.sidecore.storage.KeyspaceAnalyzerTask}:
+ * If enabled, then look for the largest keys and hottest key prefixes of
+ * Redis in the background.
+ * <li>{@link com.netflix.dynomitemanager.monitoring.ProcessMetricsTask}: If
+ * enabled, then publish the resource usage of the dynomite and redis-server
+ * processes from /proc.
+ * <li>{@link com.netflix.dynomitemanager.monitoring.TcpMetricsTask}: If
+ * enabled, then publish TCP socket statistics of the client, peer and storage
+ * ports from /proc.
+ * <li>{@link com.netflix.dynomitemanager.monitoring.HighResolutionMetricsTask}:
+ * If high resolution metrics are enabled, then sample the selected metrics
+ * into an in-memory history.
  * <li>{@link com.netflix.dynomitemanager.sidecore.utils.ProcessMonitorTask}:
  * Monitor the dynomite and redis-server processes, and restart as necessary.
  * </ul>
@@ -164,8 +192,33 @@ public class DynomiteManagerServer {
 	}
 
 	// Metrics
-	scheduler.addTask(ServoMetricsTask.TaskName, ServoMetricsTask.class, ServoMetricsTask.getTimer());
-	scheduler.addTask(RedisInfoMetricsTask.TaskName, RedisInfoMetricsTask.class, RedisInfoMetricsTask.getTimer());
+	if (config.isMetricsPipelineEnabled()) {
+	    scheduler.addTask(MetricsPipeline.TaskName, MetricsPipeline.class, MetricsPipeline.getTimer(config));
+	} else {
+	    scheduler.addTask(ServoMetricsTask.TaskName, ServoMetricsTask.class, ServoMetricsTask.getTimer());
+	    scheduler.addTask(RedisInfoMetricsTask.TaskName, RedisInfoMetricsTask.class,
+		    RedisInfoMetricsTask.getTimer());
+	    if (config.isRedisLatencyMetricsEnabled()) {
+		scheduler.addTask(RedisLatencyTask.TaskName, RedisLatencyTask.class, RedisLatencyTask.getTimer());
+	    }
+	    if (config.isRedisCommandStatsEnabled()) {
+		scheduler.addTask(RedisCommandStatsTask.TaskName, RedisCommandStatsTask.class,
+			RedisCommandStatsTask.getTimer());
+	    }
+	    if (config.isProcessMetricsEnabled()) {
+		scheduler.addTask(ProcessMetricsTask.TaskName, ProcessMetricsTask.class, ProcessMetricsTask.getTimer());
+	    }
+	    if (config.isTcpMetricsEnabled()) {
+		scheduler.addTask(TcpMetricsTask.TaskName, TcpMetricsTask.class, TcpMetricsTask.getTimer());
+	    }
+	}
+	if (config.isKeyspaceAnalyzerEnabled()) {
+	    scheduler.addTask(KeyspaceAnalyzerTask.TaskName, KeyspaceAnalyzerTask.class, KeyspaceAnalyzerTask.getTimer());
+	}
+	if (config.isHighResolutionMetricsEnabled()) {
+	    scheduler.addTask(HighResolutionMetricsTask.TaskName, HighResolutionMetricsTask.class,
+		    HighResolutionMetricsTask.getTimer(config));
+	}
 
 	// Routine monitoring and restarting dynomite or storage processes as
 	// needed.
@@ -47,12 +47,16 @@ import com.netflix.dynomitemanager.sidecore.aws.AWSMembership;
 import com.netflix.dynomitemanager.sidecore.aws.AwsRoleAssumptionCredential;
 import com.netflix.dynomitemanager.sidecore.aws.IAMCredential;
 import com.netflix.dynomitemanager.sidecore.backup.Backup;
+import com.netflix.dynomitemanager.sidecore.backup.ObjectStore;
 import com.netflix.dynomitemanager.sidecore.backup.Restore;
 import com.netflix.dynomitemanager.sidecore.backup.S3Backup;
+import com.netflix.dynomitemanager.sidecore.backup.S3ObjectStore;
 import com.netflix.dynomitemanager.sidecore.backup.S3Restore;
 import com.netflix.dynomitemanager.sidecore.config.InstanceDataRetriever;
 import com.netflix.dynomitemanager.sidecore.config.VpcInstanceDataRetriever;
 import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.PeerSelectionStrategy;
+import com.netflix.dynomitemanager.sidecore.storage.PeerSelectionStrategyProvider;
 import com.netflix.dynomitemanager.sidecore.storage.RedisStorageProxy;
 import com.netflix.dynomitemanager.sidecore.utils.FloridaHealthCheckHandler;
 import com.netflix.dynomitemanager.sidecore.utils.ProcessTuner;
@@ -145,6 +149,8 @@ public class InjectedWebListener extends GuiceServletContextListener {
 	    binder().bind(InstanceEnvIdentity.class).to(DefaultVpcInstanceEnvIdentity.class).asEagerSingleton();
 	    bind(Backup.class).to(S3Backup.class);
 	    bind(Restore.class).to(S3Restore.class);
+	    bind(ObjectStore.class).to(S3ObjectStore.class);
+	    bind(PeerSelectionStrategy.class).toProvider(PeerSelectionStrategyProvider.class);
 
 	}
     }
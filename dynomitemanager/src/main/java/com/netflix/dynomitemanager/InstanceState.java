@@ -12,10 +12,20 @@
  */
 package com.netflix.dynomitemanager;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.sidecore.backup.RangeDownloader;
+import com.netflix.dynomitemanager.sidecore.backup.SnapshotBootstrap;
 import com.netflix.dynomitemanager.sidecore.storage.Bootstrap;
+import com.netflix.dynomitemanager.sidecore.storage.KeyspaceCopier;
+import com.netflix.dynomitemanager.sidecore.storage.PeerFailover;
+import com.netflix.dynomitemanager.sidecore.storage.PeerScore;
+import com.netflix.dynomitemanager.sidecore.storage.ReplicationCheckpoint;
+import com.netflix.dynomitemanager.sidecore.storage.ReplicationConvergence;
+import com.netflix.dynomitemanager.sidecore.storage.WarmupHandoff;
 
 import org.joda.time.DateTime;
 
@@ -45,6 +55,18 @@ public class InstanceState implements IInstanceState {
 	private long backupTime;
 	private long restoreTime;
 
+	// The scores of the peers considered by the last warm bootstrap, best first
+	private volatile String peerSelectionStrategy;
+	private volatile List<PeerScore> peerScores = Collections.emptyList();
+	private volatile KeyspaceCopier keyspaceCopier;
+	private volatile ReplicationConvergence replicationConvergence;
+	private volatile ReplicationCheckpoint.Decision resyncDecision;
+	private volatile SnapshotBootstrap snapshotBootstrap;
+	private volatile String warmUpPeer;
+	private volatile PeerFailover peerFailover;
+	private volatile WarmupHandoff warmupHandoff;
+	private volatile RangeDownloader rangeDownloader;
+
 	private final AtomicBoolean isYmlWritten = new AtomicBoolean(false);
 
 	public InstanceState() {
@@ -263,4 +285,105 @@ public class InstanceState implements IInstanceState {
 		this.isYmlWritten.set(yml);
 	}
 
+	public String getPeerSelectionStrategy() {
+		return peerSelectionStrategy;
+	}
+
+	public List<PeerScore> getPeerScores() {
+		return peerScores;
+	}
+
+	public void setPeerScores(String strategy, List<PeerScore> scores) {
+		this.peerSelectionStrategy = strategy;
+		this.peerScores = Collections.unmodifiableList(scores);
+	}
+
+	/**
+	 * @return the keyspace copy of the last warm up in copy mode, or null
+	 */
+	public KeyspaceCopier getKeyspaceCopier() {
+		return keyspaceCopier;
+	}
+
+	public void setKeyspaceCopier(KeyspaceCopier copier) {
+		this.keyspaceCopier = copier;
+	}
+
+	/**
+	 * @return the replication tracker of the last warm up in slaveof mode, or null
+	 */
+	public ReplicationConvergence getReplicationConvergence() {
+		return replicationConvergence;
+	}
+
+	public void setReplicationConvergence(ReplicationConvergence convergence) {
+		this.replicationConvergence = convergence;
+	}
+
+	/**
+	 * @return whether the last warm up could resume the replication stream of its peer, or null
+	 */
+	public ReplicationCheckpoint.Decision getResyncDecision() {
+		return resyncDecision;
+	}
+
+	public void setResyncDecision(ReplicationCheckpoint.Decision decision) {
+		this.resyncDecision = decision;
+	}
+
+	/**
+	 * @return the last warm up in snapshot mode, or null
+	 */
+	public SnapshotBootstrap getSnapshotBootstrap() {
+		return snapshotBootstrap;
+	}
+
+	public void setSnapshotBootstrap(SnapshotBootstrap bootstrap) {
+		this.snapshotBootstrap = bootstrap;
+	}
+
+	/**
+	 * @return the peer the current warm up syncs from, or null
+	 */
+	public String getWarmUpPeer() {
+		return warmUpPeer;
+	}
+
+	public void setWarmUpPeer(String peer) {
+		this.warmUpPeer = peer;
+	}
+
+	/**
+	 * @return the failover of the last warm up, with its attempts, or null
+	 */
+	public PeerFailover getPeerFailover() {
+		return peerFailover;
+	}
+
+	public void setPeerFailover(PeerFailover failover) {
+		this.peerFailover = failover;
+	}
+
+	/**
+	 * @return the handoff of the last warm up to normal traffic, with its phases, or null
+	 */
+	public WarmupHandoff getWarmupHandoff() {
+		return warmupHandoff;
+	}
+
+	public void setWarmupHandoff(WarmupHandoff handoff) {
+		this.warmupHandoff = handoff;
+	}
+
+	/**
+	 * @return the download of the last restore, with its progress, or null
+	 */
+	public RangeDownloader getRangeDownloader() {
+		return rangeDownloader;
+	}
+
+	public void setRangeDownloader(RangeDownloader downloader) {
+		this.rangeDownloader = downloader;
+	}
+
 }
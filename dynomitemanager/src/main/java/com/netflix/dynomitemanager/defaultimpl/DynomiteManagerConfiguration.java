@@ -68,6 +68,7 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     public static final String AWS_PREFIX = "aws";
     public static final String AZURE_PREFIX = "azure";
     public static final String GCP_PREFIX = "gcp";
+    public static final String METRICS_PREFIX = "metrics";
 
     public static final String DYNOMITE_PROPS = DYNOMITEMANAGER_PRE + "." + DYNOMITE_PREFIX;
     public static final String DATASTORE_PROPS = DYNOMITEMANAGER_PRE + "." + DATASTORE_PREFIX;
@@ -79,6 +80,7 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     public static final String AWS_PROPS = DYNOMITEMANAGER_PRE + "." + AWS_PREFIX;
     public static final String AZURE_PROPS = DYNOMITEMANAGER_PRE + "." + AZURE_PREFIX;
     public static final String GCP_PROPS = DYNOMITEMANAGER_PRE + "." + GCP_PREFIX;
+    public static final String METRICS_PROPS = DYNOMITEMANAGER_PRE + "." + METRICS_PREFIX;
 
     // Archaius
     // ========
@@ -130,6 +132,9 @@ public class DynomiteManagerConfiguration implements IConfiguration {
 
     public static final String LOCAL_ADDRESS = "127.0.0.1";
 
+    private static final String CONFIG_DYNOMITE_ADMIN_CONNECT_TIMEOUT_MS = DYNOMITE_PROPS + ".admin.connect.timeout.ms";
+    private static final String CONFIG_DYNOMITE_ADMIN_MAX_CONNECTIONS = DYNOMITE_PROPS + ".admin.max.connections";
+    private static final String CONFIG_DYNOMITE_ADMIN_READ_TIMEOUT_MS = DYNOMITE_PROPS + ".admin.read.timeout.ms";
     private static final String CONFIG_DYNOMITE_INSTALL_DIR = DYNOMITE_PROPS + ".install.dir";
     private static final String CONFIG_DYNOMITE_START_SCRIPT = DYNOMITE_PROPS + ".start.script";
     private static final String CONFIG_DYNOMITE_STOP_SCRIPT = DYNOMITE_PROPS + ".stop.script";
@@ -157,6 +162,7 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     private static final String CONFIG_AVAILABILITY_RACKS = DYNOMITEMANAGER_PRE + ".racks.available";
 
     private static final String CONFIG_DYNOMITE_PROCESS_NAME = DYNOMITE_PROPS + ".process.name";
+    private static final String CONFIG_DYNOMITE_PID_FILE = DYNOMITE_PROPS + ".pid.file";
     private static final String CONFIG_DYNOMITE_YAML = DYNOMITE_PROPS + ".yaml";
     private static final String CONFIG_DYNOMITE_INTRA_CLUSTER_SECURITY = DYNOMITE_PROPS + ".intra.cluster.security";
     private static final String CONFIG_DYNOMITE_AUTO_EJECT_HOSTS = DYNOMITE_PROPS + ".auto.eject.hosts";
@@ -185,6 +191,8 @@ public class DynomiteManagerConfiguration implements IConfiguration {
 
     private static final String CONFIG_REDIS_CONF = REDIS_PROPS + ".conf";
     private static final String CONFIG_REDIS_DATA_DIR = REDIS_PROPS + ".data.dir";
+    private static final String CONFIG_REDIS_PID_FILE = REDIS_PROPS + ".pid.file";
+    private static final String CONFIG_REDIS_INFO_TTL_MS = REDIS_PROPS + ".info.ttl.ms";
     private static final String CONFIG_REDIS_PERSISTENCE_ENABLED = REDIS_PROPS + ".persistence.enabled";
     private static final String CONFIG_REDIS_PERSISTENCE_TYPE = REDIS_PROPS + ".persistence.type";
     private static final String CONFIG_REDIS_START_SCRIPT = REDIS_PROPS + ".start.script";
@@ -207,6 +215,32 @@ public class DynomiteManagerConfiguration implements IConfiguration {
 
     private static final String CONFIG_EUREKA_HOSTS_SUPPLIER_ENABLED = EUREKA_PROPS + ".hosts.supplier.enabled";
 
+    // Metrics
+    // =======
+
+    private static final String CONFIG_METRICS_HIGHRES_ENABLED = METRICS_PROPS + ".highres.enabled";
+    private static final String CONFIG_METRICS_HIGHRES_HISTORY_SECONDS = METRICS_PROPS + ".highres.history.seconds";
+    private static final String CONFIG_METRICS_HIGHRES_INTERVAL_MS = METRICS_PROPS + ".highres.interval.ms";
+    private static final String CONFIG_METRICS_HIGHRES_NAMES = METRICS_PROPS + ".highres.names";
+    private static final String CONFIG_METRICS_REDIS_LATENCY_ENABLED = METRICS_PROPS + ".redis.latency.enabled";
+    private static final String CONFIG_METRICS_REDIS_SLOWLOG_MAX_ENTRIES = METRICS_PROPS + ".redis.slowlog.max.entries";
+    private static final String CONFIG_METRICS_REDIS_LATENCY_MAX_COMMANDS = METRICS_PROPS
+            + ".redis.latency.max.commands";
+    private static final String CONFIG_METRICS_REDIS_COMMANDSTATS_ENABLED = METRICS_PROPS
+            + ".redis.commandstats.enabled";
+    private static final String CONFIG_METRICS_KEYSPACE_ANALYZER_ENABLED = METRICS_PROPS + ".keyspace.analyzer.enabled";
+    private static final String CONFIG_METRICS_KEYSPACE_ANALYZER_OPS_PER_SECOND = METRICS_PROPS
+            + ".keyspace.analyzer.ops.per.second";
+    private static final String CONFIG_METRICS_KEYSPACE_ANALYZER_TOP_KEYS = METRICS_PROPS
+            + ".keyspace.analyzer.top.keys";
+    private static final String CONFIG_METRICS_PROCESS_ENABLED = METRICS_PROPS + ".process.enabled";
+    private static final String CONFIG_METRICS_TCP_ENABLED = METRICS_PROPS + ".tcp.enabled";
+    private static final String CONFIG_METRICS_PIPELINE_ENABLED = METRICS_PROPS + ".pipeline.enabled";
+    private static final String CONFIG_METRICS_PIPELINE_INTERVAL_MS = METRICS_PROPS + ".pipeline.interval.ms";
+    private static final String CONFIG_METRICS_SOURCE_DEADLINE_MS = METRICS_PROPS + ".source.deadline.ms";
+    private static final String CONFIG_METRICS_PIPELINE_THREADS = METRICS_PROPS + ".pipeline.threads";
+    private static final String CONFIG_METRICS_PIPELINE_SOURCES = METRICS_PROPS + ".pipeline.sources";
+
     // Amazon specific
     private static final String CONFIG_ASG_NAME = DYNOMITEMANAGER_PRE + ".az.asgname";
     private static final String CONFIG_REGION_NAME = DYNOMITEMANAGER_PRE + ".az.region";
@@ -225,6 +259,33 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     private static final String CONFIG_DYNO_ALLOWABLE_BYTES_SYNC_DIFF = DYNOMITEMANAGER_PRE
 	    + ".dyno.warm.bytes.sync.diff";
     private static final String CONFIG_DYNO_MAX_TIME_BOOTSTRAP = DYNOMITEMANAGER_PRE + ".dyno.warm.msec.bootstraptime";
+    private static final String CONFIG_DYNO_WARM_PROBE_TIMEOUT_MS = DYNOMITEMANAGER_PRE + ".dyno.warm.probe.timeout.ms";
+    private static final String CONFIG_DYNO_WARM_PROBE_PEERS = DYNOMITEMANAGER_PRE + ".dyno.warm.probe.peers";
+    private static final String CONFIG_DYNO_WARM_MODE = DYNOMITEMANAGER_PRE + ".dyno.warm.mode";
+    private static final String CONFIG_DYNO_WARM_COPY_WORKERS = DYNOMITEMANAGER_PRE + ".dyno.warm.copy.workers";
+    private static final String CONFIG_DYNO_WARM_COPY_BATCH = DYNOMITEMANAGER_PRE + ".dyno.warm.copy.batch";
+    private static final String CONFIG_DYNO_WARM_COPY_KBPS = DYNOMITEMANAGER_PRE + ".dyno.warm.copy.kbps";
+    private static final String CONFIG_DYNO_WARM_SYNC_MIN_INTERVAL_MS = DYNOMITEMANAGER_PRE
+            + ".dyno.warm.sync.min.interval.ms";
+    private static final String CONFIG_DYNO_WARM_SYNC_MAX_INTERVAL_MS = DYNOMITEMANAGER_PRE
+            + ".dyno.warm.sync.max.interval.ms";
+    private static final String CONFIG_DYNO_WARM_SYNC_STALL_MS = DYNOMITEMANAGER_PRE + ".dyno.warm.sync.stall.ms";
+    private static final String CONFIG_DYNO_WARM_THROTTLE_ENABLED = DYNOMITEMANAGER_PRE + ".dyno.warm.throttle.enabled";
+    private static final String CONFIG_DYNO_WARM_THROTTLE_INTERVAL_MS = DYNOMITEMANAGER_PRE
+            + ".dyno.warm.throttle.interval.ms";
+    private static final String CONFIG_DYNO_WARM_THROTTLE_OPS = DYNOMITEMANAGER_PRE + ".dyno.warm.throttle.ops";
+    private static final String CONFIG_DYNO_WARM_THROTTLE_OUTPUT_LIST = DYNOMITEMANAGER_PRE
+            + ".dyno.warm.throttle.output.list";
+    private static final String CONFIG_DYNO_WARM_THROTTLE_LATENCY_US = DYNOMITEMANAGER_PRE
+            + ".dyno.warm.throttle.latency.us";
+    private static final String CONFIG_DYNO_WARM_THROTTLE_MAX_WAIT_MS = DYNOMITEMANAGER_PRE
+            + ".dyno.warm.throttle.max.wait.ms";
+    private static final String CONFIG_DYNO_WARM_BLACKLIST_MS = DYNOMITEMANAGER_PRE + ".dyno.warm.blacklist.ms";
+    private static final String CONFIG_DYNO_WARM_DEADLINE_MS = DYNOMITEMANAGER_PRE + ".dyno.warm.deadline.ms";
+    private static final String CONFIG_DYNO_WARM_HANDOFF_INTERVAL_MS = DYNOMITEMANAGER_PRE + ".dyno.warm.handoff.interval.ms";
+    private static final String CONFIG_DYNO_WARM_HANDOFF_TIMEOUT_MS = DYNOMITEMANAGER_PRE + ".dyno.warm.handoff.timeout.ms";
+    private static final String CONFIG_DYNO_WARM_HANDOFF_QUEUE_THRESHOLD = DYNOMITEMANAGER_PRE + ".dyno.warm.handoff.queue.threshold";
+    private static final String CONFIG_DYNO_WARM_PEER_SELECTION = DYNOMITEMANAGER_PRE + ".dyno.warm.peer.selection";
 
     // Backup and Restore
     private static final String CONFIG_BACKUP_ENABLED = DYNOMITEMANAGER_PRE + ".dyno.backup.snapshot.enabled";
@@ -234,6 +295,15 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     private static final String CONFIG_BACKUP_SCHEDULE = DYNOMITEMANAGER_PRE + ".dyno.backup.schedule";
     private static final String CONFIG_RESTORE_ENABLED = DYNOMITEMANAGER_PRE + ".dyno.backup.restore.enabled";
     private static final String CONFIG_RESTORE_TIME = DYNOMITEMANAGER_PRE + ".dyno.backup.restore.date";
+    private static final String CONFIG_BACKUP_UPLOAD_CONCURRENCY = DYNOMITEMANAGER_PRE + ".dyno.backup.upload.concurrency";
+    private static final String CONFIG_BACKUP_UPLOAD_PART_SIZE_MB = DYNOMITEMANAGER_PRE + ".dyno.backup.upload.part.size.mb";
+    private static final String CONFIG_BACKUP_UPLOAD_RETRIES = DYNOMITEMANAGER_PRE + ".dyno.backup.upload.retries";
+    private static final String CONFIG_BACKUP_UPLOAD_RETRY_BACKOFF_MS = DYNOMITEMANAGER_PRE + ".dyno.backup.upload.retry.backoff.ms";
+    private static final String CONFIG_BACKUP_COMPRESSION = DYNOMITEMANAGER_PRE + ".dyno.backup.compression";
+    private static final String CONFIG_RESTORE_CONCURRENCY = DYNOMITEMANAGER_PRE + ".dyno.backup.restore.concurrency";
+    private static final String CONFIG_RESTORE_RANGE_SIZE_MB = DYNOMITEMANAGER_PRE + ".dyno.backup.restore.range.size.mb";
+    private static final String CONFIG_RESTORE_RANGE_RETRIES = DYNOMITEMANAGER_PRE + ".dyno.backup.restore.range.retries";
+    private static final String CONFIG_RESTORE_RANGE_RETRY_BACKOFF_MS = DYNOMITEMANAGER_PRE + ".dyno.backup.restore.range.retry.backoff.ms";
 
     // VPC
     private static final String CONFIG_INSTANCE_DATA_RETRIEVER = DYNOMITEMANAGER_PRE + ".instanceDataRetriever";
@@ -241,6 +311,9 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     // Defaults: Dynomite
     // ==================
 
+    private final int DEFAULT_DYNOMITE_ADMIN_CONNECT_TIMEOUT_MS = 2000;
+    private final int DEFAULT_DYNOMITE_ADMIN_MAX_CONNECTIONS = 4;
+    private final int DEFAULT_DYNOMITE_ADMIN_READ_TIMEOUT_MS = 5000;
     private final boolean DEFAULT_DYNOMITE_AUTO_EJECT_HOSTS = true;
     private final String DEFAULT_DYNOMITE_CLUSTER_NAME = "dynomite_demo1";
     private final String DEFAULT_DYNOMITE_SEED_PROVIDER = "florida_provider";
@@ -253,6 +326,7 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     private List<String> DEFAULT_AVAILABILITY_RACKS = ImmutableList.of();
 
     private final String DEFAULT_DYNOMITE_PROCESS_NAME = "dynomite";
+    private final String DEFAULT_DYNOMITE_PID_FILE = "/var/run/dynomite/dynomite.pid";
     private final int DEFAULT_DYNOMITE_CLIENT_PORT = 8102; // dyn_listen
     private final int DEFAULT_DYNOMITE_PEER_PORT = 8101;
     private final String DEFAULT_DYN_RACK = "RAC1";
@@ -283,6 +357,15 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     private static final String DEFAULT_RESTORE_TIME = "20101010";
     private static final String DEFAULT_BACKUP_SCHEDULE = "day";
     private static final int DEFAULT_BACKUP_HOUR = 12;
+    private static final int DEFAULT_BACKUP_UPLOAD_CONCURRENCY = 4;
+    private static final int DEFAULT_BACKUP_UPLOAD_PART_SIZE_MB = 64;
+    private static final int DEFAULT_BACKUP_UPLOAD_RETRIES = 3;
+    private static final int DEFAULT_BACKUP_UPLOAD_RETRY_BACKOFF_MS = 1000;
+    private static final String DEFAULT_BACKUP_COMPRESSION = "none";
+    private static final int DEFAULT_RESTORE_CONCURRENCY = 4;
+    private static final int DEFAULT_RESTORE_RANGE_SIZE_MB = 64;
+    private static final int DEFAULT_RESTORE_RANGE_RETRIES = 3;
+    private static final int DEFAULT_RESTORE_RANGE_RETRY_BACKOFF_MS = 1000;
 
     // AWS Dual Account
     private static final boolean DEFAULT_DUAL_ACCOUNT = false;
@@ -320,6 +403,8 @@ public class DynomiteManagerConfiguration implements IConfiguration {
 
     private static final String DEFAULT_REDIS_CONF = "/apps/nfredis/conf/redis.conf";
     private static final String DEFAULT_REDIS_DATA_DIR = "/mnt/data/nfredis";
+    private static final String DEFAULT_REDIS_PID_FILE = "/var/run/redis/nfredis-server.pid";
+    private static final int DEFAULT_REDIS_INFO_TTL_MS = 1000;
     private static final boolean DEFAULT_REDIS_PERSISTENCE_ENABLED = false;
     private static final String DEFAULT_REDIS_PERSISTENCE_TYPE = "aof";
     private static final String DEFAULT_REDIS_START_SCRIPT = "/apps/nfredis/bin/launch_nfredis.sh";
@@ -340,6 +425,53 @@ public class DynomiteManagerConfiguration implements IConfiguration {
 
     private static final boolean DEFAULT_EUREKA_HOSTS_SUPPLIER_ENABLED = true;
 
+    // Defaults: Metrics
+    // =================
+
+    private static final boolean DEFAULT_METRICS_HIGHRES_ENABLED = false;
+    private static final int DEFAULT_METRICS_HIGHRES_HISTORY_SECONDS = 300;
+    private static final int DEFAULT_METRICS_HIGHRES_INTERVAL_MS = 250;
+    private static final String DEFAULT_METRICS_HIGHRES_NAMES = "dynomite__latency_99th,dynomite__client_out_queue_99,"
+            + "dynomite__server_in_queue_99,dynomite__client_connections,Redis_Stats_instantaneous_ops_per_sec,"
+            + "Redis_Clients_connected_clients,Redis_Clients_client_longest_output_list";
+    private static final boolean DEFAULT_METRICS_REDIS_LATENCY_ENABLED = false;
+    private static final int DEFAULT_METRICS_REDIS_SLOWLOG_MAX_ENTRIES = 128;
+    private static final int DEFAULT_METRICS_REDIS_LATENCY_MAX_COMMANDS = 64;
+    private static final boolean DEFAULT_METRICS_REDIS_COMMANDSTATS_ENABLED = false;
+    private static final boolean DEFAULT_METRICS_KEYSPACE_ANALYZER_ENABLED = false;
+    private static final int DEFAULT_METRICS_KEYSPACE_ANALYZER_OPS_PER_SECOND = 100;
+    private static final int DEFAULT_METRICS_KEYSPACE_ANALYZER_TOP_KEYS = 20;
+    private static final boolean DEFAULT_METRICS_PROCESS_ENABLED = false;
+    private static final boolean DEFAULT_METRICS_TCP_ENABLED = false;
+    private static final boolean DEFAULT_METRICS_PIPELINE_ENABLED = false;
+    private static final int DEFAULT_METRICS_PIPELINE_INTERVAL_MS = 15000;
+    private static final int DEFAULT_METRICS_SOURCE_DEADLINE_MS = 5000;
+    private static final int DEFAULT_METRICS_PIPELINE_THREADS = 4;
+    private static final String DEFAULT_METRICS_PIPELINE_SOURCES = "";
+
+    private static final int DEFAULT_DYNO_WARM_PROBE_TIMEOUT_MS = 10000;
+    private static final int DEFAULT_DYNO_WARM_PROBE_PEERS = 3;
+    private static final String DEFAULT_DYNO_WARM_MODE = "slaveof";
+    private static final int DEFAULT_DYNO_WARM_COPY_WORKERS = 4;
+    private static final int DEFAULT_DYNO_WARM_COPY_BATCH = 100;
+    // 50 MB/s
+    private static final int DEFAULT_DYNO_WARM_COPY_KBPS = 51200;
+    private static final int DEFAULT_DYNO_WARM_SYNC_MIN_INTERVAL_MS = 500;
+    private static final int DEFAULT_DYNO_WARM_SYNC_MAX_INTERVAL_MS = 10000;
+    private static final int DEFAULT_DYNO_WARM_SYNC_STALL_MS = 120000;
+    private static final boolean DEFAULT_DYNO_WARM_THROTTLE_ENABLED = false;
+    private static final int DEFAULT_DYNO_WARM_THROTTLE_INTERVAL_MS = 1000;
+    private static final int DEFAULT_DYNO_WARM_THROTTLE_OPS = 50000;
+    private static final int DEFAULT_DYNO_WARM_THROTTLE_OUTPUT_LIST = 10000;
+    private static final int DEFAULT_DYNO_WARM_THROTTLE_LATENCY_US = 5000;
+    private static final int DEFAULT_DYNO_WARM_THROTTLE_MAX_WAIT_MS = 300000;
+    private static final int DEFAULT_DYNO_WARM_BLACKLIST_MS = 600000;
+    private static final int DEFAULT_DYNO_WARM_DEADLINE_MS = 3600000;
+    private static final int DEFAULT_DYNO_WARM_HANDOFF_INTERVAL_MS = 500;
+    private static final int DEFAULT_DYNO_WARM_HANDOFF_TIMEOUT_MS = 60000;
+    private static final int DEFAULT_DYNO_WARM_HANDOFF_QUEUE_THRESHOLD = 10;
+    private static final String DEFAULT_DYNO_WARM_PEER_SELECTION = "uptime";
+
     // = instance identity meta data
     private String RAC, ZONE, PUBLIC_HOSTNAME, PUBLIC_IP, INSTANCE_ID, INSTANCE_TYPE;
     private String NETWORK_MAC; // Fetch metadata of the running instance's
@@ -572,6 +704,24 @@ public class DynomiteManagerConfiguration implements IConfiguration {
     // Dynomite
     // ========
 
+    @Override
+    public int getDynomiteAdminConnectTimeoutMs() {
+        return getIntProperty("DM_DYNOMITE_ADMIN_CONNECT_TIMEOUT_MS", CONFIG_DYNOMITE_ADMIN_CONNECT_TIMEOUT_MS,
+                DEFAULT_DYNOMITE_ADMIN_CONNECT_TIMEOUT_MS);
+    }
+
+    @Override
+    public int getDynomiteAdminMaxConnections() {
+        return getIntProperty("DM_DYNOMITE_ADMIN_MAX_CONNECTIONS", CONFIG_DYNOMITE_ADMIN_MAX_CONNECTIONS,
+                DEFAULT_DYNOMITE_ADMIN_MAX_CONNECTIONS);
+    }
+
+    @Override
+    public int getDynomiteAdminReadTimeoutMs() {
+        return getIntProperty("DM_DYNOMITE_ADMIN_READ_TIMEOUT_MS", CONFIG_DYNOMITE_ADMIN_READ_TIMEOUT_MS,
+                DEFAULT_DYNOMITE_ADMIN_READ_TIMEOUT_MS);
+    }
+
     @Override
     public boolean getDynomiteAutoEjectHosts() {
         return getBooleanProperty("DM_DYNOMITE_AUTO_EJECT_HOSTS", CONFIG_DYNOMITE_AUTO_EJECT_HOSTS,
@@ -642,6 +792,11 @@ public class DynomiteManagerConfiguration implements IConfiguration {
                 DEFAULT_DYNOMITE_PROCESS_NAME);
     }
 
+    @Override
+    public String getDynomitePidFile() {
+        return getStringProperty("DM_DYNOMITE_PID_FILE", CONFIG_DYNOMITE_PID_FILE, DEFAULT_DYNOMITE_PID_FILE);
+    }
+
     public String getDynomiteReadConsistency() {
         return getStringProperty("DM_DYNOMITE_READ_CONSISTENCY", CONFIG_DYNOMITE_READ_CONSISTENCY,
                 DEFAULT_DYNOMITE_READ_CONSISTENCY);
@@ -846,6 +1001,16 @@ public class DynomiteManagerConfiguration implements IConfiguration {
         return getStringProperty("DM_REDIS_DATA_DIR", CONFIG_REDIS_DATA_DIR, DEFAULT_REDIS_DATA_DIR);
     }
 
+    @Override
+    public String getRedisPidFile() {
+        return getStringProperty("DM_REDIS_PID_FILE", CONFIG_REDIS_PID_FILE, DEFAULT_REDIS_PID_FILE);
+    }
+
+    @Override
+    public int getRedisInfoTtlMs() {
+        return getIntProperty("DM_REDIS_INFO_TTL_MS", CONFIG_REDIS_INFO_TTL_MS, DEFAULT_REDIS_INFO_TTL_MS);
+    }
+
     @Override
     public String getRedisPersistenceType() {
         return getStringProperty("DM_REDIS_PERSISTENCE_TYPE", CONFIG_REDIS_PERSISTENCE_TYPE,
@@ -931,4 +1096,280 @@ public class DynomiteManagerConfiguration implements IConfiguration {
                 DEFAULT_EUREKA_HOSTS_SUPPLIER_ENABLED);
     }
 
+    // Metrics
+    // =======
+
+    @Override
+    public boolean isHighResolutionMetricsEnabled() {
+        return getBooleanProperty("DM_METRICS_HIGHRES_ENABLED", CONFIG_METRICS_HIGHRES_ENABLED,
+                DEFAULT_METRICS_HIGHRES_ENABLED);
+    }
+
+    @Override
+    public int getHighResolutionMetricsHistorySeconds() {
+        return getIntProperty("DM_METRICS_HIGHRES_HISTORY_SECONDS", CONFIG_METRICS_HIGHRES_HISTORY_SECONDS,
+                DEFAULT_METRICS_HIGHRES_HISTORY_SECONDS);
+    }
+
+    @Override
+    public int getHighResolutionMetricsIntervalMs() {
+        return getIntProperty("DM_METRICS_HIGHRES_INTERVAL_MS", CONFIG_METRICS_HIGHRES_INTERVAL_MS,
+                DEFAULT_METRICS_HIGHRES_INTERVAL_MS);
+    }
+
+    @Override
+    public String getHighResolutionMetrics() {
+        return getStringProperty("DM_METRICS_HIGHRES_NAMES", CONFIG_METRICS_HIGHRES_NAMES,
+                DEFAULT_METRICS_HIGHRES_NAMES);
+    }
+
+    @Override
+    public boolean isRedisLatencyMetricsEnabled() {
+        return getBooleanProperty("DM_METRICS_REDIS_LATENCY_ENABLED", CONFIG_METRICS_REDIS_LATENCY_ENABLED,
+                DEFAULT_METRICS_REDIS_LATENCY_ENABLED);
+    }
+
+    @Override
+    public int getRedisSlowlogMaxEntries() {
+        return getIntProperty("DM_METRICS_REDIS_SLOWLOG_MAX_ENTRIES", CONFIG_METRICS_REDIS_SLOWLOG_MAX_ENTRIES,
+                DEFAULT_METRICS_REDIS_SLOWLOG_MAX_ENTRIES);
+    }
+
+    @Override
+    public int getRedisLatencyMaxCommands() {
+        return getIntProperty("DM_METRICS_REDIS_LATENCY_MAX_COMMANDS", CONFIG_METRICS_REDIS_LATENCY_MAX_COMMANDS,
+                DEFAULT_METRICS_REDIS_LATENCY_MAX_COMMANDS);
+    }
+
+    @Override
+    public boolean isRedisCommandStatsEnabled() {
+        return getBooleanProperty("DM_METRICS_REDIS_COMMANDSTATS_ENABLED", CONFIG_METRICS_REDIS_COMMANDSTATS_ENABLED,
+                DEFAULT_METRICS_REDIS_COMMANDSTATS_ENABLED);
+    }
+
+    @Override
+    public boolean isKeyspaceAnalyzerEnabled() {
+        return getBooleanProperty("DM_METRICS_KEYSPACE_ANALYZER_ENABLED", CONFIG_METRICS_KEYSPACE_ANALYZER_ENABLED,
+                DEFAULT_METRICS_KEYSPACE_ANALYZER_ENABLED);
+    }
+
+    @Override
+    public int getKeyspaceAnalyzerOpsPerSecond() {
+        return getIntProperty("DM_METRICS_KEYSPACE_ANALYZER_OPS_PER_SECOND",
+                CONFIG_METRICS_KEYSPACE_ANALYZER_OPS_PER_SECOND, DEFAULT_METRICS_KEYSPACE_ANALYZER_OPS_PER_SECOND);
+    }
+
+    @Override
+    public int getKeyspaceAnalyzerTopKeys() {
+        return getIntProperty("DM_METRICS_KEYSPACE_ANALYZER_TOP_KEYS", CONFIG_METRICS_KEYSPACE_ANALYZER_TOP_KEYS,
+                DEFAULT_METRICS_KEYSPACE_ANALYZER_TOP_KEYS);
+    }
+
+    @Override
+    public boolean isProcessMetricsEnabled() {
+        return getBooleanProperty("DM_METRICS_PROCESS_ENABLED", CONFIG_METRICS_PROCESS_ENABLED,
+                DEFAULT_METRICS_PROCESS_ENABLED);
+    }
+
+    @Override
+    public boolean isTcpMetricsEnabled() {
+        return getBooleanProperty("DM_METRICS_TCP_ENABLED", CONFIG_METRICS_TCP_ENABLED, DEFAULT_METRICS_TCP_ENABLED);
+    }
+
+    @Override
+    public boolean isMetricsPipelineEnabled() {
+        return getBooleanProperty("DM_METRICS_PIPELINE_ENABLED", CONFIG_METRICS_PIPELINE_ENABLED,
+                DEFAULT_METRICS_PIPELINE_ENABLED);
+    }
+
+    @Override
+    public int getMetricsPipelineIntervalMs() {
+        return getIntProperty("DM_METRICS_PIPELINE_INTERVAL_MS", CONFIG_METRICS_PIPELINE_INTERVAL_MS,
+                DEFAULT_METRICS_PIPELINE_INTERVAL_MS);
+    }
+
+    @Override
+    public int getMetricsSourceDeadlineMs() {
+        return getIntProperty("DM_METRICS_SOURCE_DEADLINE_MS", CONFIG_METRICS_SOURCE_DEADLINE_MS,
+                DEFAULT_METRICS_SOURCE_DEADLINE_MS);
+    }
+
+    @Override
+    public int getMetricsPipelineThreads() {
+        return getIntProperty("DM_METRICS_PIPELINE_THREADS", CONFIG_METRICS_PIPELINE_THREADS,
+                DEFAULT_METRICS_PIPELINE_THREADS);
+    }
+
+    @Override
+    public String getMetricsPipelineSources() {
+        return getStringProperty("DM_METRICS_PIPELINE_SOURCES", CONFIG_METRICS_PIPELINE_SOURCES,
+                DEFAULT_METRICS_PIPELINE_SOURCES);
+    }
+
+    @Override
+    public int getWarmBootstrapProbeTimeoutMs() {
+        return getIntProperty("DM_WARM_PROBE_TIMEOUT_MS", CONFIG_DYNO_WARM_PROBE_TIMEOUT_MS,
+                DEFAULT_DYNO_WARM_PROBE_TIMEOUT_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapProbePeers() {
+        return getIntProperty("DM_WARM_PROBE_PEERS", CONFIG_DYNO_WARM_PROBE_PEERS, DEFAULT_DYNO_WARM_PROBE_PEERS);
+    }
+
+    @Override
+    public String getWarmBootstrapMode() {
+        return getStringProperty("DM_WARM_MODE", CONFIG_DYNO_WARM_MODE, DEFAULT_DYNO_WARM_MODE);
+    }
+
+    @Override
+    public int getWarmBootstrapCopyWorkers() {
+        return getIntProperty("DM_WARM_COPY_WORKERS", CONFIG_DYNO_WARM_COPY_WORKERS, DEFAULT_DYNO_WARM_COPY_WORKERS);
+    }
+
+    @Override
+    public int getWarmBootstrapCopyBatchSize() {
+        return getIntProperty("DM_WARM_COPY_BATCH", CONFIG_DYNO_WARM_COPY_BATCH, DEFAULT_DYNO_WARM_COPY_BATCH);
+    }
+
+    @Override
+    public int getWarmBootstrapCopyKBytesPerSecond() {
+        return getIntProperty("DM_WARM_COPY_KBPS", CONFIG_DYNO_WARM_COPY_KBPS, DEFAULT_DYNO_WARM_COPY_KBPS);
+    }
+
+    @Override
+    public int getWarmBootstrapSyncMinIntervalMs() {
+        return getIntProperty("DM_WARM_SYNC_MIN_INTERVAL_MS", CONFIG_DYNO_WARM_SYNC_MIN_INTERVAL_MS,
+                DEFAULT_DYNO_WARM_SYNC_MIN_INTERVAL_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapSyncMaxIntervalMs() {
+        return getIntProperty("DM_WARM_SYNC_MAX_INTERVAL_MS", CONFIG_DYNO_WARM_SYNC_MAX_INTERVAL_MS,
+                DEFAULT_DYNO_WARM_SYNC_MAX_INTERVAL_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapSyncStallMs() {
+        return getIntProperty("DM_WARM_SYNC_STALL_MS", CONFIG_DYNO_WARM_SYNC_STALL_MS, DEFAULT_DYNO_WARM_SYNC_STALL_MS);
+    }
+
+    @Override
+    public boolean isWarmBootstrapThrottleEnabled() {
+        return getBooleanProperty("DM_WARM_THROTTLE_ENABLED", CONFIG_DYNO_WARM_THROTTLE_ENABLED,
+                DEFAULT_DYNO_WARM_THROTTLE_ENABLED);
+    }
+
+    @Override
+    public int getWarmBootstrapThrottleIntervalMs() {
+        return getIntProperty("DM_WARM_THROTTLE_INTERVAL_MS", CONFIG_DYNO_WARM_THROTTLE_INTERVAL_MS,
+                DEFAULT_DYNO_WARM_THROTTLE_INTERVAL_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapThrottleOpsPerSec() {
+        return getIntProperty("DM_WARM_THROTTLE_OPS", CONFIG_DYNO_WARM_THROTTLE_OPS, DEFAULT_DYNO_WARM_THROTTLE_OPS);
+    }
+
+    @Override
+    public int getWarmBootstrapThrottleOutputList() {
+        return getIntProperty("DM_WARM_THROTTLE_OUTPUT_LIST", CONFIG_DYNO_WARM_THROTTLE_OUTPUT_LIST,
+                DEFAULT_DYNO_WARM_THROTTLE_OUTPUT_LIST);
+    }
+
+    @Override
+    public int getWarmBootstrapThrottleLatencyUs() {
+        return getIntProperty("DM_WARM_THROTTLE_LATENCY_US", CONFIG_DYNO_WARM_THROTTLE_LATENCY_US,
+                DEFAULT_DYNO_WARM_THROTTLE_LATENCY_US);
+    }
+
+    @Override
+    public int getWarmBootstrapThrottleMaxWaitMs() {
+        return getIntProperty("DM_WARM_THROTTLE_MAX_WAIT_MS", CONFIG_DYNO_WARM_THROTTLE_MAX_WAIT_MS,
+                DEFAULT_DYNO_WARM_THROTTLE_MAX_WAIT_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapBlacklistMs() {
+        return getIntProperty("DM_WARM_BLACKLIST_MS", CONFIG_DYNO_WARM_BLACKLIST_MS, DEFAULT_DYNO_WARM_BLACKLIST_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapDeadlineMs() {
+        return getIntProperty("DM_WARM_DEADLINE_MS", CONFIG_DYNO_WARM_DEADLINE_MS, DEFAULT_DYNO_WARM_DEADLINE_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapHandoffIntervalMs() {
+        return getIntProperty("DM_WARM_HANDOFF_INTERVAL_MS", CONFIG_DYNO_WARM_HANDOFF_INTERVAL_MS,
+                DEFAULT_DYNO_WARM_HANDOFF_INTERVAL_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapHandoffTimeoutMs() {
+        return getIntProperty("DM_WARM_HANDOFF_TIMEOUT_MS", CONFIG_DYNO_WARM_HANDOFF_TIMEOUT_MS,
+                DEFAULT_DYNO_WARM_HANDOFF_TIMEOUT_MS);
+    }
+
+    @Override
+    public int getWarmBootstrapHandoffQueueThreshold() {
+        return getIntProperty("DM_WARM_HANDOFF_QUEUE_THRESHOLD", CONFIG_DYNO_WARM_HANDOFF_QUEUE_THRESHOLD,
+                DEFAULT_DYNO_WARM_HANDOFF_QUEUE_THRESHOLD);
+    }
+
+    @Override
+    public int getBackupUploadConcurrency() {
+        return getIntProperty("DM_BACKUP_UPLOAD_CONCURRENCY", CONFIG_BACKUP_UPLOAD_CONCURRENCY,
+                DEFAULT_BACKUP_UPLOAD_CONCURRENCY);
+    }
+
+    @Override
+    public int getBackupUploadPartSizeMB() {
+        return getIntProperty("DM_BACKUP_UPLOAD_PART_SIZE_MB", CONFIG_BACKUP_UPLOAD_PART_SIZE_MB,
+                DEFAULT_BACKUP_UPLOAD_PART_SIZE_MB);
+    }
+
+    @Override
+    public int getBackupUploadRetries() {
+        return getIntProperty("DM_BACKUP_UPLOAD_RETRIES", CONFIG_BACKUP_UPLOAD_RETRIES, DEFAULT_BACKUP_UPLOAD_RETRIES);
+    }
+
+    @Override
+    public int getBackupUploadRetryBackoffMs() {
+        return getIntProperty("DM_BACKUP_UPLOAD_RETRY_BACKOFF_MS", CONFIG_BACKUP_UPLOAD_RETRY_BACKOFF_MS,
+                DEFAULT_BACKUP_UPLOAD_RETRY_BACKOFF_MS);
+    }
+
+    @Override
+    public String getBackupCompression() {
+        return getStringProperty("DM_BACKUP_COMPRESSION", CONFIG_BACKUP_COMPRESSION, DEFAULT_BACKUP_COMPRESSION);
+    }
+
+    @Override
+    public int getRestoreConcurrency() {
+        return getIntProperty("DM_RESTORE_CONCURRENCY", CONFIG_RESTORE_CONCURRENCY, DEFAULT_RESTORE_CONCURRENCY);
+    }
+
+    @Override
+    public int getRestoreRangeSizeMB() {
+        return getIntProperty("DM_RESTORE_RANGE_SIZE_MB", CONFIG_RESTORE_RANGE_SIZE_MB, DEFAULT_RESTORE_RANGE_SIZE_MB);
+    }
+
+    @Override
+    public int getRestoreRangeRetries() {
+        return getIntProperty("DM_RESTORE_RANGE_RETRIES", CONFIG_RESTORE_RANGE_RETRIES, DEFAULT_RESTORE_RANGE_RETRIES);
+    }
+
+    @Override
+    public int getRestoreRangeRetryBackoffMs() {
+        return getIntProperty("DM_RESTORE_RANGE_RETRY_BACKOFF_MS", CONFIG_RESTORE_RANGE_RETRY_BACKOFF_MS,
+                DEFAULT_RESTORE_RANGE_RETRY_BACKOFF_MS);
+    }
+
+    @Override
+    public String getWarmBootstrapPeerSelection() {
+        return getStringProperty("DM_WARM_PEER_SELECTION", CONFIG_DYNO_WARM_PEER_SELECTION,
+                DEFAULT_DYNO_WARM_PEER_SELECTION);
+    }
+
 }
@@ -24,6 +24,27 @@ public interface IConfiguration {
     // Dynomite
     // ========
 
+    /**
+     * Get the time (in ms) to wait for a connection to Dynomite's admin port (22222) to be established.
+     *
+     * @return the admin port connect timeout in ms
+     */
+    public int getDynomiteAdminConnectTimeoutMs();
+
+    /**
+     * Get the maximum number of concurrent requests (and pooled keep-alive connections) to Dynomite's admin port.
+     *
+     * @return the maximum number of concurrent admin port requests
+     */
+    public int getDynomiteAdminMaxConnections();
+
+    /**
+     * Get the time (in ms) to wait for Dynomite's admin port to answer a request, i.e. the socket read timeout.
+     *
+     * @return the admin port read timeout in ms
+     */
+    public int getDynomiteAdminReadTimeoutMs();
+
     /**
      * Determine if Dynomite should auto-eject nodes from the cluster.
      *
@@ -89,6 +110,13 @@ public interface IConfiguration {
      */
     public String getDynomiteProcessName();
 
+    /**
+     * Get the full path to the file Dynomite writes its process id to.
+     *
+     * @return the full path to the Dynomite pid file
+     */
+    public String getDynomitePidFile();
+
     /**
      * Get the read consistency level.
      *
@@ -343,6 +371,21 @@ public interface IConfiguration {
      */
     public String getRedisDataDir();
 
+    /**
+     * Get the full path to the file Redis writes its process id to, the <code>pidfile</code> of redis.conf.
+     *
+     * @return the full path to the Redis pid file
+     */
+    public String getRedisPidFile();
+
+    /**
+     * Get the maximum age (in ms) of a cached Redis INFO reply. INFO is sent at most once per TTL to each Redis
+     * endpoint, local or peer, no matter how many components need it.
+     *
+     * @return the time to live of a Redis INFO snapshot in ms
+     */
+    public int getRedisInfoTtlMs();
+
     /**
      * Get the persistence type of either AOF or RDB.
      *
@@ -428,4 +471,361 @@ public interface IConfiguration {
 
     public boolean isEurekaHostsSupplierEnabled();
 
+    // Metrics
+    // =======
+
+    /**
+     * Determine if selected metrics should also be sampled at a high resolution into an in-memory history.
+     *
+     * @return true if the high resolution metrics mode is enabled, false if not
+     */
+    public boolean isHighResolutionMetricsEnabled();
+
+    /**
+     * Get the number of seconds of high resolution samples kept in memory for each metric.
+     *
+     * @return the length of the high resolution history in seconds
+     */
+    public int getHighResolutionMetricsHistorySeconds();
+
+    /**
+     * Get the amount of time (in ms) between two high resolution samples.
+     *
+     * @return the high resolution sampling interval in ms
+     */
+    public int getHighResolutionMetricsIntervalMs();
+
+    /**
+     * Get the comma separated names of the metrics sampled in high resolution mode, e.g.
+     * dynomite__latency_99th,Redis_Stats_instantaneous_ops_per_sec.
+     *
+     * @return the names of the high resolution metrics
+     */
+    public String getHighResolutionMetrics();
+
+    /**
+     * Determine if the Redis slow log and latency monitor should be collected into latency histograms.
+     *
+     * @return true if Redis latencies are collected, false if not
+     */
+    public boolean isRedisLatencyMetricsEnabled();
+
+    /**
+     * Get the maximum number of slow log entries read from Redis in one run. Entries beyond it that were added since
+     * the previous run are counted as missed.
+     *
+     * @return the number of entries requested with SLOWLOG GET
+     */
+    public int getRedisSlowlogMaxEntries();
+
+    /**
+     * Get the maximum number of commands (or latency monitor events) that get a histogram of their own. Further
+     * commands are aggregated into a single histogram, so memory use stays bounded.
+     *
+     * @return the maximum number of latency histograms
+     */
+    public int getRedisLatencyMaxCommands();
+
+    /**
+     * Determine if per command statistics of Redis (INFO commandstats) should be published.
+     *
+     * @return true if Redis commandstats are published, false if not
+     */
+    public boolean isRedisCommandStatsEnabled();
+
+    /**
+     * Determine if the background analyzer of the largest keys and hottest key prefixes of Redis should run.
+     *
+     * @return true if the keyspace analyzer is enabled, false if not
+     */
+    public boolean isKeyspaceAnalyzerEnabled();
+
+    /**
+     * Get the budget of Redis commands per second of the keyspace analyzer.
+     *
+     * @return the maximum number of commands per second sent by the keyspace analyzer
+     */
+    public int getKeyspaceAnalyzerOpsPerSecond();
+
+    /**
+     * Get the number of largest keys and hottest key prefixes reported by the keyspace analyzer.
+     *
+     * @return the number of keys and prefixes kept
+     */
+    public int getKeyspaceAnalyzerTopKeys();
+
+    /**
+     * Determine if the resource usage (cpu, memory, context switches, I/O, open files) of the Dynomite and Redis
+     * processes should be published from /proc.
+     *
+     * @return true if process metrics are published, false if not
+     */
+    public boolean isProcessMetricsEnabled();
+
+    /**
+     * Determine if TCP socket statistics of the Dynomite client, Dynomite peer and storage ports should be published
+     * from /proc.
+     *
+     * @return true if TCP metrics are published, false if not
+     */
+    public boolean isTcpMetricsEnabled();
+
+    /**
+     * Determine if the metrics sources (Dynomite stats, Redis INFO, latency and commandstats, /proc) should be
+     * collected in parallel by one metrics pipeline instead of one scheduled task per source.
+     *
+     * @return true if the metrics pipeline is used, false if not
+     */
+    public boolean isMetricsPipelineEnabled();
+
+    /**
+     * Get the interval of the metrics pipeline.
+     *
+     * @return the time (in ms) between two collections of all metrics sources
+     */
+    public int getMetricsPipelineIntervalMs();
+
+    /**
+     * Get the deadline of a metrics source.
+     *
+     * @return how long (in ms) the metrics pipeline waits for one collection of a source
+     */
+    public int getMetricsSourceDeadlineMs();
+
+    /**
+     * Get the number of threads of the metrics pipeline.
+     *
+     * @return the maximum number of metrics sources collected at the same time
+     */
+    public int getMetricsPipelineThreads();
+
+    /**
+     * Get the custom metrics sources of the metrics pipeline.
+     *
+     * @return a comma separated list of the class names of additional metrics sources, created by Guice
+     */
+    public String getMetricsPipelineSources();
+
+    /**
+     * Get the deadline of probing the peers with the same token before a warm bootstrap. Peers are probed in parallel;
+     * the ones that have not answered by then are given up on.
+     *
+     * @return the time (in ms) to wait for the peers to answer
+     */
+    public int getWarmBootstrapProbeTimeoutMs();
+
+    /**
+     * Get the number of healthy peers that is enough to choose the peer to warm up from, without waiting for the other
+     * peers.
+     *
+     * @return the number of healthy peers to wait for
+     */
+    public int getWarmBootstrapProbePeers();
+
+    /**
+     * Get how the storage is warmed up from a peer with the same token: <code>slaveof</code> replicates from the peer,
+     * which forks on the peer to write an RDB; <code>copy</code> copies the keys of the peer with SCAN, DUMP and
+     * RESTORE, which also works with engines that cannot replicate from Redis, e.g. ARDB; <code>snapshot</code> restores
+     * the latest backup of the token and then catches up with the peer, with a partial resync if the peer knows the
+     * replication id of the storage after the load and with a keyspace copy over the backup otherwise.
+     *
+     * @return the warm up mode, slaveof, copy or snapshot
+     */
+    public String getWarmBootstrapMode();
+
+    /**
+     * Get the number of workers that copy batches of keys at the same time in the copy warm up mode.
+     *
+     * @return the number of copy workers
+     */
+    public int getWarmBootstrapCopyWorkers();
+
+    /**
+     * Get the number of keys per SCAN and per pipeline in the copy warm up mode.
+     *
+     * @return the number of keys per batch
+     */
+    public int getWarmBootstrapCopyBatchSize();
+
+    /**
+     * Get the maximum rate of the copy warm up mode, which limits the load on the peer.
+     *
+     * @return the maximum KB of values copied per second, 0 for no limit
+     */
+    public int getWarmBootstrapCopyKBytesPerSecond();
+
+    /**
+     * Get the shortest time between two checks of the replication offsets during a warm up, used when the local
+     * storage is about to be in sync.
+     *
+     * @return the minimum check interval in ms
+     */
+    public int getWarmBootstrapSyncMinIntervalMs();
+
+    /**
+     * Get the longest time between two checks of the replication offsets during a warm up, used while the peer
+     * transfers its RDB.
+     *
+     * @return the maximum check interval in ms
+     */
+    public int getWarmBootstrapSyncMaxIntervalMs();
+
+    /**
+     * Get how long the offset difference may stop shrinking during a warm up before replication is given up on.
+     *
+     * @return the stall window in ms
+     */
+    public int getWarmBootstrapSyncStallMs();
+
+    /**
+     * Check whether the load of the peer a warm bootstrap syncs from is watched, to slow down or hold back the warm up
+     * while the peer is overloaded.
+     *
+     * @return true if the peer is protected during a warm bootstrap
+     */
+    public boolean isWarmBootstrapThrottleEnabled();
+
+    /**
+     * Get how often the load of the peer is sampled during a warm bootstrap.
+     *
+     * @return the sample interval in ms
+     */
+    public int getWarmBootstrapThrottleIntervalMs();
+
+    /**
+     * Get the instantaneous_ops_per_sec of the peer above which it is overloaded.
+     *
+     * @return the threshold, 0 to ignore it
+     */
+    public int getWarmBootstrapThrottleOpsPerSec();
+
+    /**
+     * Get the client_longest_output_list of the peer above which it is overloaded.
+     *
+     * @return the threshold, 0 to ignore it
+     */
+    public int getWarmBootstrapThrottleOutputList();
+
+    /**
+     * Get the latency_99th of the Dynomite of the peer above which it is overloaded.
+     *
+     * @return the threshold in us, 0 to ignore it
+     */
+    public int getWarmBootstrapThrottleLatencyUs();
+
+    /**
+     * Get how long a full sync is held back while the peer is overloaded, before it is started anyway.
+     *
+     * @return the maximum wait in ms
+     */
+    public int getWarmBootstrapThrottleMaxWaitMs();
+
+    /**
+     * Get how long a peer a warm up failed from is skipped by the next attempts.
+     *
+     * @return the time in ms
+     */
+    public int getWarmBootstrapBlacklistMs();
+
+    /**
+     * Get the time after which a warm up stops trying other peers.
+     *
+     * @return the time in ms since the first attempt
+     */
+    public int getWarmBootstrapDeadlineMs();
+
+    /**
+     * Get the time between two checks of the handoff from a warm up to normal traffic.
+     *
+     * @return the time in ms
+     */
+    public int getWarmBootstrapHandoffIntervalMs();
+
+    /**
+     * Get the time each phase of the handoff from a warm up to normal traffic waits at most, e.g. for Dynomite to
+     * flush the writes it delayed.
+     *
+     * @return the time in ms
+     */
+    public int getWarmBootstrapHandoffTimeoutMs();
+
+    /**
+     * Get the queue depth at which Dynomite has flushed the writes it delayed during a warm up.
+     *
+     * @return the number of requests
+     */
+    public int getWarmBootstrapHandoffQueueThreshold();
+
+    /**
+     * Get the number of parts of a backup that are uploaded at the same time.
+     *
+     * @return the number of parts
+     */
+    public int getBackupUploadConcurrency();
+
+    /**
+     * Get the size of the parts of a backup upload. Large backups use larger parts, to stay within the 10,000 parts
+     * of an S3 upload.
+     *
+     * @return the size in MB
+     */
+    public int getBackupUploadPartSizeMB();
+
+    /**
+     * Get the number of times a part of a backup upload is retried before the upload is aborted.
+     *
+     * @return the number of retries
+     */
+    public int getBackupUploadRetries();
+
+    /**
+     * Get the wait before the first retry of a part of a backup upload. Each following retry waits twice as long.
+     *
+     * @return the time in ms
+     */
+    public int getBackupUploadRetryBackoffMs();
+
+    /**
+     * Get the codec backups are compressed with while they are uploaded: none, snappy or lzf.
+     *
+     * @return the name of the codec
+     */
+    public String getBackupCompression();
+
+    /**
+     * Get the number of byte ranges of a backup that are downloaded at the same time by a restore.
+     *
+     * @return the number of ranges
+     */
+    public int getRestoreConcurrency();
+
+    /**
+     * Get the size of the byte ranges a backup is downloaded in by a restore.
+     *
+     * @return the size in MB
+     */
+    public int getRestoreRangeSizeMB();
+
+    /**
+     * Get the number of times a byte range of a restore is retried before the restore fails.
+     *
+     * @return the number of retries
+     */
+    public int getRestoreRangeRetries();
+
+    /**
+     * Get the wait before the first retry of a byte range of a restore. Each following retry waits twice as long.
+     *
+     * @return the time in ms
+     */
+    public int getRestoreRangeRetryBackoffMs();
+
+    /**
+     * Get how a warm bootstrap chooses the peer it syncs from: <code>uptime</code> prefers the peer that has been up
+     * the longest, <code>load</code> the least loaded peer.
+     *
+     * @return the peer selection strategy, uptime or load
+     */
+    public String getWarmBootstrapPeerSelection();
+
 }
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.dynomite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Pooled, keep-alive HTTP client for Dynomite's admin port (22222).
+ *
+ * All traffic to the admin port - the stats poll, consistency changes and state transitions - goes through one
+ * connection manager, so connections are reused instead of being set up and torn down for every call. The number of
+ * concurrent calls is bounded by {@link IConfiguration#getDynomiteAdminMaxConnections()}; callers that exceed it wait
+ * at most the connect timeout for a free connection.
+ *
+ * Every call is timed and counted per operation. The Servo metrics are named
+ * <code>DynomiteAdmin_&lt;operation&gt;_latency</code>, <code>_requests</code> and <code>_errors</code>.
+ */
+@Singleton
+public class DynomiteAdminClient {
+
+    public static final String METRIC_PREFIX = "DynomiteAdmin_";
+
+    private final DynamicStringProperty adminUrl = DynamicPropertyFactory.getInstance()
+            .getStringProperty("florida.metrics.url", "http://localhost:22222");
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final HttpClient client;
+    private final ConcurrentHashMap<String, CallStats> stats = new ConcurrentHashMap<String, CallStats>();
+
+    /**
+     * Reads the body of a response. The body must not be used after the handler returns.
+     */
+    public interface ResponseHandler<T> {
+        T handle(int statusCode, InputStream body) throws IOException;
+    }
+
+    @Inject
+    public DynomiteAdminClient(IConfiguration config) {
+        int maxConnections = Math.max(1, config.getDynomiteAdminMaxConnections());
+
+        HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+        params.setConnectionTimeout(config.getDynomiteAdminConnectTimeoutMs());
+        params.setSoTimeout(config.getDynomiteAdminReadTimeoutMs());
+        params.setDefaultMaxConnectionsPerHost(maxConnections);
+        params.setMaxTotalConnections(maxConnections);
+        params.setStaleCheckingEnabled(true);
+
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.setParams(params);
+
+        client = new HttpClient(connectionManager);
+        client.getParams().setConnectionManagerTimeout(config.getDynomiteAdminConnectTimeoutMs());
+        client.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler());
+    }
+
+    /**
+     * @return the base url of the admin port, e.g. http://localhost:22222
+     */
+    public String getAdminUrl() {
+        return adminUrl.get();
+    }
+
+    /**
+     * Send a GET request and hand the response to the handler.
+     *
+     * @param url
+     *            the full url of the request
+     * @param operation
+     *            the name the call is timed and counted under
+     * @throws IOException
+     *             if the request failed or timed out, or the handler failed
+     */
+    public <T> T execute(String url, String operation, ResponseHandler<T> handler) throws IOException {
+        CallStats callStats = getCallStats(operation);
+        GetMethod get = new GetMethod(url);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            int statusCode = client.executeMethod(get);
+            T result = handler.handle(statusCode, get.getResponseBodyAsStream());
+            success = statusCode == 200;
+            return result;
+        } finally {
+            // reads what's left of the body, so the connection can be reused
+            get.releaseConnection();
+            callStats.record(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * @return the latency and error counters of an operation, null if it has never been called
+     */
+    public CallStats getStats(String operation) {
+        return stats.get(operation);
+    }
+
+    private CallStats getCallStats(String operation) {
+        CallStats callStats = stats.get(operation);
+        if (callStats != null) {
+            return callStats;
+        }
+
+        callStats = new CallStats(operation);
+        CallStats old = stats.putIfAbsent(operation, callStats);
+        if (old != null) {
+            return old;
+        }
+
+        DefaultMonitorRegistry.getInstance().register(callStats.latency);
+        DefaultMonitorRegistry.getInstance().register(callStats.requests);
+        DefaultMonitorRegistry.getInstance().register(callStats.errors);
+        return callStats;
+    }
+
+    /**
+     * Latency and error counters of a single operation.
+     */
+    public static class CallStats {
+        private final BasicTimer latency;
+        private final BasicCounter requests;
+        private final BasicCounter errors;
+
+        private CallStats(String operation) {
+            String name = METRIC_PREFIX + operation;
+            latency = new BasicTimer(MonitorConfig.builder(name + "_latency").build(), TimeUnit.MILLISECONDS);
+            requests = new BasicCounter(MonitorConfig.builder(name + "_requests").build());
+            errors = new BasicCounter(MonitorConfig.builder(name + "_errors").build());
+        }
+
+        private void record(long nanos, boolean success) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+            requests.increment();
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        public long getRequests() {
+            return requests.getValue().longValue();
+        }
+
+        public long getErrors() {
+            return errors.getValue().longValue();
+        }
+
+        public BasicTimer getLatency() {
+            return latency;
+        }
+    }
+}
@@ -15,58 +15,87 @@
  */
 package com.netflix.dynomitemanager.dynomite;
 
-import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.params.HttpMethodParams;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.netflix.config.DynamicPropertyFactory;
-import com.netflix.config.DynamicStringProperty;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
 
 /**
  * Class that adds that acts as an interface between DM and Dynomite
- * through REST APIs
+ * through REST APIs. Commands are sent over the shared
+ * {@link DynomiteAdminClient}.
  */
+@Singleton
 public class DynomiteRest {
 
     private static final Logger logger = LoggerFactory.getLogger(DynomiteRest.class);
 
-    public static boolean sendCommand(String cmd) {
-	DynamicStringProperty adminUrl = DynamicPropertyFactory.getInstance().getStringProperty("florida.metrics.url",
-		"http://localhost:22222");
+    private final DynomiteAdminClient client;
+
+    @Inject
+    public DynomiteRest(DynomiteAdminClient client) {
+	this.client = client;
+    }
 
-	String url = adminUrl.get() + cmd;
-	HttpClient client = new HttpClient();
-	client.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler());
+    /**
+     * Send a command, e.g. /state/normal, to Dynomite's admin port.
+     *
+     * @return true if Dynomite answered with a 200 and a non-empty body
+     */
+    public boolean sendCommand(String cmd) {
+	String url = client.getAdminUrl() + cmd;
 
 	logger.info("Dynomite REST with url: " + url);
-	GetMethod get = new GetMethod(url);
 	try {
-	    int statusCode = client.executeMethod(get);
+	    if (!client.execute(url, operationName(cmd), new CommandHandler(url))) {
+		return false;
+	    }
+	} catch (Exception e) {
+	    logger.error("Failed to sendCommand and invoke url: " + url, e);
+	    return false;
+	}
+	logger.info("Dynomite REST completed successfully: " + url);
+
+	return true;
+    }
+
+    /**
+     * Name a command is timed under, e.g. /state/writes_only becomes
+     * state_writes_only.
+     */
+    static String operationName(String cmd) {
+	String name = cmd.startsWith("/") ? cmd.substring(1) : cmd;
+	return name.replace('/', '_');
+    }
+
+    private static class CommandHandler implements DynomiteAdminClient.ResponseHandler<Boolean> {
+	private final String url;
+
+	private CommandHandler(String url) {
+	    this.url = url;
+	}
+
+	@Override
+	public Boolean handle(int statusCode, InputStream body) throws IOException {
 	    if (!(statusCode == 200)) {
 		logger.error("Got non 200 status code from " + url);
 		return false;
 	    }
 
-	    String response = get.getResponseBodyAsString();
-	    // logger.info("Received response from " + url + "\n" + response);
-
+	    String response = body == null ? "" : IOUtils.toString(body, "UTF-8");
 	    if (!response.isEmpty()) {
 		logger.info("Received response from " + url + "\n" + response);
 	    } else {
 		logger.error("Cannot parse empty response from " + url);
 		return false;
 	    }
-
-	} catch (Exception e) {
-	    logger.error("Failed to sendCommand and invoke url: " + url, e);
-	    return false;
+	    return true;
 	}
-	logger.info("Dynomite REST completed successfully: " + url);
-
-	return true;
     }
 
 }
@@ -0,0 +1,710 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Streaming parser for the JSON document served by Dynomite's stats endpoint (<code>/info</code>).
+ *
+ * The document is tokenized straight from the response stream. Every key that is read is resolved through a trie of
+ * {@link Metric} nodes, one node per path segment, so each distinct key is decoded into a String only once, the
+ * first time it is seen. Metric names are built lazily from the parent names and cached on the node, which means
+ * that steady state polling neither concatenates names nor looks up metrics in a map.
+ *
+ * The keys below <code>dyn_o_mite</code> include the addresses of the servers and peers, so the trie would keep growing
+ * as peers come and go. Every {@link #EVICT_AFTER} documents the nodes that were not in any of the last
+ * {@link #EVICT_AFTER} documents are dropped, and no more than {@link #MAX_NODES} nodes are kept below
+ * <code>dyn_o_mite</code>: the keys past that limit are skipped.
+ *
+ * The following parts of the document are reported:
+ * <ul>
+ * <li><code>service</code>: the prefix of every metric name.
+ * <li><code>uptime</code>: see {@link #getUptime()}.
+ * <li>the fixed set of top level latency, payload and queue fields: see {@link #getFields()}.
+ * <li>every numeric leaf below <code>dyn_o_mite</code>, flattened to <code>service__a__b</code>: see
+ * {@link #getStat(int)}.
+ * </ul>
+ *
+ * Instances are not thread safe. Each consumer should own its parser and reuse it across polls.
+ */
+public class DynomiteInfoParser {
+
+    /**
+     * Top level fields that are published as gauges.
+     */
+    private static final String[] FIELDS = { "latency_max", "latency_999th", "latency_99th", "latency_95th",
+            "latency_mean", "payload_size_max", "payload_size_999th", "payload_size_99th", "payload_size_95th",
+            "payload_size_mean", "alloc_msgs", "free_msgs", "average_cross_region_rtt", "99_cross_region_rtt",
+            "average_cross_zone_latency", "99_cross_zone_latency", "average_server_latency", "99_server_latency",
+            "average_cross_region_queue_wait", "99_cross_region_queue_wait", "average_cross_zone_queue_wait",
+            "99_cross_zone_queue_wait", "average_server_queue_wait", "99_server_queue_wait", "client_out_queue_99",
+            "server_in_queue_99", "server_out_queue_99", "dnode_client_out_queue_99", "peer_in_queue_99",
+            "peer_out_queue_99", "remote_peer_in_queue_99", "remote_peer_out_queue_99", "alloc_mbufs",
+            "free_mbufs" };
+
+    private static final String SERVICE = "service";
+    private static final String UPTIME = "uptime";
+    private static final String STATS = "dyn_o_mite";
+
+    private static final int MAX_DEPTH = 16;
+
+    /**
+     * The number of documents a node below <code>dyn_o_mite</code> may be missing from before it is dropped.
+     */
+    public static final int EVICT_AFTER = 10;
+
+    /**
+     * The maximum number of nodes below <code>dyn_o_mite</code>.
+     */
+    public static final int MAX_NODES = 100000;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long offset;
+    private InputStream in;
+
+    // the last string token
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private int tokenHash;
+
+    private final Metric root;
+    private final Metric stats;
+    private final Metric serviceNode;
+    private final Metric uptime;
+    private final Metric[] fields;
+
+    private Metric[] statList = new Metric[256];
+    private int statCount;
+    private int generation;
+    // nodes below stats
+    private int nodeCount;
+
+    private String service;
+    private String lastService;
+    private byte[] serviceBytes = new byte[0];
+    private boolean statsPresent;
+
+    public DynomiteInfoParser() {
+        root = new Metric(null, null);
+        serviceNode = root.add(bytes(SERVICE));
+        uptime = root.add(bytes(UPTIME));
+        stats = root.add(bytes(STATS));
+        fields = new Metric[FIELDS.length];
+        for (int i = 0; i < FIELDS.length; i++) {
+            fields[i] = root.add(bytes(FIELDS[i]));
+        }
+    }
+
+    /**
+     * Parse a complete document. Values of the previous document are discarded.
+     *
+     * @return the number of numeric leaves found below <code>dyn_o_mite</code>
+     * @throws IOException
+     *             if the stream could not be read or is not a JSON object
+     */
+    public int parse(InputStream input) throws IOException {
+        in = input;
+        position = 0;
+        limit = 0;
+        offset = 0;
+        statCount = 0;
+        statsPresent = false;
+        service = null;
+        generation++;
+
+        try {
+            parseDocument();
+        } finally {
+            in = null;
+        }
+        if (generation % EVICT_AFTER == 0) {
+            nodeCount -= stats.evict();
+        }
+        return statCount;
+    }
+
+    /**
+     * @return the number of nodes kept below <code>dyn_o_mite</code>, inner nodes included
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the value of the <code>service</code> key, null if it is missing
+     */
+    public String getService() {
+        return service;
+    }
+
+    /**
+     * @return the <code>uptime</code> of the last document
+     */
+    public Metric getUptime() {
+        return uptime;
+    }
+
+    /**
+     * @return the fixed list of top level gauges, in the order of their declaration
+     */
+    public Metric[] getFields() {
+        return fields;
+    }
+
+    /**
+     * @return true if the last document had a <code>dyn_o_mite</code> object
+     */
+    public boolean isStatsPresent() {
+        return statsPresent;
+    }
+
+    public int getStatCount() {
+        return statCount;
+    }
+
+    /**
+     * @return the i-th numeric leaf below <code>dyn_o_mite</code> in document order
+     */
+    public Metric getStat(int i) {
+        return statList[i];
+    }
+
+    private void parseDocument() throws IOException {
+        expect('{');
+        if (peek() == '}') {
+            read();
+            return;
+        }
+        do {
+            readString();
+            Metric node = root.find(token, tokenLength, tokenHash);
+            expect(':');
+            int c = peek();
+
+            if (node == null) {
+                skipValue();
+            } else if (node == serviceNode && c == '"') {
+                readString();
+                readService();
+            } else if (node == stats && c == '{') {
+                statsPresent = true;
+                read();
+                parseObject(stats, 1);
+            } else if (node != serviceNode && node != stats && isNumberStart(c)) {
+                node.set(readNumber(), generation);
+            } else {
+                skipValue();
+            }
+        } while (nextMember());
+    }
+
+    /**
+     * Parse the members of an object below <code>dyn_o_mite</code>, the opening brace has already been read.
+     */
+    private void parseObject(Metric parent, int depth) throws IOException {
+        if (peek() == '}') {
+            read();
+            return;
+        }
+        do {
+            readString();
+            Metric node = parent.find(token, tokenLength, tokenHash);
+            if (node == null && nodeCount < MAX_NODES) {
+                node = parent.add(Arrays.copyOf(token, tokenLength));
+                nodeCount++;
+            }
+            expect(':');
+            if (node == null) {
+                skipValue();
+                continue;
+            }
+            node.seen = generation;
+            int c = peek();
+
+            if (c == '{' && depth < MAX_DEPTH) {
+                read();
+                parseObject(node, depth + 1);
+            } else if (isNumberStart(c)) {
+                long value = readNumber();
+                if (node.generation != generation) {
+                    if (statCount == statList.length) {
+                        statList = Arrays.copyOf(statList, statCount * 2);
+                    }
+                    statList[statCount++] = node;
+                }
+                node.set(value, generation);
+            } else {
+                skipValue();
+            }
+        } while (nextMember());
+    }
+
+    private void readService() {
+        if (tokenLength != serviceBytes.length || !equals(serviceBytes, token, tokenLength)) {
+            serviceBytes = Arrays.copyOf(token, tokenLength);
+            lastService = new String(serviceBytes, StandardCharsets.UTF_8);
+        }
+        service = lastService;
+    }
+
+    /**
+     * @return true if another member follows, false at the end of the object
+     */
+    private boolean nextMember() throws IOException {
+        int c = readNonWhitespace();
+        if (c == ',') {
+            return true;
+        }
+        if (c == '}') {
+            return false;
+        }
+        throw malformed("',' or '}'", c);
+    }
+
+    /**
+     * Read a string token into {@link #token} and hash it.
+     */
+    private void readString() throws IOException {
+        expect('"');
+        int len = 0;
+        for (;;) {
+            int c = read();
+            if (c == '"') {
+                break;
+            }
+            if (c < 0) {
+                throw new EOFException("Unterminated string at offset " + offset);
+            }
+            if (c == '\\') {
+                c = readEscape();
+                if (c >= 0x80) {
+                    len = appendUtf8(len, c);
+                    continue;
+                }
+            }
+            if (len == token.length) {
+                token = Arrays.copyOf(token, len * 2);
+            }
+            token[len++] = (byte) c;
+        }
+        tokenLength = len;
+        tokenHash = hash(token, len);
+    }
+
+    private int readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return c;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            int cp = 0;
+            for (int i = 0; i < 4; i++) {
+                int h = read();
+                int d = Character.digit(h, 16);
+                if (d < 0) {
+                    throw malformed("hex digit", h);
+                }
+                cp = (cp << 4) | d;
+            }
+            return cp;
+        default:
+            throw malformed("escape character", c);
+        }
+    }
+
+    private int appendUtf8(int len, int cp) {
+        if (len + 3 > token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        if (cp < 0x800) {
+            token[len++] = (byte) (0xc0 | (cp >> 6));
+        } else {
+            token[len++] = (byte) (0xe0 | (cp >> 12));
+            token[len++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        }
+        token[len++] = (byte) (0x80 | (cp & 0x3f));
+        return len;
+    }
+
+    /**
+     * Read a JSON number and truncate it to a long, e.g. 12.7 is read as 12 and 1.5e3 as 1500.
+     */
+    private long readNumber() throws IOException {
+        int c = read();
+        boolean negative = c == '-';
+        if (negative) {
+            c = read();
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (;; c = read()) {
+            if (c >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        scale--;
+                    }
+                } else if (!fraction) {
+                    scale++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (c == 'e' || c == 'E') {
+            c = read();
+            boolean negativeExponent = c == '-';
+            if (c == '-' || c == '+') {
+                c = read();
+            }
+            int exponent = 0;
+            for (; c >= '0' && c <= '9'; c = read()) {
+                if (exponent < 1000) {
+                    exponent = exponent * 10 + (c - '0');
+                }
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        unread(c);
+
+        for (; scale < 0 && mantissa != 0; scale++) {
+            mantissa /= 10;
+        }
+        for (; scale > 0 && mantissa != 0; scale--) {
+            if (mantissa > Long.MAX_VALUE / 10) {
+                mantissa = Long.MAX_VALUE;
+                break;
+            }
+            mantissa *= 10;
+        }
+        return negative ? -mantissa : mantissa;
+    }
+
+    /**
+     * Skip a value of any type, including nested objects and arrays.
+     */
+    private void skipValue() throws IOException {
+        int nesting = 0;
+        do {
+            int c = readNonWhitespace();
+            switch (c) {
+            case '"':
+                unread(c);
+                readString();
+                break;
+            case '{':
+            case '[':
+                nesting++;
+                break;
+            case '}':
+            case ']':
+                nesting--;
+                break;
+            case ',':
+            case ':':
+                if (nesting == 0) {
+                    throw malformed("value", c);
+                }
+                break;
+            case -1:
+                throw new EOFException("Unexpected end of document at offset " + offset);
+            default:
+                // numbers and literals
+                while (c > ' ' && c != ',' && c != '}' && c != ']' && c != ':') {
+                    c = read();
+                }
+                unread(c);
+            }
+        } while (nesting > 0);
+    }
+
+    private static boolean isNumberStart(int c) {
+        return c == '-' || (c >= '0' && c <= '9');
+    }
+
+    private void expect(int expected) throws IOException {
+        int c = readNonWhitespace();
+        if (c != expected) {
+            throw malformed("'" + (char) expected + "'", c);
+        }
+    }
+
+    private int peek() throws IOException {
+        int c = readNonWhitespace();
+        unread(c);
+        return c;
+    }
+
+    private int readNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            offset += limit;
+            position = 0;
+            limit = 0;
+            int n;
+            do {
+                n = in.read(buffer, 0, buffer.length);
+            } while (n == 0);
+            if (n < 0) {
+                return -1;
+            }
+            limit = n;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Push back the last byte returned by {@link #read()}.
+     */
+    private void unread(int c) {
+        if (c >= 0) {
+            position--;
+        }
+    }
+
+    private IOException malformed(String expected, int c) {
+        return new IOException("Malformed Dynomite stats: expected " + expected + " at offset "
+                + (offset + position) + " but found " + (c < 0 ? "end of document" : "'" + (char) c + "'"));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] b, int len) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < len; i++) {
+            h = (h ^ b[i]) * 0x01000193;
+        }
+        return h;
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A node of the metric name trie. Leaves carry the value of the last document they appeared in.
+     *
+     * Consumers may cache the {@link MetricsCollector.Metric} of a metric on the node so that it is resolved only once.
+     */
+    public final class Metric {
+
+        private final Metric parent;
+        private final byte[] keyBytes;
+        private final int hash;
+        private final String key;
+
+        private Metric[] children;
+        private int childCount;
+
+        private String name;
+        private String namePrefix;
+
+        private long value;
+        private int generation;
+        // the last document the node was in, also for inner nodes
+        private int seen;
+
+        // owned by the consumer
+        MetricsCollector.Metric monitor;
+        String monitorName;
+        Set<String> monitorFilter;
+        int rateSlot = -1;
+
+        private Metric(Metric parent, byte[] keyBytes) {
+            this.parent = parent;
+            this.keyBytes = keyBytes;
+            this.hash = keyBytes == null ? 0 : DynomiteInfoParser.hash(keyBytes, keyBytes.length);
+            this.key = keyBytes == null ? null : new String(keyBytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the last path segment, e.g. <code>server_eof</code>
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the flattened name, e.g. <code>dynomite__127.0.0.1__server_eof</code>
+         */
+        public String getName() {
+            if (this == root || this == stats) {
+                return service;
+            }
+            String prefix = parent.getName();
+            if (name == null || prefix != namePrefix) {
+                name = prefix + "__" + key;
+                namePrefix = prefix;
+            }
+            return name;
+        }
+
+        /**
+         * @return true if the metric was in the last document
+         */
+        public boolean isPresent() {
+            return generation == DynomiteInfoParser.this.generation;
+        }
+
+        /**
+         * @return the value from the last document, 0 if the metric was not present
+         */
+        public long getValue() {
+            return isPresent() ? value : 0L;
+        }
+
+        private void set(long v, int gen) {
+            value = v;
+            generation = gen;
+        }
+
+        private Metric find(byte[] b, int len, int h) {
+            if (children == null) {
+                return null;
+            }
+            int mask = children.length - 1;
+            for (int slot = h & mask;; slot = (slot + 1) & mask) {
+                Metric child = children[slot];
+                if (child == null) {
+                    return null;
+                }
+                if (child.hash == h && child.keyBytes.length == len && DynomiteInfoParser.equals(child.keyBytes, b,
+                        len)) {
+                    return child;
+                }
+            }
+        }
+
+        private Metric add(byte[] b) {
+            if (children == null) {
+                children = new Metric[8];
+            } else if ((childCount + 1) * 2 > children.length) {
+                Metric[] old = children;
+                children = new Metric[old.length * 2];
+                for (Metric child : old) {
+                    if (child != null) {
+                        insert(child);
+                    }
+                }
+            }
+            Metric child = new Metric(this, b);
+            insert(child);
+            childCount++;
+            return child;
+        }
+
+        /**
+         * Drop the descendants that were not in any of the last {@link #EVICT_AFTER} documents.
+         *
+         * @return the number of nodes dropped
+         */
+        private int evict() {
+            if (children == null) {
+                return 0;
+            }
+            int dropped = 0;
+            boolean expired = false;
+            for (Metric child : children) {
+                if (child == null) {
+                    continue;
+                }
+                if (DynomiteInfoParser.this.generation - child.seen >= EVICT_AFTER) {
+                    dropped += child.size();
+                    expired = true;
+                } else {
+                    dropped += child.evict();
+                }
+            }
+            if (expired) {
+                Metric[] old = children;
+                children = new Metric[old.length];
+                childCount = 0;
+                for (Metric child : old) {
+                    if (child != null && DynomiteInfoParser.this.generation - child.seen < EVICT_AFTER) {
+                        insert(child);
+                        childCount++;
+                    }
+                }
+            }
+            return dropped;
+        }
+
+        /**
+         * @return the number of nodes of the subtree, this one included
+         */
+        private int size() {
+            int n = 1;
+            if (children != null) {
+                for (Metric child : children) {
+                    if (child != null) {
+                        n += child.size();
+                    }
+                }
+            }
+            return n;
+        }
+
+        private void insert(Metric child) {
+            int mask = children.length - 1;
+            int slot = child.hash & mask;
+            while (children[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            children[slot] = child;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
+import com.netflix.dynomitemanager.sidecore.scheduler.Task;
+import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
+import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfoParser;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfoSnapshot;
+
+/**
+ * Samples the metrics listed in {@link IConfiguration#getHighResolutionMetrics()} every
+ * {@link IConfiguration#getHighResolutionMetricsIntervalMs()} into the {@link MetricHistoryStore}.
+ *
+ * Metric names are the ones published to Servo: <code>dynomite__*</code> metrics are read from Dynomite's stats
+ * endpoint and <code>Redis_*</code> metrics from Redis INFO. A source is only polled if at least one of its metrics
+ * is selected. This task is the single writer of the histories.
+ */
+@Singleton
+public class HighResolutionMetricsTask extends Task {
+
+    private static final Logger logger = LoggerFactory.getLogger(HighResolutionMetricsTask.class);
+
+    // The Task name for identification
+    public static final String TaskName = "High-Resolution-Metrics-Task";
+
+    private static final String REDIS_PREFIX = "Redis_";
+
+    private final DynomiteAdminClient adminClient;
+    private final RedisInfoSnapshot redisInfo;
+    private final IStorageProxy storageProxy;
+    private final MetricHistoryStore store;
+
+    // reused across executions so that steady state sampling does not allocate
+    private final DynomiteInfoParser dynomiteParser = new DynomiteInfoParser();
+    private final RedisInfoParser redisParser = new RedisInfoParser();
+
+    private String selectedNames;
+    private Set<String> selected = new HashSet<String>();
+    private boolean sampleDynomite;
+    private boolean sampleRedis;
+
+    @Inject
+    public HighResolutionMetricsTask(IConfiguration config, DynomiteAdminClient adminClient,
+            RedisInfoSnapshot redisInfo, IStorageProxy storageProxy, MetricHistoryStore store) {
+        super(config);
+        this.adminClient = adminClient;
+        this.redisInfo = redisInfo;
+        this.storageProxy = storageProxy;
+        this.store = store;
+    }
+
+    /**
+     * Returns a timer that runs this task every {@link IConfiguration#getHighResolutionMetricsIntervalMs()}.
+     */
+    public static TaskTimer getTimer(IConfiguration config) {
+        return new SimpleTimer(TaskName, Math.max(1, config.getHighResolutionMetricsIntervalMs()));
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public synchronized void execute() throws Exception {
+        updateSelection();
+        long now = System.currentTimeMillis();
+
+        if (sampleDynomite) {
+            try {
+                sampleDynomite(now);
+            } catch (Exception e) {
+                logger.error("Could not sample Dynomite metrics", e);
+            }
+        }
+
+        if (sampleRedis) {
+            try {
+                sampleRedis(now);
+            } catch (Exception e) {
+                logger.error("Could not sample Redis metrics", e);
+            }
+        }
+    }
+
+    private void sampleDynomite(final long now) throws IOException {
+        adminClient.execute(adminClient.getAdminUrl() + "/info", "info_highres",
+                new DynomiteAdminClient.ResponseHandler<Void>() {
+                    @Override
+                    public Void handle(int statusCode, InputStream body) throws IOException {
+                        if (statusCode != 200 || body == null) {
+                            return null;
+                        }
+
+                        dynomiteParser.parse(body);
+                        if (dynomiteParser.getService() == null) {
+                            return null;
+                        }
+                        record(dynomiteParser.getUptime(), now);
+                        for (DynomiteInfoParser.Metric field : dynomiteParser.getFields()) {
+                            record(field, now);
+                        }
+                        for (int i = 0; i < dynomiteParser.getStatCount(); i++) {
+                            record(dynomiteParser.getStat(i), now);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private void record(DynomiteInfoParser.Metric metric, long now) {
+        if (metric.isPresent()) {
+            String name = metric.getName();
+            if (selected.contains(name)) {
+                store.getOrCreate(name).record(now, metric.getValue());
+            }
+        }
+    }
+
+    private void sampleRedis(long now) {
+        // accept a reply as old as one interval, so other consumers of the snapshot don't cause extra INFO calls
+        String info = redisInfo.get(storageProxy.getIpAddress(), storageProxy.getPort(),
+                store.getIntervalMs()).getRaw();
+
+        int count = redisParser.parse(info);
+        for (int i = 0; i < count; i++) {
+            String name = redisParser.getName(i);
+            if (selected.contains(name)) {
+                store.getOrCreate(name).record(now, redisParser.getValue(i));
+            }
+        }
+    }
+
+    /**
+     * Re-read the list of selected metrics if the property has changed.
+     */
+    private void updateSelection() {
+        String names = config.getHighResolutionMetrics();
+        if (names == null) {
+            names = "";
+        }
+        if (names.equals(selectedNames)) {
+            return;
+        }
+
+        Set<String> set = new HashSet<String>();
+        boolean dynomite = false;
+        boolean redis = false;
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            set.add(name);
+            if (name.startsWith(REDIS_PREFIX)) {
+                redis = true;
+            } else {
+                dynomite = true;
+            }
+        }
+
+        logger.info("Sampling high resolution metrics " + set);
+        selected = set;
+        sampleDynomite = dynomite;
+        sampleRedis = redis;
+        selectedNames = names;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size ring buffer of (timestamp, value) samples of a single metric.
+ *
+ * The buffer has a single writer and any number of lock-free readers. Samples are stored as pairs of longs in one
+ * preallocated {@link AtomicLongArray}, i.e. a primitive long[] with volatile access, so recording a sample does not
+ * allocate. The writer marks a slot as invalid before it overwrites it; readers skip slots that were invalid or
+ * overwritten while they were copied, so they never see a torn sample.
+ */
+public class MetricHistory {
+
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private final String name;
+    private final int capacity;
+
+    // one spare slot, so the slot of the oldest sample is not overwritten before it falls out of the history
+    private final int slots;
+
+    // [timestamp0, value0, timestamp1, value1, ...]
+    private final AtomicLongArray samples;
+
+    // number of samples recorded so far, sample n is in slot n % slots
+    private final AtomicLong recorded = new AtomicLong();
+
+    public MetricHistory(String name, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of " + name + " must be positive: " + capacity);
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.slots = capacity + 1;
+        this.samples = new AtomicLongArray(2 * slots);
+        for (int i = 0; i < slots; i++) {
+            samples.set(2 * i, INVALID);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of samples recorded since the history was created
+     */
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    /**
+     * Record a sample. Must only be called by the single writer thread.
+     */
+    public void record(long timestamp, long value) {
+        long n = recorded.get();
+        int slot = 2 * (int) (n % slots);
+        samples.set(slot, INVALID);
+        samples.set(slot + 1, value);
+        samples.set(slot, timestamp);
+        recorded.set(n + 1);
+    }
+
+    /**
+     * Copy the samples taken at or after a point in time, oldest first. May be called from any thread.
+     *
+     * @param since
+     *            the oldest timestamp to return
+     * @param timestamps
+     *            receives the timestamps, must hold {@link #getCapacity()} entries to get the complete history
+     * @param values
+     *            receives the values
+     * @return the number of samples copied
+     */
+    public int read(long since, long[] timestamps, long[] values) {
+        int max = Math.min(timestamps.length, values.length);
+        long end = recorded.get();
+        long start = Math.max(0, end - Math.min(capacity, max));
+
+        int count = 0;
+        for (long n = start; n < end; n++) {
+            int slot = 2 * (int) (n % slots);
+            long timestamp = samples.get(slot);
+            long value = samples.get(slot + 1);
+            if (timestamp == INVALID || timestamp < since) {
+                continue;
+            }
+            // skip the sample if the writer has started to overwrite the slot while it was copied
+            if (timestamp != samples.get(slot) || recorded.get() - n > slots - 1) {
+                continue;
+            }
+            timestamps[count] = timestamp;
+            values[count] = value;
+            count++;
+        }
+        return count;
+    }
+}
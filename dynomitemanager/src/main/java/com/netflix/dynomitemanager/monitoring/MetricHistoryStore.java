@@ -0,0 +1,80 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+
+/**
+ * The in-memory high resolution history of every sampled metric. Each {@link MetricHistory} holds
+ * {@link IConfiguration#getHighResolutionMetricsHistorySeconds()} worth of samples.
+ */
+@Singleton
+public class MetricHistoryStore {
+
+    private final IConfiguration config;
+    private final ConcurrentHashMap<String, MetricHistory> histories = new ConcurrentHashMap<String, MetricHistory>();
+
+    @Inject
+    public MetricHistoryStore(IConfiguration config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the history of a metric or null if the metric is not sampled
+     */
+    public MetricHistory get(String name) {
+        return histories.get(name);
+    }
+
+    /**
+     * Get the history of a metric, creating it if needed.
+     */
+    public MetricHistory getOrCreate(String name) {
+        MetricHistory history = histories.get(name);
+        if (history != null) {
+            return history;
+        }
+
+        history = new MetricHistory(name, getCapacity());
+        MetricHistory old = histories.putIfAbsent(name, history);
+        return old == null ? history : old;
+    }
+
+    /**
+     * @return the names of the sampled metrics in alphabetical order
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<String>(histories.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * @return the time (in ms) between two samples
+     */
+    public int getIntervalMs() {
+        return Math.max(1, config.getHighResolutionMetricsIntervalMs());
+    }
+
+    private int getCapacity() {
+        long seconds = Math.max(1, config.getHighResolutionMetricsHistorySeconds());
+        return (int) Math.max(1, seconds * 1000 / getIntervalMs());
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.DoubleGauge;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+import com.netflix.servo.monitor.NumericMonitor;
+
+/**
+ * The counters, gauges and rates of one {@link MetricsSource}, published to the Servo
+ * {@link DefaultMonitorRegistry}.
+ *
+ * A metric is created and registered the first time it is asked for, and looked up by name after that. Callers on a
+ * hot path can keep the returned {@link Metric} instead of looking it up on every sample. The type of a metric is
+ * fixed when it is created: asking for a gauge with the name of an existing counter returns the counter.
+ *
+ * Counters are fed the raw cumulative value read from the source. A raw value that went down has started over from
+ * 0, e.g. after a restart of the process, so the counter keeps counting up. Per second rates of raw counters are
+ * derived by a {@link RateEngine} owned by the collector.
+ */
+public class MetricsCollector {
+
+    private final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+    private final ConcurrentHashMap<String, NumericMonitor<Number>> monitors = new ConcurrentHashMap<String, NumericMonitor<Number>>();
+    private final RateEngine rates = new RateEngine();
+
+    /**
+     * A registered counter or gauge.
+     */
+    public static class Metric {
+        private final NumericMonitor<Number> monitor;
+        private long raw;
+
+        private Metric(NumericMonitor<Number> monitor) {
+            this.monitor = monitor;
+        }
+
+        /**
+         * Set the value of a gauge, or the raw cumulative value of a counter.
+         */
+        public void set(long value) {
+            if (monitor instanceof LongGauge) {
+                ((LongGauge) monitor).set(value);
+            } else if (monitor instanceof DoubleGauge) {
+                ((DoubleGauge) monitor).set((double) value);
+            } else {
+                synchronized (this) {
+                    long increment = value >= raw ? value - raw : value;
+                    ((Counter) monitor).increment(increment);
+                    raw = value;
+                }
+            }
+        }
+
+        /**
+         * Set the value of a gauge. Counters only count whole numbers, the value is truncated.
+         */
+        public void set(double value) {
+            if (monitor instanceof DoubleGauge) {
+                ((DoubleGauge) monitor).set(value);
+            } else {
+                set((long) value);
+            }
+        }
+
+        public NumericMonitor<Number> getMonitor() {
+            return monitor;
+        }
+    }
+
+    /**
+     * @return the counter with the given name, created if it does not exist
+     */
+    public Metric counter(String name) {
+        Metric metric = metrics.get(name);
+        return metric != null ? metric : register(name, Monitors.newCounter(name));
+    }
+
+    /**
+     * @return the long gauge with the given name, created if it does not exist
+     */
+    public Metric gauge(String name) {
+        Metric metric = metrics.get(name);
+        return metric != null ? metric : register(name, new LongGauge(MonitorConfig.builder(name).build()));
+    }
+
+    /**
+     * @return the double gauge with the given name, created if it does not exist
+     */
+    public Metric doubleGauge(String name) {
+        Metric metric = metrics.get(name);
+        return metric != null ? metric : register(name, new DoubleGauge(MonitorConfig.builder(name).build()));
+    }
+
+    /**
+     * @return the metric with the given name, null if it was not created yet
+     */
+    public Metric get(String name) {
+        return metrics.get(name);
+    }
+
+    /**
+     * Start a new sample of the rates, see {@link RateEngine#startSample(long, long)}.
+     *
+     * @return true if the process restarted since the previous sample
+     */
+    public boolean startSample(long timestamp, long uptimeSeconds) {
+        return rates.startSample(timestamp, uptimeSeconds);
+    }
+
+    /**
+     * Publish the per second rate of a raw cumulative counter, see {@link RateEngine#update(int, String, long)}.
+     *
+     * @return the rate per second or NaN if there is no previous sample
+     */
+    public double rate(int slot, String name, long value) {
+        return rates.update(slot, name, value);
+    }
+
+    /**
+     * @return the engine that derives the rates
+     */
+    public RateEngine getRateEngine() {
+        return rates;
+    }
+
+    /**
+     * @return the Servo monitors of the counters and gauges by name, without the rates
+     */
+    public ConcurrentHashMap<String, NumericMonitor<Number>> getMonitors() {
+        return monitors;
+    }
+
+    /**
+     * Unregister all metrics and forget the previous samples of the rates.
+     */
+    public void close() {
+        for (Metric metric : metrics.values()) {
+            DefaultMonitorRegistry.getInstance().unregister(metric.monitor);
+        }
+        metrics.clear();
+        monitors.clear();
+        rates.reset();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Metric register(String name, NumericMonitor<?> monitor) {
+        Metric metric = new Metric((NumericMonitor<Number>) monitor);
+        Metric old = metrics.putIfAbsent(name, metric);
+        if (old != null) {
+            // someone beat us to it, take theirs instead
+            return old;
+        }
+        monitors.put(name, metric.monitor);
+        DefaultMonitorRegistry.getInstance().register(metric.monitor);
+        return metric;
+    }
+}
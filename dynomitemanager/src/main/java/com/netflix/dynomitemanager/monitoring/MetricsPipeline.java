@@ -0,0 +1,220 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.scheduler.NamedThreadPoolExecutor;
+import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
+import com.netflix.dynomitemanager.sidecore.scheduler.Task;
+import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
+
+/**
+ * Collects all {@link MetricsSource}s in parallel, once every
+ * {@link IConfiguration#getMetricsPipelineIntervalMs()}.
+ *
+ * A slow source only delays its own metrics: the pipeline waits for each source until its deadline
+ * ({@link MetricsSource#getDeadlineMs()}, counted from the start of the round) and moves on. A source whose previous
+ * collection is still running is skipped for the round rather than queued behind itself. For each source the
+ * pipeline publishes:
+ * <ul>
+ * <li><code>Metrics_&lt;source&gt;_collect_ms</code>: the duration of the last finished collection, also when it
+ * finished after its deadline</li>
+ * <li><code>Metrics_&lt;source&gt;_timeouts</code>: collections that missed their deadline</li>
+ * <li><code>Metrics_&lt;source&gt;_errors</code>: collections that failed</li>
+ * <li><code>Metrics_&lt;source&gt;_skipped</code>: rounds skipped because the previous collection was still
+ * running</li>
+ * </ul>
+ *
+ * The built-in sources are the ones enabled in the configuration. Additional sources are listed by class name in
+ * {@link IConfiguration#getMetricsPipelineSources()} and created by Guice. After each round the metrics are rendered
+ * for Prometheus by the {@link OpenMetricsRenderer}.
+ */
+@Singleton
+public class MetricsPipeline extends Task {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsPipeline.class);
+
+    // The Task name for identification
+    public static final String TaskName = "Metrics-Pipeline";
+
+    public static final String PREFIX = "Metrics_";
+
+    private final MetricsCollector metrics = new MetricsCollector();
+    private final List<Collection> collections = new CopyOnWriteArrayList<Collection>();
+    private final NamedThreadPoolExecutor executor;
+    private OpenMetricsRenderer renderer;
+
+    /**
+     * The state of one source across rounds.
+     */
+    private class Collection implements Callable<Void> {
+        private final MetricsSource source;
+        private final MetricsCollector.Metric collectMs;
+        private final MetricsCollector.Metric timeouts;
+        private final MetricsCollector.Metric errors;
+        private final MetricsCollector.Metric skipped;
+        private long timeoutCount;
+        private long errorCount;
+        private long skippedCount;
+        private Future<Void> future;
+
+        private Collection(MetricsSource source) {
+            this.source = source;
+            String prefix = PREFIX + source.getSourceName() + "_";
+            this.collectMs = metrics.gauge(prefix + "collect_ms");
+            this.timeouts = metrics.counter(prefix + "timeouts");
+            this.errors = metrics.counter(prefix + "errors");
+            this.skipped = metrics.counter(prefix + "skipped");
+        }
+
+        @Override
+        public Void call() throws Exception {
+            long start = System.currentTimeMillis();
+            try {
+                source.collect();
+            } finally {
+                collectMs.set(System.currentTimeMillis() - start);
+            }
+            return null;
+        }
+    }
+
+    @Inject
+    public MetricsPipeline(IConfiguration config, Injector injector) {
+        this(config);
+        addSource(injector.getInstance(ServoMetricsTask.class));
+        addSource(injector.getInstance(RedisInfoMetricsTask.class));
+        if (config.isRedisLatencyMetricsEnabled()) {
+            addSource(injector.getInstance(RedisLatencyTask.class));
+        }
+        if (config.isRedisCommandStatsEnabled()) {
+            addSource(injector.getInstance(RedisCommandStatsTask.class));
+        }
+        if (config.isProcessMetricsEnabled()) {
+            addSource(injector.getInstance(ProcessMetricsTask.class));
+        }
+        if (config.isTcpMetricsEnabled()) {
+            addSource(injector.getInstance(TcpMetricsTask.class));
+        }
+
+        for (String name : config.getMetricsPipelineSources().split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            try {
+                addSource(injector.getInstance(Class.forName(name).asSubclass(MetricsSource.class)));
+            } catch (Exception e) {
+                logger.error("Could not create the metrics source " + name, e);
+            }
+        }
+        this.renderer = injector.getInstance(OpenMetricsRenderer.class);
+    }
+
+    /**
+     * Create a pipeline without sources.
+     */
+    public MetricsPipeline(IConfiguration config) {
+        super(config);
+        this.executor = new NamedThreadPoolExecutor(Math.max(1, config.getMetricsPipelineThreads()), "metrics");
+    }
+
+    /**
+     * Returns a timer that runs this task every {@link IConfiguration#getMetricsPipelineIntervalMs()}.
+     */
+    public static TaskTimer getTimer(IConfiguration config) {
+        return new SimpleTimer(TaskName, Math.max(1, config.getMetricsPipelineIntervalMs()));
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    /**
+     * Add a source, collected from the next round on.
+     */
+    public void addSource(MetricsSource source) {
+        logger.info("Adding metrics source " + source.getSourceName());
+        collections.add(new Collection(source));
+    }
+
+    /**
+     * @return the names of the sources, in the order they are collected
+     */
+    public List<String> getSourceNames() {
+        List<String> names = new ArrayList<String>();
+        for (Collection collection : collections) {
+            names.add(collection.source.getSourceName());
+        }
+        return names;
+    }
+
+    @Override
+    public synchronized void execute() throws Exception {
+        long start = System.currentTimeMillis();
+        List<Collection> submitted = new ArrayList<Collection>();
+        for (Collection collection : collections) {
+            if (collection.future != null && !collection.future.isDone()) {
+                logger.warn("Metrics source " + collection.source.getSourceName() + " is still running, skipping it");
+                collection.skipped.set(++collection.skippedCount);
+                continue;
+            }
+            collection.future = executor.submit(collection);
+            submitted.add(collection);
+        }
+
+        for (Collection collection : submitted) {
+            long remaining = start + collection.source.getDeadlineMs() - System.currentTimeMillis();
+            try {
+                collection.future.get(Math.max(0L, remaining), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                logger.warn("Metrics source " + collection.source.getSourceName() + " missed its deadline of "
+                        + collection.source.getDeadlineMs() + " ms");
+                collection.timeouts.set(++collection.timeoutCount);
+            } catch (ExecutionException e) {
+                logger.error("Could not collect the metrics source " + collection.source.getSourceName(),
+                        e.getCause());
+                collection.errors.set(++collection.errorCount);
+            }
+        }
+
+        if (renderer != null) {
+            // render once per round, so scrapes don't have to
+            renderer.render();
+        }
+    }
+
+    /**
+     * Stop the threads of the pipeline and unregister its metrics. Sources keep their metrics.
+     */
+    public void close() {
+        executor.shutdownNow();
+        metrics.close();
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+/**
+ * A source of metrics that is collected by the {@link MetricsPipeline}, e.g. Dynomite's stats endpoint, Redis INFO or
+ * /proc.
+ *
+ * Sources of one pipeline are collected in parallel, each source by one thread at a time. A source publishes its
+ * metrics through its own {@link MetricsCollector}. Custom sources are added with
+ * {@link com.netflix.dynomitemanager.defaultimpl.IConfiguration#getMetricsPipelineSources()} and are created by Guice.
+ */
+public interface MetricsSource {
+
+    /**
+     * @return the name of the source, used in the names of the pipeline's metrics of the source
+     */
+    public String getSourceName();
+
+    /**
+     * @return how long (in ms) a collection of this source may take before the pipeline stops waiting for it
+     */
+    public long getDeadlineMs();
+
+    /**
+     * Read the source and publish its metrics.
+     */
+    public void collect() throws Exception;
+}
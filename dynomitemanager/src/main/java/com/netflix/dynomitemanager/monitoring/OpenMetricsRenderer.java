@@ -0,0 +1,343 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.NumericMonitor;
+
+/**
+ * Renders the Dynomite and Redis INFO metrics in the OpenMetrics text format, or in the Prometheus text format 0.0.4
+ * for scrapers that do not accept OpenMetrics, for Prometheus to scrape.
+ *
+ * The exposition is rendered once after each collection in both {@link Format}s into a reused buffer and kept as
+ * immutable {@link Snapshot}s, plain and gzipped, so a scrape only copies bytes. A snapshot that did not change since
+ * the previous collection keeps its ETag. The {@link MetricsPipeline} renders after each round; without the pipeline a
+ * scrape renders when the snapshot is older than one collection interval.
+ *
+ * Servo counters are exposed as counters, their samples named <code>&lt;family&gt;_total</code> in both formats,
+ * everything else as gauges. The <code>_rate</code> gauges are
+ * left out, Prometheus derives rates from the counters itself. Characters that are not valid in a metric name, e.g.
+ * the dots of the IP addresses in Dynomite's per server metrics, are replaced by underscores.
+ */
+@Singleton
+public class OpenMetricsRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenMetricsRenderer.class);
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    public static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final byte[] TYPE = ascii("# TYPE ");
+    private static final byte[] COUNTER = ascii(" counter\n");
+    private static final byte[] GAUGE = ascii(" gauge\n");
+    private static final byte[] TOTAL = ascii("_total");
+    private static final byte[] EOF = ascii("# EOF\n");
+    private static final byte[] NAN = ascii("NaN");
+    private static final byte[] POSITIVE_INFINITY = ascii("+Inf");
+    private static final byte[] NEGATIVE_INFINITY = ascii("-Inf");
+
+    private final IConfiguration config;
+    private final List<Map<String, NumericMonitor<Number>>> sources;
+
+    // reused across renders
+    private final TreeMap<String, NumericMonitor<Number>> sorted = new TreeMap<String, NumericMonitor<Number>>();
+    // the family names of counters and gauges, a metric may move from one to the other with the gauge whitelist
+    private final Map<String, byte[]> counterNames = new HashMap<String, byte[]>();
+    private final Map<String, byte[]> gaugeNames = new HashMap<String, byte[]>();
+    private final CRC32 crc = new CRC32();
+    private final ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream();
+    private byte[] buffer = new byte[64 * 1024];
+    private int length;
+
+    private final AtomicReferenceArray<Snapshot> snapshots = new AtomicReferenceArray<Snapshot>(
+            Format.values().length);
+
+    /**
+     * The formats of the exposition.
+     */
+    public enum Format {
+        OPENMETRICS(CONTENT_TYPE), TEXT(TEXT_CONTENT_TYPE);
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * One rendered exposition.
+     */
+    public static class Snapshot {
+        private final byte[] body;
+        private final byte[] gzipped;
+        private final String etag;
+        private volatile long renderedAt;
+
+        private Snapshot(byte[] body, byte[] gzipped, String etag, long renderedAt) {
+            this.body = body;
+            this.gzipped = gzipped;
+            this.etag = etag;
+            this.renderedAt = renderedAt;
+        }
+
+        /**
+         * @return the exposition, not to be modified
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the gzipped exposition, not to be modified
+         */
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        /**
+         * @return the quoted entity tag of the exposition
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * @return the time in ms the metrics were last rendered at, also if they had not changed
+         */
+        public long getRenderedAt() {
+            return renderedAt;
+        }
+    }
+
+    @Inject
+    public OpenMetricsRenderer(IConfiguration config, ServoMetricsTask dynomite, RedisInfoMetricsTask redis) {
+        this(config, Arrays.asList(dynomite.getMetricsMap(), redis.getMetricsMap()));
+    }
+
+    /**
+     * @param sources
+     *            the live maps of monitors by name to expose, read on every render
+     */
+    public OpenMetricsRenderer(IConfiguration config, List<? extends Map<String, NumericMonitor<Number>>> sources) {
+        this.config = config;
+        this.sources = new ArrayList<Map<String, NumericMonitor<Number>>>(sources);
+    }
+
+    /**
+     * @return the latest OpenMetrics exposition, rendered first if it is older than one collection interval
+     */
+    public Snapshot getSnapshot() {
+        return getSnapshot(Format.OPENMETRICS);
+    }
+
+    /**
+     * @return the latest exposition in a format, rendered first if it is older than one collection interval
+     */
+    public Snapshot getSnapshot(Format format) {
+        Snapshot current = snapshots.get(format.ordinal());
+        if (current == null
+                || System.currentTimeMillis() - current.getRenderedAt() >= config.getMetricsPipelineIntervalMs()) {
+            render();
+            current = snapshots.get(format.ordinal());
+        }
+        return current;
+    }
+
+    /**
+     * Render the current values of all metrics in all formats.
+     *
+     * @return the new OpenMetrics exposition, or the previous one if no value changed
+     */
+    public synchronized Snapshot render() {
+        long now = System.currentTimeMillis();
+        sorted.clear();
+        for (Map<String, NumericMonitor<Number>> source : sources) {
+            sorted.putAll(source);
+        }
+        for (Format format : Format.values()) {
+            render(format, now);
+        }
+        sorted.clear();
+        return snapshots.get(Format.OPENMETRICS.ordinal());
+    }
+
+    private void render(Format format, long now) {
+        length = 0;
+        for (Map.Entry<String, NumericMonitor<Number>> entry : sorted.entrySet()) {
+            Number value = entry.getValue().getValue();
+            if (value == null) {
+                continue;
+            }
+            boolean counter = entry.getValue() instanceof Counter;
+            byte[] name = getName(entry.getKey(), counter);
+            write(TYPE);
+            write(name);
+            // the text format names a counter family after its sample
+            if (counter && format == Format.TEXT) {
+                write(TOTAL);
+            }
+            write(counter ? COUNTER : GAUGE);
+            write(name);
+            if (counter) {
+                write(TOTAL);
+            }
+            write((byte) ' ');
+            writeValue(value);
+            write((byte) '\n');
+        }
+        if (format == Format.OPENMETRICS) {
+            write(EOF);
+        }
+
+        crc.reset();
+        crc.update(buffer, 0, length);
+        String etag = "\"" + (format == Format.TEXT ? "t" : "") + Long.toHexString(crc.getValue()) + "-"
+                + Integer.toHexString(length) + "\"";
+        Snapshot previous = snapshots.get(format.ordinal());
+        if (previous != null && previous.etag.equals(etag)) {
+            previous.renderedAt = now;
+            return;
+        }
+
+        byte[] body = Arrays.copyOf(buffer, length);
+        snapshots.set(format.ordinal(), new Snapshot(body, gzip(body), etag, now));
+    }
+
+    private byte[] gzip(byte[] body) {
+        gzipBuffer.reset();
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(gzipBuffer);
+            out.write(body);
+            out.close();
+        } catch (IOException e) {
+            // not thrown by an in-memory stream
+            logger.error("Could not gzip the metrics", e);
+            return null;
+        }
+        return gzipBuffer.toByteArray();
+    }
+
+    private byte[] getName(String name, boolean counter) {
+        Map<String, byte[]> names = counter ? counterNames : gaugeNames;
+        byte[] sanitized = names.get(name);
+        if (sanitized == null) {
+            // the family name of a counter does not carry the _total of its sample
+            String family = counter && name.endsWith("_total") ? name.substring(0, name.length() - 6) : name;
+            sanitized = new byte[family.length() + (Character.isDigit(family.charAt(0)) ? 1 : 0)];
+            int j = 0;
+            if (sanitized.length > family.length()) {
+                sanitized[j++] = '_';
+            }
+            for (int i = 0; i < family.length(); i++) {
+                char c = family.charAt(i);
+                boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+                        || c == ':';
+                sanitized[j++] = valid ? (byte) c : (byte) '_';
+            }
+            names.put(name, sanitized);
+        }
+        return sanitized;
+    }
+
+    private void writeValue(Number value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof AtomicLong
+                || value instanceof AtomicInteger) {
+            writeLong(value.longValue());
+        } else {
+            // servo's DoubleGauge reports an AtomicDouble
+            double d = value.doubleValue();
+            if (Double.isNaN(d)) {
+                write(NAN);
+            } else if (Double.isInfinite(d)) {
+                write(d > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+            } else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                writeLong((long) d);
+            } else {
+                write(ascii(Double.toString(d)));
+            }
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(ascii(Long.toString(value)));
+            return;
+        }
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        ensureCapacity(20);
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // the digits were written backwards
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void write(byte b) {
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
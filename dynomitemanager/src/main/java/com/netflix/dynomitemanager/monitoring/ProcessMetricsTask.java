@@ -0,0 +1,215 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
+import com.netflix.dynomitemanager.sidecore.scheduler.Task;
+import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
+
+/**
+ * Publishes the resource usage of the Dynomite and Redis processes, read from /proc.
+ *
+ * The processes are found through their pid files ({@link IConfiguration#getDynomitePidFile()} and
+ * {@link IConfiguration#getRedisPidFile()}). For each process, named <code>dynomite</code> or <code>redis</code>, the
+ * following metrics are published:
+ * <ul>
+ * <li><code>Process_&lt;name&gt;_cpu_user_rate</code> and <code>Process_&lt;name&gt;_cpu_sys_rate</code>: cpu time in
+ * percent of one core</li>
+ * <li><code>Process_&lt;name&gt;_rss_bytes</code>: resident set size</li>
+ * <li><code>Process_&lt;name&gt;_threads</code></li>
+ * <li><code>Process_&lt;name&gt;_voluntary_ctxt_switches_rate</code> and
+ * <code>Process_&lt;name&gt;_nonvoluntary_ctxt_switches_rate</code>: context switches per second</li>
+ * <li><code>Process_&lt;name&gt;_read_bytes_rate</code> and <code>Process_&lt;name&gt;_write_bytes_rate</code>:
+ * storage I/O per second</li>
+ * <li><code>Process_&lt;name&gt;_open_fds</code>: open file descriptors</li>
+ * </ul>
+ * A restart of a process is detected from its start time, so rates don't go negative when the pid changes.
+ *
+ * This is the "process" {@link MetricsSource} of the {@link MetricsPipeline}.
+ */
+@Singleton
+public class ProcessMetricsTask extends Task implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessMetricsTask.class);
+
+    // The Task name for identification
+    public static final String TaskName = "Process-Metrics-Task";
+
+    public static final String PREFIX = "Process_";
+    public static final String DYNOMITE = "dynomite";
+    public static final String REDIS = "redis";
+
+    private static final String PROC_ROOT = "/proc";
+
+    private final Source dynomite;
+    private final Source redis;
+
+    /**
+     * The metrics of one process.
+     */
+    private static class Source {
+        private static final int CPU_USER = 0;
+        private static final int CPU_SYS = 1;
+        private static final int VOLUNTARY = 2;
+        private static final int NONVOLUNTARY = 3;
+        private static final int READ_BYTES = 4;
+        private static final int WRITE_BYTES = 5;
+
+        private final String name;
+        private final ProcessStats stats;
+        private final MetricsCollector metrics = new MetricsCollector();
+        private final String[] counterNames;
+        private final MetricsCollector.Metric rss;
+        private final MetricsCollector.Metric threads;
+        private final MetricsCollector.Metric openFds;
+        private boolean running;
+
+        private Source(String name, String procRoot, String pidFile) {
+            this.name = name;
+            this.stats = new ProcessStats(procRoot, pidFile);
+            String prefix = PREFIX + name + "_";
+            this.counterNames = new String[] { prefix + "cpu_user", prefix + "cpu_sys",
+                    prefix + "voluntary_ctxt_switches", prefix + "nonvoluntary_ctxt_switches", prefix + "read_bytes",
+                    prefix + "write_bytes" };
+            this.rss = metrics.gauge(prefix + "rss_bytes");
+            this.threads = metrics.gauge(prefix + "threads");
+            this.openFds = metrics.gauge(prefix + "open_fds");
+        }
+
+        private void execute() {
+            boolean found;
+            try {
+                found = stats.read();
+            } catch (IOException e) {
+                logger.warn("Could not read the process stats of " + name + ": " + e.getMessage());
+                found = false;
+            }
+            if (!found) {
+                if (running) {
+                    logger.info("Process " + name + " is not running");
+                    running = false;
+                    metrics.getRateEngine().reset();
+                    rss.set(0L);
+                    threads.set(0L);
+                    openFds.set(0L);
+                }
+                return;
+            }
+            running = true;
+
+            metrics.startSample(System.currentTimeMillis(), stats.getUptimeSeconds());
+            // cpu time in 1/100 s, so its rate is in percent of one core
+            update(CPU_USER, stats.getUserTicks() * 100 / ProcessStats.CLOCK_TICKS);
+            update(CPU_SYS, stats.getSystemTicks() * 100 / ProcessStats.CLOCK_TICKS);
+            update(VOLUNTARY, stats.getVoluntaryCtxtSwitches());
+            update(NONVOLUNTARY, stats.getNonvoluntaryCtxtSwitches());
+            update(READ_BYTES, stats.getReadBytes());
+            update(WRITE_BYTES, stats.getWriteBytes());
+            set(rss, stats.getRssBytes());
+            set(threads, stats.getThreads());
+            set(openFds, stats.getOpenFds());
+        }
+
+        private void update(int slot, long value) {
+            if (value >= 0) {
+                metrics.rate(slot, counterNames[slot], value);
+            }
+        }
+
+        private static void set(MetricsCollector.Metric gauge, long value) {
+            if (value >= 0) {
+                gauge.set(value);
+            }
+        }
+    }
+
+    @Inject
+    public ProcessMetricsTask(IConfiguration config) {
+        this(config, PROC_ROOT);
+    }
+
+    /**
+     * @param procRoot
+     *            the mount point of procfs
+     */
+    public ProcessMetricsTask(IConfiguration config, String procRoot) {
+        super(config);
+        this.dynomite = new Source(DYNOMITE, procRoot, config.getDynomitePidFile());
+        this.redis = new Source(REDIS, procRoot, config.getRedisPidFile());
+    }
+
+    /**
+     * Returns a timer that enables this task to run once every 15 seconds
+     *
+     * @return TaskTimer
+     */
+    public static TaskTimer getTimer() {
+        return new SimpleTimer(TaskName, 15 * 1000);
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public String getSourceName() {
+        return "process";
+    }
+
+    @Override
+    public long getDeadlineMs() {
+        return config.getMetricsSourceDeadlineMs();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        collect();
+    }
+
+    @Override
+    public synchronized void collect() throws Exception {
+        dynomite.execute();
+        redis.execute();
+    }
+
+    /**
+     * @return the engine that derives the rates of the Dynomite process
+     */
+    public RateEngine getDynomiteRates() {
+        return dynomite.metrics.getRateEngine();
+    }
+
+    /**
+     * @return the engine that derives the rates of the Redis process
+     */
+    public RateEngine getRedisRates() {
+        return redis.metrics.getRateEngine();
+    }
+
+    /**
+     * Unregister all metrics of this task.
+     */
+    public synchronized void close() {
+        dynomite.metrics.close();
+        redis.metrics.close();
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the resource usage of one process from /proc: <code>/proc/&lt;pid&gt;/stat</code>, <code>status</code>,
+ * <code>io</code> and <code>fd</code>, and the pid itself from a pid file.
+ *
+ * Files are read into one reusable heap buffer and parsed in place, so reading a process does not allocate beyond the
+ * file streams and the directory listing of <code>fd</code>. Values that could not be read, e.g. <code>io</code>
+ * of a process owned by another user, are -1.
+ *
+ * Instances are not thread safe.
+ */
+public class ProcessStats {
+
+    /**
+     * Clock ticks per second of the cpu times in <code>stat</code> (USER_HZ), 100 on all Linux platforms we run on.
+     */
+    public static final int CLOCK_TICKS = 100;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final byte[] VM_RSS = bytes("VmRSS:");
+    private static final byte[] THREADS = bytes("Threads:");
+    private static final byte[] VOLUNTARY = bytes("voluntary_ctxt_switches:");
+    private static final byte[] NONVOLUNTARY = bytes("nonvoluntary_ctxt_switches:");
+    private static final byte[] READ_BYTES = bytes("read_bytes:");
+    private static final byte[] WRITE_BYTES = bytes("write_bytes:");
+
+    private final File procRoot;
+    private final File pidFile;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    // rebuilt only when the pid changes
+    private int pid = -1;
+    private File statFile;
+    private File statusFile;
+    private File ioFile;
+    private File fdDir;
+    private final File uptimeFile;
+
+    private long utimeTicks;
+    private long stimeTicks;
+    private long startTicks;
+    private long uptimeSeconds;
+    private long rssBytes;
+    private long threads;
+    private long voluntaryCtxtSwitches;
+    private long nonvoluntaryCtxtSwitches;
+    private long readBytes;
+    private long writeBytes;
+    private long openFds;
+
+    /**
+     * @param procRoot
+     *            the mount point of procfs, /proc
+     * @param pidFile
+     *            the file the process writes its pid to
+     */
+    public ProcessStats(String procRoot, String pidFile) {
+        this.procRoot = new File(procRoot);
+        this.pidFile = new File(pidFile);
+        this.uptimeFile = new File(this.procRoot, "uptime");
+    }
+
+    /**
+     * Read the pid file and the /proc files of the process.
+     *
+     * @return false if the pid file or the process does not exist
+     */
+    public boolean read() throws IOException {
+        int newPid;
+        try {
+            newPid = (int) parseLong(readFile(pidFile), 0);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        if (newPid <= 0) {
+            return false;
+        }
+        if (newPid != pid) {
+            pid = newPid;
+            File dir = new File(procRoot, Integer.toString(pid));
+            statFile = new File(dir, "stat");
+            statusFile = new File(dir, "status");
+            ioFile = new File(dir, "io");
+            fdDir = new File(dir, "fd");
+        }
+
+        try {
+            readStat();
+            readStatus();
+        } catch (FileNotFoundException e) {
+            // stale pid file
+            return false;
+        }
+        readIo();
+        countFds();
+        readUptime();
+        return true;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    /**
+     * @return the cpu time spent in user mode in clock ticks
+     */
+    public long getUserTicks() {
+        return utimeTicks;
+    }
+
+    /**
+     * @return the cpu time spent in kernel mode in clock ticks
+     */
+    public long getSystemTicks() {
+        return stimeTicks;
+    }
+
+    /**
+     * @return the number of seconds since the process started, -1 if unknown
+     */
+    public long getUptimeSeconds() {
+        return uptimeSeconds;
+    }
+
+    public long getRssBytes() {
+        return rssBytes;
+    }
+
+    public long getThreads() {
+        return threads;
+    }
+
+    public long getVoluntaryCtxtSwitches() {
+        return voluntaryCtxtSwitches;
+    }
+
+    public long getNonvoluntaryCtxtSwitches() {
+        return nonvoluntaryCtxtSwitches;
+    }
+
+    /**
+     * @return the bytes the process caused to be read from storage, -1 if not readable
+     */
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    /**
+     * @return the bytes the process caused to be written to storage, -1 if not readable
+     */
+    public long getWriteBytes() {
+        return writeBytes;
+    }
+
+    /**
+     * @return the number of open file descriptors, -1 if not readable
+     */
+    public long getOpenFds() {
+        return openFds;
+    }
+
+    private void readStat() throws IOException {
+        int length = readFile(statFile);
+        byte[] b = buffer;
+
+        // the command name may contain spaces and parentheses, fields are counted from the last ')'
+        int i = length - 1;
+        while (i >= 0 && b[i] != ')') {
+            i--;
+        }
+        // the field after ')' is field 3 (state); utime is 14, stime 15 and starttime 22
+        int field = 2;
+        long utime = -1, stime = -1, start = -1;
+        int pos = i + 1;
+        while (pos < length && field < 22) {
+            while (pos < length && b[pos] == ' ') {
+                pos++;
+            }
+            field++;
+            if (field == 14) {
+                utime = parseLong(length, pos);
+            } else if (field == 15) {
+                stime = parseLong(length, pos);
+            } else if (field == 22) {
+                start = parseLong(length, pos);
+            }
+            while (pos < length && b[pos] != ' ') {
+                pos++;
+            }
+        }
+        utimeTicks = utime;
+        stimeTicks = stime;
+        startTicks = start;
+    }
+
+    private void readStatus() throws IOException {
+        int length = readFile(statusFile);
+        long rss = field(length, VM_RSS);
+        rssBytes = rss < 0 ? -1 : rss * 1024;
+        threads = field(length, THREADS);
+        voluntaryCtxtSwitches = field(length, VOLUNTARY);
+        nonvoluntaryCtxtSwitches = field(length, NONVOLUNTARY);
+    }
+
+    private void readIo() {
+        try {
+            int length = readFile(ioFile);
+            readBytes = field(length, READ_BYTES);
+            writeBytes = field(length, WRITE_BYTES);
+        } catch (IOException e) {
+            // io is only readable by the owner of the process
+            readBytes = -1;
+            writeBytes = -1;
+        }
+    }
+
+    private void countFds() {
+        // null if fd is not readable
+        String[] fds = fdDir.list();
+        openFds = fds == null ? -1 : fds.length;
+    }
+
+    private void readUptime() {
+        try {
+            long systemUptime = parseLong(readFile(uptimeFile), 0);
+            uptimeSeconds = startTicks < 0 ? -1 : Math.max(0, systemUptime - startTicks / CLOCK_TICKS);
+        } catch (IOException e) {
+            uptimeSeconds = -1;
+        }
+    }
+
+    /**
+     * Read a file into the buffer.
+     *
+     * @return the number of bytes read
+     */
+    private int readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            // procfs reports a size of 0, read until the end
+            int length = 0;
+            int n;
+            while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += n;
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the number after the given key at the start of a line, -1 if the key is missing
+     */
+    private long field(int length, byte[] key) {
+        byte[] b = buffer;
+        int line = 0;
+        while (line < length) {
+            if (startsWith(b, line, length, key)) {
+                return parseLong(length, line + key.length);
+            }
+            while (line < length && b[line] != '\n') {
+                line++;
+            }
+            line++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the decimal number at the position of the buffer after leading blanks, -1 if there is none
+     */
+    private long parseLong(int length, int pos) {
+        byte[] b = buffer;
+        while (pos < length && (b[pos] == ' ' || b[pos] == '\t')) {
+            pos++;
+        }
+        long value = 0;
+        int start = pos;
+        while (pos < length && b[pos] >= '0' && b[pos] <= '9') {
+            value = value * 10 + (b[pos] - '0');
+            pos++;
+        }
+        return pos == start ? -1 : value;
+    }
+
+    private static boolean startsWith(byte[] b, int pos, int length, byte[] key) {
+        if (pos + key.length > length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (b[pos + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.Arrays;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.DoubleGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Derives per-second rates from the raw cumulative counters of one process (Dynomite or Redis) and publishes them as
+ * Servo gauges named <code>&lt;counter&gt;_rate</code>.
+ *
+ * The previous raw value and timestamp of every counter are kept in primitive arrays indexed by a slot chosen by the
+ * caller, e.g. the stable slot of {@link com.netflix.dynomitemanager.sidecore.storage.RedisInfoParser}. A restart of
+ * the process is detected when its uptime goes backwards; the counters then started over from 0 at process start, so
+ * the rate is the raw value over the uptime instead of a negative difference. A counter that drops without a restart
+ * (e.g. <code>CONFIG RESETSTAT</code>) is treated as having started over at some point since the previous sample.
+ *
+ * Instances are not thread safe. Each polling task should own its engine.
+ */
+public class RateEngine {
+
+    public static final String SUFFIX = "_rate";
+
+    private static final int INITIAL_SLOTS = 64;
+
+    private long[] values = new long[INITIAL_SLOTS];
+    private long[] timestamps = new long[INITIAL_SLOTS];
+    private String[] names = new String[INITIAL_SLOTS];
+    private DoubleGauge[] gauges = new DoubleGauge[INITIAL_SLOTS];
+    private int slots;
+
+    private long now;
+    private long uptime = -1L;
+    private boolean restarted;
+
+    /**
+     * Allocate a new slot for callers that don't have stable slots of their own.
+     */
+    public int newSlot() {
+        ensureCapacity(slots + 1);
+        return slots++;
+    }
+
+    /**
+     * Start a new sample of all counters. Must be called before the counters of the sample are updated.
+     *
+     * @param timestamp
+     *            the time in ms the counters were read at
+     * @param uptimeSeconds
+     *            the uptime of the process, -1 if unknown
+     * @return true if the process restarted since the previous sample
+     */
+    public boolean startSample(long timestamp, long uptimeSeconds) {
+        restarted = uptimeSeconds >= 0 && uptime >= 0 && uptimeSeconds < uptime;
+        now = timestamp;
+        if (uptimeSeconds >= 0) {
+            uptime = uptimeSeconds;
+        }
+        return restarted;
+    }
+
+    /**
+     * Update the raw value of a counter and publish its rate.
+     *
+     * @param slot
+     *            the slot of the counter
+     * @param counterName
+     *            the name of the counter, the rate is published as <code>counterName + "_rate"</code>
+     * @param value
+     *            the raw cumulative value
+     * @return the rate per second or NaN if there is no previous sample to derive it from
+     */
+    public double update(int slot, String counterName, long value) {
+        ensureCapacity(slot + 1);
+        slots = Math.max(slots, slot + 1);
+
+        if (names[slot] != counterName) {
+            // first sample of this counter, or the slot was reused for another name
+            if (gauges[slot] != null) {
+                DefaultMonitorRegistry.getInstance().unregister(gauges[slot]);
+                gauges[slot] = null;
+            }
+            names[slot] = counterName;
+            timestamps[slot] = 0L;
+        }
+
+        long previousTimestamp = timestamps[slot];
+        long previousValue = values[slot];
+        values[slot] = value;
+        timestamps[slot] = now;
+
+        long elapsed = now - previousTimestamp;
+        if (previousTimestamp == 0L || elapsed <= 0L) {
+            return Double.NaN;
+        }
+
+        double rate;
+        if (restarted || value < previousValue) {
+            // the counter started over from 0, at process start if we know when that was
+            long since = elapsed;
+            if (restarted && uptime > 0) {
+                since = Math.min(elapsed, uptime * 1000L);
+            }
+            rate = value * 1000.0 / since;
+        } else {
+            rate = (value - previousValue) * 1000.0 / elapsed;
+        }
+
+        getGauge(slot).set(rate);
+        return rate;
+    }
+
+    /**
+     * @return the last published rate of a slot, NaN if none was published
+     */
+    public double getRate(int slot) {
+        if (slot >= slots || gauges[slot] == null) {
+            return Double.NaN;
+        }
+        return gauges[slot].getValue().doubleValue();
+    }
+
+    /**
+     * Unregister all rate gauges and forget the previous samples. Slots handed out by {@link #newSlot()} stay valid.
+     */
+    public void reset() {
+        for (int i = 0; i < slots; i++) {
+            if (gauges[i] != null) {
+                DefaultMonitorRegistry.getInstance().unregister(gauges[i]);
+            }
+            gauges[i] = null;
+            names[i] = null;
+            timestamps[i] = 0L;
+        }
+        uptime = -1L;
+        restarted = false;
+    }
+
+    private DoubleGauge getGauge(int slot) {
+        DoubleGauge gauge = gauges[slot];
+        if (gauge == null) {
+            gauge = new DoubleGauge(MonitorConfig.builder(names[slot] + SUFFIX).build());
+            DefaultMonitorRegistry.getInstance().register(gauge);
+            gauges[slot] = gauge;
+        }
+        return gauge;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= values.length) {
+            return;
+        }
+        int size = Math.max(capacity, values.length * 2);
+        values = Arrays.copyOf(values, size);
+        timestamps = Arrays.copyOf(timestamps, size);
+        names = Arrays.copyOf(names, size);
+        gauges = Arrays.copyOf(gauges, size);
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
+import com.netflix.dynomitemanager.sidecore.scheduler.Task;
+import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
+import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.RedisCommandStats;
+import com.netflix.dynomitemanager.sidecore.storage.RespConnection;
+
+/**
+ * Publishes per command statistics of Redis from <code>INFO commandstats</code>.
+ *
+ * For every command Redis has executed, two metrics are published: the calls per second,
+ * <code>Redis_Commandstats_&lt;command&gt;_calls_rate</code>, and the average time per call in us over the last
+ * interval, <code>Redis_Commandstats_&lt;command&gt;_usec_per_call</code>. Commands are counted in the fixed table of
+ * {@link RedisCommandStats}, so the number of metrics is bounded.
+ *
+ * This is the "redis_commandstats" {@link MetricsSource} of the {@link MetricsPipeline}.
+ */
+@Singleton
+public class RedisCommandStatsTask extends Task implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCommandStatsTask.class);
+
+    // The Task name for identification
+    public static final String TaskName = "Redis-CommandStats-Task";
+
+    public static final String PREFIX = "Redis_Commandstats_";
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    private final IStorageProxy storageProxy;
+
+    // reused across executions, indexed by the command table of the parser
+    private final RedisCommandStats stats = new RedisCommandStats();
+    private final MetricsCollector metrics = new MetricsCollector();
+    private final String[] callsNames = new String[RedisCommandStats.size()];
+    private final long[] lastCalls = new long[RedisCommandStats.size()];
+    private final long[] lastUsec = new long[RedisCommandStats.size()];
+    private final boolean[] seen = new boolean[RedisCommandStats.size()];
+    private final MetricsCollector.Metric[] usecPerCall = new MetricsCollector.Metric[RedisCommandStats.size()];
+
+    private RespConnection connection;
+
+    @Inject
+    public RedisCommandStatsTask(IConfiguration config, IStorageProxy storageProxy) {
+        super(config);
+        this.storageProxy = storageProxy;
+    }
+
+    /**
+     * Returns a timer that enables this task to run once every 30 seconds
+     *
+     * @return TaskTimer
+     */
+    public static TaskTimer getTimer() {
+        return new SimpleTimer(TaskName, 30 * 1000);
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public String getSourceName() {
+        return "redis_commandstats";
+    }
+
+    @Override
+    public long getDeadlineMs() {
+        return config.getMetricsSourceDeadlineMs();
+    }
+
+    @Override
+    public synchronized void execute() throws Exception {
+        try {
+            collect();
+        } catch (IOException e) {
+            logger.error("Could not get Redis commandstats", e);
+        }
+    }
+
+    @Override
+    public synchronized void collect() throws Exception {
+        String info = RespConnection.asString(getConnection().call("INFO", "commandstats"));
+        if (info == null) {
+            return;
+        }
+
+        stats.parse(info);
+        // commandstats has no uptime, a restart or CONFIG RESETSTAT shows as counters going down
+        metrics.startSample(System.currentTimeMillis(), -1L);
+        for (int i = 0; i < RedisCommandStats.size(); i++) {
+            if (stats.isPresent(i)) {
+                processCommand(i, stats.getCalls(i), stats.getUsec(i));
+            }
+        }
+    }
+
+    /**
+     * @return the engine that derives the calls per second
+     */
+    public RateEngine getRateEngine() {
+        return metrics.getRateEngine();
+    }
+
+    /**
+     * Close the connection to Redis. The next run reconnects.
+     */
+    public synchronized void close() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private void processCommand(int i, long calls, long usec) {
+        if (callsNames[i] == null) {
+            callsNames[i] = PREFIX + RedisCommandStats.getName(i) + "_calls";
+        }
+        metrics.rate(i, callsNames[i], calls);
+
+        if (seen[i]) {
+            long deltaCalls = calls - lastCalls[i];
+            long deltaUsec = usec - lastUsec[i];
+            if (deltaCalls < 0 || deltaUsec < 0) {
+                // the stats started over
+                deltaCalls = calls;
+                deltaUsec = usec;
+            }
+            getUsecPerCall(i).set(deltaCalls == 0 ? 0L : deltaUsec / deltaCalls);
+        }
+        lastCalls[i] = calls;
+        lastUsec[i] = usec;
+        seen[i] = true;
+    }
+
+    private MetricsCollector.Metric getUsecPerCall(int i) {
+        MetricsCollector.Metric gauge = usecPerCall[i];
+        if (gauge == null) {
+            gauge = metrics.gauge(PREFIX + RedisCommandStats.getName(i) + "_usec_per_call");
+            usecPerCall[i] = gauge;
+        }
+        return gauge;
+    }
+
+    private RespConnection getConnection() {
+        String host = storageProxy.getIpAddress();
+        int port = storageProxy.getPort();
+        if (connection == null || !connection.getHost().equals(host) || connection.getPort() != port) {
+            close();
+            connection = new RespConnection(host, port, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+        }
+        return connection;
+    }
+}
@@ -12,18 +12,13 @@
  */
 package com.netflix.dynomitemanager.monitoring;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStreamReader;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import redis.clients.jedis.Jedis;
-
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
@@ -31,16 +26,17 @@ import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
 import com.netflix.dynomitemanager.sidecore.scheduler.Task;
 import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
 import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfo;
 import com.netflix.dynomitemanager.sidecore.storage.RedisInfoParser;
-import com.netflix.servo.DefaultMonitorRegistry;
-import com.netflix.servo.monitor.Counter;
-import com.netflix.servo.monitor.LongGauge;
-import com.netflix.servo.monitor.MonitorConfig;
-import com.netflix.servo.monitor.Monitors;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfoSnapshot;
 import com.netflix.servo.monitor.NumericMonitor;
 
+/**
+ * Publishes the numeric fields of Redis INFO as Servo gauges, and a few cumulative counters as counters and rates.
+ * This is the "redis" {@link MetricsSource} of the {@link MetricsPipeline}.
+ */
 @Singleton
-public class RedisInfoMetricsTask extends Task {
+public class RedisInfoMetricsTask extends Task implements MetricsSource {
 
     private static final Logger Logger = LoggerFactory.getLogger(RedisInfoMetricsTask.class);
 
@@ -50,13 +46,31 @@ public class RedisInfoMetricsTask extends Task {
         COUNTER_LIST.add("Redis_Stats_instantaneous_ops_per_sec");
     }
 
+    /**
+     * Cumulative counters of Redis that are also published as per second rates, see {@link RateEngine}.
+     */
+    private static final Set<String> RATE_LIST = new HashSet<String>();
+
+    static {
+        RATE_LIST.add("Redis_Stats_total_connections_received");
+        RATE_LIST.add("Redis_Stats_total_commands_processed");
+        RATE_LIST.add("Redis_Stats_rejected_connections");
+        RATE_LIST.add("Redis_Stats_expired_keys");
+        RATE_LIST.add("Redis_Stats_evicted_keys");
+        RATE_LIST.add("Redis_Stats_keyspace_hits");
+        RATE_LIST.add("Redis_Stats_keyspace_misses");
+    }
+
     // The Task name for identification
     public static final String TaskName = "Redis-Info-Task";
 
-    private final ConcurrentHashMap<String, LongGauge> redisInfoGaugeMetrics = new ConcurrentHashMap<String, LongGauge>();
-    private final ConcurrentHashMap<String, NumericMonitor<Number>> redisInfoCounterMap = new ConcurrentHashMap<String, NumericMonitor<Number>>();
+    // reused across executions so that steady state parsing does not allocate
+    private final RedisInfoParser infoParser = new RedisInfoParser();
 
-    private JedisFactory jedisFactory;
+    // gauges, counters and the rates of the RATE_LIST counters, indexed by the slots of the parser
+    private final MetricsCollector metrics = new MetricsCollector();
+
+    private RedisInfoSnapshot redisInfo;
     private IStorageProxy storageProxy;
 
     /**
@@ -64,100 +78,78 @@ public class RedisInfoMetricsTask extends Task {
      * 
      * @param config
      * @param storageProxy
-     * @param jedisFactory
+     * @param redisInfo
      */
     @Inject
-    public RedisInfoMetricsTask(IConfiguration config, IStorageProxy storageProxy, JedisFactory jedisFactory) {
+    public RedisInfoMetricsTask(IConfiguration config, IStorageProxy storageProxy, RedisInfoSnapshot redisInfo) {
         super(config);
-        this.jedisFactory = jedisFactory;
+        this.redisInfo = redisInfo;
         this.storageProxy = storageProxy;
     }
 
     @Override
     public void execute() throws Exception {
-        Jedis jedis = jedisFactory.newInstance(storageProxy.getIpAddress(),storageProxy.getPort());
-
         try {
-            jedis.connect();
-            String s = jedis.info();
-
-            InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(s.getBytes()));
-            RedisInfoParser infoParser = new RedisInfoParser();
-            Map<String, Long> metrics = infoParser.parse(reader);
-
-            processMetrics(metrics);
-
+            collect();
         } catch (Exception e) {
             Logger.error("Could not get jedis info metrics", e);
-        } finally {
-            jedis.disconnect();
         }
     }
 
-    private void processMetrics(Map<String, Long> metrics) {
-        for (String key : metrics.keySet()) {
-
-            Long value = metrics.get(key);
-
-            if (COUNTER_LIST.contains(key)) {
-                processCounterMetric(key, value);
-            } else {
-                processGaugeMetric(key, value);
-            }
-        }
+    @Override
+    public String getSourceName() {
+        return "redis";
     }
 
-    private void processGaugeMetric(String key, Long value) {
-        if (Logger.isDebugEnabled()) {
-            Logger.debug("Process gauge: " + key + " " + value);
-        }
-
-        LongGauge oldGauge = redisInfoGaugeMetrics.get(key);
-        if (oldGauge != null) {
-            oldGauge.set(value);
-            return;
-        }
+    @Override
+    public long getDeadlineMs() {
+        return config.getMetricsSourceDeadlineMs();
+    }
 
-        // create a new long gauge
-        LongGauge newGauge = new LongGauge(MonitorConfig.builder(key).build());
+    @Override
+    public synchronized void collect() throws Exception {
+        RedisInfo info = redisInfo.get(storageProxy.getIpAddress(), storageProxy.getPort());
 
-        oldGauge = redisInfoGaugeMetrics.putIfAbsent(key, newGauge);
-        if (oldGauge == null) {
-            newGauge.set(value);
-            DefaultMonitorRegistry.getInstance().register(newGauge);
-        } else {
-            // someone else beat us to it. just use the oldGauge
-            oldGauge.set(value);
+        int count = infoParser.parse(info.getRaw());
+        if (metrics.startSample(info.getTimestamp(), info.getUptimeInSeconds())) {
+            Logger.info("Redis restarted, uptime is " + info.getUptimeInSeconds() + " seconds");
         }
+        processMetrics(count);
     }
 
-    private void processCounterMetric(String counterName, Long val) {
+    private void processMetrics(int count) {
+        for (int i = 0; i < count; i++) {
 
-        if (Logger.isDebugEnabled()) {
-            Logger.debug("Process counter: " + counterName + " " + val);
-        }
+            String key = infoParser.getName(i);
+            long value = infoParser.getValue(i);
 
-        NumericMonitor<Number> counter = redisInfoCounterMap.get(counterName);
-        if (counter != null) {
-            long increment = val - counter.getValue().longValue();
-            ((Counter) counter).increment(increment);
-            return;
-        }
-
-        counter = Monitors.newCounter(counterName);
-        NumericMonitor<Number> oldCounter = redisInfoCounterMap.putIfAbsent(counterName, counter);
+            if (Logger.isDebugEnabled()) {
+                Logger.debug("Process metric: " + key + " " + value);
+            }
+            if (COUNTER_LIST.contains(key)) {
+                metrics.counter(key).set(value);
+            } else {
+                metrics.gauge(key).set(value);
+            }
 
-        if (oldCounter == null) {
-            // this is the 1st time
-            DefaultMonitorRegistry.getInstance().register(counter);
-        } else {
-            // someone beat us to it, take their obj instead
-            counter = oldCounter;
+            if (RATE_LIST.contains(key)) {
+                metrics.rate(infoParser.getSlot(i), key, value);
+            }
         }
+    }
 
-        long increment = val - counter.getValue().longValue();
-        ((Counter) counter).increment(increment);
+    /**
+     * @return the Servo counters and gauges of the Redis INFO metrics by name
+     */
+    public ConcurrentHashMap<String, NumericMonitor<Number>> getMetricsMap() {
+        return metrics.getMonitors();
+    }
 
+    /**
+     * @return the engine that derives the rates of the Redis counters
+     */
+    public RateEngine getRateEngine() {
+        return metrics.getRateEngine();
     }
 
     @Override
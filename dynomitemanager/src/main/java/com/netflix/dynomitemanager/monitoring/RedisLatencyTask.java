@@ -0,0 +1,324 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
+import com.netflix.dynomitemanager.sidecore.scheduler.Task;
+import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
+import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.RespConnection;
+
+/**
+ * Collects the command latencies Redis keeps track of itself: the slow log (<code>SLOWLOG GET</code>) and the latency
+ * monitor (<code>LATENCY LATEST</code> and <code>LATENCY HISTORY</code>).
+ *
+ * Slow log entries are aggregated by command and latency monitor samples by event into {@link LatencyHistogram}s.
+ * Both are read incrementally: the task remembers the id of the last slow log entry and the timestamp of the last
+ * sample of every event it has seen, so every entry is counted once. The number of histograms is bounded by
+ * {@link IConfiguration#getRedisLatencyMaxCommands()}, further commands are counted as <code>other</code>.
+ *
+ * Every histogram is published to Servo as <code>Redis_Slowlog_&lt;command&gt;_count</code>, <code>_p50</code>,
+ * <code>_p99</code> and <code>_max</code> (in us), respectively <code>Redis_Latency_&lt;event&gt;_*</code>. The task
+ * keeps one connection to the storage port open between runs.
+ *
+ * This is the "redis_latency" {@link MetricsSource} of the {@link MetricsPipeline}.
+ */
+@Singleton
+public class RedisLatencyTask extends Task implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisLatencyTask.class);
+
+    // The Task name for identification
+    public static final String TaskName = "Redis-Latency-Task";
+
+    public static final String SLOWLOG_PREFIX = "Redis_Slowlog_";
+    public static final String LATENCY_PREFIX = "Redis_Latency_";
+
+    // Histogram of the commands and events beyond the limit
+    public static final String OTHER = "other";
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    private final IStorageProxy storageProxy;
+
+    private final ConcurrentHashMap<String, HistogramMonitors> slowlog = new ConcurrentHashMap<String, HistogramMonitors>();
+    private final ConcurrentHashMap<String, HistogramMonitors> latency = new ConcurrentHashMap<String, HistogramMonitors>();
+    private final MetricsCollector metrics = new MetricsCollector();
+    private final MetricsCollector.Metric slowlogMissed = metrics.counter(SLOWLOG_PREFIX + "missed");
+    private long missed;
+
+    private RespConnection connection;
+    private long lastSlowlogId = -1L;
+    private final Map<String, Long> lastEventTimestamps = new HashMap<String, Long>();
+    private boolean latencySupported = true;
+
+    @Inject
+    public RedisLatencyTask(IConfiguration config, IStorageProxy storageProxy) {
+        super(config);
+        this.storageProxy = storageProxy;
+    }
+
+    /**
+     * Returns a timer that enables this task to run once every 30 seconds
+     *
+     * @return TaskTimer
+     */
+    public static TaskTimer getTimer() {
+        return new SimpleTimer(TaskName, 30 * 1000);
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public String getSourceName() {
+        return "redis_latency";
+    }
+
+    @Override
+    public long getDeadlineMs() {
+        return config.getMetricsSourceDeadlineMs();
+    }
+
+    @Override
+    public synchronized void execute() throws Exception {
+        try {
+            collect();
+        } catch (RespConnection.RespException e) {
+            logger.error("Redis rejected a latency command", e);
+        } catch (IOException e) {
+            logger.error("Could not read Redis latencies", e);
+        }
+    }
+
+    @Override
+    public synchronized void collect() throws Exception {
+        RespConnection conn = getConnection();
+        readSlowlog(conn);
+        if (latencySupported) {
+            readLatency(conn);
+        }
+    }
+
+    /**
+     * @return the histograms of the slow log by command
+     */
+    public List<LatencyHistogram> getSlowlogHistograms() {
+        return histograms(slowlog);
+    }
+
+    /**
+     * @return the histograms of the latency monitor by event
+     */
+    public List<LatencyHistogram> getLatencyHistograms() {
+        return histograms(latency);
+    }
+
+    /**
+     * @return the id of the last slow log entry that was read, -1 if none
+     */
+    public synchronized long getLastSlowlogId() {
+        return lastSlowlogId;
+    }
+
+    /**
+     * Close the connection to Redis. The next run reconnects.
+     */
+    public synchronized void close() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private RespConnection getConnection() {
+        String host = storageProxy.getIpAddress();
+        int port = storageProxy.getPort();
+        if (connection == null || !connection.getHost().equals(host) || connection.getPort() != port) {
+            close();
+            connection = new RespConnection(host, port, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+            latencySupported = true;
+        }
+        return connection;
+    }
+
+    private void readSlowlog(RespConnection conn) throws IOException {
+        int max = Math.max(1, config.getRedisSlowlogMaxEntries());
+        List<Object> entries = RespConnection.asList(conn.call("SLOWLOG", "GET", Integer.toString(max)));
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // entries are newest first, ids only go down if Redis restarted
+        long newestId = RespConnection.asLong(RespConnection.asList(entries.get(0)).get(0));
+        if (newestId < lastSlowlogId) {
+            logger.info("Slow log restarted at id " + newestId + ", last id was " + lastSlowlogId);
+            lastSlowlogId = -1L;
+        }
+
+        long oldestId = RespConnection.asLong(RespConnection.asList(entries.get(entries.size() - 1)).get(0));
+        if (lastSlowlogId >= 0 && oldestId > lastSlowlogId + 1) {
+            // the slow log has rotated past entries we have not read
+            missed += oldestId - lastSlowlogId - 1;
+            slowlogMissed.set(missed);
+        }
+
+        List<HistogramMonitors> updated = new ArrayList<HistogramMonitors>();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            List<Object> entry = RespConnection.asList(entries.get(i));
+            long id = RespConnection.asLong(entry.get(0));
+            if (id <= lastSlowlogId) {
+                continue;
+            }
+            long micros = RespConnection.asLong(entry.get(2));
+            List<Object> args = RespConnection.asList(entry.get(3));
+            String command = args.isEmpty() ? "unknown" : RespConnection.asString(args.get(0));
+
+            HistogramMonitors monitors = getMonitors(slowlog, SLOWLOG_PREFIX, command.toLowerCase(Locale.ENGLISH));
+            monitors.record(micros);
+            updated.add(monitors);
+        }
+        lastSlowlogId = newestId;
+        publish(updated);
+    }
+
+    private void readLatency(RespConnection conn) throws IOException {
+        List<Object> events;
+        try {
+            events = RespConnection.asList(conn.call("LATENCY", "LATEST"));
+        } catch (RespConnection.RespException e) {
+            // Redis before 2.8.13 has no latency monitor
+            logger.warn("Redis latency monitor is not available: " + e.getMessage());
+            latencySupported = false;
+            return;
+        }
+
+        List<HistogramMonitors> updated = new ArrayList<HistogramMonitors>();
+        try {
+            for (Object e : events) {
+                List<Object> event = RespConnection.asList(e);
+                String name = RespConnection.asString(event.get(0));
+                long latest = RespConnection.asLong(event.get(1));
+                Long last = lastEventTimestamps.get(name);
+                if (last != null && latest <= last) {
+                    continue;
+                }
+
+                // read the whole history before recording any of it, so that a failure leaves the event to be read
+                // again on the next run instead of recording part of it twice
+                List<Long> samples = new ArrayList<Long>();
+                long newest = latest;
+                for (Object s : RespConnection.asList(conn.call("LATENCY", "HISTORY", name))) {
+                    List<Object> sample = RespConnection.asList(s);
+                    long timestamp = RespConnection.asLong(sample.get(0));
+                    if (last == null || timestamp > last) {
+                        samples.add(RespConnection.asLong(sample.get(1)) * 1000L);
+                        // a sample taken after LATENCY LATEST is recorded now too
+                        newest = Math.max(newest, timestamp);
+                    }
+                }
+
+                HistogramMonitors monitors = getMonitors(latency, LATENCY_PREFIX, name);
+                for (long micros : samples) {
+                    monitors.record(micros);
+                }
+                // every event is tracked, also those counted as other, or their samples would be recorded again on
+                // each run; Redis only has a fixed set of latency events, so the map stays small
+                lastEventTimestamps.put(name, newest);
+                updated.add(monitors);
+            }
+        } finally {
+            // the events recorded before a failure are done, publish them
+            publish(updated);
+        }
+    }
+
+    private HistogramMonitors getMonitors(ConcurrentHashMap<String, HistogramMonitors> map, String prefix,
+            String name) {
+        HistogramMonitors monitors = map.get(name);
+        if (monitors != null) {
+            return monitors;
+        }
+        if (map.size() >= Math.max(1, config.getRedisLatencyMaxCommands() - 1)) {
+            name = OTHER;
+            monitors = map.get(name);
+            if (monitors != null) {
+                return monitors;
+            }
+        }
+
+        monitors = new HistogramMonitors(metrics, prefix, name);
+        map.put(name, monitors);
+        return monitors;
+    }
+
+    private static void publish(List<HistogramMonitors> updated) {
+        for (HistogramMonitors monitors : updated) {
+            monitors.publish();
+        }
+    }
+
+    private static List<LatencyHistogram> histograms(ConcurrentHashMap<String, HistogramMonitors> map) {
+        List<LatencyHistogram> list = new ArrayList<LatencyHistogram>();
+        for (HistogramMonitors monitors : map.values()) {
+            list.add(monitors.histogram);
+        }
+        return list;
+    }
+
+    /**
+     * A histogram and the Servo monitors it is published through.
+     */
+    private static class HistogramMonitors {
+        private final LatencyHistogram histogram;
+        private final MetricsCollector.Metric count;
+        private final MetricsCollector.Metric p50;
+        private final MetricsCollector.Metric p99;
+        private final MetricsCollector.Metric max;
+
+        private HistogramMonitors(MetricsCollector metrics, String prefix, String name) {
+            histogram = new LatencyHistogram(name);
+            count = metrics.counter(prefix + name + "_count");
+            p50 = metrics.gauge(prefix + name + "_p50");
+            p99 = metrics.gauge(prefix + name + "_p99");
+            max = metrics.gauge(prefix + name + "_max");
+        }
+
+        private void record(long micros) {
+            histogram.record(micros);
+        }
+
+        private void publish() {
+            count.set(histogram.getCount());
+            p50.set(histogram.getPercentile(50));
+            p99.set(histogram.getPercentile(99));
+            max.set(histogram.getMax());
+        }
+    }
+}
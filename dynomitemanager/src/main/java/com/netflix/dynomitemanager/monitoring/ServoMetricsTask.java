@@ -17,18 +17,19 @@ import com.google.inject.Singleton;
 import com.netflix.config.*;
 import com.netflix.dynomitemanager.InstanceState;
 import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
 import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
 import com.netflix.dynomitemanager.sidecore.scheduler.Task;
 import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
-import com.netflix.servo.DefaultMonitorRegistry;
 import com.netflix.servo.monitor.*;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -56,17 +57,48 @@ import java.util.concurrent.atomic.AtomicReference;
  * via archaius. The fast property name is
  * 'dynomitemanager.metrics.gauge.whitelist'
  *
- * 4. Note that this class maintains a map of servo counters and gauges, so that
- * they don't have to be recreated all the time. Hence this class maintains
- * state and needs to be a singleton.
+ * 4. The payload is parsed straight from the response stream by a
+ * {@link DynomiteInfoParser}, which resolves metric names through a trie and
+ * keeps the servo metric of each name, so polls don't rebuild names.
+ *
+ * 5. The traffic and error {@link Counter}s of the RATE_LIST are also
+ * published as per second rate gauges named &lt;counter&gt;_rate by a
+ * {@link RateEngine}. A restart of Dynomite is
+ * detected from its uptime going backwards, so neither the counters nor the
+ * rates go negative when Dynomite's counters start over.
+ *
+ * 6. Counters, gauges and rates are kept by a {@link MetricsCollector}, so
+ * that they don't have to be recreated all the time. Hence this class
+ * maintains state and needs to be a singleton.
+ *
+ * 7. This is the "dynomite" {@link MetricsSource} of the
+ * {@link MetricsPipeline}.
  *
  *
  */
 @Singleton
-public class ServoMetricsTask extends Task {
+public class ServoMetricsTask extends Task implements MetricsSource {
 
     private static final Logger Logger = LoggerFactory.getLogger(ServoMetricsTask.class);
 
+    // the counters, by the last segment of their name, that a rate is published for
+    private static final Set<String> RATE_LIST = new HashSet<String>();
+
+    static {
+        RATE_LIST.add("client_eof");
+        RATE_LIST.add("client_err");
+        RATE_LIST.add("client_dropped_requests");
+        RATE_LIST.add("forward_error");
+        RATE_LIST.add("server_ejects");
+        RATE_LIST.add("server_eof");
+        RATE_LIST.add("server_err");
+        RATE_LIST.add("server_timedout");
+        RATE_LIST.add("requests");
+        RATE_LIST.add("request_bytes");
+        RATE_LIST.add("responses");
+        RATE_LIST.add("response_bytes");
+    }
+
     // The Task name for identification
     public static final String TaskName = "Servo-Metrics-Task";
 
@@ -83,21 +115,28 @@ public class ServoMetricsTask extends Task {
     // if the fast property is changed externally
     private final AtomicReference<Set<String>> gaugeFilter = new AtomicReference<Set<String>>(new HashSet<String>());
 
-    // The map of servo metrics
-    private final ConcurrentHashMap<String, NumericMonitor<Number>> metricMap = new ConcurrentHashMap<String, NumericMonitor<Number>>();
+    // The servo metrics and their rates
+    private final MetricsCollector metrics = new MetricsCollector();
 
     private final InstanceState state;
 
+    // Shared pooled client of Dynomite's admin port
+    private final DynomiteAdminClient adminClient;
+
+    // Streaming parser of the json payload, reused across polls
+    private final DynomiteInfoParser infoParser = new DynomiteInfoParser();
+
     /**
      * Default constructor
      * 
      * @param config
      */
     @Inject
-    public ServoMetricsTask(IConfiguration config, InstanceState state) {
+    public ServoMetricsTask(IConfiguration config, InstanceState state, DynomiteAdminClient adminClient) {
 
         super(config);
         this.state = state;
+        this.adminClient = adminClient;
 
         initGaugeWhitelist();
 
@@ -130,16 +169,33 @@ public class ServoMetricsTask extends Task {
         return TaskName;
     }
 
+    @Override
+    public String getSourceName() {
+        return "dynomite";
+    }
+
+    @Override
+    public long getDeadlineMs() {
+        return config.getMetricsSourceDeadlineMs();
+    }
+
     /**
      * @return metricMap
      */
     public ConcurrentHashMap<String, NumericMonitor<Number>> getMetricsMap() {
-        return metricMap;
+        return metrics.getMonitors();
     }
 
     /**
-     * Main execute() impl for this task. It makes a call to the remote service,
-     * and if the response is a 200 with a json body, then this parses the json
+     * @return the engine that derives the rates of the counters
+     */
+    public RateEngine getRateEngine() {
+        return metrics.getRateEngine();
+    }
+
+    /**
+     * Main execute() impl for this task. It makes a call to the remote service
+     * over the shared {@link DynomiteAdminClient}, and if the response is a 200 with a json body, then this parses the json
      * response into servo metrics.
      *
      * Note that new metrics that weren't tracked before start being tracked,
@@ -149,53 +205,53 @@ public class ServoMetricsTask extends Task {
      */
     @Override
     public void execute() throws Exception {
+        try {
+            collect();
+        } catch (Exception e) {
+            Logger.error("Failed to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), e);
+        } catch (Throwable t) {
+            Logger.error("FAILED to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), t);
+        }
+    }
 
-        HttpClient client = null;
-        GetMethod get = null;
+    /**
+     * Fetch and publish the metrics of Dynomite. Unlike {@link #execute()},
+     * failures are thrown to the caller.
+     */
+    @Override
+    public void collect() throws Exception {
 
         // update health state. I think we can merge the health check and info
         // check into one check later.
         // However, health check also touches the underneath storage, not just
         // Dynomite
-        processGaugeMetric("dynomite__health", state.isHealthy() ? 1L : 0L);
-
-        try {
-            client = new HttpClient();
-            client.getHttpConnectionManager().getParams().setConnectionTimeout(2000);
-            get = new GetMethod(ServerMetricsUrl.get());
-
-            int statusCode = client.executeMethod(get);
-            if (!(statusCode == 200)) {
-                Logger.error("Got non 200 status code from " + ServerMetricsUrl.get());
-                return;
-            }
-
-            String response = get.getResponseBodyAsString();
-            if (Logger.isDebugEnabled()) {
-                Logger.debug("Received response from " + ServerMetricsUrl.get() + "\n" + response);
-            }
+        metrics.gauge("dynomite__health").set(state.isHealthy() ? 1L : 0L);
 
-            if (!response.isEmpty()) {
-                processJsonResponse(response);
-            } else {
-                Logger.error("Cannot parse empty response from " + ServerMetricsUrl.get());
-            }
+        final String url = ServerMetricsUrl.get();
+        adminClient.execute(url, "info", new DynomiteAdminClient.ResponseHandler<Void>() {
+            @Override
+            public Void handle(int statusCode, InputStream body) throws IOException {
+                if (!(statusCode == 200)) {
+                    Logger.error("Got non 200 status code from " + url);
+                    return null;
+                }
 
-        } catch (Exception e) {
-            Logger.error("Failed to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), e);
-            e.printStackTrace();
-        } catch (Throwable t) {
-            Logger.error("FAILED to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), t);
-            t.printStackTrace();
-        } finally {
-            if (get != null) {
-                get.releaseConnection();
-            }
-            if (client != null) {
-                client.getHttpConnectionManager().closeIdleConnections(10);
+                if (Logger.isDebugEnabled()) {
+                    String response = body == null ? "" : IOUtils.toString(body, "UTF-8");
+                    Logger.debug("Received response from " + url + "\n" + response);
+                    if (response.isEmpty()) {
+                        Logger.error("Cannot parse empty response from " + url);
+                        return null;
+                    }
+                    processJsonResponse(response);
+                } else if (body != null) {
+                    processJsonResponse(body);
+                } else {
+                    Logger.error("Cannot parse empty response from " + url);
+                }
+                return null;
             }
-
-        }
+        });
     }
 
     /**
@@ -214,144 +270,107 @@ public class ServoMetricsTask extends Task {
      * "in_queue_bytes":0, "out_queue":0, "out_queue_bytes":0 } } }
      *
      * @param json
-     * @throws Exception
+     * @throws IOException
      */
-    public void processJsonResponse(String json) throws Exception {
+    public void processJsonResponse(String json) throws IOException {
+        processJsonResponse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
 
-        JSONParser parser = new JSONParser();
-        JSONObject obj = (JSONObject) parser.parse(json);
+    /**
+     * Parse the Json Payload straight from the response stream and convert it
+     * to metrics. See {@link #processJsonResponse(String)} for an example.
+     *
+     * The Servo monitor of every metric is cached on its
+     * {@link DynomiteInfoParser.Metric} node, so that steady state polls only
+     * update values.
+     *
+     * @param json
+     * @throws IOException
+     */
+    public synchronized void processJsonResponse(InputStream json) throws IOException {
 
-        String service = (String) obj.get("service");
+        infoParser.parse(json);
 
-        if (service.isEmpty()) {
-            Logger.error("Missing required key 'service' in json response: " + json);
+        String service = infoParser.getService();
+        if (service == null || service.isEmpty()) {
+            Logger.error("Missing required key 'service' in json response from " + ServerMetricsUrl.get());
             return;
         }
 
         // uptime
-        Long uptime = (Long) obj.get("uptime");
-        if (uptime == null) {
-            Logger.error("Missing required key 'uptime' in json response: " + json);
-            uptime = 0L;
-        }
-        processCounterMetric(service + "__uptime", uptime);
-
-        String[] fields = { "latency_max", "latency_999th", "latency_99th", "latency_95th", "latency_mean",
-                "payload_size_max", "payload_size_999th", "payload_size_99th", "payload_size_95th", "payload_size_mean",
-                "alloc_msgs", "free_msgs", "average_cross_region_rtt", "payload_size_mean", "alloc_msgs", "free_msgs",
-                "average_cross_region_rtt", "99_cross_region_rtt", "average_cross_zone_latency",
-                "99_cross_zone_latency", "average_server_latency", "99_server_latency",
-                "average_cross_region_queue_wait", "99_cross_region_queue_wait", "average_cross_zone_queue_wait",
-                "99_cross_zone_queue_wait", "average_server_queue_wait", "99_server_queue_wait", "client_out_queue_99",
-                "server_in_queue_99", "server_out_queue_99", "dnode_client_out_queue_99", "peer_in_queue_99",
-                "peer_out_queue_99", "remote_peer_in_queue_99", "remote_peer_out_queue_99", "alloc_mbufs",
-                "free_mbufs" };
-        for (int i = 0; i < fields.length; i++) {
-            Long val = (Long) obj.get(fields[i]);
-            if (val == null) {
-                // Logger.error("Missing required key " + fields[i] + " in json
-                // response: " + json);
-                val = 0L;
-            }
-            processGaugeMetric(service + "__" + fields[i], val);
+        DynomiteInfoParser.Metric uptime = infoParser.getUptime();
+        if (!uptime.isPresent()) {
+            Logger.error("Missing required key 'uptime' in json response from " + ServerMetricsUrl.get());
         }
-        JSONObject stats = (JSONObject) obj.get("dyn_o_mite");
-        if (stats == null) {
-            Logger.error("Missing key 'dyn_o_mite' in json response: " + json);
-            return;
+        if (metrics.startSample(System.currentTimeMillis(), uptime.isPresent() ? uptime.getValue() : -1L)) {
+            Logger.info("Dynomite restarted, uptime is " + uptime.getValue() + " seconds");
         }
-        parseObjectMetrics(service, stats);
-    }
+        processMetric(uptime, false, null);
 
-    /**
-     * Helper to recursively flatten out a metric from a nested collection
-     * 
-     * @param namePrefix
-     * @param obj
-     */
-    private void parseObjectMetrics(String namePrefix, JSONObject obj) {
-
-        for (Object key : obj.keySet()) {
+        // missing fields are reported as 0
+        for (DynomiteInfoParser.Metric field : infoParser.getFields()) {
+            processMetric(field, true, null);
+        }
 
-            Object val = obj.get(key);
+        if (!infoParser.isStatsPresent()) {
+            Logger.error("Missing key 'dyn_o_mite' in json response from " + ServerMetricsUrl.get());
+            return;
+        }
 
-            if (val instanceof JSONObject) {
-                parseObjectMetrics(namePrefix + "__" + key, (JSONObject) val);
-            } else {
-                if (gaugeFilter.get().contains((String) key)) {
-                    processGaugeMetric(namePrefix + "__" + (String) key, (Long) val);
-                } else {
-                    processCounterMetric(namePrefix + "__" + (String) key, (Long) val);
-                }
+        Set<String> filter = gaugeFilter.get();
+        for (int i = 0; i < infoParser.getStatCount(); i++) {
+            DynomiteInfoParser.Metric stat = infoParser.getStat(i);
+            boolean gauge = filter.contains(stat.getKey());
+            processMetric(stat, gauge, filter);
+            if (!gauge && RATE_LIST.contains(stat.getKey())) {
+                processRate(stat);
             }
         }
-
     }
 
     /**
-     * Helper that tracks the metric value in a {@link Counter} A new one is
-     * created if it does not exist.
-     * 
-     * @param counterName
-     * @param val
+     * Helper that updates the {@link Counter} or {@link Gauge} of a parsed
+     * metric. The metric is looked up in the collector only the first time,
+     * or when the name or the gauge whitelist has changed since. A counter is
+     * fed the raw value, which keeps counting up when Dynomite's counters
+     * start over.
+     *
+     * @param metric
+     * @param gauge
+     * @param filter
+     *            the gauge whitelist the gauge flag was derived from
      */
-    private void processCounterMetric(String counterName, Long val) {
+    private void processMetric(DynomiteInfoParser.Metric metric, boolean gauge, Set<String> filter) {
 
-        if (Logger.isDebugEnabled()) {
-            Logger.debug("Process counter: " + counterName + " " + val);
-        }
+        String name = metric.getName();
+        long val = metric.getValue();
 
-        NumericMonitor<Number> counter = metricMap.get(counterName);
-        if (counter != null) {
-            long increment = val - counter.getValue().longValue();
-            ((Counter) counter).increment(increment);
-            return;
+        if (Logger.isDebugEnabled()) {
+            Logger.debug("Process " + (gauge ? "guage: " : "counter: ") + name + " " + val);
         }
 
-        counter = Monitors.newCounter(counterName);
-        NumericMonitor<Number> oldCounter = metricMap.putIfAbsent(counterName, counter);
-
-        if (oldCounter == null) {
-            // this is the 1st time
-            DefaultMonitorRegistry.getInstance().register(counter);
-        } else {
-            // someone beat us to it, take their obj instead
-            counter = oldCounter;
+        MetricsCollector.Metric monitor = metric.monitor;
+        if (monitor == null || metric.monitorName != name || metric.monitorFilter != filter) {
+            monitor = gauge ? metrics.gauge(name) : metrics.counter(name);
+            metric.monitor = monitor;
+            metric.monitorName = name;
+            metric.monitorFilter = filter;
         }
-
-        long increment = val - counter.getValue().longValue();
-        ((Counter) counter).increment(increment);
-
+        monitor.set(val);
     }
 
     /**
-     * Helper that tracks the metric value in a {@link Gauge} A new one is
-     * created if it does not exist.
+     * Helper that publishes the per second rate of a counter. The slot of the
+     * counter in the {@link RateEngine} is cached on its
+     * {@link DynomiteInfoParser.Metric} node.
      *
-     * @param gaugeName
-     * @param val
+     * @param metric
      */
-    private void processGaugeMetric(String gaugeName, Long val) {
-
-        if (Logger.isDebugEnabled()) {
-            Logger.debug("Process guage: " + gaugeName + " " + val);
-        }
-
-        NumericMonitor<Number> gauge = metricMap.get(gaugeName);
-        if (gauge != null) {
-            ((SimpleGauge) gauge).setValue(val);
-            return;
-        }
-
-        gauge = new SimpleGauge(gaugeName, val);
-        NumericMonitor<Number> oldGauge = metricMap.putIfAbsent(gaugeName, gauge);
-
-        if (oldGauge == null) {
-            ((SimpleGauge) gauge).setValue(val);
-            DefaultMonitorRegistry.getInstance().register(gauge);
-        } else {
-            ((SimpleGauge) oldGauge).setValue(val);
+    private void processRate(DynomiteInfoParser.Metric metric) {
+        if (metric.rateSlot < 0) {
+            metric.rateSlot = metrics.getRateEngine().newSlot();
         }
+        metrics.rate(metric.rateSlot, metric.getName(), metric.getValue());
     }
 
     /**
@@ -379,40 +398,4 @@ public class ServoMetricsTask extends Task {
         }
         gaugeFilter.set(set);
     }
-
-    /**
-     * Simple impl of the {@link Gauge} Note that it maintains a threadsafe
-     * reference to the actual value being monitored
-     *
-     * @author poberai
-     *
-     */
-    private class SimpleGauge implements Gauge<Number> {
-
-        private final MonitorConfig mConfig;
-        private final AtomicReference<Number> value = new AtomicReference<Number>(null);
-
-        private SimpleGauge(String name, Number number) {
-            mConfig = MonitorConfig.builder(name).build();
-            value.set(number);
-        }
-
-        @Override
-        public Number getValue() {
-            return value.get();
-        }
-
-        public Number getValue(int pollerIndex) {
-            return getValue();
-        }
-
-        @Override
-        public MonitorConfig getConfig() {
-            return mConfig;
-        }
-
-        public void setValue(Number n) {
-            value.set(n);
-        }
-    }
 }
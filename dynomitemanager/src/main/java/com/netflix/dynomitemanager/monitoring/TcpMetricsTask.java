@@ -0,0 +1,218 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
+import com.netflix.dynomitemanager.sidecore.scheduler.Task;
+import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
+import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+
+/**
+ * Publishes TCP socket statistics of the Dynomite client port, the Dynomite peer port and the storage port, read
+ * from /proc by {@link TcpStats}.
+ *
+ * Sockets are aggregated per port and direction: <code>in</code> for connections to the local port and
+ * <code>out</code> for connections we opened to the port on another host (or locally, Dynomite to Redis). The gauges
+ * are named <code>Tcp_&lt;client|peer|storage&gt;_&lt;in|out&gt;_&lt;metric&gt;</code>, where the metric is a TCP
+ * state (<code>established</code>, <code>time_wait</code>, ...), <code>rx_queue</code>, <code>tx_queue</code>,
+ * <code>rx_queue_max</code>, <code>tx_queue_max</code>, <code>retransmitting</code> or, for the listener,
+ * <code>accept_queue</code>. A gauge is registered once its value is first non-zero, so idle states don't clutter the
+ * registry.
+ *
+ * Retransmissions are only counted per host by the kernel: the counters of the Tcp line of /proc/net/snmp are
+ * published as per second rates (<code>Tcp_RetransSegs_rate</code>, ...), along with
+ * <code>Tcp_retransmit_percent</code>, the share of segments sent that were retransmissions.
+ *
+ * This is the "tcp" {@link MetricsSource} of the {@link MetricsPipeline}.
+ */
+@Singleton
+public class TcpMetricsTask extends Task implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(TcpMetricsTask.class);
+
+    // The Task name for identification
+    public static final String TaskName = "Tcp-Metrics-Task";
+
+    public static final String PREFIX = "Tcp_";
+
+    private static final String PROC_ROOT = "/proc";
+
+    private static final String[] PORTS = { "client", "peer", "storage" };
+    private static final String[] DIRECTIONS = { "in", "out" };
+
+    // metrics of an aggregate after the states
+    private static final String[] METRICS = { "rx_queue", "tx_queue", "rx_queue_max", "tx_queue_max",
+            "retransmitting", "accept_queue" };
+    private static final int RX_QUEUE = TcpStats.STATES.length;
+    private static final int TX_QUEUE = RX_QUEUE + 1;
+    private static final int MAX_RX_QUEUE = RX_QUEUE + 2;
+    private static final int MAX_TX_QUEUE = RX_QUEUE + 3;
+    private static final int RETRANSMITTING = RX_QUEUE + 4;
+    private static final int ACCEPT_QUEUE = RX_QUEUE + 5;
+    private static final int AGGREGATE_METRICS = RX_QUEUE + METRICS.length;
+
+    private static final int CURR_ESTAB = 4;
+    private static final int OUT_SEGS = 6;
+    private static final int RETRANS_SEGS = 7;
+
+    private final IStorageProxy storageProxy;
+    private final TcpStats stats;
+    private final MetricsCollector metrics = new MetricsCollector();
+    private final int[] ports = new int[PORTS.length];
+
+    // indexed by (port * 2 + direction) * AGGREGATE_METRICS + metric, registered lazily
+    private final MetricsCollector.Metric[] gauges = new MetricsCollector.Metric[PORTS.length * 2 * AGGREGATE_METRICS];
+    private final String[] snmpNames = new String[TcpStats.SNMP_COUNTERS.length];
+    private final MetricsCollector.Metric currEstab;
+    private final MetricsCollector.Metric retransmitPercent;
+
+    @Inject
+    public TcpMetricsTask(IConfiguration config, IStorageProxy storageProxy) {
+        this(config, storageProxy, PROC_ROOT);
+    }
+
+    /**
+     * @param procRoot
+     *            the mount point of procfs
+     */
+    public TcpMetricsTask(IConfiguration config, IStorageProxy storageProxy, String procRoot) {
+        super(config);
+        this.storageProxy = storageProxy;
+        this.stats = new TcpStats(procRoot);
+        for (int i = 0; i < snmpNames.length; i++) {
+            snmpNames[i] = PREFIX + TcpStats.SNMP_COUNTERS[i];
+        }
+        this.currEstab = metrics.gauge(snmpNames[CURR_ESTAB]);
+        this.retransmitPercent = metrics.doubleGauge(PREFIX + "retransmit_percent");
+    }
+
+    /**
+     * Returns a timer that enables this task to run once every 10 seconds
+     *
+     * @return TaskTimer
+     */
+    public static TaskTimer getTimer() {
+        return new SimpleTimer(TaskName, 10 * 1000);
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public String getSourceName() {
+        return "tcp";
+    }
+
+    @Override
+    public long getDeadlineMs() {
+        return config.getMetricsSourceDeadlineMs();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        collect();
+    }
+
+    @Override
+    public synchronized void collect() throws Exception {
+        ports[0] = config.getDynomiteClientPort();
+        ports[1] = config.getDynomitePeerPort();
+        ports[2] = storageProxy.getPort();
+        stats.setPorts(ports);
+
+        try {
+            if (!stats.read()) {
+                logger.debug("No TCP socket tables in /proc");
+                return;
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read the TCP socket tables: " + e.getMessage());
+            return;
+        }
+
+        for (int port = 0; port < PORTS.length; port++) {
+            for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+                for (int state = 1; state < TcpStats.STATES.length; state++) {
+                    set(port, direction, state, stats.getStateCount(port, direction, state));
+                }
+                set(port, direction, RX_QUEUE, stats.getRxQueue(port, direction));
+                set(port, direction, TX_QUEUE, stats.getTxQueue(port, direction));
+                set(port, direction, MAX_RX_QUEUE, stats.getMaxRxQueue(port, direction));
+                set(port, direction, MAX_TX_QUEUE, stats.getMaxTxQueue(port, direction));
+                set(port, direction, RETRANSMITTING, stats.getRetransmitting(port, direction));
+            }
+            set(port, TcpStats.IN, ACCEPT_QUEUE, stats.getAcceptQueue(port));
+        }
+
+        // the counters only start over when the host reboots, along with us
+        metrics.startSample(System.currentTimeMillis(), -1L);
+        for (int i = 0; i < snmpNames.length; i++) {
+            long value = stats.getSnmpCounter(i);
+            if (value < 0) {
+                continue;
+            }
+            if (i == CURR_ESTAB) {
+                currEstab.set(value);
+            } else {
+                metrics.rate(i, snmpNames[i], value);
+            }
+        }
+        double outSegs = metrics.getRateEngine().getRate(OUT_SEGS);
+        double retransSegs = metrics.getRateEngine().getRate(RETRANS_SEGS);
+        if (outSegs > 0) {
+            retransmitPercent.set(retransSegs * 100.0 / outSegs);
+        }
+    }
+
+    /**
+     * @return the engine that derives the rates of the TCP counters, slots are the indexes of
+     *         {@link TcpStats#SNMP_COUNTERS}
+     */
+    public RateEngine getRateEngine() {
+        return metrics.getRateEngine();
+    }
+
+    /**
+     * Unregister all metrics of this task.
+     */
+    public synchronized void close() {
+        metrics.close();
+        for (int i = 0; i < gauges.length; i++) {
+            gauges[i] = null;
+        }
+    }
+
+    private void set(int port, int direction, int metric, long value) {
+        int i = (port * 2 + direction) * AGGREGATE_METRICS + metric;
+        MetricsCollector.Metric gauge = gauges[i];
+        if (gauge == null) {
+            if (value == 0L) {
+                return;
+            }
+            String name = metric < RX_QUEUE ? TcpStats.STATES[metric] : METRICS[metric - RX_QUEUE];
+            gauge = metrics.gauge(PREFIX + PORTS[port] + "_" + DIRECTIONS[direction] + "_" + name);
+            gauges[i] = gauge;
+        }
+        gauge.set(value);
+    }
+}
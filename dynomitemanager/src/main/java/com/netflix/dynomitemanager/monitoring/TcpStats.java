@@ -0,0 +1,420 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Aggregates the TCP sockets of a few ports from <code>/proc/net/tcp</code> and <code>/proc/net/tcp6</code>, and
+ * reads the TCP counters of <code>/proc/net/snmp</code>.
+ *
+ * Every port has two aggregates: {@link #IN} for sockets whose local port is the port (accepted connections and the
+ * listener) and {@link #OUT} for sockets whose remote port is the port (connections we opened to it). An aggregate
+ * holds the number of sockets per state, the summed and largest receive and send queues, the accept queue of the
+ * listener and the number of sockets retransmitting.
+ *
+ * The socket tables can have a line per connection, so they are streamed through one reused buffer a chunk at a time
+ * and parsed in place; memory use only depends on the number of ports.
+ *
+ * Instances are not thread safe.
+ */
+public class TcpStats {
+
+    public static final int IN = 0;
+    public static final int OUT = 1;
+
+    /**
+     * The names of the TCP states, indexed by the state code of the kernel (include/net/tcp_states.h).
+     */
+    public static final String[] STATES = { null, "established", "syn_sent", "syn_recv", "fin_wait1", "fin_wait2",
+            "time_wait", "close", "close_wait", "last_ack", "listen", "closing", "new_syn_recv" };
+
+    public static final int LISTEN = 10;
+
+    /**
+     * The counters of the Tcp line of /proc/net/snmp that are read.
+     */
+    public static final String[] SNMP_COUNTERS = { "ActiveOpens", "PassiveOpens", "AttemptFails", "EstabResets",
+            "CurrEstab", "InSegs", "OutSegs", "RetransSegs", "InErrs", "OutRsts" };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] TCP = "Tcp:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] SNMP_NAMES = new byte[SNMP_COUNTERS.length][];
+
+    static {
+        for (int i = 0; i < SNMP_COUNTERS.length; i++) {
+            SNMP_NAMES[i] = SNMP_COUNTERS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final File[] socketTables;
+    private final File snmpFile;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int[] ports = new int[0];
+
+    // indexed by port * 2 + direction
+    private long[][] states = new long[0][];
+    private long[] rxQueue = new long[0];
+    private long[] txQueue = new long[0];
+    private long[] maxRxQueue = new long[0];
+    private long[] maxTxQueue = new long[0];
+    private long[] acceptQueue = new long[0];
+    private long[] retransmitting = new long[0];
+
+    private final long[] snmp = new long[SNMP_COUNTERS.length];
+    private final int[] snmpColumns = new int[SNMP_COUNTERS.length];
+
+    /**
+     * @param procRoot
+     *            the mount point of procfs, /proc
+     */
+    public TcpStats(String procRoot) {
+        File net = new File(procRoot, "net");
+        this.socketTables = new File[] { new File(net, "tcp"), new File(net, "tcp6") };
+        this.snmpFile = new File(net, "snmp");
+    }
+
+    /**
+     * Set the ports to aggregate. A port of 0 or less is not matched.
+     */
+    public void setPorts(int... ports) {
+        if (Arrays.equals(this.ports, ports)) {
+            return;
+        }
+        this.ports = ports.clone();
+        int n = ports.length * 2;
+        states = new long[n][STATES.length];
+        rxQueue = new long[n];
+        txQueue = new long[n];
+        maxRxQueue = new long[n];
+        maxTxQueue = new long[n];
+        acceptQueue = new long[n];
+        retransmitting = new long[n];
+    }
+
+    /**
+     * Read the socket tables and the TCP counters.
+     *
+     * @return false if /proc/net/tcp does not exist
+     */
+    public boolean read() throws IOException {
+        for (int i = 0; i < states.length; i++) {
+            Arrays.fill(states[i], 0L);
+        }
+        Arrays.fill(rxQueue, 0L);
+        Arrays.fill(txQueue, 0L);
+        Arrays.fill(maxRxQueue, 0L);
+        Arrays.fill(maxTxQueue, 0L);
+        Arrays.fill(acceptQueue, 0L);
+        Arrays.fill(retransmitting, 0L);
+
+        for (int i = 0; i < socketTables.length; i++) {
+            try {
+                readSocketTable(socketTables[i]);
+            } catch (FileNotFoundException e) {
+                if (i == 0) {
+                    return false;
+                }
+                // no IPv6
+            }
+        }
+        readSnmp();
+        return true;
+    }
+
+    /**
+     * @return the number of sockets of a port in a state
+     */
+    public long getStateCount(int port, int direction, int state) {
+        return states[port * 2 + direction][state];
+    }
+
+    /**
+     * @return the bytes in the receive queues of all sockets of a port, the listener excluded
+     */
+    public long getRxQueue(int port, int direction) {
+        return rxQueue[port * 2 + direction];
+    }
+
+    /**
+     * @return the bytes in the send queues of all sockets of a port, the listener excluded
+     */
+    public long getTxQueue(int port, int direction) {
+        return txQueue[port * 2 + direction];
+    }
+
+    public long getMaxRxQueue(int port, int direction) {
+        return maxRxQueue[port * 2 + direction];
+    }
+
+    public long getMaxTxQueue(int port, int direction) {
+        return maxTxQueue[port * 2 + direction];
+    }
+
+    /**
+     * @return the connections waiting to be accepted by the listener of a port
+     */
+    public long getAcceptQueue(int port) {
+        return acceptQueue[port * 2 + IN];
+    }
+
+    /**
+     * @return the number of sockets of a port with unacknowledged retransmissions
+     */
+    public long getRetransmitting(int port, int direction) {
+        return retransmitting[port * 2 + direction];
+    }
+
+    /**
+     * @return the value of a counter of {@link #SNMP_COUNTERS}, -1 if it is missing
+     */
+    public long getSnmpCounter(int counter) {
+        return snmp[counter];
+    }
+
+    private void readSocketTable(File file) throws IOException {
+        byte[] b = buffer;
+        int limit = 0;
+        boolean header = true;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            while (true) {
+                int read = in.read(b, limit, b.length - limit);
+                if (read > 0) {
+                    limit += read;
+                }
+                int line = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (b[i] == '\n') {
+                        if (header) {
+                            header = false;
+                        } else {
+                            parseSocket(b, line, i);
+                        }
+                        line = i + 1;
+                    }
+                }
+                if (read <= 0) {
+                    if (line < limit && !header) {
+                        parseSocket(b, line, limit);
+                    }
+                    return;
+                }
+                // carry the incomplete last line over to the next chunk
+                System.arraycopy(b, line, b, 0, limit - line);
+                limit -= line;
+                if (limit == b.length) {
+                    throw new IOException("Line too long in " + file);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parse one line of a socket table, e.g.
+     * <code>0: 0100007F:1F96 0100007F:C3A0 01 00000000:00000000 00:00000000 00000000 ...</code>
+     */
+    private void parseSocket(byte[] b, int start, int end) {
+        // columns: sl, local_address, rem_address, st, tx_queue:rx_queue, tr:tm->when, retrnsmt
+        int pos = skipColumn(b, start, end);
+        int localEnd = nextSpace(b, skipSpaces(b, pos, end), end);
+        int remoteStart = skipSpaces(b, localEnd, end);
+        int remoteEnd = nextSpace(b, remoteStart, end);
+        if (remoteEnd >= end) {
+            return;
+        }
+        int localPort = (int) parseHex(b, lastColon(b, localEnd) + 1, localEnd);
+        int remotePort = (int) parseHex(b, lastColon(b, remoteEnd) + 1, remoteEnd);
+
+        int in = indexOf(localPort);
+        int out = indexOf(remotePort);
+        if (in < 0 && out < 0) {
+            return;
+        }
+
+        pos = skipSpaces(b, remoteEnd, end);
+        int state = (int) parseHex(b, pos, nextSpace(b, pos, end));
+        pos = skipSpaces(b, nextSpace(b, pos, end), end);
+        int colon = pos;
+        while (colon < end && b[colon] != ':') {
+            colon++;
+        }
+        long tx = parseHex(b, pos, colon);
+        long rx = parseHex(b, colon + 1, nextSpace(b, colon, end));
+        pos = skipColumn(b, nextSpace(b, colon, end), end);
+        pos = skipSpaces(b, pos, end);
+        long retransmits = parseHex(b, pos, nextSpace(b, pos, end));
+
+        if (in >= 0) {
+            add(in * 2 + IN, state, tx, rx, retransmits);
+        }
+        if (out >= 0) {
+            add(out * 2 + OUT, state, tx, rx, retransmits);
+        }
+    }
+
+    private void add(int i, int state, long tx, long rx, long retransmits) {
+        if (state > 0 && state < STATES.length) {
+            states[i][state]++;
+        }
+        if (state == LISTEN) {
+            // the queues of a listener are its accept queue and backlog
+            acceptQueue[i] += rx;
+            return;
+        }
+        rxQueue[i] += rx;
+        txQueue[i] += tx;
+        maxRxQueue[i] = Math.max(maxRxQueue[i], rx);
+        maxTxQueue[i] = Math.max(maxTxQueue[i], tx);
+        if (retransmits > 0) {
+            retransmitting[i]++;
+        }
+    }
+
+    /**
+     * Read the counters of the Tcp lines of /proc/net/snmp: a line of names followed by a line of values.
+     */
+    private void readSnmp() throws IOException {
+        Arrays.fill(snmp, -1L);
+        Arrays.fill(snmpColumns, -1);
+        byte[] b = buffer;
+        int length = 0;
+        FileInputStream in;
+        try {
+            in = new FileInputStream(snmpFile);
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        try {
+            int n;
+            while (length < b.length && (n = in.read(b, length, b.length - length)) > 0) {
+                length += n;
+            }
+        } finally {
+            in.close();
+        }
+
+        boolean names = true;
+        int line = 0;
+        while (line < length) {
+            int end = line;
+            while (end < length && b[end] != '\n') {
+                end++;
+            }
+            if (startsWith(b, line, end, TCP)) {
+                int column = 0;
+                int pos = skipSpaces(b, line + TCP.length, end);
+                while (pos < end) {
+                    int tokenEnd = nextSpace(b, pos, end);
+                    for (int i = 0; i < SNMP_NAMES.length; i++) {
+                        if (names && tokenEnd - pos == SNMP_NAMES[i].length && startsWith(b, pos, end, SNMP_NAMES[i])) {
+                            snmpColumns[i] = column;
+                        } else if (!names && snmpColumns[i] == column) {
+                            snmp[i] = parseDecimal(b, pos, tokenEnd);
+                        }
+                    }
+                    column++;
+                    pos = skipSpaces(b, tokenEnd, end);
+                }
+                if (!names) {
+                    return;
+                }
+                names = false;
+            }
+            line = end + 1;
+        }
+    }
+
+    private int indexOf(int port) {
+        for (int i = 0; i < ports.length; i++) {
+            if (ports[i] == port && port > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipColumn(byte[] b, int pos, int end) {
+        return nextSpace(b, skipSpaces(b, pos, end), end);
+    }
+
+    private static int skipSpaces(byte[] b, int pos, int end) {
+        while (pos < end && b[pos] == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int nextSpace(byte[] b, int pos, int end) {
+        while (pos < end && b[pos] != ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int lastColon(byte[] b, int end) {
+        int i = end - 1;
+        while (i >= 0 && b[i] != ':') {
+            i--;
+        }
+        return i;
+    }
+
+    private static long parseHex(byte[] b, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int c = b[i];
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'A' && c <= 'F') {
+                digit = c - 'A' + 10;
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                break;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static long parseDecimal(byte[] b, int start, int end) {
+        boolean negative = start < end && b[start] == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+            value = value * 10 + (b[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean startsWith(byte[] b, int pos, int end, byte[] prefix) {
+        if (pos + prefix.length > end) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -14,6 +14,7 @@ package com.netflix.dynomitemanager.resources;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import javax.ws.rs.DefaultValue;
@@ -37,12 +38,27 @@ import com.google.inject.Inject;
 import com.netflix.dynomitemanager.InstanceState;
 import com.netflix.dynomitemanager.dynomite.IDynomiteProcess;
 import com.netflix.dynomitemanager.identity.InstanceIdentity;
+import com.netflix.dynomitemanager.monitoring.LatencyHistogram;
+import com.netflix.dynomitemanager.monitoring.MetricHistory;
+import com.netflix.dynomitemanager.monitoring.MetricHistoryStore;
+import com.netflix.dynomitemanager.monitoring.RedisLatencyTask;
+import com.netflix.dynomitemanager.sidecore.backup.RangeDownloader;
 import com.netflix.dynomitemanager.sidecore.backup.RestoreTask;
+import com.netflix.dynomitemanager.sidecore.backup.SnapshotBootstrap;
 import com.netflix.dynomitemanager.sidecore.backup.SnapshotTask;
 import com.netflix.dynomitemanager.resources.DynomiteAdmin;
 import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.KeyspaceAnalyzerTask;
+import com.netflix.dynomitemanager.sidecore.storage.KeyspaceCopier;
+import com.netflix.dynomitemanager.sidecore.storage.PeerFailover;
+import com.netflix.dynomitemanager.sidecore.storage.PeerScore;
+import com.netflix.dynomitemanager.sidecore.storage.ReplicationCheckpoint;
+import com.netflix.dynomitemanager.sidecore.storage.ReplicationConvergence;
 import com.netflix.dynomitemanager.sidecore.storage.StorageProcessManager;
+import com.netflix.dynomitemanager.sidecore.storage.WarmupHandoff;
 import com.netflix.dynomitemanager.sidecore.storage.Bootstrap;
+import com.netflix.dynomitemanager.sidecore.utils.SpaceSaving;
+import com.netflix.dynomitemanager.sidecore.utils.TopK;
 
 /**
  *  DM's REST end-point 
@@ -61,12 +77,16 @@ public class DynomiteAdmin {
     private RestoreTask restoreBackup;
     private IStorageProxy storage;
     private StorageProcessManager storageProcessMgr;
+    private MetricHistoryStore metricHistory;
+    private RedisLatencyTask redisLatency;
+    private KeyspaceAnalyzerTask keyspaceAnalyzer;
 
 
     @Inject
     public DynomiteAdmin(IDynomiteProcess dynoProcess, InstanceIdentity ii, InstanceState instanceState,
 	    SnapshotTask snapshotBackup, RestoreTask restoreBackup, IStorageProxy storage,
-	    StorageProcessManager storageProcessMgr) {
+	    StorageProcessManager storageProcessMgr, MetricHistoryStore metricHistory, RedisLatencyTask redisLatency,
+	    KeyspaceAnalyzerTask keyspaceAnalyzer) {
 	this.dynoProcess = dynoProcess;
 	this.ii = ii;
 	this.instanceState = instanceState;
@@ -74,6 +94,9 @@ public class DynomiteAdmin {
 	this.restoreBackup = restoreBackup;
 	this.storage = storage;
 	this.storageProcessMgr = storageProcessMgr;
+	this.metricHistory = metricHistory;
+	this.redisLatency = redisLatency;
+	this.keyspaceAnalyzer = keyspaceAnalyzer;
     }
 
     @GET
@@ -264,6 +287,51 @@ public class DynomiteAdmin {
 	    } else {
 		warmupJson.put("status", "not started");
 	    }
+	    if (this.instanceState.getPeerSelectionStrategy() != null) {
+		warmupJson.put("peerSelection", peerSelectionJson());
+	    }
+	    KeyspaceCopier copier = this.instanceState.getKeyspaceCopier();
+	    if (copier != null) {
+		warmupJson.put("copy", new JSONObject().put("keys", copier.getKeysCopied())
+			.put("totalKeys", copier.getTotalKeys()).put("bytes", copier.getBytesCopied())
+			.put("skipped", copier.getKeysSkipped()).put("percent", copier.getPercentDone())
+			.put("elapsedSeconds", copier.getElapsedMs() / 1000).put("etaSeconds", copier.getEtaSeconds()));
+	    }
+	    ReplicationConvergence convergence = this.instanceState.getReplicationConvergence();
+	    if (convergence != null) {
+		warmupJson.put("replication", new JSONObject().put("phase", convergence.getPhase().name())
+			.put("slave", convergence.getSlaveIndex()).put("offsetDiff", convergence.getOffsetDiff())
+			.put("rateBytesPerSecond", Math.round(convergence.getRateBytesPerSecond()))
+			.put("etaSeconds", convergence.getEtaSeconds())
+			.put("elapsedSeconds", convergence.getElapsedMs() / 1000));
+	    }
+	    ReplicationCheckpoint.Decision resync = this.instanceState.getResyncDecision();
+	    if (resync != null) {
+		warmupJson.put("resync", new JSONObject().put("decision", resync.isPartial() ? "partial" : "full")
+			.put("peer", resync.getPeer()).put("reason", resync.getReason())
+			.put("gapBytes", resync.getGapBytes()).put("outcome", resync.getOutcome()));
+	    }
+	    PeerFailover failover = this.instanceState.getPeerFailover();
+	    if (failover != null) {
+		JSONArray attemptsJson = new JSONArray();
+		for (PeerFailover.Attempt attempt : failover.getAttempts()) {
+		    attemptsJson.put(new JSONObject().put("peer", attempt.getPeer())
+			    .put("result", attempt.getResult().name()).put("startTime", attempt.getStartTime())
+			    .put("elapsedMs", attempt.getElapsedMs()));
+		}
+		warmupJson.put("attempts", attemptsJson);
+		warmupJson.put("blacklist", new JSONObject(failover.getBlacklist()));
+	    }
+	    SnapshotBootstrap snapshot = this.instanceState.getSnapshotBootstrap();
+	    if (snapshot != null) {
+		warmupJson.put("snapshot", new JSONObject().put("seeded", snapshot.isSeeded())
+			.put("phasesMs", new JSONObject(snapshot.getPhaseMs())));
+	    }
+	    WarmupHandoff handoff = this.instanceState.getWarmupHandoff();
+	    if (handoff != null) {
+		warmupJson.put("handoff", new JSONObject().put("drained", handoff.isDrained())
+			.put("queueDepth", handoff.getQueueDepth()).put("phasesMs", new JSONObject(handoff.getPhaseMs())));
+	    }
 	    statusJson.put("warmup", warmupJson);
 
 	    /* backup status */
@@ -297,6 +365,12 @@ public class DynomiteAdmin {
 	    } else {
 		restoreJson.put("status", "not started");
 	    }
+	    RangeDownloader download = this.instanceState.getRangeDownloader();
+	    if (download != null) {
+		restoreJson.put("download", new JSONObject().put("bytes", download.getBytesDone())
+			.put("totalBytes", download.getTotalBytes()).put("percent", download.getPercentDone())
+			.put("elapsedSeconds", download.getElapsedMs() / 1000));
+	    }
 	    statusJson.put("restore", restoreJson);
 
 	    /* Dynomite status */
@@ -319,4 +393,154 @@ public class DynomiteAdmin {
 	    return Response.serverError().build();
 	}
     }
+
+    @GET
+    @Path("/{metrics : (?i)metrics}/{history : (?i)history}")
+    public Response metricHistoryNames() {
+	logger.info("REST call: metrics history");
+	return Response.ok(new JSONArray(metricHistory.getNames()), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * The last seconds of a metric sampled in high resolution mode, e.g.
+     * /v1/admin/metrics/history/dynomite__latency_99th?seconds=30
+     */
+    @GET
+    @Path("/{metrics : (?i)metrics}/{history : (?i)history}/{name}")
+    public Response metricHistory(@PathParam("name") String name,
+	    @DefaultValue("60") @QueryParam("seconds") int seconds) {
+	try {
+	    MetricHistory history = metricHistory.get(name);
+	    if (history == null) {
+		return Response.status(Response.Status.NOT_FOUND).build();
+	    }
+
+	    long[] timestamps = new long[history.getCapacity()];
+	    long[] values = new long[history.getCapacity()];
+	    int count = history.read(System.currentTimeMillis() - seconds * 1000L, timestamps, values);
+
+	    JSONArray samples = new JSONArray();
+	    for (int i = 0; i < count; i++) {
+		samples.put(new JSONArray().put(timestamps[i]).put(values[i]));
+	    }
+
+	    JSONObject historyJson = new JSONObject();
+	    historyJson.put("name", name);
+	    historyJson.put("intervalMs", metricHistory.getIntervalMs());
+	    historyJson.put("samples", samples);
+	    return Response.ok(historyJson, MediaType.APPLICATION_JSON).build();
+	} catch (Exception e) {
+	    logger.error("Error requesting the history of " + name + " from REST call", e);
+	    return Response.serverError().build();
+	}
+    }
+
+    /**
+     * The latency histograms of the Redis slow log by command and of the
+     * Redis latency monitor by event. Latencies are in us, buckets are pairs
+     * of the exclusive upper bound and the count.
+     */
+    @GET
+    @Path("/{redis : (?i)redis}/{latency : (?i)latency}")
+    public Response redisLatency() {
+	logger.info("REST call: redis latency");
+	try {
+	    JSONObject latencyJson = new JSONObject();
+	    latencyJson.put("lastSlowlogId", redisLatency.getLastSlowlogId());
+	    latencyJson.put("slowlog", toJson(redisLatency.getSlowlogHistograms()));
+	    latencyJson.put("latency", toJson(redisLatency.getLatencyHistograms()));
+	    return Response.ok(latencyJson, MediaType.APPLICATION_JSON).build();
+	} catch (Exception e) {
+	    logger.error("Error requesting Redis latencies from REST call", e);
+	    return Response.serverError().build();
+	}
+    }
+
+    private static JSONObject toJson(List<LatencyHistogram> histograms) throws JSONException {
+	JSONObject json = new JSONObject();
+	for (LatencyHistogram histogram : histograms) {
+	    JSONArray buckets = new JSONArray();
+	    long[] counts = histogram.getCounts();
+	    for (int i = 0; i < counts.length; i++) {
+		if (counts[i] > 0) {
+		    buckets.put(new JSONArray().put(LatencyHistogram.getUpperBound(i)).put(counts[i]));
+		}
+	    }
+
+	    JSONObject histogramJson = new JSONObject();
+	    histogramJson.put("count", histogram.getCount());
+	    histogramJson.put("sum", histogram.getSum());
+	    histogramJson.put("max", histogram.getMax());
+	    histogramJson.put("p50", histogram.getPercentile(50));
+	    histogramJson.put("p99", histogram.getPercentile(99));
+	    histogramJson.put("buckets", buckets);
+	    json.put(histogram.getName(), histogramJson);
+	}
+	return json;
+    }
+
+    /**
+     * The largest keys and hottest key prefixes found by the keyspace
+     * analyzer, for the pass in progress and the last complete pass.
+     */
+    @GET
+    @Path("/{keyspace : (?i)keyspace}/{analysis : (?i)analysis}")
+    public Response keyspaceAnalysis() {
+	logger.info("REST call: keyspace analysis");
+	try {
+	    JSONObject analysisJson = new JSONObject();
+	    analysisJson.put("current", toJson(keyspaceAnalyzer.getCurrent()));
+	    analysisJson.put("lastComplete", toJson(keyspaceAnalyzer.getLastComplete()));
+	    return Response.ok(analysisJson, MediaType.APPLICATION_JSON).build();
+	} catch (Exception e) {
+	    logger.error("Error requesting the keyspace analysis from REST call", e);
+	    return Response.serverError().build();
+	}
+    }
+
+    private static Object toJson(KeyspaceAnalyzerTask.Analysis analysis) throws JSONException {
+	if (analysis == null) {
+	    return JSONObject.NULL;
+	}
+
+	JSONArray bigKeys = new JSONArray();
+	for (TopK.Entry<String> key : analysis.getBigKeys()) {
+	    bigKeys.put(new JSONObject().put("key", key.getKey()).put("type", key.getItem())
+		    .put("size", key.getValue()));
+	}
+	JSONArray hotPrefixes = new JSONArray();
+	for (SpaceSaving.Counter prefix : analysis.getHotPrefixes()) {
+	    hotPrefixes.put(new JSONObject().put("prefix", prefix.getItem()).put("weight", prefix.getCount())
+		    .put("error", prefix.getError()));
+	}
+
+	JSONObject json = new JSONObject();
+	json.put("startedAt", analysis.getStartedAt());
+	json.put("completedAt", analysis.getCompletedAt());
+	json.put("scanned", analysis.getScanned());
+	json.put("sampled", analysis.getSampled());
+	json.put("sizeUnit", analysis.getSizeUnit());
+	json.put("weighedByFrequency", analysis.isWeighedByFrequency());
+	json.put("bigKeys", bigKeys);
+	json.put("hotPrefixes", hotPrefixes);
+	return json;
+    }
+
+    private JSONObject peerSelectionJson() throws JSONException {
+	JSONArray peers = new JSONArray();
+	for (PeerScore score : this.instanceState.getPeerScores()) {
+	    JSONObject components = new JSONObject();
+	    for (Map.Entry<String, Double> component : score.getComponents().entrySet()) {
+		components.put(component.getKey(), component.getValue());
+	    }
+	    peers.put(new JSONObject().put("host", score.getPeer().getHost()).put("score", score.getScore())
+		    .put("components", components));
+	}
+
+	JSONObject json = new JSONObject();
+	json.put("strategy", this.instanceState.getPeerSelectionStrategy());
+	// best first, the first peer was chosen
+	json.put("peers", peers);
+	return json;
+    }
 }
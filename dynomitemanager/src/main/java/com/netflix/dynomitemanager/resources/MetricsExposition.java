@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.resources;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.google.inject.Inject;
+import com.netflix.dynomitemanager.monitoring.OpenMetricsRenderer;
+
+/**
+ * Serves the Dynomite and Redis INFO metrics to Prometheus in the OpenMetrics text format.
+ *
+ * The body is the exposition pre-rendered by {@link OpenMetricsRenderer}, gzipped if the scraper accepts it. A scraper
+ * that does not accept <code>application/openmetrics-text</code> gets the Prometheus text format 0.0.4. A request whose
+ * <code>If-None-Match</code> matches the ETag of the latest exposition gets a 304.
+ */
+@Path("/v1/metrics")
+public class MetricsExposition {
+
+    private static final String GZIP = "gzip";
+    private static final String OPENMETRICS = "application/openmetrics-text";
+
+    private final OpenMetricsRenderer renderer;
+
+    @Inject
+    public MetricsExposition(OpenMetricsRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    @GET
+    public Response metrics(@HeaderParam(HttpHeaders.ACCEPT) String accept,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+            @HeaderParam("If-None-Match") String ifNoneMatch) {
+        OpenMetricsRenderer.Format format = acceptsOpenMetrics(accept) ? OpenMetricsRenderer.Format.OPENMETRICS
+                : OpenMetricsRenderer.Format.TEXT;
+        OpenMetricsRenderer.Snapshot snapshot = renderer.getSnapshot(format);
+        if (matches(ifNoneMatch, snapshot.getETag())) {
+            return Response.notModified().header("ETag", snapshot.getETag()).build();
+        }
+
+        Response.ResponseBuilder response = Response.ok().type(format.getContentType())
+                .header("ETag", snapshot.getETag())
+                .header("Vary", HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(acceptEncoding) && snapshot.getGzipped() != null) {
+            return response.entity(snapshot.getGzipped()).header("Content-Encoding", GZIP).build();
+        }
+        return response.entity(snapshot.getBody()).build();
+    }
+
+    /**
+     * @return true if one of the tags of an <code>If-None-Match</code> header is the given ETag
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // a weak comparison is good enough for a GET
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if an <code>Accept</code> header allows the OpenMetrics text format
+     */
+    public static boolean acceptsOpenMetrics(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        for (String range : accept.split(",")) {
+            String[] parts = range.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(OPENMETRICS)) {
+                for (int i = 1; i < parts.length; i++) {
+                    // application/openmetrics-text;q=0 means not acceptable
+                    if (parts[i].trim().matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if an <code>Accept-Encoding</code> header allows gzip
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(GZIP) || parts[0].trim().equals("*")) {
+                // gzip;q=0 means not acceptable
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * What a backup is stored as, kept in an object next to the backup (its key with {@link #SUFFIX}). A backup without
+ * metadata is not compressed.
+ */
+public class BackupMetadata {
+
+    public static final String SUFFIX = ".meta";
+
+    private static final String CODEC = "codec";
+    private static final String RAW_BYTES = "raw.bytes";
+    private static final String STORED_BYTES = "stored.bytes";
+    private static final String RATIO = "ratio";
+
+    private final Compression compression;
+    private final long rawBytes;
+    private final long storedBytes;
+
+    public BackupMetadata(Compression compression, long rawBytes, long storedBytes) {
+        this.compression = compression;
+        this.rawBytes = rawBytes;
+        this.storedBytes = storedBytes;
+    }
+
+    /**
+     * @return the key of the metadata of a backup
+     */
+    public static String keyOf(String backupKey) {
+        return backupKey + SUFFIX;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the size of the file that was backed up
+     */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return the size of the backup in the object store
+     */
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * @return how many times smaller the backup is than the file
+     */
+    public double getRatio() {
+        return storedBytes == 0 ? 1.0 : (double) rawBytes / storedBytes;
+    }
+
+    public byte[] toBytes() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(CODEC, compression.getCodec());
+        props.setProperty(RAW_BYTES, Long.toString(rawBytes));
+        props.setProperty(STORED_BYTES, Long.toString(storedBytes));
+        props.setProperty(RATIO, String.format(Locale.ROOT, "%.2f", getRatio()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        props.store(out, "Backup metadata");
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IOException
+     *             if the metadata cannot be read or names an unknown codec
+     */
+    public static BackupMetadata read(InputStream in) throws IOException {
+        Properties props = new Properties();
+        props.load(in);
+        Compression compression = Compression.fromCodec(props.getProperty(CODEC, Compression.NONE.getCodec()));
+        if (compression == null) {
+            throw new IOException("Unknown codec " + props.getProperty(CODEC));
+        }
+        try {
+            return new BackupMetadata(compression, Long.parseLong(props.getProperty(RAW_BYTES, "0")),
+                    Long.parseLong(props.getProperty(STORED_BYTES, "0")));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid backup metadata: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return compression.getCodec() + ", " + rawBytes + " -> " + storedBytes + " bytes ("
+                + String.format(Locale.ROOT, "%.2f", getRatio()) + "x)";
+    }
+}
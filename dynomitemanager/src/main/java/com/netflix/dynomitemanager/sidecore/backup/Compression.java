@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
+
+/**
+ * The codecs a backup can be compressed with. A backup is compressed while it is uploaded and decompressed while it is
+ * restored, in chunks, so that neither side writes the data to disk twice.
+ */
+public enum Compression {
+
+    NONE("none") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+
+    SNAPPY("snappy") {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new SnappyOutputStream(out);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new SnappyInputStream(in);
+        }
+    },
+
+    LZF("lzf") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return new LZFOutputStream(out);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new LZFInputStream(in);
+        }
+    };
+
+    private final String codec;
+
+    private Compression(String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @return the name of the codec, as in the configuration and the backup metadata
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return a stream that compresses what is written to it into the given stream. Closing it closes the given
+     *         stream.
+     */
+    public abstract OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * @return a stream that decompresses what is read from the given stream
+     */
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    /**
+     * @return the compression of the codec, or null if there is none by that name
+     */
+    public static Compression fromCodec(String codec) {
+        for (Compression compression : values()) {
+            if (compression.codec.equalsIgnoreCase(codec)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * An object store in a local directory, e.g. a mounted network file system or a stand-in for S3 in tests. The key of
+ * an object is its path relative to the directory.
+ */
+public class LocalObjectStore implements ObjectStore {
+
+    private static final String UPLOADS = ".uploads";
+
+    private final File root;
+
+    public LocalObjectStore(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public List<String> list(final String prefix) throws IOException {
+        final List<String> keys = new ArrayList<String>();
+        if (!root.isDirectory()) {
+            return keys;
+        }
+        final Path base = root.toPath();
+        Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName().toString().equals(UPLOADS) ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String key = base.relativize(file).toString().replace(File.separatorChar, '/');
+                if (key.startsWith(prefix)) {
+                    keys.add(key);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(keys);
+        return keys;
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return new FileInputStream(new File(root, key));
+    }
+
+    /**
+     * The tag of an object is its size and time of modification.
+     */
+    @Override
+    public ObjectInfo stat(String key) throws IOException {
+        File object = new File(root, key);
+        if (!object.isFile()) {
+            throw new FileNotFoundException(key);
+        }
+        return new ObjectInfo(object.length(), object.length() + "-" + object.lastModified());
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length, String tag) throws IOException {
+        if (!stat(key).getTag().equals(tag)) {
+            throw new IOException(key + " changed, its tag is not " + tag + " anymore");
+        }
+        FileChannel channel = FileChannel.open(new File(root, key).toPath(), StandardOpenOption.READ);
+        channel.position(offset);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public void put(String key, byte[] content) throws IOException {
+        File object = new File(root, key);
+        Files.createDirectories(object.getParentFile().toPath());
+        File tmp = new File(object.getPath() + ".upload");
+        Files.write(tmp.toPath(), content);
+        Files.move(tmp.toPath(), object.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(new File(root, key).toPath());
+    }
+
+    @Override
+    public String initiateUpload(String key) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Files.createDirectories(uploadDir(uploadId).toPath());
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, File file, long offset, long length)
+            throws IOException {
+        File part = new File(uploadDir(uploadId), Integer.toString(partNumber));
+        FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                transfer(in, offset, length, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return part.getName();
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, byte[] data, int length)
+            throws IOException {
+        File part = new File(uploadDir(uploadId), Integer.toString(partNumber));
+        FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+        return part.getName();
+    }
+
+    @Override
+    public void completeUpload(String key, String uploadId, List<String> partTags) throws IOException {
+        File object = new File(root, key);
+        Files.createDirectories(object.getParentFile().toPath());
+        File tmp = new File(object.getPath() + ".upload");
+        FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            for (String tag : partTags) {
+                FileChannel in = FileChannel.open(new File(uploadDir(uploadId), tag).toPath(),
+                        StandardOpenOption.READ);
+                try {
+                    transfer(in, 0, in.size(), out);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), object.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        deleteUpload(uploadId);
+    }
+
+    @Override
+    public void abortUpload(String key, String uploadId) throws IOException {
+        deleteUpload(uploadId);
+    }
+
+    private void deleteUpload(String uploadId) throws IOException {
+        File dir = uploadDir(uploadId);
+        File[] parts = dir.listFiles();
+        if (parts != null) {
+            for (File part : parts) {
+                Files.delete(part.toPath());
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
+    }
+
+    private File uploadDir(String uploadId) {
+        return new File(new File(root, UPLOADS), uploadId);
+    }
+
+    private static void transfer(FileChannel in, long offset, long length, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(offset + done, length - done, out);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of file at " + (offset + done));
+            }
+            done += n;
+        }
+    }
+}
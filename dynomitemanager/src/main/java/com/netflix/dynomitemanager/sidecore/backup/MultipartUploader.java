@@ -0,0 +1,432 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Uploads a file to the object store in parts, several parts at a time. Without compression each part is read straight
+ * from the file by the object store. With compression the file is compressed as it is read, and the compressed stream is
+ * cut into parts in memory; the file is read once and never written again. Either way the number of parts in flight is
+ * bounded, so at most that many parts are held in memory.
+ *
+ * The part size is the configured size, or larger if the file would otherwise have more parts than S3 allows. A part
+ * that fails is retried with an exponential backoff. When a part still fails, the parts in flight are cancelled and the
+ * upload is aborted, so that the object store does not keep the parts.
+ */
+@Singleton
+public class MultipartUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultipartUploader.class);
+
+    public static final String METRIC_PREFIX = "Backup_upload_";
+
+    /**
+     * The smallest part S3 takes, but for the last one.
+     */
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * The most parts an upload to S3 can have.
+     */
+    public static final int MAX_PARTS = 10000;
+
+    private final IConfiguration config;
+    private final ObjectStore store;
+    private final Sleeper sleeper;
+
+    private final BasicTimer partLatency = new BasicTimer(MonitorConfig.builder(METRIC_PREFIX + "part_latency")
+            .build(), TimeUnit.MILLISECONDS);
+    private final BasicCounter bytesUploaded = new BasicCounter(MonitorConfig.builder(METRIC_PREFIX + "bytes")
+            .build());
+    private final BasicCounter partRetries = new BasicCounter(MonitorConfig.builder(METRIC_PREFIX + "part_retries")
+            .build());
+    private final LongGauge throughput = new LongGauge(MonitorConfig.builder(METRIC_PREFIX + "bytes_per_second")
+            .build());
+
+    @Inject
+    public MultipartUploader(IConfiguration config, ObjectStore store, Sleeper sleeper) {
+        this.config = config;
+        this.store = store;
+        this.sleeper = sleeper;
+
+        DefaultMonitorRegistry.getInstance().register(partLatency);
+        DefaultMonitorRegistry.getInstance().register(bytesUploaded);
+        DefaultMonitorRegistry.getInstance().register(partRetries);
+        DefaultMonitorRegistry.getInstance().register(throughput);
+    }
+
+    /**
+     * @param contentLength
+     *            the size of the file
+     * @param partSize
+     *            the configured part size
+     * @return the part size that keeps the file within {@link #MAX_PARTS} parts
+     */
+    public static long partSize(long contentLength, long partSize) {
+        long size = Math.max(partSize, MIN_PART_SIZE);
+        long smallest = (contentLength + MAX_PARTS - 1) / MAX_PARTS;
+        if (size < smallest) {
+            // whole MB, it reads better in the logs
+            size = (smallest + (1 << 20) - 1) >> 20 << 20;
+        }
+        return size;
+    }
+
+    /**
+     * Upload a file as it is.
+     *
+     * @param file
+     *            the file to upload
+     * @param key
+     *            the key of the object
+     * @return true if the object is complete, false if the upload was aborted
+     */
+    public boolean upload(File file, String key) {
+        return upload(file, key, Compression.NONE) >= 0;
+    }
+
+    /**
+     * Upload a file, compressed as it is read.
+     *
+     * @param file
+     *            the file to upload
+     * @param key
+     *            the key of the object
+     * @param compression
+     *            the codec to compress the file with
+     * @return the size of the object, or -1 if the upload was aborted
+     */
+    public long upload(File file, String key, Compression compression) {
+        long contentLength = file.length();
+        // compression rarely makes a file larger, the part size of the file keeps its parts within the limit
+        long partSize = partSize(contentLength, (long) config.getBackupUploadPartSizeMB() << 20);
+        int concurrency = Math.max(1, config.getBackupUploadConcurrency());
+        logger.info("Uploading " + contentLength + " bytes to " + key + " (" + compression.getCodec()
+                + ") in parts of " + partSize + " bytes, " + concurrency + " at a time");
+
+        String uploadId;
+        try {
+            uploadId = store.initiateUpload(key);
+        } catch (IOException e) {
+            logger.error("Cannot start the upload of " + key, e);
+            return -1;
+        }
+
+        long start = System.currentTimeMillis();
+        Parts parts = new Parts(key, uploadId, concurrency);
+        long stored;
+        try {
+            if (compression == Compression.NONE) {
+                stored = contentLength;
+                parts.addFile(file, contentLength, partSize);
+            } else {
+                stored = parts.addStream(file, compression, (int) partSize);
+            }
+            store.completeUpload(key, uploadId, parts.getTags());
+        } catch (ExecutionException e) {
+            logger.error("Aborting the upload of " + key, e.getCause());
+            parts.abort();
+            return -1;
+        } catch (InterruptedException e) {
+            logger.error("Aborting the upload of " + key + ", interrupted");
+            Thread.currentThread().interrupt();
+            parts.abort();
+            return -1;
+        } catch (IOException e) {
+            logger.error("Aborting the upload of " + key, e);
+            parts.abort();
+            return -1;
+        } finally {
+            parts.executor.shutdownNow();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        throughput.set(contentLength * 1000 / elapsed);
+        logger.info("Uploaded " + contentLength + " bytes to " + key + " as " + stored + " bytes in " + elapsed
+                + " ms (" + throughput.getValue() + " bytes/s)");
+        return stored;
+    }
+
+    /**
+     * How a part is read.
+     */
+    private interface PartUpload {
+        String upload() throws IOException;
+    }
+
+    /**
+     * The parts of an upload, in order. A part is added when one of the parts in flight is done.
+     */
+    private class Parts {
+        private final String key;
+        private final String uploadId;
+        private final Semaphore inFlight;
+        private final ExecutorService executor;
+        private final List<Future<String>> tags = new ArrayList<Future<String>>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Parts(String key, String uploadId, int concurrency) {
+            this.key = key;
+            this.uploadId = uploadId;
+            this.inFlight = new Semaphore(concurrency);
+            this.executor = Executors.newFixedThreadPool(concurrency,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("BackupUpload-%d").build());
+        }
+
+        void addFile(final File file, long contentLength, long partSize) throws ExecutionException,
+                InterruptedException {
+            int partCount = (int) Math.max(1, (contentLength + partSize - 1) / partSize);
+            for (int i = 0; i < partCount; i++) {
+                final int partNumber = i + 1;
+                final long offset = i * partSize;
+                final long length = Math.min(partSize, contentLength - offset);
+                add(partNumber, length, new PartUpload() {
+                    @Override
+                    public String upload() throws IOException {
+                        return store.uploadPart(key, uploadId, partNumber, file, offset, length);
+                    }
+                });
+            }
+        }
+
+        /**
+         * @return the size of the compressed file
+         */
+        long addStream(File file, Compression compression, int partSize) throws ExecutionException,
+                InterruptedException, IOException {
+            PartOutputStream parts = new PartOutputStream(partSize);
+            InputStream in = new FileInputStream(file);
+            try {
+                OutputStream out = compression.compress(parts);
+                IOUtils.copyLarge(in, out);
+                out.close();
+                // in case the codec does not close the stream it wraps
+                parts.close();
+            } catch (InterruptedUpload e) {
+                throw e.interrupted;
+            } finally {
+                in.close();
+            }
+            if (tags.isEmpty()) {
+                // an empty file is still one part
+                parts.cut();
+            }
+            return parts.total;
+        }
+
+        /**
+         * Upload a part once fewer parts than the concurrency are in flight.
+         */
+        void add(final int partNumber, final long length, final PartUpload part) throws ExecutionException,
+                InterruptedException {
+            inFlight.acquire();
+            if (failure.get() != null) {
+                inFlight.release();
+                throw new ExecutionException(failure.get());
+            }
+            tags.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    try {
+                        return uploadPart(key, partNumber, length, part);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            }));
+        }
+
+        List<String> getTags() throws ExecutionException, InterruptedException {
+            List<String> result = new ArrayList<String>(tags.size());
+            for (Future<String> tag : tags) {
+                result.add(tag.get());
+            }
+            return result;
+        }
+
+        void abort() {
+            MultipartUploader.this.abort(executor, key, uploadId);
+        }
+
+        /**
+         * Cuts what is written to it into parts. Each part is a buffer of its own, so that the buffer is not reused
+         * while the part is in flight.
+         */
+        private class PartOutputStream extends OutputStream {
+            private final int partSize;
+            private byte[] buffer;
+            private int count;
+            private long total;
+
+            PartOutputStream(int partSize) {
+                this.partSize = partSize;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (buffer == null) {
+                        buffer = new byte[partSize];
+                    }
+                    int n = Math.min(len, partSize - count);
+                    System.arraycopy(b, off, buffer, count, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                    if (count == partSize) {
+                        cut();
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (count > 0) {
+                    cut();
+                }
+            }
+
+            void cut() throws IOException {
+                final byte[] data = buffer == null ? new byte[0] : buffer;
+                final int length = count;
+                final int partNumber = tags.size() + 1;
+                buffer = null;
+                count = 0;
+                total += length;
+                try {
+                    add(partNumber, length, new PartUpload() {
+                        @Override
+                        public String upload() throws IOException {
+                            return store.uploadPart(key, uploadId, partNumber, data, length);
+                        }
+                    });
+                } catch (ExecutionException e) {
+                    throw new IOException("Part upload failed", e.getCause());
+                } catch (InterruptedException e) {
+                    throw new InterruptedUpload(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries an interrupt through the streams of the compression.
+     */
+    private static class InterruptedUpload extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final InterruptedException interrupted;
+
+        InterruptedUpload(InterruptedException interrupted) {
+            this.interrupted = interrupted;
+        }
+    }
+
+    private String uploadPart(String key, int partNumber, long length, PartUpload part) throws IOException,
+            InterruptedException {
+        int retries = config.getBackupUploadRetries();
+        for (int attempt = 0;; attempt++) {
+            long start = System.nanoTime();
+            try {
+                String tag = part.upload();
+                partLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                bytesUploaded.increment(length);
+                return tag;
+            } catch (IOException e) {
+                if (attempt >= retries || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                long backoff = (long) config.getBackupUploadRetryBackoffMs() << attempt;
+                logger.warn("Part " + partNumber + " of " + key + " failed, retrying in " + backoff + " ms: "
+                        + e.getMessage());
+                partRetries.increment();
+                sleeper.sleep(backoff);
+            }
+        }
+    }
+
+    private void abort(ExecutorService executor, String key, String uploadId) {
+        executor.shutdownNow();
+        try {
+            // a part that is still uploading would be kept by S3 after the abort
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            store.abortUpload(key, uploadId);
+        } catch (IOException e) {
+            logger.error("Cannot abort the upload of " + key, e);
+        }
+    }
+
+    /**
+     * @return the time to upload a part, without its retries
+     */
+    public BasicTimer getPartLatency() {
+        return partLatency;
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded.getValue().longValue();
+    }
+
+    public long getPartRetries() {
+        return partRetries.getValue().longValue();
+    }
+
+    /**
+     * @return the throughput of the last upload that completed, in bytes per second
+     */
+    public long getThroughput() {
+        return throughput.getValue().longValue();
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * The object storage the backups are kept in, e.g. S3. Keys are paths separated by <code>/</code>.
+ */
+public interface ObjectStore {
+
+    /**
+     * The size and version of an object.
+     */
+    class ObjectInfo {
+        private final long length;
+        private final String tag;
+
+        public ObjectInfo(long length, String tag) {
+            this.length = length;
+            this.tag = tag;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the tag of the version of the object, e.g. its S3 ETag
+         */
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * @param prefix
+     *            the start of the keys
+     * @return the keys that start with the prefix
+     */
+    List<String> list(String prefix) throws IOException;
+
+    /**
+     * @param key
+     *            the key of the object
+     * @return the content of the object, to be closed by the caller
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * @param key
+     *            the key of the object
+     * @return the size and version of the object
+     */
+    ObjectInfo stat(String key) throws IOException;
+
+    /**
+     * Read a range of an object.
+     *
+     * @param offset
+     *            the position of the range in the object
+     * @param length
+     *            the size of the range
+     * @param tag
+     *            the version of the object, see {@link ObjectInfo#getTag()}
+     * @return the content of the range, to be closed by the caller
+     * @throws IOException
+     *             if the object is not of that version anymore
+     */
+    InputStream get(String key, long offset, long length, String tag) throws IOException;
+
+    /**
+     * Store a small object in one request.
+     *
+     * @param key
+     *            the key of the object
+     * @param content
+     *            the content of the object
+     */
+    void put(String key, byte[] content) throws IOException;
+
+    /**
+     * Delete an object. Does nothing if there is no such object.
+     *
+     * @param key
+     *            the key of the object
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Start an upload in parts.
+     *
+     * @param key
+     *            the key of the object
+     * @return the id of the upload
+     */
+    String initiateUpload(String key) throws IOException;
+
+    /**
+     * Upload a part, read straight from the file. Parts may be uploaded concurrently and in any order.
+     *
+     * @param partNumber
+     *            the number of the part, from 1
+     * @param offset
+     *            the position of the part in the file
+     * @param length
+     *            the size of the part
+     * @return the tag of the part, to complete the upload with
+     */
+    String uploadPart(String key, String uploadId, int partNumber, File file, long offset, long length)
+            throws IOException;
+
+    /**
+     * Upload a part from memory, e.g. a chunk of a compressed stream.
+     *
+     * @param partNumber
+     *            the number of the part, from 1
+     * @param length
+     *            the number of bytes of the data that are in the part
+     * @return the tag of the part, to complete the upload with
+     */
+    String uploadPart(String key, String uploadId, int partNumber, byte[] data, int length) throws IOException;
+
+    /**
+     * Make the object out of the parts that were uploaded.
+     *
+     * @param partTags
+     *            the tags of the parts, the tag of part number n at index n - 1
+     */
+    void completeUpload(String key, String uploadId, List<String> partTags) throws IOException;
+
+    /**
+     * Drop an upload and the parts that were uploaded.
+     */
+    void abortUpload(String key, String uploadId) throws IOException;
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
+
+/**
+ * Downloads an object in byte ranges, several ranges at a time. The file is sized to the object up front and each
+ * range is written at its position, so the ranges can arrive in any order. Every range is read from the version of
+ * the object the download started with; the file is synced to disk once, when all the ranges are written. A range
+ * that fails is retried with a growing backoff, from where it stopped.
+ *
+ * The progress of the download is kept for the status of the restore.
+ */
+@Singleton
+public class RangeDownloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(RangeDownloader.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final IConfiguration config;
+    private final ObjectStore store;
+    private final InstanceState state;
+    private final Sleeper sleeper;
+
+    private final AtomicLong bytesDone = new AtomicLong();
+    private volatile long totalBytes;
+    private volatile long startTime;
+
+    @Inject
+    public RangeDownloader(IConfiguration config, ObjectStore store, InstanceState state, Sleeper sleeper) {
+        this.config = config;
+        this.store = store;
+        this.state = state;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Download an object.
+     *
+     * @param key
+     *            the key of the object
+     * @param file
+     *            the file to write the object to, overwritten
+     * @return the size of the object
+     * @throws IOException
+     *             if a range failed, or the file does not have the size of the object
+     */
+    public long download(final String key, File file) throws IOException {
+        final ObjectStore.ObjectInfo info = store.stat(key);
+        long rangeSize = Math.max(1, (long) config.getRestoreRangeSizeMB() << 20);
+        int rangeCount = (int) Math.max(1, (info.getLength() + rangeSize - 1) / rangeSize);
+        int concurrency = Math.max(1, Math.min(config.getRestoreConcurrency(), rangeCount));
+        bytesDone.set(0);
+        totalBytes = info.getLength();
+        startTime = System.currentTimeMillis();
+        state.setRangeDownloader(this);
+        logger.info("Downloading " + info.getLength() + " bytes of " + key + " (" + info.getTag() + ") in "
+                + rangeCount + " ranges of " + rangeSize + " bytes, " + concurrency + " at a time");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("RestoreDownload-%d").build());
+        try {
+            raf.setLength(info.getLength());
+            final FileChannel channel = raf.getChannel();
+            List<Future<Long>> ranges = new ArrayList<Future<Long>>(rangeCount);
+            for (int i = 0; i < rangeCount; i++) {
+                final long offset = i * rangeSize;
+                final long length = Math.min(rangeSize, info.getLength() - offset);
+                ranges.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException, InterruptedException {
+                        return downloadRange(key, info.getTag(), offset, length, channel);
+                    }
+                }));
+            }
+            long total = 0;
+            for (Future<Long> range : ranges) {
+                total += range.get();
+            }
+            if (total != info.getLength() || channel.size() != info.getLength()) {
+                throw new IOException("Downloaded " + total + " bytes of " + key + ", expected "
+                        + info.getLength());
+            }
+            channel.force(true);
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("Download of " + key + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Download of " + key + " interrupted");
+        } finally {
+            executor.shutdownNow();
+            try {
+                // no range may write to the file once it is closed
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            raf.close();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        logger.info("Downloaded " + info.getLength() + " bytes of " + key + " in " + elapsed + " ms ("
+                + info.getLength() * 1000 / elapsed + " bytes/s)");
+        return info.getLength();
+    }
+
+    private long downloadRange(String key, String tag, long offset, long length, FileChannel channel)
+            throws IOException, InterruptedException {
+        int retries = config.getRestoreRangeRetries();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long done = 0;
+        for (int attempt = 0;; attempt++) {
+            try {
+                // a retry reads the rest of the range, from the same version of the object
+                InputStream in = store.get(key, offset + done, length - done, tag);
+                try {
+                    while (done < length) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, length - done));
+                        if (n < 0) {
+                            throw new IOException("Range at " + offset + " of " + key + " ended after " + done
+                                    + " of " + length + " bytes");
+                        }
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                        long position = offset + done;
+                        while (chunk.hasRemaining()) {
+                            position += channel.write(chunk, position);
+                        }
+                        done += n;
+                        bytesDone.addAndGet(n);
+                    }
+                    return done;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                if (done == length) {
+                    // only the close failed
+                    return done;
+                }
+                if (attempt >= retries || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                long backoff = (long) config.getRestoreRangeRetryBackoffMs() << attempt;
+                logger.warn("Range at " + offset + " of " + key + " failed after " + done + " of " + length
+                        + " bytes, retrying in " + backoff + " ms: " + e.getMessage());
+                sleeper.sleep(backoff);
+            }
+        }
+    }
+
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getPercentDone() {
+        long total = totalBytes;
+        return total == 0 ? 100 : (int) (bytesDone.get() * 100 / total);
+    }
+
+    /**
+     * @return the time since the last download started
+     */
+    public long getElapsedMs() {
+        return System.currentTimeMillis() - startTime;
+    }
+}
@@ -14,4 +14,11 @@ package com.netflix.dynomitemanager.sidecore.backup;
 
 public interface Restore {
 	boolean restoreData(String dateString);
+
+	/**
+	 * Restore the most recent backup of the token of this node.
+	 *
+	 * @return false if there is no backup or it could not be restored
+	 */
+	boolean restoreLatest();
 }
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.ICredential;
+
+/**
+ * The objects of the backup bucket in S3.
+ */
+@Singleton
+public class S3ObjectStore implements ObjectStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectStore.class);
+
+    private final IConfiguration config;
+    private final ICredential cred;
+    private volatile AmazonS3Client client;
+
+    @Inject
+    public S3ObjectStore(IConfiguration config, ICredential cred) {
+        this.config = config;
+        this.cred = cred;
+    }
+
+    private AmazonS3Client client() {
+        // the client is thread safe, the parts of an upload share its connections
+        if (client == null) {
+            synchronized (this) {
+                if (client == null) {
+                    client = new AmazonS3Client(cred.getAwsCredentialProvider());
+                }
+            }
+        }
+        return client;
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        List<String> keys = new ArrayList<String>();
+        AmazonS3Client s3Client = client();
+        try {
+            ObjectListing listing = s3Client.listObjects(new ListObjectsRequest()
+                    .withBucketName(config.getBucketName()).withPrefix(prefix));
+            while (true) {
+                for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                    keys.add(summary.getKey());
+                }
+                if (!listing.isTruncated()) {
+                    return keys;
+                }
+                listing = s3Client.listNextBatchOfObjects(listing);
+            }
+        } catch (AmazonClientException e) {
+            throw failure("list " + prefix, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return client().getObject(config.getBucketName(), key).getObjectContent();
+        } catch (AmazonClientException e) {
+            throw failure("get " + key, e);
+        }
+    }
+
+    @Override
+    public ObjectInfo stat(String key) throws IOException {
+        try {
+            ObjectMetadata metadata = client().getObjectMetadata(config.getBucketName(), key);
+            return new ObjectInfo(metadata.getContentLength(), metadata.getETag());
+        } catch (AmazonClientException e) {
+            throw failure("stat " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length, String tag) throws IOException {
+        // S3 returns no object when the ETag does not match anymore
+        GetObjectRequest request = new GetObjectRequest(config.getBucketName(), key)
+                .withRange(offset, offset + length - 1).withMatchingETagConstraint(tag);
+        S3Object object;
+        try {
+            object = client().getObject(request);
+        } catch (AmazonClientException e) {
+            throw failure("get " + key + " at " + offset, e);
+        }
+        if (object == null) {
+            throw new IOException(key + " changed, its ETag is not " + tag + " anymore");
+        }
+        return object.getObjectContent();
+    }
+
+    @Override
+    public void put(String key, byte[] content) throws IOException {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        try {
+            client().putObject(new PutObjectRequest(config.getBucketName(), key, new ByteArrayInputStream(content),
+                    metadata));
+        } catch (AmazonClientException e) {
+            throw failure("put " + key, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            client().deleteObject(config.getBucketName(), key);
+        } catch (AmazonClientException e) {
+            throw failure("delete " + key, e);
+        }
+    }
+
+    @Override
+    public String initiateUpload(String key) throws IOException {
+        try {
+            return client().initiateMultipartUpload(new InitiateMultipartUploadRequest(config.getBucketName(), key))
+                    .getUploadId();
+        } catch (AmazonClientException e) {
+            throw failure("initiate upload of " + key, e);
+        }
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, File file, long offset, long length)
+            throws IOException {
+        try {
+            UploadPartRequest request = new UploadPartRequest().withBucketName(config.getBucketName())
+                    .withKey(key).withUploadId(uploadId).withPartNumber(partNumber).withFile(file)
+                    .withFileOffset(offset).withPartSize(length);
+            return client().uploadPart(request).getPartETag().getETag();
+        } catch (AmazonClientException e) {
+            throw failure("upload part " + partNumber + " of " + key, e);
+        }
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, byte[] data, int length)
+            throws IOException {
+        try {
+            UploadPartRequest request = new UploadPartRequest().withBucketName(config.getBucketName())
+                    .withKey(key).withUploadId(uploadId).withPartNumber(partNumber)
+                    .withInputStream(new ByteArrayInputStream(data, 0, length)).withPartSize(length);
+            return client().uploadPart(request).getPartETag().getETag();
+        } catch (AmazonClientException e) {
+            throw failure("upload part " + partNumber + " of " + key, e);
+        }
+    }
+
+    @Override
+    public void completeUpload(String key, String uploadId, List<String> partTags) throws IOException {
+        List<PartETag> partETags = new ArrayList<PartETag>(partTags.size());
+        for (int i = 0; i < partTags.size(); i++) {
+            partETags.add(new PartETag(i + 1, partTags.get(i)));
+        }
+        try {
+            client().completeMultipartUpload(new CompleteMultipartUploadRequest(config.getBucketName(), key,
+                    uploadId, partETags));
+        } catch (AmazonClientException e) {
+            throw failure("complete upload of " + key, e);
+        }
+    }
+
+    @Override
+    public void abortUpload(String key, String uploadId) throws IOException {
+        try {
+            client().abortMultipartUpload(new AbortMultipartUploadRequest(config.getBucketName(), key, uploadId));
+        } catch (AmazonClientException e) {
+            throw failure("abort upload of " + key, e);
+        }
+    }
+
+    private IOException failure(String operation, AmazonClientException e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            logger.error("AmazonServiceException;"
+                    + " request made it to Amazon S3, but was rejected with an error ");
+            logger.error("HTTP Status Code: " + ase.getStatusCode());
+            logger.error("AWS Error Code:   " + ase.getErrorCode());
+            logger.error("Request ID:       " + ase.getRequestId());
+        }
+        return new IOException("Cannot " + operation + " in S3 bucket " + config.getBucketName() + ": "
+                + e.getMessage(), e);
+    }
+}
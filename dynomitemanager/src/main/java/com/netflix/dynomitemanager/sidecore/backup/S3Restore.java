@@ -15,6 +15,7 @@ package com.netflix.dynomitemanager.sidecore.backup;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,92 +26,149 @@ import org.joda.time.format.DateTimeFormatter;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import com.netflix.dynomitemanager.sidecore.ICredential;
 import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
 import com.netflix.dynomitemanager.identity.InstanceIdentity;
-import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
-import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
 
 @Singleton
 public class S3Restore implements Restore {
 
 	private static final Logger logger = LoggerFactory.getLogger(S3Restore.class);
 
-	@Inject private IConfiguration config;
+	private final IConfiguration config;
 
-	@Inject private ICredential cred;
+	private final InstanceIdentity iid;
 
-	@Inject private InstanceIdentity iid;
+	private final ObjectStore store;
+
+	private final RangeDownloader downloader;
+
+	@Inject
+	public S3Restore(IConfiguration config, InstanceIdentity iid, ObjectStore store, RangeDownloader downloader) {
+		this.config = config;
+		this.iid = iid;
+		this.store = store;
+		this.downloader = downloader;
+	}
 
 	/**
-	 * Uses the Amazon S3 API to restore from S3
+	 * Restores the backup of the given day from S3
 	 */
 	@Override
 	public boolean restoreData(String dateString) {
 		long time = restoreTime(dateString);
 		if (time > -1) {
-			logger.info("Restoring data from S3.");
-			AmazonS3Client s3Client = new AmazonS3Client(cred.getAwsCredentialProvider());
-
-			try {
-			   /* construct the key for the backup data */
-				String keyName = config.getBackupLocation() + "/" +
-						iid.getInstance().getDatacenter() + "/" +
-						iid.getInstance().getRack() + "/" +
-						iid.getInstance().getToken() + "/" +
-						time;
-
-				logger.info("S3 Bucket Name: " + config.getBucketName());
-				logger.info("Key in Bucket: " + keyName);
-
-				// Checking if the S3 bucket exists, and if does not, then we create it
-				if (!(s3Client.doesBucketExist(config.getBucketName()))) {
-					logger.error("Bucket with name: " + config.getBucketName() + " does not exist");
-				} else {
-					S3Object s3object = s3Client
-							.getObject(new GetObjectRequest(config.getBucketName(),
-									keyName));
-
-					logger.info("Content-Type: " + s3object.getObjectMetadata().getContentType());
-
-					String filepath = null;
-
-					if (config.isRedisAofEnabled()) {
-						filepath = config.getRedisDataDir() + "/appendonly.aof";
-					} else {
-						filepath = config.getRedisDataDir() + "/nfredis.rdb";
-					}
-
-					IOUtils.copy(s3object.getObjectContent(),
-							new FileOutputStream(new File(filepath)));
+			return download(keyPrefix() + time);
+		}
+		logger.error("Date in FP: " + dateString);
+		return false;
+	}
+
+	/**
+	 * Restores the most recent backup from S3. The backups of a token are
+	 * keyed by the time of the day they were taken.
+	 */
+	@Override
+	public boolean restoreLatest() {
+		String prefix = keyPrefix();
+		String latest = null;
+		long latestTime = -1;
+		try {
+			for (String key : store.list(prefix)) {
+				long time;
+				try {
+					time = Long.parseLong(key.substring(prefix.length()));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				if (time > latestTime) {
+					latestTime = time;
+					latest = key;
 				}
-				return true;
-			} catch (AmazonServiceException ase) {
-
-				logger.error("AmazonServiceException;"
-						+ " request made it to Amazon S3, but was rejected with an error ");
-				logger.error("Error Message:    " + ase.getMessage());
-				logger.error("HTTP Status Code: " + ase.getStatusCode());
-				logger.error("AWS Error Code:   " + ase.getErrorCode());
-				logger.error("Error Type:       " + ase.getErrorType());
-				logger.error("Request ID:       " + ase.getRequestId());
-
-			} catch (AmazonClientException ace) {
-				logger.error("AmazonClientException;" +
-						" the client encountered " +
-						"an internal error while trying to " +
-						"communicate with S3, ");
-				logger.error("Error Message: " + ace.getMessage());
-			} catch (IOException io) {
-				logger.error("File storing error: " + io.getMessage());
 			}
-		} else {
-			logger.error("Date in FP: " + dateString);
+		} catch (IOException e) {
+			logger.error("Cannot list the backups under " + prefix + ": " + e.getMessage());
+			return false;
+		}
+		if (latest == null) {
+			logger.error("No backup under " + prefix);
+			return false;
+		}
+		logger.info("Latest backup is from " + new DateTime(latestTime));
+		return download(latest);
+	}
+
+	/**
+	 * The key of a backup: backup location + DC + rack + token + time
+	 */
+	private String keyPrefix() {
+		return config.getBackupLocation() + "/" +
+				iid.getInstance().getDatacenter() + "/" +
+				iid.getInstance().getRack() + "/" +
+				iid.getInstance().getToken() + "/";
+	}
+
+	/**
+	 * Writes a backup where Redis loads its data from. The data is written
+	 * to a temporary file first, so a failed download does not leave half
+	 * a file for Redis to load. A backup that is not compressed is
+	 * downloaded in byte ranges, in parallel; a compressed backup is
+	 * decompressed while it is downloaded in one stream.
+	 */
+	private boolean download(String keyName) {
+		logger.info("Restoring data from S3.");
+		logger.info("S3 Bucket Name: " + config.getBucketName());
+		logger.info("Key in Bucket: " + keyName);
+
+		File file = config.isRedisAofEnabled() ? new File(config.getRedisDataDir(), "appendonly.aof")
+				: new File(config.getRedisDataDir(), "nfredis.rdb");
+		File tmp = new File(file.getPath() + ".download");
+		InputStream in = null;
+		FileOutputStream out = null;
+		try {
+			Compression compression = metadata(keyName).getCompression();
+			long bytes;
+			if (compression == Compression.NONE) {
+				bytes = downloader.download(keyName, tmp);
+			} else {
+				in = compression.decompress(store.get(keyName));
+				out = new FileOutputStream(tmp);
+				bytes = IOUtils.copyLarge(in, out);
+				out.getFD().sync();
+				out.close();
+				out = null;
+			}
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Cannot rename " + tmp + " to " + file);
+			}
+			logger.info("Restored " + bytes + " bytes to " + file);
+			return true;
+		} catch (IOException io) {
+			logger.error("File storing error: " + io.getMessage());
+			tmp.delete();
+			return false;
+		} finally {
+			IOUtils.closeQuietly(in);
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * @return the metadata of a backup, backups without one are not
+	 *         compressed
+	 */
+	private BackupMetadata metadata(String keyName) throws IOException {
+		String metaKey = BackupMetadata.keyOf(keyName);
+		if (!store.list(metaKey).contains(metaKey)) {
+			return new BackupMetadata(Compression.NONE, 0, 0);
+		}
+		InputStream in = store.get(metaKey);
+		try {
+			BackupMetadata metadata = BackupMetadata.read(in);
+			logger.info("Backup " + keyName + ": " + metadata);
+			return metadata;
+		} finally {
+			in.close();
 		}
-		return false;
 	}
 
 	private long restoreTime(String dateString) {
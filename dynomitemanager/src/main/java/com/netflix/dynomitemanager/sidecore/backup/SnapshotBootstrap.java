@@ -0,0 +1,151 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.sidecore.storage.Bootstrap;
+import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.StorageProcessManager;
+
+/**
+ * Warms up the storage from the latest backup of its token before it catches up with a peer. The warm up has three
+ * phases:
+ * <ol>
+ * <li>download: the latest backup is restored into the data directory of the storage;</li>
+ * <li>load: the storage is started and loads the backup;</li>
+ * <li>catch up: the storage catches up with a peer. The peer serves a partial resync only if it knows the replication
+ * id and offset the storage reports after the load, see
+ * {@link com.netflix.dynomitemanager.sidecore.storage.ReplicationCheckpoint}; a storage that loaded the backup
+ * as a master usually has a new id. Otherwise the keyspace of the peer is replayed over the backup, which is never
+ * flushed: each key of the peer replaces the local one and the keys the peer does not have are deleted. The keys
+ * written on the peer during the replay are copied again at the handoff. The replay is bounded by the maximum time to
+ * bootstrap and the rate of the keyspace copy, and spares the peer the fork of a full sync.</li>
+ * </ol>
+ * The time of each phase is kept, so that the slowest one shows.
+ */
+@Singleton
+public class SnapshotBootstrap {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotBootstrap.class);
+
+    /**
+     * The warm up mode that seeds the storage from a backup.
+     */
+    public static final String MODE = "snapshot";
+
+    public static final String PHASE_DOWNLOAD = "download";
+    public static final String PHASE_LOAD = "load";
+    public static final String PHASE_CATCH_UP = "catchup";
+
+    private final Restore restore;
+    private final StorageProcessManager storageProcessMgr;
+    private final IStorageProxy storageProxy;
+    private final InstanceState state;
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private volatile boolean seeded;
+
+    @Inject
+    public SnapshotBootstrap(Restore restore, StorageProcessManager storageProcessMgr, IStorageProxy storageProxy,
+            InstanceState state) {
+        this.restore = restore;
+        this.storageProcessMgr = storageProcessMgr;
+        this.storageProxy = storageProxy;
+        this.state = state;
+    }
+
+    /**
+     * Download the latest backup and start the storage with it. The storage is started even if there is no backup.
+     *
+     * @return true if the storage holds the backup
+     */
+    public boolean seed() throws IOException {
+        synchronized (phases) {
+            phases.clear();
+        }
+        seeded = false;
+        state.setSnapshotBootstrap(this);
+
+        long start = System.currentTimeMillis();
+        boolean restored = restore.restoreLatest();
+        endPhase(PHASE_DOWNLOAD, start);
+
+        start = System.currentTimeMillis();
+        storageProcessMgr.start();
+        seeded = restored && storageProxy.loadingData();
+        endPhase(PHASE_LOAD, start);
+        if (!seeded) {
+            logger.warn("Storage is not seeded from a backup, warming up from a peer only");
+        }
+        return seeded;
+    }
+
+    /**
+     * Catch up with a peer after {@link #seed()}.
+     *
+     * @param peers
+     *            the peers with the same token
+     * @return the status of the warm up
+     */
+    public Bootstrap catchUp(String[] peers) {
+        long start = System.currentTimeMillis();
+        Bootstrap result = storageProxy.warmUpStorage(peers);
+        endPhase(PHASE_CATCH_UP, start);
+
+        Map<String, Long> times = getPhaseMs();
+        String slowest = null;
+        for (Map.Entry<String, Long> phase : times.entrySet()) {
+            if (slowest == null || phase.getValue() > times.get(slowest)) {
+                slowest = phase.getKey();
+            }
+        }
+        logger.info("Snapshot bootstrap " + result + " in " + times + " ms, " + slowest + " took longest");
+        return result;
+    }
+
+    private void endPhase(String phase, long start) {
+        long elapsed = System.currentTimeMillis() - start;
+        logger.info("Snapshot bootstrap " + phase + " took " + elapsed + " ms");
+        synchronized (phases) {
+            // a warm up that fails over to another peer catches up more than once
+            Long before = phases.get(phase);
+            phases.put(phase, before == null ? elapsed : before + elapsed);
+        }
+    }
+
+    /**
+     * @return true if the storage was started with the latest backup
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * @return the time (in ms) of each phase done so far, in order
+     */
+    public Map<String, Long> getPhaseMs() {
+        synchronized (phases) {
+            return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(phases));
+        }
+    }
+}
@@ -37,11 +37,23 @@ public interface IStorageProxy {
      */
     boolean resetStorage();
 
+    /**
+     * @return Stop syncing from a peer and drop what a failed warm up left,
+     *         before warming up from another peer
+     */
+    boolean discardWarmUp();
+
     boolean takeSnapshot();
 
     boolean loadingData();
 
     void stopPeerSync();
+
+    /**
+     * Stop syncing from a peer without catching up with it, e.g. when
+     * Dynomite did not start
+     */
+    void abortPeerSync();
     
     String getEngine();
     
@@ -0,0 +1,364 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
+import com.netflix.dynomitemanager.sidecore.scheduler.Task;
+import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
+import com.netflix.dynomitemanager.sidecore.utils.SpaceSaving;
+import com.netflix.dynomitemanager.sidecore.utils.TopK;
+
+/**
+ * Background analyzer of the local Redis keyspace that finds the largest keys and the hottest key prefixes.
+ *
+ * The keyspace is walked with <code>SCAN</code>; the cursor and the keys of the batch not sampled yet are kept between
+ * runs, so each run continues where the previous one stopped, a run only takes a slice of time and every scanned key
+ * is counted once. Every scanned key is sampled with <code>TYPE</code>, <code>MEMORY USAGE</code> and
+ * <code>OBJECT FREQ</code>. On Redis versions without <code>MEMORY USAGE</code> the size is the number of elements,
+ * and without an LFU eviction policy every key of a prefix weighs 1. All commands share a budget of
+ * {@link IConfiguration#getKeyspaceAnalyzerOpsPerSecond()}.
+ *
+ * The largest keys are kept in a {@link TopK} and the prefixes (up to the first ':') in a {@link SpaceSaving} sketch,
+ * so memory use does not depend on the size of the keyspace. The analysis of the last complete pass is kept next to
+ * the one in progress.
+ *
+ * The analyzer pauses while the node is bootstrapping or taking a backup.
+ */
+@Singleton
+public class KeyspaceAnalyzerTask extends Task {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyspaceAnalyzerTask.class);
+
+    // The Task name for identification
+    public static final String TaskName = "Keyspace-Analyzer-Task";
+
+    public static final String UNIT_BYTES = "bytes";
+    public static final String UNIT_ELEMENTS = "elements";
+
+    private static final int INTERVAL_MS = 60 * 1000;
+    private static final int SLICE_MS = 20 * 1000;
+    private static final String SCAN_COUNT = "100";
+    private static final char PREFIX_DELIMITER = ':';
+    private static final int MAX_PREFIX_LENGTH = 64;
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    private final IStorageProxy storageProxy;
+    private final InstanceState state;
+    private final RateLimiter limiter;
+
+    private RespConnection connection;
+    private boolean memoryUsageSupported = true;
+    private boolean objectFreqSupported = true;
+
+    private String cursor = "0";
+    // the keys of the last SCAN batch that are not sampled yet, and the cursor that follows the batch
+    private final Deque<byte[]> batch = new ArrayDeque<byte[]>();
+    private String batchNext;
+    private volatile Analysis current;
+    private volatile Analysis lastComplete;
+
+    /**
+     * The results of one pass over the keyspace.
+     */
+    public static class Analysis {
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long completedAt;
+        private volatile long scanned;
+        private volatile long sampled;
+        private volatile String sizeUnit = UNIT_BYTES;
+        private volatile boolean weighedByFrequency = true;
+        private final int topKeys;
+        private final TopK<String> bigKeys;
+        private final SpaceSaving prefixes;
+
+        private Analysis(int topKeys) {
+            this.topKeys = topKeys;
+            this.bigKeys = new TopK<String>(topKeys);
+            // more counters than reported make the reported ones more accurate
+            this.prefixes = new SpaceSaving(4 * topKeys);
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        /**
+         * @return when the pass completed, 0 if it is still in progress
+         */
+        public long getCompletedAt() {
+            return completedAt;
+        }
+
+        public long getScanned() {
+            return scanned;
+        }
+
+        public long getSampled() {
+            return sampled;
+        }
+
+        /**
+         * @return the unit of the key sizes, {@link KeyspaceAnalyzerTask#UNIT_BYTES} or
+         *         {@link KeyspaceAnalyzerTask#UNIT_ELEMENTS}
+         */
+        public String getSizeUnit() {
+            return sizeUnit;
+        }
+
+        /**
+         * @return true if prefixes are weighed by the LFU access frequency, false if by their number of keys
+         */
+        public boolean isWeighedByFrequency() {
+            return weighedByFrequency;
+        }
+
+        /**
+         * @return the largest keys, largest first. The item of an entry is the type of the key.
+         */
+        public List<TopK.Entry<String>> getBigKeys() {
+            return bigKeys.get();
+        }
+
+        /**
+         * @return the hottest key prefixes, hottest first
+         */
+        public List<SpaceSaving.Counter> getHotPrefixes() {
+            return prefixes.top(topKeys);
+        }
+    }
+
+    @Inject
+    public KeyspaceAnalyzerTask(IConfiguration config, IStorageProxy storageProxy, InstanceState state) {
+        super(config);
+        this.storageProxy = storageProxy;
+        this.state = state;
+        this.limiter = RateLimiter.create(Math.max(1, config.getKeyspaceAnalyzerOpsPerSecond()));
+    }
+
+    /**
+     * Returns a timer that enables this task to run once every minute
+     *
+     * @return TaskTimer
+     */
+    public static TaskTimer getTimer() {
+        return new SimpleTimer(TaskName, INTERVAL_MS);
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    /**
+     * @return the analysis in progress, null if the analyzer has not run yet
+     */
+    public Analysis getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return the analysis of the last complete pass over the keyspace, null if there is none yet
+     */
+    public Analysis getLastComplete() {
+        return lastComplete;
+    }
+
+    @Override
+    public synchronized void execute() throws Exception {
+        if (isPaused()) {
+            return;
+        }
+        limiter.setRate(Math.max(1, config.getKeyspaceAnalyzerOpsPerSecond()));
+        if (current == null) {
+            current = new Analysis(Math.max(1, config.getKeyspaceAnalyzerTopKeys()));
+        }
+
+        long deadline = System.currentTimeMillis() + SLICE_MS;
+        try {
+            RespConnection conn = getConnection();
+            while (System.currentTimeMillis() < deadline) {
+                if (isPaused()) {
+                    logger.info("Pausing keyspace analysis at cursor " + cursor);
+                    return;
+                }
+                if (scan(conn)) {
+                    completePass();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Keyspace analysis failed at cursor " + cursor, e);
+        }
+    }
+
+    /**
+     * Close the connection to Redis. The next run reconnects.
+     */
+    public synchronized void close() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private boolean isPaused() {
+        return state.isBootstrapping() || state.isBackingup();
+    }
+
+    /**
+     * Scan and sample one batch of keys, or what is left of it.
+     *
+     * @return true if the pass is complete
+     */
+    private boolean scan(RespConnection conn) throws IOException {
+        if (batchNext == null) {
+            limiter.acquire();
+            List<Object> reply = RespConnection.asList(conn.call("SCAN", cursor, "COUNT", SCAN_COUNT));
+            String next = RespConnection.asString(reply.get(0));
+            for (Object key : RespConnection.asList(reply.get(1))) {
+                batch.add((byte[]) key);
+            }
+            batchNext = next;
+        }
+
+        Analysis analysis = current;
+        while (!batch.isEmpty()) {
+            if (isPaused()) {
+                // the rest of the batch is sampled after the pause
+                return false;
+            }
+            // taken off the batch first, so that a key that fails is not sampled again
+            byte[] key = batch.poll();
+            analysis.scanned++;
+            try {
+                sample(conn, analysis, key);
+            } catch (RespConnection.RespException e) {
+                // e.g. WRONGTYPE, the key changed its type between TYPE and the sizing
+                logger.debug("Skipping a key that could not be sampled: " + e.getMessage());
+            }
+        }
+        cursor = batchNext;
+        batchNext = null;
+        return "0".equals(cursor);
+    }
+
+    private void sample(RespConnection conn, Analysis analysis, byte[] key) throws IOException {
+        limiter.acquire();
+        String type = RespConnection.asString(conn.call("TYPE".getBytes(StandardCharsets.US_ASCII), key));
+        if ("none".equals(type)) {
+            // expired or deleted since it was scanned
+            return;
+        }
+
+        long size = size(conn, analysis, key, type);
+        long weight = frequency(conn, analysis, key);
+        String name = new String(key, StandardCharsets.UTF_8);
+
+        analysis.sampled++;
+        analysis.bigKeys.offer(name, type, size);
+        analysis.prefixes.offer(prefix(name), weight);
+    }
+
+    private long size(RespConnection conn, Analysis analysis, byte[] key, String type) throws IOException {
+        if (memoryUsageSupported) {
+            limiter.acquire();
+            try {
+                Object usage = conn.call("MEMORY".getBytes(StandardCharsets.US_ASCII),
+                        "USAGE".getBytes(StandardCharsets.US_ASCII), key);
+                return usage == null ? 0L : RespConnection.asLong(usage);
+            } catch (RespConnection.RespException e) {
+                // Redis before 4.0
+                logger.info("MEMORY USAGE is not supported, sizing keys by their number of elements: "
+                        + e.getMessage());
+                memoryUsageSupported = false;
+            }
+        }
+        analysis.sizeUnit = UNIT_ELEMENTS;
+
+        String command;
+        if ("string".equals(type)) {
+            command = "STRLEN";
+        } else if ("list".equals(type)) {
+            command = "LLEN";
+        } else if ("hash".equals(type)) {
+            command = "HLEN";
+        } else if ("set".equals(type)) {
+            command = "SCARD";
+        } else if ("zset".equals(type)) {
+            command = "ZCARD";
+        } else {
+            return 0L;
+        }
+        limiter.acquire();
+        return RespConnection.asLong(conn.call(command.getBytes(StandardCharsets.US_ASCII), key));
+    }
+
+    private long frequency(RespConnection conn, Analysis analysis, byte[] key) throws IOException {
+        if (objectFreqSupported) {
+            limiter.acquire();
+            try {
+                return Math.max(1L, RespConnection.asLong(conn.call("OBJECT".getBytes(StandardCharsets.US_ASCII),
+                        "FREQ".getBytes(StandardCharsets.US_ASCII), key)));
+            } catch (RespConnection.RespException e) {
+                // Redis before 4.0, or an eviction policy other than LFU
+                logger.info("OBJECT FREQ is not available, weighing prefixes by their number of keys: "
+                        + e.getMessage());
+                objectFreqSupported = false;
+            }
+        }
+        analysis.weighedByFrequency = false;
+        return 1L;
+    }
+
+    private void completePass() {
+        Analysis analysis = current;
+        analysis.completedAt = System.currentTimeMillis();
+        logger.info("Keyspace analysis complete: scanned " + analysis.scanned + " keys in "
+                + (analysis.completedAt - analysis.startedAt) + " ms");
+        lastComplete = analysis;
+        current = new Analysis(Math.max(1, config.getKeyspaceAnalyzerTopKeys()));
+    }
+
+    private static String prefix(String key) {
+        int i = key.indexOf(PREFIX_DELIMITER);
+        String prefix = i < 0 ? key : key.substring(0, i);
+        return prefix.length() > MAX_PREFIX_LENGTH ? prefix.substring(0, MAX_PREFIX_LENGTH) : prefix;
+    }
+
+    private RespConnection getConnection() {
+        String host = storageProxy.getIpAddress();
+        int port = storageProxy.getPort();
+        if (connection == null || !connection.getHost().equals(host) || connection.getPort() != port) {
+            close();
+            connection = new RespConnection(host, port, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+            memoryUsageSupported = true;
+            objectFreqSupported = true;
+        }
+        return connection;
+    }
+}
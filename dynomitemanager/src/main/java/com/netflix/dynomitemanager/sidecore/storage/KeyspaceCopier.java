@@ -0,0 +1,728 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.netflix.dynomitemanager.sidecore.scheduler.NamedThreadPoolExecutor;
+
+/**
+ * Copies the keyspace of a peer into the local storage without replication: the keys of the peer are walked with
+ * <code>SCAN</code>, their values are read with pipelined <code>DUMP</code> and <code>PTTL</code> and written with
+ * pipelined <code>RESTORE ... REPLACE</code>.
+ *
+ * Unlike <code>SLAVEOF</code> the peer does not fork to write an RDB, and it works with any engine that supports
+ * these commands, e.g. ARDB. Redis has a single SCAN cursor per keyspace, so one thread scans and hands batches of
+ * keys to the workers, each of which copies its batches over its own connections to the peer and to the local
+ * storage. The bytes copied per second are capped, so that the copy does not saturate the peer.
+ *
+ * Keys the local storage already has are replaced; {@link #prune(long)} deletes the ones the peer does not have.
+ *
+ * A key is copied as it is when its batch is copied. The keys written on the peer after {@link #track()} are collected
+ * from its keyspace notifications and copied again by {@link #catchUp(long)}, or deleted if the peer deleted them. The
+ * catch up is meant to run once Dynomite delays the writes to the local storage (writes_only): each key is then as it
+ * is on the peer, and the delayed writes are applied on top of it. What is not covered:
+ * <ul>
+ * <li>a write that reached the peer before the catch up and is also delayed by the local Dynomite is applied twice,
+ * which is harmless for e.g. SET or DEL but not for INCR or LPUSH;</li>
+ * <li>notifications are not acknowledged: if the peer drops the subscription, e.g. past its pub/sub output buffer
+ * limit, or too many keys change, the catch up gives up and the keys written during the copy may be stale;</li>
+ * <li>the peer keeps the <code>notify-keyspace-events</code> that the tracking turned on if the manager dies before
+ * {@link #stopTracking()}.</li>
+ * </ul>
+ */
+public class KeyspaceCopier {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyspaceCopier.class);
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+    // tells a worker that the scan is over
+    private static final List<byte[]> END = Collections.emptyList();
+
+    private static final byte[] DUMP = bytes("DUMP");
+    private static final byte[] PTTL = bytes("PTTL");
+    private static final byte[] RESTORE = bytes("RESTORE");
+    private static final byte[] REPLACE = bytes("REPLACE");
+    private static final byte[] EXISTS = bytes("EXISTS");
+    private static final byte[] DEL = bytes("DEL");
+    private static final byte[] PSUBSCRIBE = bytes("PSUBSCRIBE");
+    private static final byte[] SUBSCRIBE = bytes("SUBSCRIBE");
+
+    private static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+    // E: keyevent notifications, whose message is the key; A: the events of all commands
+    private static final String KEYEVENT_FLAGS = "EA";
+    private static final String KEYEVENT_PATTERN = "__keyevent@0__:*";
+    // a message published to it tells that all earlier notifications arrived
+    private static final String MARKER_CHANNEL = "dynomite-manager:keyspace-copy";
+    // past that many changed keys, the catch up gives up
+    private static final int MAX_CHANGED_KEYS = 1000000;
+
+    private final String sourceHost;
+    private final int sourcePort;
+    private final String targetHost;
+    private final int targetPort;
+    private final int workers;
+    private final int batchSize;
+    private volatile RateLimiter limiter;
+
+    private final AtomicLong keysCopied = new AtomicLong();
+    private final AtomicLong keysSkipped = new AtomicLong();
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private final AtomicLong keysPruned = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    private volatile ChangeTracker tracker;
+    private volatile long totalKeys = -1;
+    private volatile long startTime;
+    private volatile long endTime;
+
+    /**
+     * @param sourceHost
+     *            the peer to copy from
+     * @param sourcePort
+     *            the Redis port of the peer
+     * @param targetHost
+     *            the storage to copy to
+     * @param targetPort
+     *            the Redis port of the storage
+     * @param workers
+     *            the number of batches copied at the same time
+     * @param batchSize
+     *            the number of keys per SCAN and per pipeline
+     * @param bytesPerSecond
+     *            the maximum bytes of values copied per second, 0 for no limit
+     */
+    public KeyspaceCopier(String sourceHost, int sourcePort, String targetHost, int targetPort, int workers,
+            int batchSize, long bytesPerSecond) {
+        this.sourceHost = sourceHost;
+        this.sourcePort = sourcePort;
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.limiter = bytesPerSecond > 0 ? RateLimiter.create(bytesPerSecond) : null;
+    }
+
+    /**
+     * Copies the batches of keys taken from the queue.
+     */
+    private class Worker implements Callable<Void> {
+        private final BlockingQueue<List<byte[]>> queue;
+        private final RespConnection source = new RespConnection(sourceHost, sourcePort, CONNECT_TIMEOUT_MS,
+                READ_TIMEOUT_MS);
+        private final RespConnection target = new RespConnection(targetHost, targetPort, CONNECT_TIMEOUT_MS,
+                READ_TIMEOUT_MS);
+
+        private Worker(BlockingQueue<List<byte[]>> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                List<byte[]> keys;
+                while ((keys = queue.take()) != END) {
+                    copyBatch(keys, false);
+                }
+                return null;
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                source.close();
+                target.close();
+            }
+        }
+
+        /**
+         * @param deleteGone
+         *            whether to delete the keys the peer no longer has, instead of skipping them
+         */
+        private void copyBatch(List<byte[]> keys, boolean deleteGone) throws IOException {
+            List<byte[][]> reads = new ArrayList<byte[][]>(2 * keys.size());
+            for (byte[] key : keys) {
+                reads.add(new byte[][] { DUMP, key });
+                reads.add(new byte[][] { PTTL, key });
+            }
+            List<Object> values = source.pipeline(reads);
+
+            List<byte[][]> writes = new ArrayList<byte[][]>(keys.size());
+            int deletes = 0;
+            long bytes = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                Object dump = values.get(2 * i);
+                Object pttl = values.get(2 * i + 1);
+                if (dump instanceof RespConnection.RespException) {
+                    throw new IOException("DUMP failed on " + sourceHost + ": "
+                            + ((RespConnection.RespException) dump).getMessage());
+                }
+                long ttl = pttl instanceof Long ? (Long) pttl : -2L;
+                if (dump == null || ttl == -2L || ttl == 0L) {
+                    // deleted or expired since it was scanned
+                    if (deleteGone) {
+                        writes.add(new byte[][] { DEL, keys.get(i) });
+                        deletes++;
+                    } else {
+                        keysSkipped.incrementAndGet();
+                    }
+                    continue;
+                }
+                byte[] payload = (byte[]) dump;
+                // -1 is no expiry, which RESTORE takes as 0
+                writes.add(new byte[][] { RESTORE, keys.get(i), bytes(ttl < 0 ? "0" : Long.toString(ttl)), payload,
+                        REPLACE });
+                bytes += payload.length;
+            }
+            if (writes.isEmpty()) {
+                return;
+            }
+
+            RateLimiter rateLimiter = limiter;
+            if (rateLimiter != null && bytes > 0) {
+                rateLimiter.acquire((int) Math.min(Integer.MAX_VALUE, bytes));
+            }
+            List<Object> replies = target.pipeline(writes);
+            for (int i = 0; i < replies.size(); i++) {
+                Object reply = replies.get(i);
+                if (reply instanceof RespConnection.RespException) {
+                    throw new IOException(new String(writes.get(i)[0], StandardCharsets.UTF_8) + " failed on "
+                            + targetHost + ": " + ((RespConnection.RespException) reply).getMessage());
+                }
+            }
+            keysCopied.addAndGet(writes.size() - deletes);
+            keysPruned.addAndGet(deletes);
+            bytesCopied.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Collects the keys written on the peer from its keyevent notifications.
+     */
+    private class ChangeTracker implements Runnable {
+        // no read timeout: the peer may not be written for a long time
+        private final RespConnection subscriber = new RespConnection(sourceHost, sourcePort, CONNECT_TIMEOUT_MS, 0);
+        private final Set<ByteBuffer> keys = new HashSet<ByteBuffer>();
+        private final Set<String> markers = new HashSet<String>();
+        private final NamedThreadPoolExecutor executor = new NamedThreadPoolExecutor(1, "keyspace-changes");
+        // the setting to restore on the peer, null if the tracking did not change it
+        private String previousEvents;
+        // false once a change may have been missed
+        private boolean complete = true;
+        private volatile boolean stopped;
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    List<Object> message = RespConnection.asList(subscriber.receive());
+                    String kind = RespConnection.asString(message.get(0));
+                    if ("pmessage".equals(kind)) {
+                        changed((byte[]) message.get(3));
+                    } else if ("message".equals(kind)) {
+                        synchronized (this) {
+                            markers.add(RespConnection.asString(message.get(2)));
+                            notifyAll();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                if (stopped) {
+                    // closed by stopTracking()
+                    return;
+                }
+                logger.warn("Lost the keyspace notifications of " + sourceHost
+                        + ", the catch up will not copy the keys written during the copy: " + e.getMessage());
+                synchronized (this) {
+                    complete = false;
+                    keys.clear();
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void changed(byte[] key) {
+            if (!complete) {
+                return;
+            }
+            if (keys.size() >= MAX_CHANGED_KEYS) {
+                logger.warn("More than " + MAX_CHANGED_KEYS + " keys changed on " + sourceHost
+                        + ", the catch up will not copy them");
+                complete = false;
+                keys.clear();
+                return;
+            }
+            keys.add(ByteBuffer.wrap(key));
+        }
+
+        /**
+         * Wait until the marker arrives, i.e. the notifications of all writes before it have arrived.
+         *
+         * @return true if the marker arrived, false if a change was missed or the deadline passed
+         */
+        private synchronized boolean await(String marker, long deadline) throws InterruptedException {
+            while (complete && !markers.contains(marker)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+            return complete && markers.contains(marker);
+        }
+
+        private synchronized boolean isComplete() {
+            return complete;
+        }
+
+        private synchronized List<byte[]> getKeys() {
+            List<byte[]> changed = new ArrayList<byte[]>(keys.size());
+            for (ByteBuffer key : keys) {
+                changed.add(key.array());
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Start collecting the keys written on the peer, for {@link #catchUp(long)}. It turns on the keyevent
+     * notifications of the peer, until {@link #stopTracking()}.
+     *
+     * @return true if the keys are tracked, false if the peer cannot notify them, e.g. when <code>CONFIG</code> is
+     *         disabled or the engine has no keyspace notifications. The catch up then copies nothing.
+     */
+    public boolean track() {
+        ChangeTracker changes = new ChangeTracker();
+        RespConnection admin = new RespConnection(sourceHost, sourcePort, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+        try {
+            List<Object> setting = RespConnection.asList(admin.call("CONFIG", "GET", NOTIFY_KEYSPACE_EVENTS));
+            if (setting.size() < 2) {
+                throw new IOException(NOTIFY_KEYSPACE_EVENTS + " is not supported");
+            }
+            String events = RespConnection.asString(setting.get(1));
+            if (events.indexOf('E') < 0 || events.indexOf('A') < 0) {
+                admin.call("CONFIG", "SET", NOTIFY_KEYSPACE_EVENTS, events + KEYEVENT_FLAGS);
+                changes.previousEvents = events;
+            }
+
+            List<byte[][]> subscriptions = new ArrayList<byte[][]>();
+            subscriptions.add(new byte[][] { PSUBSCRIBE, bytes(KEYEVENT_PATTERN) });
+            subscriptions.add(new byte[][] { SUBSCRIBE, bytes(MARKER_CHANNEL) });
+            for (Object reply : changes.subscriber.pipeline(subscriptions)) {
+                if (reply instanceof RespConnection.RespException) {
+                    throw (RespConnection.RespException) reply;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot track the keys written on " + sourceHost + " during the copy, they may be stale: "
+                    + e.getMessage());
+            stop(changes, admin);
+            return false;
+        } finally {
+            admin.close();
+        }
+
+        tracker = changes;
+        changes.executor.submit(changes);
+        logger.info("Tracking the keys written on " + sourceHost + ":" + sourcePort);
+        return true;
+    }
+
+    /**
+     * Stop collecting the keys written on the peer and restore its keyspace notifications. Does nothing if the keys
+     * are not tracked.
+     */
+    public void stopTracking() {
+        ChangeTracker changes = tracker;
+        tracker = null;
+        if (changes != null) {
+            RespConnection admin = new RespConnection(sourceHost, sourcePort, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+            try {
+                stop(changes, admin);
+            } finally {
+                admin.close();
+            }
+        }
+    }
+
+    private void stop(ChangeTracker changes, RespConnection admin) {
+        changes.stopped = true;
+        changes.subscriber.close();
+        changes.executor.shutdownNow();
+        if (changes.previousEvents != null) {
+            try {
+                admin.call("CONFIG", "SET", NOTIFY_KEYSPACE_EVENTS, changes.previousEvents);
+            } catch (IOException e) {
+                logger.error("Cannot restore " + NOTIFY_KEYSPACE_EVENTS + " \"" + changes.previousEvents + "\" on "
+                        + sourceHost + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copy again the keys written on the peer since {@link #track()}, delete the ones it no longer has and stop the
+     * tracking. Each key is copied as it is now, so call it once the writes that reach the peer also reach the local
+     * storage. If the keys were not tracked, or a change was missed, nothing is copied: copying all keys again does
+     * not fit in the time of a handoff.
+     *
+     * @param timeoutMs
+     *            the time the catch up may take
+     * @return true if the local storage caught up, false if it did not finish in time or the changes are not known
+     * @throws IOException
+     *             if the peer or the storage failed
+     */
+    public boolean catchUp(long timeoutMs) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        ChangeTracker changes = tracker;
+        try {
+            if (changes != null) {
+                // the marker is notified after the writes so far
+                String marker = Long.toString(System.nanoTime());
+                RespConnection admin = new RespConnection(sourceHost, sourcePort, CONNECT_TIMEOUT_MS,
+                        READ_TIMEOUT_MS);
+                try {
+                    admin.call("PUBLISH", MARKER_CHANNEL, marker);
+                } finally {
+                    admin.close();
+                }
+                if (!changes.await(marker, deadline) && changes.isComplete()) {
+                    logger.warn("The keyspace notifications of " + sourceHost + " did not arrive in " + timeoutMs
+                            + " ms");
+                    return false;
+                }
+            }
+        } finally {
+            stopTracking();
+        }
+
+        if (changes == null || !changes.isComplete()) {
+            logger.warn("The keys written on " + sourceHost + " during the copy are not known");
+            return false;
+        }
+
+        List<byte[]> keys = changes.getKeys();
+        logger.info("Copying again the " + keys.size() + " keys written on " + sourceHost + " during the copy");
+        Worker worker = new Worker(null);
+        try {
+            for (int from = 0; from < keys.size(); from += batchSize) {
+                if (System.currentTimeMillis() > deadline) {
+                    logger.warn("Catch up did not finish in " + timeoutMs + " ms");
+                    return false;
+                }
+                worker.copyBatch(keys.subList(from, Math.min(keys.size(), from + batchSize)), true);
+            }
+        } finally {
+            worker.source.close();
+            worker.target.close();
+        }
+        logger.info("Catch up finished: " + this);
+        return true;
+    }
+
+    /**
+     * Copy the keyspace of the peer.
+     *
+     * @param timeoutMs
+     *            the time the copy may take
+     * @return true if all keys were copied, false if the copy did not finish in time
+     * @throws IOException
+     *             if the peer or the storage failed
+     */
+    public boolean copy(long timeoutMs) throws IOException, InterruptedException {
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+        long deadline = startTime + timeoutMs;
+        BlockingQueue<List<byte[]>> queue = new ArrayBlockingQueue<List<byte[]>>(2 * workers);
+        NamedThreadPoolExecutor executor = new NamedThreadPoolExecutor(workers, "keyspace-copy");
+        RespConnection scanner = new RespConnection(sourceHost, sourcePort, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+        List<Worker> running = new ArrayList<Worker>();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            totalKeys = RespConnection.asLong(scanner.call("DBSIZE"));
+            logger.info("Copying about " + totalKeys + " keys from " + sourceHost + ":" + sourcePort + " with "
+                    + workers + " workers");
+
+            for (int i = 0; i < workers; i++) {
+                Worker worker = new Worker(queue);
+                running.add(worker);
+                futures.add(executor.submit(worker));
+            }
+
+            long lastProgress = startTime;
+            String cursor = "0";
+            do {
+                List<Object> reply = RespConnection.asList(scanner.call("SCAN", cursor, "COUNT",
+                        Integer.toString(batchSize)));
+                cursor = RespConnection.asString(reply.get(0));
+                List<byte[]> keys = new ArrayList<byte[]>();
+                for (Object key : RespConnection.asList(reply.get(1))) {
+                    keys.add((byte[]) key);
+                }
+                if (!keys.isEmpty() && !offer(queue, keys, deadline)) {
+                    return false;
+                }
+                if (System.currentTimeMillis() - lastProgress >= PROGRESS_INTERVAL_MS) {
+                    lastProgress = System.currentTimeMillis();
+                    logger.info("Keyspace copy: " + this);
+                }
+            } while (!"0".equals(cursor));
+
+            for (int i = 0; i < workers; i++) {
+                if (!offer(queue, END, deadline)) {
+                    return false;
+                }
+            }
+            for (Future<Void> future : futures) {
+                long remaining = deadline - System.currentTimeMillis();
+                try {
+                    future.get(Math.max(0L, remaining), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    logger.warn("Keyspace copy did not finish in " + timeoutMs + " ms: " + this);
+                    return false;
+                } catch (ExecutionException e) {
+                    throw failure(e.getCause());
+                }
+            }
+            endTime = System.currentTimeMillis();
+            logger.info("Keyspace copy finished: " + this);
+            return true;
+        } finally {
+            scanner.close();
+            // stop the workers that are still copying, a call blocked on the network fails once its socket is closed
+            executor.shutdownNow();
+            for (Worker worker : running) {
+                worker.source.close();
+                worker.target.close();
+            }
+        }
+    }
+
+    /**
+     * Delete the keys of the local storage that the peer does not have, e.g. the keys of a restored backup that were
+     * deleted on the peer since. The local keys are walked with <code>SCAN</code> and looked up on the peer with
+     * pipelined <code>EXISTS</code>.
+     *
+     * @param timeoutMs
+     *            the time the pruning may take
+     * @return true if all keys were checked, false if the pruning did not finish in time
+     * @throws IOException
+     *             if the peer or the storage failed
+     */
+    public boolean prune(long timeoutMs) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        RespConnection target = new RespConnection(targetHost, targetPort, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+        RespConnection source = new RespConnection(sourceHost, sourcePort, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+        try {
+            String cursor = "0";
+            do {
+                if (System.currentTimeMillis() > deadline) {
+                    logger.warn("Pruning did not finish in " + timeoutMs + " ms, " + keysPruned.get()
+                            + " keys deleted");
+                    return false;
+                }
+                List<Object> reply = RespConnection.asList(target.call("SCAN", cursor, "COUNT",
+                        Integer.toString(batchSize)));
+                cursor = RespConnection.asString(reply.get(0));
+                List<byte[][]> lookups = new ArrayList<byte[][]>();
+                for (Object key : RespConnection.asList(reply.get(1))) {
+                    lookups.add(new byte[][] { EXISTS, (byte[]) key });
+                }
+                if (lookups.isEmpty()) {
+                    continue;
+                }
+
+                List<Object> exists = source.pipeline(lookups);
+                List<byte[][]> deletes = new ArrayList<byte[][]>();
+                for (int i = 0; i < lookups.size(); i++) {
+                    Object found = exists.get(i);
+                    if (found instanceof RespConnection.RespException) {
+                        throw new IOException("EXISTS failed on " + sourceHost + ": "
+                                + ((RespConnection.RespException) found).getMessage());
+                    }
+                    if (Long.valueOf(0L).equals(found)) {
+                        deletes.add(new byte[][] { DEL, lookups.get(i)[1] });
+                    }
+                }
+                if (!deletes.isEmpty()) {
+                    for (Object deleted : target.pipeline(deletes)) {
+                        if (deleted instanceof RespConnection.RespException) {
+                            throw new IOException("DEL failed on " + targetHost + ": "
+                                    + ((RespConnection.RespException) deleted).getMessage());
+                        }
+                    }
+                    keysPruned.addAndGet(deletes.size());
+                }
+            } while (!"0".equals(cursor));
+            logger.info("Pruning finished: deleted " + keysPruned.get() + " keys that " + sourceHost
+                    + " does not have");
+            return true;
+        } finally {
+            target.close();
+            source.close();
+        }
+    }
+
+    /**
+     * Queue a batch, unless a worker failed or the deadline passed.
+     */
+    private boolean offer(BlockingQueue<List<byte[]>> queue, List<byte[]> keys, long deadline)
+            throws IOException, InterruptedException {
+        while (!queue.offer(keys, 100, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                throw failure(failure.get());
+            }
+            if (System.currentTimeMillis() > deadline) {
+                logger.warn("Keyspace copy did not finish in time: " + this);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static IOException failure(Throwable cause) {
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    /**
+     * Change the maximum bytes of values copied per second, e.g. to slow down the copy while the peer is busy.
+     *
+     * @param bytesPerSecond
+     *            the new maximum, 0 for no limit
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            limiter = null;
+        } else if (limiter == null) {
+            limiter = RateLimiter.create(bytesPerSecond);
+        } else {
+            limiter.setRate(bytesPerSecond);
+        }
+    }
+
+    /**
+     * @return the maximum bytes of values copied per second, 0 for no limit
+     */
+    public long getBytesPerSecond() {
+        RateLimiter rateLimiter = limiter;
+        return rateLimiter == null ? 0 : (long) rateLimiter.getRate();
+    }
+
+    /**
+     * @return the keys copied so far
+     */
+    public long getKeysCopied() {
+        return keysCopied.get();
+    }
+
+    /**
+     * @return the keys that were scanned but gone by the time they were copied
+     */
+    public long getKeysSkipped() {
+        return keysSkipped.get();
+    }
+
+    /**
+     * @return the bytes of values copied so far
+     */
+    public long getBytesCopied() {
+        return bytesCopied.get();
+    }
+
+    /**
+     * @return the local keys deleted so far because the peer does not have them
+     */
+    public long getKeysPruned() {
+        return keysPruned.get();
+    }
+
+    /**
+     * @return the number of keys of the peer when the copy started, or -1 if it has not started
+     */
+    public long getTotalKeys() {
+        return totalKeys;
+    }
+
+    /**
+     * @return the time (in ms) the copy has taken so far
+     */
+    public long getElapsedMs() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * @return the estimated time (in seconds) until the copy is done, from the number of keys of the peer and the
+     *         rate so far, or -1 if it cannot be estimated yet
+     */
+    public long getEtaSeconds() {
+        if (endTime > 0) {
+            return 0;
+        }
+        long done = keysCopied.get() + keysSkipped.get();
+        long elapsed = getElapsedMs();
+        if (totalKeys < 0 || done == 0 || elapsed == 0) {
+            return -1;
+        }
+        long remaining = Math.max(0L, totalKeys - done);
+        return remaining * elapsed / done / 1000;
+    }
+
+    /**
+     * @return the percentage of the keys of the peer copied so far, or -1 if the copy has not started
+     */
+    public int getPercentDone() {
+        if (endTime > 0) {
+            return 100;
+        }
+        if (totalKeys < 0) {
+            return -1;
+        }
+        if (totalKeys == 0) {
+            return 0;
+        }
+        return (int) Math.min(99L, (keysCopied.get() + keysSkipped.get()) * 100 / totalKeys);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return keysCopied.get() + " of ~" + totalKeys + " keys (" + getPercentDone() + "%, " + bytesCopied.get()
+                + " bytes, " + keysSkipped.get() + " skipped) in " + getElapsedMs() / 1000 + "s, eta "
+                + getEtaSeconds() + "s";
+    }
+}
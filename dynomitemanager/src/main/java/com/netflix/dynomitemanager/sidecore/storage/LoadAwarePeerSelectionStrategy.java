@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+/**
+ * Prefers the least loaded peer, so that the BGSAVE forked by SLAVEOF hurts production traffic the least.
+ *
+ * Every component of the score is a penalty:
+ * <ul>
+ * <li><code>ops_per_sec</code>: one point per 1000 <code>instantaneous_ops_per_sec</code></li>
+ * <li><code>memory</code>: one point per 10% of <code>maxmemory</code> in use, a fork copies more pages of a fuller
+ * node</li>
+ * <li><code>latest_fork</code>: one point per 10 ms of <code>latest_fork_usec</code></li>
+ * <li><code>rtt</code>: one point per 10 ms the peer took to answer the probe</li>
+ * <li><code>persistence</code>: 50 points if a BGSAVE or AOF rewrite is already in progress</li>
+ * </ul>
+ */
+public class LoadAwarePeerSelectionStrategy implements PeerSelectionStrategy {
+
+    private static final double PERSISTENCE_PENALTY = 50.0;
+
+    @Override
+    public String getName() {
+        return "load";
+    }
+
+    @Override
+    public PeerScore score(PeerProber.PeerStatus peer) {
+        RedisInfo info = peer.getInfo();
+        PeerScore score = new PeerScore(peer);
+        score.add("ops_per_sec", -Math.max(0L, peer.getOpsPerSecond()) / 1000.0);
+        if (info.getMaxMemory() > 0 && info.getUsedMemory() >= 0) {
+            score.add("memory", -info.getUsedMemory() * 10.0 / info.getMaxMemory());
+        }
+        score.add("latest_fork", -Math.max(0L, peer.getLatestForkUsec()) / 10000.0);
+        score.add("rtt", -peer.getProbeMs() / 10.0);
+        boolean persisting = info.isRdbBgsaveInProgress() || info.isAofRewriteInProgress();
+        score.add("persistence", persisting ? -PERSISTENCE_PENALTY : 0.0);
+        return score;
+    }
+}
@@ -54,6 +54,11 @@ public class MemcachedStorageProxy implements IStorageProxy {
 	return true;
     }
 
+    @Override
+    public boolean discardWarmUp() {
+	return true;
+    }
+
     @Override
     public boolean takeSnapshot() {
 	return false;
@@ -69,6 +74,11 @@ public class MemcachedStorageProxy implements IStorageProxy {
 
     }
 
+    @Override
+    public void abortPeerSync() {
+
+    }
+
     @Override
     public void updateConfiguration() throws IOException {
 	// TODO Auto-generated method stub
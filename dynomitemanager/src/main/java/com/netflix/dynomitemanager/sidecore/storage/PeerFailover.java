@@ -0,0 +1,230 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
+
+/**
+ * Fails a warm up over to the next peer with the same token. When a warm up cannot connect to a peer or fails while
+ * syncing from it, the peer is blacklisted for a while, what the warm up left in the storage is discarded and the warm
+ * up is retried from the peers that are left, best first. When every peer is blacklisted, the next attempt waits for
+ * the first one to come off the blacklist. No attempt is started after the deadline.
+ *
+ * Each attempt is kept, with its peer and outcome, for the status of the warm up.
+ */
+@Singleton
+public class PeerFailover {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerFailover.class);
+
+    /**
+     * One way to warm up from a list of peers, e.g. {@link IStorageProxy#warmUpStorage(String[])}.
+     */
+    public interface WarmUp {
+        Bootstrap warmUp(String[] peers);
+    }
+
+    /**
+     * A warm up from one peer.
+     */
+    public static class Attempt {
+        private final String peer;
+        private final Bootstrap result;
+        private final long startTime;
+        private final long elapsedMs;
+
+        public Attempt(String peer, Bootstrap result, long startTime, long elapsedMs) {
+            this.peer = peer;
+            this.result = result;
+            this.startTime = startTime;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /**
+         * @return the peer of the attempt, or null if none of the peers could be used
+         */
+        public String getPeer() {
+            return peer;
+        }
+
+        public Bootstrap getResult() {
+            return result;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return (peer == null ? "no peer" : peer) + ": " + result + " in " + elapsedMs + " ms";
+        }
+    }
+
+    private final IConfiguration config;
+    private final IStorageProxy storageProxy;
+    private final InstanceState state;
+    private final Sleeper sleeper;
+
+    // peer -> the time it comes off the blacklist
+    private final Map<String, Long> blacklist = new HashMap<String, Long>();
+    private final List<Attempt> attempts = new ArrayList<Attempt>();
+
+    @Inject
+    public PeerFailover(IConfiguration config, IStorageProxy storageProxy, InstanceState state, Sleeper sleeper) {
+        this.config = config;
+        this.storageProxy = storageProxy;
+        this.state = state;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Warm up from the peers, failing over to the next peer until an attempt succeeds or the deadline passes.
+     *
+     * @param peers
+     *            the peers with the same token
+     * @param warmUp
+     *            how to warm up from the peers that are not blacklisted
+     * @return the status of the last attempt
+     */
+    public Bootstrap warmUp(String[] peers, WarmUp warmUp) {
+        synchronized (this) {
+            attempts.clear();
+        }
+        state.setPeerFailover(this);
+        long deadline = System.currentTimeMillis() + config.getWarmBootstrapDeadlineMs();
+        Bootstrap result = Bootstrap.CANNOT_CONNECT_FAIL;
+
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<String> candidates = candidates(peers, now);
+            if (candidates.isEmpty()) {
+                long release = nextRelease();
+                if (release < 0 || release >= deadline) {
+                    logger.error("No peer left to warm up from");
+                    return result;
+                }
+                logger.warn("All peers are blacklisted, retrying in " + (release - now) / 1000 + " seconds");
+                sleeper.sleepQuietly(release - now);
+                continue;
+            }
+
+            if (getAttempts().size() > 0 && !storageProxy.discardWarmUp()) {
+                logger.error("Cannot discard the failed warm up - not trying another peer");
+                return result;
+            }
+            state.setWarmUpPeer(null);
+            result = warmUp.warmUp(candidates.toArray(new String[0]));
+            String peer = state.getWarmUpPeer();
+            long end = System.currentTimeMillis();
+            Attempt attempt = new Attempt(peer, result, now, end - now);
+            synchronized (this) {
+                attempts.add(attempt);
+            }
+            logger.info("Warm up attempt " + getAttempts().size() + " from " + attempt);
+            if (!isRetryable(result)) {
+                return result;
+            }
+
+            // none of the peers could be used if the warm up did not pick one
+            if (peer != null) {
+                blacklist(peer, end);
+            } else {
+                for (String candidate : candidates) {
+                    blacklist(candidate, end);
+                }
+            }
+            if (end >= deadline) {
+                logger.error("Warm up did not succeed in " + config.getWarmBootstrapDeadlineMs() / 1000
+                        + " seconds");
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return true if another peer may do better than the one that gave the status
+     */
+    public static boolean isRetryable(Bootstrap result) {
+        return result == Bootstrap.CANNOT_CONNECT_FAIL || result == Bootstrap.WARMUP_ERROR_FAIL;
+    }
+
+    /**
+     * @return the peers that are not blacklisted, in order
+     */
+    public synchronized List<String> candidates(String[] peers, long now) {
+        Iterator<Map.Entry<String, Long>> it = blacklist.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() <= now) {
+                it.remove();
+            }
+        }
+        List<String> candidates = new ArrayList<String>();
+        for (String peer : peers) {
+            if (!blacklist.containsKey(peer)) {
+                candidates.add(peer);
+            }
+        }
+        return candidates;
+    }
+
+    public synchronized void blacklist(String peer, long now) {
+        logger.warn("Blacklisting peer " + peer + " for " + config.getWarmBootstrapBlacklistMs() / 1000 + " seconds");
+        blacklist.put(peer, now + config.getWarmBootstrapBlacklistMs());
+    }
+
+    /**
+     * @return the time the first peer comes off the blacklist, or -1 if none is blacklisted
+     */
+    private synchronized long nextRelease() {
+        long release = -1;
+        for (long until : blacklist.values()) {
+            if (release < 0 || until < release) {
+                release = until;
+            }
+        }
+        return release;
+    }
+
+    /**
+     * @return the peers that are blacklisted, with the time they come off the blacklist
+     */
+    public synchronized Map<String, Long> getBlacklist() {
+        return Collections.unmodifiableMap(new HashMap<String, Long>(blacklist));
+    }
+
+    /**
+     * @return the attempts of the last warm up, in order
+     */
+    public synchronized List<Attempt> getAttempts() {
+        return Collections.unmodifiableList(new ArrayList<Attempt>(attempts));
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.dynomitemanager.sidecore.scheduler.NamedThreadPoolExecutor;
+
+/**
+ * Probes the Redis of several peers in parallel with <code>INFO</code>, e.g. the peers with the same token before a
+ * warm bootstrap.
+ *
+ * All peers are probed at the same time and the probe returns once enough healthy peers have answered, all peers have
+ * answered or the deadline has passed, whichever comes first. The connections of peers that have not answered are
+ * closed, which also aborts a connect that is still waiting on a blackholed peer, so no socket outlives the probe.
+ */
+public class PeerProber {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerProber.class);
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    /**
+     * The state of one peer as reported by its INFO.
+     */
+    public static class PeerStatus {
+        private final String host;
+        private final RedisInfo info;
+        private final long probeMs;
+
+        public PeerStatus(String host, RedisInfo info, long probeMs) {
+            this.host = host;
+            this.info = info;
+            this.probeMs = probeMs;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the INFO of the peer
+         */
+        public RedisInfo getInfo() {
+            return info;
+        }
+
+        /**
+         * @return how long (in ms) the peer took to connect and answer
+         */
+        public long getProbeMs() {
+            return probeMs;
+        }
+
+        /**
+         * @return uptime_in_seconds or -1 if it was not reported
+         */
+        public long getUptimeSeconds() {
+            return info.getUptimeInSeconds();
+        }
+
+        /**
+         * @return the replication role, master or slave
+         */
+        public String getRole() {
+            return info.getRole();
+        }
+
+        /**
+         * @return true if the peer keeps a replication backlog, so a partial resync from it is possible
+         */
+        public boolean hasReplBacklog() {
+            return info.getLong("repl_backlog_active", 0L) == 1L;
+        }
+
+        /**
+         * @return repl_backlog_histlen, the bytes of the replication backlog, or -1 if it was not reported
+         */
+        public long getReplBacklogBytes() {
+            return info.getLong("repl_backlog_histlen", -1L);
+        }
+
+        /**
+         * @return instantaneous_ops_per_sec or -1 if it was not reported
+         */
+        public long getOpsPerSecond() {
+            return info.getLong("instantaneous_ops_per_sec", -1L);
+        }
+
+        /**
+         * @return latest_fork_usec, the duration of the last fork, or -1 if it was not reported
+         */
+        public long getLatestForkUsec() {
+            return info.getLong("latest_fork_usec", -1L);
+        }
+
+        /**
+         * @return connected_clients or -1 if it was not reported
+         */
+        public long getConnectedClients() {
+            return info.getLong("connected_clients", -1L);
+        }
+
+        /**
+         * @return true if the peer can serve a sync: it reported its uptime and is not loading its data set
+         */
+        public boolean isHealthy() {
+            return info.getUptimeInSeconds() >= 0 && !info.isLoading() && info.getRole() != null;
+        }
+
+        @Override
+        public String toString() {
+            return host + " (role=" + getRole() + ", uptime=" + getUptimeSeconds() + "s, backlog="
+                    + getReplBacklogBytes() + ", ops/s=" + getOpsPerSecond() + ", clients=" + getConnectedClients()
+                    + ", probe=" + probeMs + "ms)";
+        }
+    }
+
+    /**
+     * The probe of one peer.
+     */
+    private static class Probe implements Callable<PeerStatus> {
+        private final String host;
+        private final RespConnection connection;
+        private volatile boolean cancelled;
+
+        private Probe(String peer, int port, int connectTimeoutMs, int readTimeoutMs) {
+            int colon = peer.indexOf(':');
+            if (colon > 0 && colon == peer.lastIndexOf(':')) {
+                // host:port, but not an IPv6 address
+                port = Integer.parseInt(peer.substring(colon + 1));
+                peer = peer.substring(0, colon);
+            }
+            this.host = peer;
+            this.connection = new RespConnection(peer, port, connectTimeoutMs, readTimeoutMs);
+        }
+
+        @Override
+        public PeerStatus call() throws Exception {
+            long start = System.currentTimeMillis();
+            try {
+                connection.connect();
+                if (cancelled) {
+                    // cancelled while connecting, before close() could see the socket
+                    throw new IOException("Probe of " + host + " was cancelled");
+                }
+                String raw = RespConnection.asString(connection.call("INFO"));
+                return new PeerStatus(host, new RedisInfo(raw == null ? "" : raw, start),
+                        System.currentTimeMillis() - start);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    public PeerProber(int connectTimeoutMs, int readTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Probe the peers in parallel.
+     *
+     * @param peers
+     *            the hosts of the peers, optionally as host:port
+     * @param port
+     *            the Redis port of the peers without a port
+     * @param wanted
+     *            the number of healthy peers that is enough to return early
+     * @param timeoutMs
+     *            the deadline of the whole probe
+     * @return the peers that answered, healthy or not, in the order they answered
+     */
+    public List<PeerStatus> probe(String[] peers, int port, int wanted, long timeoutMs) {
+        List<PeerStatus> answered = new ArrayList<PeerStatus>();
+        if (peers.length == 0) {
+            return answered;
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        List<Probe> probes = new ArrayList<Probe>();
+        NamedThreadPoolExecutor executor = new NamedThreadPoolExecutor(peers.length, "peer-probe");
+        ExecutorCompletionService<PeerStatus> completion = new ExecutorCompletionService<PeerStatus>(executor);
+        try {
+            for (String peer : peers) {
+                Probe probe = new Probe(peer, port, connectTimeoutMs, readTimeoutMs);
+                probes.add(probe);
+                completion.submit(probe);
+            }
+
+            int healthy = 0;
+            for (int done = 0; done < probes.size() && healthy < wanted; done++) {
+                long remaining = deadline - System.currentTimeMillis();
+                Future<PeerStatus> future = remaining > 0 ? completion.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (future == null) {
+                    logger.warn("Only " + done + " of " + probes.size() + " peers answered within " + timeoutMs
+                            + " ms");
+                    break;
+                }
+                try {
+                    PeerStatus status = future.get();
+                    logger.info("Peer " + status);
+                    answered.add(status);
+                    if (status.isHealthy()) {
+                        healthy++;
+                    }
+                } catch (ExecutionException e) {
+                    logger.warn("Could not probe a peer: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // give up on the peers that have not answered, a blocked connect or read fails once its socket is closed
+            for (Probe probe : probes) {
+                probe.cancelled = true;
+                probe.connection.close();
+            }
+            executor.shutdownNow();
+        }
+        return answered;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The score of a peer by a {@link PeerSelectionStrategy}: the sum of named components, so the choice of a peer can be
+ * explained. A higher score is better.
+ */
+public class PeerScore {
+
+    private static final Comparator<PeerScore> BEST_FIRST = new Comparator<PeerScore>() {
+        @Override
+        public int compare(PeerScore a, PeerScore b) {
+            int c = Double.compare(b.score, a.score);
+            if (c == 0) {
+                // on a tie prefer the peer that has been up the longest
+                c = Long.compare(b.peer.getUptimeSeconds(), a.peer.getUptimeSeconds());
+            }
+            return c;
+        }
+    };
+
+    private final PeerProber.PeerStatus peer;
+    private final Map<String, Double> components = new LinkedHashMap<String, Double>();
+    private double score;
+
+    public PeerScore(PeerProber.PeerStatus peer) {
+        this.peer = peer;
+    }
+
+    /**
+     * Add a component to the score.
+     */
+    public void add(String name, double value) {
+        components.put(name, value);
+        score += value;
+    }
+
+    public PeerProber.PeerStatus getPeer() {
+        return peer;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return the components of the score by name, in the order they were added
+     */
+    public Map<String, Double> getComponents() {
+        return Collections.unmodifiableMap(components);
+    }
+
+    @Override
+    public String toString() {
+        return peer.getHost() + " score=" + score + " " + components;
+    }
+
+    /**
+     * Score the healthy peers with a strategy.
+     *
+     * @return the scores of the healthy peers, best first
+     */
+    public static List<PeerScore> rank(PeerSelectionStrategy strategy, List<PeerProber.PeerStatus> peers) {
+        List<PeerScore> scores = new ArrayList<PeerScore>();
+        for (PeerProber.PeerStatus peer : peers) {
+            if (peer.isHealthy()) {
+                scores.add(strategy.score(peer));
+            }
+        }
+        Collections.sort(scores, BEST_FIRST);
+        return scores;
+    }
+}
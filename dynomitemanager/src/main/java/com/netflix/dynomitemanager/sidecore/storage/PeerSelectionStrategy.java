@@ -0,0 +1,39 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import com.google.inject.ProvidedBy;
+
+/**
+ * Scores the peers with the same token that a warm bootstrap could sync from. The healthy peer with the highest score
+ * is chosen, see {@link PeerScore#rank(PeerSelectionStrategy, java.util.List)}.
+ *
+ * The strategy is chosen by the <code>dyno.warm.peer.selection</code> property, see
+ * {@link PeerSelectionStrategyProvider}: {@link UptimePeerSelectionStrategy} prefers the peer that has been up the
+ * longest and is the default, {@link LoadAwarePeerSelectionStrategy} prefers the least loaded peer.
+ */
+@ProvidedBy(PeerSelectionStrategyProvider.class)
+public interface PeerSelectionStrategy {
+
+    /**
+     * @return the name of the strategy, reported with the scores
+     */
+    String getName();
+
+    /**
+     * Score one healthy peer.
+     *
+     * @return the score of the peer and how it was derived
+     */
+    PeerScore score(PeerProber.PeerStatus peer);
+}
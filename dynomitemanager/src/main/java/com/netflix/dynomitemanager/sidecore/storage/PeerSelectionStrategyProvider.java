@@ -0,0 +1,50 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+
+/**
+ * Provides the {@link PeerSelectionStrategy} named by {@link IConfiguration#getWarmBootstrapPeerSelection()}. An
+ * unknown name falls back to {@link UptimePeerSelectionStrategy}.
+ */
+public class PeerSelectionStrategyProvider implements Provider<PeerSelectionStrategy> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerSelectionStrategyProvider.class);
+
+    private final IConfiguration config;
+
+    @Inject
+    public PeerSelectionStrategyProvider(IConfiguration config) {
+        this.config = config;
+    }
+
+    @Override
+    public PeerSelectionStrategy get() {
+        String name = config.getWarmBootstrapPeerSelection();
+        LoadAwarePeerSelectionStrategy load = new LoadAwarePeerSelectionStrategy();
+        if (load.getName().equalsIgnoreCase(name)) {
+            return load;
+        }
+        UptimePeerSelectionStrategy uptime = new UptimePeerSelectionStrategy();
+        if (!uptime.getName().equalsIgnoreCase(name)) {
+            logger.warn("Unknown peer selection strategy " + name + ", using " + uptime.getName());
+        }
+        return uptime;
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.dynomitemanager.monitoring.DynomiteInfoParser;
+import com.netflix.dynomitemanager.monitoring.MetricsCollector;
+
+/**
+ * Protects the peer a warm bootstrap syncs from. While the warm up runs, the throttle watches the load of the peer:
+ * <code>instantaneous_ops_per_sec</code> and <code>client_longest_output_list</code> of its Redis, and
+ * <code>latency_99th</code> of its Dynomite. The peer is overloaded when any of them crosses its threshold
+ * (a threshold of 0 is ignored).
+ * <ul>
+ * <li>A keyspace copy is slowed down: its byte rate is halved each time the peer is overloaded, down to a floor, and
+ * raised by a quarter each time it is not, back up to its configured rate. A copy that is not limited is first limited
+ * to half of what it copies, and is not limited again once its rate is above what it copies.</li>
+ * <li>A full sync cannot be paced from the local side once the peer sends its RDB, so it is held back instead: the
+ * <code>SLAVEOF</code>, and with it the fork of the peer, waits until the peer is not overloaded.</li>
+ * </ul>
+ *
+ * The throttle publishes <code>WarmupThrottle_events</code> (times the peer was found overloaded),
+ * <code>WarmupThrottle_overloaded</code>, <code>WarmupThrottle_rate_bytes</code> and the last samples of the peer as
+ * <code>WarmupThrottle_peer_ops</code>, <code>_peer_output_list</code> and <code>_peer_latency_99th</code>.
+ */
+@Singleton
+public class PeerThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerThrottle.class);
+
+    public static final String PREFIX = "WarmupThrottle_";
+
+    private static final long MIN_BYTES_PER_SECOND = 64 * 1024;
+
+    private final IConfiguration config;
+    private final RedisInfoSnapshot redisInfo;
+    private final DynomiteAdminClient dynomiteAdmin;
+    private final DynomiteInfoParser parser = new DynomiteInfoParser();
+
+    private final MetricsCollector metrics = new MetricsCollector();
+    private final MetricsCollector.Metric events = metrics.counter(PREFIX + "events");
+    private final MetricsCollector.Metric overloadedGauge = metrics.gauge(PREFIX + "overloaded");
+    private final MetricsCollector.Metric rateGauge = metrics.gauge(PREFIX + "rate_bytes");
+    private final MetricsCollector.Metric peerOps = metrics.gauge(PREFIX + "peer_ops");
+    private final MetricsCollector.Metric peerOutputList = metrics.gauge(PREFIX + "peer_output_list");
+    private final MetricsCollector.Metric peerLatency = metrics.gauge(PREFIX + "peer_latency_99th");
+
+    private long eventCount;
+    private volatile long samples;
+    private volatile boolean overloaded;
+    private volatile String reason;
+
+    // the warm up being throttled
+    private String peer;
+    private int port;
+    private KeyspaceCopier copier;
+    private long ceiling;
+    private long lastBytes;
+    private long lastSample;
+    private Thread thread;
+    private volatile boolean running;
+
+    @Inject
+    public PeerThrottle(IConfiguration config, RedisInfoSnapshot redisInfo, DynomiteAdminClient dynomiteAdmin) {
+        this.config = config;
+        this.redisInfo = redisInfo;
+        this.dynomiteAdmin = dynomiteAdmin;
+    }
+
+    /**
+     * Start watching a peer until {@link #stop()}.
+     *
+     * @param peer
+     *            the peer the warm up syncs from
+     * @param port
+     *            the Redis port of the peer
+     * @param copier
+     *            the keyspace copy to slow down, or null for a full sync
+     */
+    public synchronized void start(String peer, int port, KeyspaceCopier copier) {
+        stop();
+        this.peer = peer;
+        this.port = port;
+        this.copier = copier;
+        this.ceiling = copier == null ? 0 : copier.getBytesPerSecond();
+        this.overloaded = false;
+        this.reason = null;
+        this.samples = 0;
+        this.lastBytes = 0;
+        this.lastSample = System.currentTimeMillis();
+        rateGauge.set(ceiling);
+        if (!config.isWarmBootstrapThrottleEnabled()) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    sample();
+                    try {
+                        Thread.sleep(Math.max(100, config.getWarmBootstrapThrottleIntervalMs()));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "warmup-throttle");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the peer.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        overloadedGauge.set(0L);
+    }
+
+    /**
+     * Wait until the peer is not overloaded, e.g. before it forks for a full sync.
+     *
+     * @param timeoutMs
+     *            the maximum time to wait
+     * @return true if the peer is not overloaded, false if it still is after the timeout
+     */
+    public boolean awaitCalm(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        // the first sample decides
+        while (running && (samples == 0 || overloaded)) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(Math.max(100, Math.min(1000, config.getWarmBootstrapThrottleIntervalMs())));
+        }
+        return true;
+    }
+
+    private void sample() {
+        long ops = -1;
+        long outputList = -1;
+        long latency = -1;
+        try {
+            RedisInfo info = redisInfo.refresh(peer, port);
+            ops = info.getLong("instantaneous_ops_per_sec", -1L);
+            outputList = info.getLong("client_longest_output_list", -1L);
+        } catch (RuntimeException e) {
+            logger.warn("Cannot get INFO from peer " + peer + ": " + e.getMessage());
+        }
+        try {
+            latency = peerLatency99th();
+        } catch (IOException e) {
+            logger.debug("Cannot get the Dynomite stats of peer " + peer + ": " + e.getMessage());
+        }
+        update(ops, outputList, latency);
+    }
+
+    private long peerLatency99th() throws IOException {
+        URI admin = URI.create(dynomiteAdmin.getAdminUrl());
+        String url = "http://" + peer + ":" + (admin.getPort() < 0 ? 22222 : admin.getPort()) + "/info";
+        return dynomiteAdmin.execute(url, "peer_info", new DynomiteAdminClient.ResponseHandler<Long>() {
+            @Override
+            public Long handle(int statusCode, InputStream body) throws IOException {
+                if (statusCode != 200) {
+                    throw new IOException("Status " + statusCode);
+                }
+                synchronized (parser) {
+                    parser.parse(body);
+                    for (DynomiteInfoParser.Metric field : parser.getFields()) {
+                        if ("latency_99th".equals(field.getKey()) && field.isPresent()) {
+                            return field.getValue();
+                        }
+                    }
+                }
+                return -1L;
+            }
+        });
+    }
+
+    /**
+     * Take a sample of the load of the peer and slow down or speed up the copy.
+     *
+     * @param opsPerSec
+     *            instantaneous_ops_per_sec of the peer, -1 if not known
+     * @param longestOutputList
+     *            client_longest_output_list of the peer, -1 if not known
+     * @param latency99thUs
+     *            latency_99th (in us) of the Dynomite of the peer, -1 if not known
+     * @return true if the peer is overloaded
+     */
+    public synchronized boolean update(long opsPerSec, long longestOutputList, long latency99thUs) {
+        peerOps.set(opsPerSec);
+        peerOutputList.set(longestOutputList);
+        peerLatency.set(latency99thUs);
+
+        String cause = null;
+        if (crosses(opsPerSec, config.getWarmBootstrapThrottleOpsPerSec())) {
+            cause = "instantaneous_ops_per_sec " + opsPerSec;
+        } else if (crosses(longestOutputList, config.getWarmBootstrapThrottleOutputList())) {
+            cause = "client_longest_output_list " + longestOutputList;
+        } else if (crosses(latency99thUs, config.getWarmBootstrapThrottleLatencyUs())) {
+            cause = "latency_99th " + latency99thUs + "us";
+        }
+
+        overloaded = cause != null;
+        reason = cause;
+        samples++;
+        overloadedGauge.set(overloaded ? 1L : 0L);
+        if (overloaded) {
+            events.set(++eventCount);
+        }
+
+        if (copier != null) {
+            long now = System.currentTimeMillis();
+            long copied = copier.getBytesCopied();
+            long observed = now > lastSample ? (copied - lastBytes) * 1000 / (now - lastSample) : 0;
+            lastBytes = copied;
+            lastSample = now;
+
+            long rate = copier.getBytesPerSecond();
+            if (overloaded && rate == 0 && observed == 0) {
+                // an unlimited copy is first limited to what it copies now, wait until it copied something
+                logger.warn("Peer " + peer + " is overloaded (" + cause + "), no copy throughput yet");
+            } else if (overloaded) {
+                long current = rate > 0 ? rate : observed;
+                rate = Math.max(MIN_BYTES_PER_SECOND, current / 2);
+                logger.warn("Peer " + peer + " is overloaded (" + cause + "), copying at " + rate + " bytes/s");
+                copier.setBytesPerSecond(rate);
+            } else if (rate > 0 && ceiling == 0 && rate > observed) {
+                // the limit does not slow down the copy anymore
+                copier.setBytesPerSecond(0);
+            } else if (rate > 0 && (ceiling == 0 || rate < ceiling)) {
+                rate = rate + Math.max(1L, rate / 4);
+                if (ceiling > 0 && rate >= ceiling) {
+                    rate = ceiling;
+                }
+                copier.setBytesPerSecond(rate);
+            }
+            rateGauge.set(copier.getBytesPerSecond());
+        } else if (overloaded) {
+            logger.warn("Peer " + peer + " is overloaded (" + cause + ")");
+        }
+        return overloaded;
+    }
+
+    private static boolean crosses(long value, long threshold) {
+        return threshold > 0 && value > threshold;
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * @return why the peer was last found overloaded, or null if it is not
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the number of times the peer was found overloaded
+     */
+    public synchronized long getEvents() {
+        return eventCount;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parser of the <code>Commandstats</code> section of Redis INFO, e.g.
+ * <code>cmdstat_get:calls=21,usec=175,usec_per_call=8.33</code>.
+ *
+ * Commands are counted in a fixed table of the Redis commands, so the number of metrics derived from it is bounded no
+ * matter what Redis reports. Commands that are not in the table, e.g. of a newer Redis or of a module, are summed up
+ * under {@link #OTHER}. A command keeps its index across parses.
+ *
+ * Instances are not thread safe. Each consumer should own its parser and reuse it across polls.
+ */
+public class RedisCommandStats {
+
+    public static final String OTHER = "other";
+
+    private static final String PREFIX = "cmdstat_";
+
+    /**
+     * The commands of Redis 3.2, in alphabetical order.
+     */
+    private static final String[] COMMANDS = { "append", "asking", "auth", "bgrewriteaof", "bgsave", "bitcount",
+            "bitfield", "bitop", "bitpos", "blpop", "brpop", "brpoplpush", "client", "cluster", "command", "config",
+            "dbsize", "debug", "decr", "decrby", "del", "discard", "dump", "echo", "eval", "evalsha", "exec", "exists",
+            "expire", "expireat", "flushall", "flushdb", "geoadd", "geodist", "geohash", "geopos", "georadius",
+            "georadiusbymember", "get", "getbit", "getrange", "getset", "hdel", "hexists", "hget", "hgetall",
+            "hincrby", "hincrbyfloat", "hkeys", "hlen", "hmget", "hmset", "hscan", "hset", "hsetnx", "hstrlen",
+            "hvals", "incr", "incrby", "incrbyfloat", "info", "keys", "lastsave", "latency", "lindex", "linsert",
+            "llen", "lpop", "lpush", "lpushx", "lrange", "lrem", "lset", "ltrim", "mget", "migrate", "monitor", "move",
+            "mset", "msetnx", "multi", "object", "persist", "pexpire", "pexpireat", "pfadd", "pfcount", "pfdebug",
+            "pfmerge", "pfselftest", "ping", "psetex", "psubscribe", "psync", "pttl", "publish", "pubsub",
+            "punsubscribe", "randomkey", "readonly", "readwrite", "rename", "renamenx", "replconf", "restore",
+            "restore-asking", "role", "rpop", "rpoplpush", "rpush", "rpushx", "sadd", "save", "scan", "scard",
+            "script", "sdiff", "sdiffstore", "select", "set", "setbit", "setex", "setnx", "setrange", "shutdown",
+            "sinter", "sinterstore", "sismember", "slaveof", "slowlog", "smembers", "smove", "sort", "spop",
+            "srandmember", "srem", "sscan", "strlen", "subscribe", "substr", "sunion", "sunionstore", "sync", "time",
+            "ttl", "type", "unsubscribe", "unwatch", "wait", "watch", "zadd", "zcard", "zcount", "zincrby",
+            "zinterstore", "zlexcount", "zrange", "zrangebylex", "zrangebyscore", "zrank", "zrem", "zremrangebylex",
+            "zremrangebyrank", "zremrangebyscore", "zrevrange", "zrevrangebylex", "zrevrangebyscore", "zrevrank",
+            "zscan", "zscore", "zunionstore" };
+
+    private static final Map<String, Integer> INDEX = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            INDEX.put(COMMANDS[i], i);
+        }
+    }
+
+    private final long[] calls = new long[COMMANDS.length + 1];
+    private final long[] usec = new long[COMMANDS.length + 1];
+    private final boolean[] present = new boolean[COMMANDS.length + 1];
+
+    /**
+     * @return the size of the command table, including {@link #OTHER}
+     */
+    public static int size() {
+        return COMMANDS.length + 1;
+    }
+
+    /**
+     * @return the name of the i-th command of the table
+     */
+    public static String getName(int i) {
+        return i == COMMANDS.length ? OTHER : COMMANDS[i];
+    }
+
+    /**
+     * @return the index of a command in the table, the index of {@link #OTHER} if it is not in the table
+     */
+    public static int indexOf(String command) {
+        Integer i = INDEX.get(command);
+        return i == null ? COMMANDS.length : i;
+    }
+
+    /**
+     * Parse an INFO reply. The counters of the previous reply are discarded.
+     *
+     * @return the number of commands Redis reported
+     */
+    public int parse(String info) {
+        Arrays.fill(calls, 0L);
+        Arrays.fill(usec, 0L);
+        Arrays.fill(present, false);
+
+        int count = 0;
+        int start = 0;
+        int length = info.length();
+        while (start < length) {
+            int end = info.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (info.startsWith(PREFIX, start) && parseLine(info, start + PREFIX.length(), end)) {
+                count++;
+            }
+            start = end + 1;
+        }
+        return count;
+    }
+
+    /**
+     * @return true if Redis reported the i-th command of the table in the last reply
+     */
+    public boolean isPresent(int i) {
+        return present[i];
+    }
+
+    /**
+     * @return the number of calls of the i-th command since Redis started or the stats were reset
+     */
+    public long getCalls(int i) {
+        return calls[i];
+    }
+
+    /**
+     * @return the total time in us spent in the i-th command since Redis started or the stats were reset
+     */
+    public long getUsec(int i) {
+        return usec[i];
+    }
+
+    private boolean parseLine(String info, int start, int end) {
+        int colon = info.indexOf(':', start);
+        if (colon < 0 || colon > end) {
+            return false;
+        }
+        long lineCalls = field(info, "calls=", colon, end);
+        long lineUsec = field(info, "usec=", colon, end);
+        if (lineCalls < 0 || lineUsec < 0) {
+            return false;
+        }
+
+        int i = indexOf(info.substring(start, colon).toLowerCase(Locale.ENGLISH));
+        calls[i] += lineCalls;
+        usec[i] += lineUsec;
+        present[i] = true;
+        return true;
+    }
+
+    /**
+     * @return the value of a numeric field of a line or -1 if it is missing
+     */
+    private static long field(String info, String name, int start, int end) {
+        int i = start + 1;
+        while (i < end) {
+            int next = info.indexOf(',', i);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            if (info.startsWith(name, i)) {
+                long value = 0;
+                boolean digits = false;
+                for (int j = i + name.length(); j < next; j++) {
+                    char c = info.charAt(j);
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    value = value * 10 + (c - '0');
+                    digits = true;
+                }
+                return digits ? value : -1L;
+            }
+            i = next + 1;
+        }
+        return -1L;
+    }
+}
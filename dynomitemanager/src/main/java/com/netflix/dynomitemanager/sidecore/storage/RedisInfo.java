@@ -0,0 +1,318 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, typed view of a single Redis INFO reply.
+ *
+ * The reply is split into fields once, when the snapshot is created. The fields that Dynomite Manager makes decisions
+ * on (role, replication, persistence, loading and memory) are exposed through typed getters; everything else is
+ * available through {@link #get(String)} and {@link #getLong(String, long)}.
+ */
+public final class RedisInfo {
+
+    private final String raw;
+    private final long timestamp;
+    private final Map<String, String> fields;
+    private final List<Slave> slaves;
+
+    private final String role;
+    private final long masterReplOffset;
+    private final long uptimeInSeconds;
+    private final boolean loading;
+    private final boolean rdbBgsaveInProgress;
+    private final boolean aofEnabled;
+    private final boolean aofRewriteInProgress;
+    private final long usedMemory;
+    private final long maxMemory;
+
+    /**
+     * @param raw
+     *            the INFO reply as returned by Redis
+     * @param timestamp
+     *            the time in ms at which the reply was requested
+     */
+    public RedisInfo(String raw, long timestamp) {
+        this.raw = raw;
+        this.timestamp = timestamp;
+
+        Map<String, String> map = new HashMap<String, String>();
+        List<Slave> slaveList = new ArrayList<Slave>();
+
+        int start = 0;
+        int len = raw.length();
+        while (start < len) {
+            int end = raw.indexOf('\n', start);
+            if (end < 0) {
+                end = len;
+            }
+            String line = raw.substring(start, end).trim();
+            start = end + 1;
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String key = line.substring(0, colon);
+            String value = line.substring(colon + 1);
+            map.put(key, value);
+
+            if (key.startsWith("slave") && value.startsWith("ip=")) {
+                Slave slave = Slave.parse(key, value);
+                if (slave != null) {
+                    slaveList.add(slave);
+                }
+            }
+        }
+
+        Collections.sort(slaveList, Slave.BY_INDEX);
+        this.fields = Collections.unmodifiableMap(map);
+        this.slaves = Collections.unmodifiableList(slaveList);
+
+        this.role = map.get("role");
+        this.masterReplOffset = getLong("master_repl_offset", -1L);
+        this.uptimeInSeconds = getLong("uptime_in_seconds", -1L);
+        this.loading = getLong("loading", 0L) == 1L;
+        this.rdbBgsaveInProgress = getLong("rdb_bgsave_in_progress", 0L) == 1L;
+        this.aofEnabled = getLong("aof_enabled", 0L) == 1L;
+        this.aofRewriteInProgress = getLong("aof_rewrite_in_progress", 0L) == 1L;
+        this.usedMemory = getLong("used_memory", -1L);
+        this.maxMemory = getLong("maxmemory", -1L);
+    }
+
+    /**
+     * @return the INFO reply this snapshot was built from
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    /**
+     * @return the time in ms at which the INFO reply was requested
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the raw value of an INFO field or null if Redis did not report it
+     */
+    public String get(String field) {
+        return fields.get(field);
+    }
+
+    /**
+     * @return the value of a numeric INFO field, truncated to a long, or the default value if the field is missing
+     *         or not numeric
+     */
+    public long getLong(String field, long defaultValue) {
+        String value = fields.get(field);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException ex) {
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * @return master or slave, null if the role was not reported
+     */
+    public String getRole() {
+        return role;
+    }
+
+    public boolean isMaster() {
+        return "master".equals(role);
+    }
+
+    public boolean isSlave() {
+        return "slave".equals(role);
+    }
+
+    /**
+     * @return master_repl_offset or -1 if it was not reported
+     */
+    public long getMasterReplOffset() {
+        return masterReplOffset;
+    }
+
+    /**
+     * @return the slaves connected to this node ordered by their slaveN index
+     */
+    public List<Slave> getSlaves() {
+        return slaves;
+    }
+
+    /**
+     * @return the connected slave with the given ip address or null
+     */
+    public Slave getSlave(String ip) {
+        for (Slave slave : slaves) {
+            if (slave.getIp().equals(ip)) {
+                return slave;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return uptime_in_seconds or -1 if it was not reported
+     */
+    public long getUptimeInSeconds() {
+        return uptimeInSeconds;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public boolean isRdbBgsaveInProgress() {
+        return rdbBgsaveInProgress;
+    }
+
+    public boolean isAofEnabled() {
+        return aofEnabled;
+    }
+
+    public boolean isAofRewriteInProgress() {
+        return aofRewriteInProgress;
+    }
+
+    /**
+     * @return used_memory in bytes or -1 if it was not reported
+     */
+    public long getUsedMemory() {
+        return usedMemory;
+    }
+
+    /**
+     * @return maxmemory in bytes, 0 if unlimited, -1 if it was not reported
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * A slave as reported in the Replication section, e.g.
+     * <code>slave0:ip=10.99.160.121,port=22122,state=online,offset=17279,lag=0</code>.
+     */
+    public static final class Slave {
+
+        private static final Comparator<Slave> BY_INDEX = new Comparator<Slave>() {
+            @Override
+            public int compare(Slave a, Slave b) {
+                return a.index < b.index ? -1 : (a.index == b.index ? 0 : 1);
+            }
+        };
+
+        private final int index;
+        private final String ip;
+        private final int port;
+        private final String state;
+        private final long offset;
+        private final long lag;
+
+        private Slave(int index, String ip, int port, String state, long offset, long lag) {
+            this.index = index;
+            this.ip = ip;
+            this.port = port;
+            this.state = state;
+            this.offset = offset;
+            this.lag = lag;
+        }
+
+        private static Slave parse(String key, String value) {
+            int index;
+            try {
+                index = Integer.parseInt(key.substring("slave".length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            String ip = null;
+            String state = null;
+            int port = -1;
+            long offset = -1L;
+            long lag = -1L;
+            try {
+                for (String item : value.split(",")) {
+                    int eq = item.indexOf('=');
+                    if (eq < 0) {
+                        continue;
+                    }
+                    String name = item.substring(0, eq);
+                    String val = item.substring(eq + 1).trim();
+                    if (name.equals("ip")) {
+                        ip = val;
+                    } else if (name.equals("port")) {
+                        port = Integer.parseInt(val);
+                    } else if (name.equals("state")) {
+                        state = val;
+                    } else if (name.equals("offset")) {
+                        offset = Long.parseLong(val);
+                    } else if (name.equals("lag")) {
+                        lag = Long.parseLong(val);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            return ip == null ? null : new Slave(index, ip, port, state, offset, lag);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getIp() {
+            return ip;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        /**
+         * @return the replication offset acknowledged by the slave or -1 if it was not reported
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLag() {
+            return lag;
+        }
+    }
+}
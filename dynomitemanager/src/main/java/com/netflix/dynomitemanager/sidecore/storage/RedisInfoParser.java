@@ -12,414 +12,518 @@
  */
 package com.netflix.dynomitemanager.sidecore.storage;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import org.junit.Assert;
 
+/**
+ * Single pass, byte level parser for the output of the Redis INFO command.
+ *
+ * The parser walks the INFO payload once, looks up whitelisted field names through a precomputed hash table and
+ * writes the values into a preallocated table of primitive longs indexed by (section, field). Metric names follow the
+ * <code>Redis_&lt;Section&gt;_&lt;key&gt;</code> convention and are built only the first time a (section, field) pair
+ * is seen, so steady state parsing does not allocate.
+ *
+ * The special cases of the original line based parser are preserved:
+ * <ul>
+ * <li>Rule0: <code>Server/uptime_in_seconds</code> is truncated to a long.
+ * <li>Rule1: <code>Memory/mem_fragmentation_ratio</code> is multiplied by 100.
+ * <li>Rule2: whitelisted <code>ok</code>/<code>err</code> status fields map to 1/0.
+ * <li>Rule3: <code>Keyspace/db0</code> is split into <code>db0_keys</code>, <code>db0_expires</code> and
+ * <code>db0_avg_ttl</code>.
+ * </ul>
+ *
+ * Instances are not thread safe. Each consumer should own its parser and reuse it across polls.
+ */
 public class RedisInfoParser {
 
-    private static final Set<String> WHITE_LIST = new HashSet<String>();
+    private static final int KIND_NUMBER = 0;
+    private static final int KIND_RATIO = 1;
+    private static final int KIND_KEYSPACE = 2;
+
+    /**
+     * Whitelisted INFO fields. Everything else is skipped without being decoded.
+     */
+    private static final String[] WHITE_LIST = { "uptime_in_seconds", "connected_clients",
+            "client_longest_output_list", "client_biggest_input_buf", "blocked_clients", "used_memory",
+            "used_memory_rss", "used_memory_lua", "mem_fragmentation_ratio", "rdb_changes_since_last_save",
+            "rdb_last_save_time", "aof_enabled", "aof_rewrite_in_progress", "total_connections_received",
+            "total_commands_processed", "instantaneous_ops_per_sec", "rejected_connections", "expired_keys",
+            "evicted_keys", "keyspace_hits", "keyspace_misses", "used_cpu_sys", "used_cpu_user", "db0",
+
+            // The following apply only for ARDB/RocksDB
+            "used_disk_space", "rocksdb_memtable_total", "rocksdb_memtable_unflushed" };
+
+    /**
+     * Sub fields of the <code>db0</code> keyspace line, e.g. <code>db0:keys=16850,expires=0,avg_ttl=0</code>.
+     */
+    private static final String[] KEYSPACE_FIELDS = { "keys", "expires", "avg_ttl" };
+
+    private static final int MAX_SECTIONS = 32;
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[][] FIELD_BYTES;
+    private static final int[] FIELD_KIND;
+    private static final int[] FIELD_METRIC;
+    private static final int[] FIELD_TABLE;
+    private static final byte[][] KEYSPACE_BYTES;
+    private static final int KEYSPACE_METRIC_BASE;
+
+    /**
+     * Names of the per-section metric slots, i.e. the part after <code>Redis_&lt;Section&gt;_</code>.
+     */
+    private static final String[] METRIC_KEYS;
 
     static {
-        WHITE_LIST.add("uptime_in_seconds");
-        WHITE_LIST.add("connected_clients");
-        WHITE_LIST.add("client_longest_output_list");
-        WHITE_LIST.add("client_biggest_input_buf");
-        WHITE_LIST.add("blocked_clients");
-        WHITE_LIST.add("used_memory");
-        WHITE_LIST.add("used_memory_rss");
-        WHITE_LIST.add("used_memory_lua");
-        WHITE_LIST.add("mem_fragmentation_ratio");
-        WHITE_LIST.add("rdb_changes_since_last_save");
-        WHITE_LIST.add("rdb_last_save_time");
-        WHITE_LIST.add("aof_enabled");
-        WHITE_LIST.add("aof_rewrite_in_progress");
-        WHITE_LIST.add("total_connections_received");
-        WHITE_LIST.add("total_commands_processed");
-        WHITE_LIST.add("instantaneous_ops_per_sec");
-        WHITE_LIST.add("rejected_connections");
-        WHITE_LIST.add("expired_keys");
-        WHITE_LIST.add("evicted_keys");
-        WHITE_LIST.add("keyspace_hits");
-        WHITE_LIST.add("keyspace_misses");
-        WHITE_LIST.add("used_cpu_sys");
-        WHITE_LIST.add("used_cpu_user");
-        WHITE_LIST.add("db0");
-
-        /**
-         * The following apply only for ARDB/RocksDB"
-         */
-        WHITE_LIST.add("used_disk_space");
-        WHITE_LIST.add("rocksdb_memtable_total");
-        WHITE_LIST.add("rocksdb_memtable_unflushed");
-    }
+        int n = WHITE_LIST.length;
+        FIELD_BYTES = new byte[n][];
+        FIELD_KIND = new int[n];
+        FIELD_METRIC = new int[n];
+        METRIC_KEYS = new String[n - 1 + KEYSPACE_FIELDS.length];
+
+        int metric = 0;
+        for (int i = 0; i < n; i++) {
+            String field = WHITE_LIST[i];
+            FIELD_BYTES[i] = field.getBytes(StandardCharsets.US_ASCII);
+            if (field.equals("db0")) {
+                FIELD_KIND[i] = KIND_KEYSPACE;
+                FIELD_METRIC[i] = -1;
+                continue;
+            }
+            if (field.equals("mem_fragmentation_ratio")) {
+                FIELD_KIND[i] = KIND_RATIO;
+            } else {
+                FIELD_KIND[i] = KIND_NUMBER;
+            }
+            FIELD_METRIC[i] = metric;
+            METRIC_KEYS[metric++] = field;
+        }
 
-    public RedisInfoParser() {
+        KEYSPACE_METRIC_BASE = metric;
+        KEYSPACE_BYTES = new byte[KEYSPACE_FIELDS.length][];
+        for (int i = 0; i < KEYSPACE_FIELDS.length; i++) {
+            KEYSPACE_BYTES[i] = KEYSPACE_FIELDS[i].getBytes(StandardCharsets.US_ASCII);
+            METRIC_KEYS[metric++] = "db0_" + KEYSPACE_FIELDS[i];
+        }
 
+        // open addressing table of field index + 1, sized to keep the load factor under 0.25
+        FIELD_TABLE = new int[128];
+        for (int i = 0; i < n; i++) {
+            int slot = hash(FIELD_BYTES[i], 0, FIELD_BYTES[i].length) & (FIELD_TABLE.length - 1);
+            while (FIELD_TABLE[slot] != 0) {
+                slot = (slot + 1) & (FIELD_TABLE.length - 1);
+            }
+            FIELD_TABLE[slot] = i + 1;
+        }
     }
 
-    public Map<String, Long> parse(Reader inReader) throws Exception {
+    // Sections seen so far. Their names are decoded once and kept for the life of the parser.
+    private final byte[][] sectionBytes = new byte[MAX_SECTIONS][];
+    private final String[] sectionNames = new String[MAX_SECTIONS];
+    private final boolean[] sectionIsMemory = new boolean[MAX_SECTIONS];
+    private final boolean[] sectionIsKeyspace = new boolean[MAX_SECTIONS];
+    private int sectionCount;
 
-        final Map<String, Long> metrics = new HashMap<String, Long>();
-        BufferedReader reader = null;
+    // Metric table: slot = section * METRIC_KEYS.length + metric
+    private final String[] names = new String[MAX_SECTIONS * METRIC_KEYS.length];
+    private final long[] values = new long[MAX_SECTIONS * METRIC_KEYS.length];
+    private final int[] stamps = new int[MAX_SECTIONS * METRIC_KEYS.length];
+    private final int[] order = new int[MAX_SECTIONS * METRIC_KEYS.length];
+    private int generation;
+    private int count;
 
-        try {
-            reader = new BufferedReader(inReader);
-
-            List<StatsSection> sections = new ArrayList<StatsSection>();
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private char[] chars;
 
-            boolean stop = false;
-            while (!stop) {
-                StatsSection section = new StatsSection(reader, RuleIter);
-                section.initSection();
-
-                if (section.isEmpty()) {
-                    stop = true;
-                    break;
-                }
-
-                section.parseSectionData();
+    public RedisInfoParser() {
 
-                if (section.data.isEmpty()) {
-                    continue;
-                }
+    }
 
-                sections.add(section);
+    /**
+     * Parses the INFO payload held in <code>buf[off, off + len)</code>.
+     *
+     * @return the number of metrics found, accessible through {@link #getName(int)} and {@link #getValue(int)}
+     */
+    public int parse(byte[] buf, int off, int len) {
+        generation++;
+        count = 0;
+
+        int section = -1;
+        int end = off + len;
+        int pos = off;
+
+        while (pos < end) {
+            int lineEnd = pos;
+            while (lineEnd < end && buf[lineEnd] != '\n') {
+                lineEnd++;
             }
 
-            for (StatsSection section : sections) {
-                metrics.putAll(section.getMetrics());
+            int s = pos;
+            int e = lineEnd;
+            while (s < e && buf[s] <= ' ') {
+                s++;
+            }
+            while (e > s && buf[e - 1] <= ' ') {
+                e--;
             }
 
-        } finally {
-            if (reader != null) {
-                reader.close();
+            if (s == e) {
+                // an empty line terminates the current section
+                section = -1;
+            } else if (buf[s] == '#') {
+                section = sectionIndex(buf, s + 1, e);
+            } else if (section >= 0) {
+                processLine(section, buf, s, e);
             }
+
+            pos = lineEnd + 1;
         }
 
-        return metrics;
+        return count;
     }
 
-    private class StatsSection {
-
-        private final BufferedReader reader;
-
-        private String sectionName;
-        private String sectionNamePrefix = "Redis_";
-
-        private final Map<String, Long> data = new HashMap<String, Long>();
-        private final SectionRule sectionRule;
-
-        private StatsSection(BufferedReader br, SectionRule rule) {
-            reader = br;
-            sectionRule = rule;
+    /**
+     * Parses an INFO payload that has already been decoded by the client library. The characters are copied into
+     * the parser's reusable buffer.
+     */
+    public int parse(CharSequence info) {
+        int len = info.length();
+        ensureCapacity(len);
+        byte[] buf = buffer;
+        for (int i = 0; i < len; i++) {
+            char c = info.charAt(i);
+            buf[i] = c < 0x80 ? (byte) c : (byte) '?';
         }
+        return parse(buf, 0, len);
+    }
 
-        private boolean isEmpty() {
-            return sectionName == null && data.isEmpty();
+    /**
+     * Reads a RESP bulk string reply (<code>$&lt;length&gt;\r\n&lt;payload&gt;\r\n</code>) straight from the
+     * stream into the parser's reusable buffer and parses it.
+     *
+     * @return the number of metrics found, 0 for a null bulk reply
+     * @throws IOException if the stream ends early or Redis replied with an error
+     */
+    public int parseBulkReply(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == '-') {
+            throw new IOException("Redis replied with an error: " + readLine(in));
+        }
+        if (type != '$') {
+            throw new IOException("Unexpected RESP reply type: " + (char) type);
         }
 
-        private void initSection() throws Exception {
-
-            String line = null;
-
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (!line.startsWith("#")) {
-                    continue;
-                } else {
-                    break;
-                }
+        long length = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException("Unexpected end of stream while reading bulk length");
+            } else if (b == '-') {
+                negative = true;
+            } else {
+                length = length * 10 + (b - '0');
             }
+        }
+        in.read(); // '\n'
 
-            if (line == null) {
-                return;
-            }
+        if (negative) {
+            generation++;
+            count = 0;
+            return 0;
+        }
+        if (length > Integer.MAX_VALUE - 2) {
+            throw new IOException("Bulk reply too large: " + length);
+        }
 
-            sectionName = readSectionName(line);
-            if (sectionName != null && !sectionName.isEmpty()) {
-                sectionNamePrefix = "Redis_" + sectionName + "_";
+        int len = (int) length;
+        ensureCapacity(len + 2);
+        int read = 0;
+        while (read < len + 2) {
+            int r = in.read(buffer, read, len + 2 - read);
+            if (r == -1) {
+                throw new EOFException("Unexpected end of stream while reading bulk reply");
             }
+            read += r;
         }
 
-        private void parseSectionData() throws Exception {
-
-            String line = reader.readLine();
+        return parse(buffer, 0, len);
+    }
 
-            while (line != null && !line.isEmpty()) {
-                processLine(line.trim());
-                line = reader.readLine();
+    /**
+     * Compatibility entry point that returns the parsed metrics as a map.
+     */
+    public Map<String, Long> parse(Reader inReader) throws Exception {
+        try {
+            if (chars == null) {
+                chars = new char[INITIAL_BUFFER_SIZE];
             }
-        }
-
-        private String readSectionName(String line) {
-            String[] parts = line.split(" ");
-            if (parts.length != 2) {
-                return null;
+            int len = 0;
+            int r;
+            while ((r = inReader.read(chars, 0, chars.length)) != -1) {
+                ensureCapacity(len + r);
+                for (int i = 0; i < r; i++) {
+                    char c = chars[i];
+                    buffer[len + i] = c < 0x80 ? (byte) c : (byte) '?';
+                }
+                len += r;
             }
-            return parts[1];
+            parse(buffer, 0, len);
+        } finally {
+            inReader.close();
         }
 
-        private void processLine(String line) throws Exception {
+        return toMap();
+    }
 
-            String[] parts = line.split(":");
-            if (parts.length != 2) {
-                return;
-            }
-            String name = parts[0];
-            String sVal = parts[1];
+    /**
+     * @return the number of metrics found by the last parse
+     */
+    public int size() {
+        return count;
+    }
 
-            // while list filtering
-            if (!WHITE_LIST.contains(name))
-                return;
+    /**
+     * @return the name of the i-th metric of the last parse, e.g. <code>Redis_Memory_used_memory</code>
+     */
+    public String getName(int i) {
+        return names[order[i]];
+    }
 
-            if (sVal.endsWith("M")) {
-                sVal = sVal.substring(0, sVal.length() - 1);
-            }
+    /**
+     * @return the value of the i-th metric of the last parse
+     */
+    public long getValue(int i) {
+        return values[order[i]];
+    }
 
-            if (sectionRule.processSection(this, name, sVal)) {
-                return; // rule already applied. data is processed with custom
-                        // logic
-            }
+    /**
+     * @return the slot of the i-th metric of the last parse. A metric keeps its slot across parses, so consumers can
+     *         use it to index state they keep per metric.
+     */
+    public int getSlot(int i) {
+        return order[i];
+    }
 
-            // else do generic rule processing
-            Double val = null;
-            try {
-                val = Double.parseDouble(sVal);
-            } catch (NumberFormatException nfe) {
-                val = null;
-            }
+    /**
+     * @return a copy of the metrics found by the last parse
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> metrics = new HashMap<String, Long>(count * 2);
+        for (int i = 0; i < count; i++) {
+            metrics.put(getName(i), getValue(i));
+        }
+        return metrics;
+    }
 
-            if (val != null) {
-                data.put(name, val.longValue());
-            }
+    private void processLine(int section, byte[] buf, int s, int e) {
+        int colon = indexOf(buf, s, e, (byte) ':');
+        if (colon < 0 || indexOf(buf, colon + 1, e, (byte) ':') >= 0) {
+            return;
         }
 
-        private Map<String, Long> getMetrics() {
+        int field = fieldIndex(buf, s, colon);
+        if (field < 0) {
+            return;
+        }
 
-            Map<String, Long> map = new HashMap<String, Long>();
-            for (String key : data.keySet()) {
-                map.put(sectionNamePrefix + key, data.get(key));
-            }
-            return map;
+        int vs = colon + 1;
+        int ve = e;
+        while (vs < ve && buf[vs] <= ' ') {
+            vs++;
+        }
+        if (ve > vs && buf[ve - 1] == 'M') {
+            ve--;
         }
 
-    }
+        int base = section * METRIC_KEYS.length;
 
-    private interface SectionRule {
-        boolean processSection(StatsSection section, String key, String value);
+        switch (FIELD_KIND[field]) {
+        case KIND_KEYSPACE:
+            if (sectionIsKeyspace[section]) {
+                processKeyspace(base, section, buf, vs, ve);
+            }
+            return;
+        case KIND_RATIO:
+            // the generic rule outside of the Memory section
+            putNumber(base + FIELD_METRIC[field], section, buf, vs, ve, sectionIsMemory[section] ? 2 : 0);
+            return;
+        default:
+            putNumber(base + FIELD_METRIC[field], section, buf, vs, ve, 0);
+        }
     }
 
-    private SectionRule Rule0 = new SectionRule() {
-
-        @Override
-        public boolean processSection(StatsSection section, String key, String value) {
-
-            if (section.sectionName.equals("Server")) {
-                if (key.equals("uptime_in_seconds")) {
-                    try {
-                        Double dVal = Double.parseDouble(value);
-                        section.data.put(key, dVal.longValue());
-                        return true;
-                    } catch (NumberFormatException e) {
+    private void processKeyspace(int base, int section, byte[] buf, int s, int e) {
+        while (s < e) {
+            int comma = indexOf(buf, s, e, (byte) ',');
+            int partEnd = comma < 0 ? e : comma;
+            int eq = indexOf(buf, s, partEnd, (byte) '=');
+            if (eq > 0) {
+                for (int i = 0; i < KEYSPACE_BYTES.length; i++) {
+                    if (equals(KEYSPACE_BYTES[i], buf, s, eq)) {
+                        putNumber(base + KEYSPACE_METRIC_BASE + i, section, buf, eq + 1, partEnd, 0);
+                        break;
                     }
                 }
             }
-            return false;
+            s = partEnd + 1;
         }
+    }
 
-    };
-
-    private SectionRule Rule1 = new SectionRule() {
+    /**
+     * Parses a decimal number, multiplied by 10^scale and truncated towards zero, without going through
+     * {@link Double}. Values that are not plain decimals, or do not fit in a long, are ignored, as they were by the
+     * original parser.
+     */
+    private void putNumber(int slot, int section, byte[] buf, int s, int e, int scale) {
+        if (s >= e) {
+            return;
+        }
 
-        @Override
-        public boolean processSection(StatsSection section, String key, String value) {
+        boolean negative = false;
+        if (buf[s] == '-' || buf[s] == '+') {
+            negative = buf[s] == '-';
+            s++;
+        }
 
-            if (section.sectionName.equals("Memory")) {
-                if (key.equals("mem_fragmentation_ratio")) {
-                    try {
-                        Double dVal = Double.parseDouble(value);
-                        dVal = dVal * 100;
-                        section.data.put(key, dVal.longValue());
-                        return true;
-                    } catch (NumberFormatException e) {
+        long value = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (int i = s; i < e; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                // the integer digits, and the fraction digits up to the scale
+                if (fraction < scale) {
+                    if (value > (Long.MAX_VALUE - (b - '0')) / 10) {
+                        return;
+                    }
+                    value = value * 10 + (b - '0');
+                    if (fraction >= 0) {
+                        fraction++;
                     }
                 }
+                digits++;
+            } else if (b == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                return;
             }
-            return false;
         }
 
-    };
+        if (digits == 0) {
+            return;
+        }
+        for (int f = fraction < 0 ? 0 : fraction; f < scale; f++) {
+            if (value > Long.MAX_VALUE / 10) {
+                return;
+            }
+            value *= 10;
+        }
 
-    private SectionRule Rule2 = new SectionRule() {
+        put(slot, section, negative ? -value : value);
+    }
 
-        @Override
-        public boolean processSection(StatsSection section, String key, String value) {
+    private void put(int slot, int section, long value) {
+        if (stamps[slot] != generation) {
+            stamps[slot] = generation;
+            order[count++] = slot;
+            if (names[slot] == null) {
+                String sectionName = sectionNames[section];
+                String key = METRIC_KEYS[slot % METRIC_KEYS.length];
+                names[slot] = sectionName.isEmpty() ? "Redis_" + key : "Redis_" + sectionName + "_" + key;
+            }
+        }
+        values[slot] = value;
+    }
 
-            if (section.sectionName.equals("Persistence")) {
-                if (key.equals("rdb_last_bgsave_status") || key.equals("aof_last_bgrewrite_status")
-                        || key.equals("aof_last_write_status")) {
-                    Long val = value.equalsIgnoreCase("ok") ? 1L : 0L;
-                    section.data.put(key, val);
-                    return true;
-                }
+    private int sectionIndex(byte[] buf, int s, int e) {
+        while (s < e && buf[s] == ' ') {
+            s++;
+        }
+        for (int i = 0; i < sectionCount; i++) {
+            if (equals(sectionBytes[i], buf, s, e)) {
+                return i;
             }
-            return false;
+        }
+        if (sectionCount == MAX_SECTIONS) {
+            return -1;
         }
 
-    };
+        byte[] name = new byte[e - s];
+        System.arraycopy(buf, s, name, 0, name.length);
+        int i = sectionCount++;
+        sectionBytes[i] = name;
+        sectionNames[i] = new String(name, StandardCharsets.US_ASCII);
+        sectionIsMemory[i] = sectionNames[i].equals("Memory");
+        sectionIsKeyspace[i] = sectionNames[i].equals("Keyspace");
+        return i;
+    }
 
-    private SectionRule Rule3 = new SectionRule() {
+    private static int fieldIndex(byte[] buf, int s, int e) {
+        int slot = hash(buf, s, e) & (FIELD_TABLE.length - 1);
+        int entry;
+        while ((entry = FIELD_TABLE[slot]) != 0) {
+            if (equals(FIELD_BYTES[entry - 1], buf, s, e)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & (FIELD_TABLE.length - 1);
+        }
+        return -1;
+    }
 
-        @Override
-        public boolean processSection(StatsSection section, String key, String value) {
+    private static int hash(byte[] buf, int s, int e) {
+        int h = 0x811c9dc5;
+        for (int i = s; i < e; i++) {
+            h ^= buf[i];
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
 
-            if (section.sectionName.equals("Keyspace")) {
-                if (key.equals("db0")) {
-                    String[] parts = value.split(",");
-                    for (String part : parts) {
-                        addPart(key, part, section);
-                    }
-                    return true;
-                }
-            }
+    private static boolean equals(byte[] expected, byte[] buf, int s, int e) {
+        if (expected.length != e - s) {
             return false;
         }
-
-        private void addPart(String parentKey, String keyVal, StatsSection section) {
-            String[] parts = keyVal.split("=");
-            if (parts.length != 2) {
-                return;
-            }
-            try {
-                String key = parentKey + "_" + parts[0];
-                Double dVal = Double.parseDouble(parts[1]);
-                section.data.put(key, dVal.longValue());
-            } catch (NumberFormatException e) {
-                // ignore
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != buf[s + i]) {
+                return false;
             }
         }
-    };
-
-    private SectionRule RuleIter = new SectionRule() {
-
-        SectionRule[] arr = { Rule0, Rule1, Rule2, Rule3 };
-        final List<SectionRule> rules = Arrays.asList(arr);
+        return true;
+    }
 
-        @Override
-        public boolean processSection(StatsSection section, String key, String value) {
+    private static int indexOf(byte[] buf, int s, int e, byte b) {
+        for (int i = s; i < e; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-            for (SectionRule rule : rules) {
-                if (rule.processSection(section, key, value)) {
-                    return true;
-                }
+    private void ensureCapacity(int len) {
+        if (buffer.length < len) {
+            int size = buffer.length;
+            while (size < len) {
+                size *= 2;
             }
-            return false;
+            byte[] grown = new byte[size];
+            System.arraycopy(buffer, 0, grown, 0, buffer.length);
+            buffer = grown;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\r') {
+            sb.append((char) b);
         }
-    };
-
-    public static void main(String[] args) throws FileNotFoundException, Exception {
-
-        File file = new File("./src/test/resources/redis_info.txt");
-
-        RedisInfoParser parser = new RedisInfoParser();
-        Map<String, Long> metrics = parser.parse(new FileReader(file));
-
-        Iterator iter = metrics.keySet().iterator();
-        while (iter.hasNext()) {
-            String key = (String) iter.next();
-            Long value = metrics.get(key);
-            System.out.println("Key: " + key + ", value: " + value);
-        }
-
-        Assert.assertTrue(metrics.get("Redis_Server_uptime_in_seconds") == 1234L);
-        Assert.assertTrue(metrics.get("Redis_Clients_connected_clients") == 4L);
-        Assert.assertTrue(metrics.get("Redis_Clients_client_longest_output_list") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Clients_client_biggest_input_buf") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Clients_blocked_clients") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Memory_used_memory") == 314569968L);
-        // Assert.assertTrue(metrics.get("Redis_Memory_used_memory_human") ==
-        // 300L);
-        // Assert.assertTrue(metrics.get("Redis_Memory_used_memory_rss") ==
-        // 328806400L);
-        // Assert.assertTrue(metrics.get("Redis_Memory_used_memory_peak") ==
-        // 314569968L);
-        // Assert.assertTrue(metrics.get("Redis_Memory_used_memory_peak_human")
-        // == 300L);
-        // Assert.assertTrue(metrics.get("Redis_Memory_used_memory_lua") ==
-        // 33792L);
-        Assert.assertTrue(metrics.get("Redis_Memory_mem_fragmentation_ratio") == 105L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_loading") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_rdb_changes_since_last_save")
-        // == 53046299L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_rdb_bgsave_in_progress")
-        // == 0L);
-        Assert.assertTrue(metrics.get("Redis_Persistence_rdb_last_save_time") == 1411544331L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_rdb_last_bgsave_status")
-        // == 1L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_rdb_last_bgsave_time_sec")
-        // == -1L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_rdb_current_bgsave_time_sec")
-        // == -1L);
-        Assert.assertTrue(metrics.get("Redis_Persistence_aof_enabled") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Persistence_aof_rewrite_in_progress") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_aof_rewrite_scheduled")
-        // == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_aof_last_rewrite_time_sec")
-        // == -1L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_aof_current_rewrite_time_sec")
-        // == -1L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_aof_last_bgrewrite_status")
-        // == 1L);
-        // Assert.assertTrue(metrics.get("Redis_Persistence_aof_last_write_status")
-        // == 1L);
-        Assert.assertTrue(metrics.get("Redis_Stats_total_connections_received") == 3995L);
-        Assert.assertTrue(metrics.get("Redis_Stats_total_commands_processed") == 94308679L);
-        Assert.assertTrue(metrics.get("Redis_Stats_instantaneous_ops_per_sec") == 6321L);
-        Assert.assertTrue(metrics.get("Redis_Stats_rejected_connections") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Stats_sync_full") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Stats_sync_partial_ok") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Stats_sync_partial_err") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Stats_expired_keys") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Stats_evicted_keys") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Stats_keyspace_hits") == 41254397L);
-        Assert.assertTrue(metrics.get("Redis_Stats_keyspace_misses") == 0L);
-        Assert.assertTrue(metrics.get("Redis_percent_hits") == 100L);
-        // Assert.assertTrue(metrics.get("Redis_Stats_pubsub_channels") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Stats_pubsub_patterns") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Stats_latest_fork_usec") == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Replication_connected_slaves")
-        // == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Replication_master_repl_offset")
-        // == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Replication_repl_backlog_active")
-        // == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Replication_repl_backlog_size")
-        // == 1048576L);
-        // Assert.assertTrue(metrics.get("Redis_Replication_repl_backlog_first_byte_offset")
-        // == 0L);
-        // Assert.assertTrue(metrics.get("Redis_Replication_repl_backlog_histlen")
-        // == 0L);
-        Assert.assertTrue(metrics.get("Redis_CPU_used_cpu_sys") == 2052L);
-        Assert.assertTrue(metrics.get("Redis_CPU_used_cpu_user") == 793L);
-        // Assert.assertTrue(metrics.get("Redis_CPU_used_cpu_sys_children") ==
-        // 0L);
-        // Assert.assertTrue(metrics.get("Redis_CPU_used_cpu_user_children") ==
-        // 0L);
-        Assert.assertTrue(metrics.get("Redis_Keyspace_db0_keys") == 2499968L);
-        Assert.assertTrue(metrics.get("Redis_Keyspace_db0_expires") == 0L);
-        Assert.assertTrue(metrics.get("Redis_Keyspace_db0_avg_ttl") == 0L);
+        in.read(); // '\n'
+        return sb.toString();
     }
 }
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.monitoring.JedisFactory;
+
+/**
+ * Shared source of Redis INFO snapshots for the local node and its peers.
+ *
+ * INFO is sent at most once per {@link IConfiguration#getRedisInfoTtlMs()} for each endpoint. Concurrent callers that
+ * need a fresh reply for the same endpoint are coalesced onto a single in-flight request, and every caller receives
+ * the same immutable {@link RedisInfo}.
+ */
+@Singleton
+public class RedisInfoSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisInfoSnapshot.class);
+
+    private final IConfiguration config;
+    private final JedisFactory jedisFactory;
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+    @Inject
+    public RedisInfoSnapshot(IConfiguration config, JedisFactory jedisFactory) {
+        this.config = config;
+        this.jedisFactory = jedisFactory;
+    }
+
+    /**
+     * Get an INFO snapshot that is at most {@link IConfiguration#getRedisInfoTtlMs()} old.
+     *
+     * @throws JedisConnectionException
+     *             if Redis could not be reached
+     */
+    public RedisInfo get(String host, int port) {
+        return get(host, port, config.getRedisInfoTtlMs());
+    }
+
+    /**
+     * Get an INFO snapshot that was requested after this call was made. Use it after commands that change the state
+     * INFO reports on, such as BGSAVE or SLAVEOF.
+     */
+    public RedisInfo refresh(String host, int port) {
+        return get(host, port, 0);
+    }
+
+    /**
+     * Get an INFO snapshot that is at most maxAgeMs old.
+     */
+    public RedisInfo get(String host, int port, long maxAgeMs) {
+        Endpoint endpoint = endpoint(host, port);
+        long maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+
+        FutureTask<RedisInfo> task;
+        boolean owner = false;
+
+        synchronized (endpoint) {
+            long now = System.nanoTime();
+            if (endpoint.info != null && now - endpoint.fetchedAt <= maxAgeNanos) {
+                return endpoint.info;
+            }
+            if (endpoint.inFlight != null && endpoint.inFlightStartedAt >= now - maxAgeNanos) {
+                task = endpoint.inFlight;
+            } else {
+                task = new FutureTask<RedisInfo>(new Fetch(endpoint, now));
+                endpoint.inFlight = task;
+                endpoint.inFlightStartedAt = now;
+                owner = true;
+            }
+        }
+
+        // The first caller runs the request on its own thread, everybody else waits for its result.
+        if (owner) {
+            task.run();
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException("Interrupted while waiting for INFO from " + endpoint.key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new JedisConnectionException("INFO failed on " + endpoint.key, cause);
+        }
+    }
+
+    /**
+     * Drop the cached snapshot of an endpoint, e.g. once a peer is no longer used.
+     */
+    public void invalidate(String host, int port) {
+        endpoints.remove(host + ":" + port);
+    }
+
+    private Endpoint endpoint(String host, int port) {
+        String key = host + ":" + port;
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            endpoint = new Endpoint(key, host, port);
+            Endpoint old = endpoints.putIfAbsent(key, endpoint);
+            if (old != null) {
+                endpoint = old;
+            }
+        }
+        return endpoint;
+    }
+
+    private static class Endpoint {
+        private final String key;
+        private final String host;
+        private final int port;
+
+        // guarded by this
+        private RedisInfo info;
+        private long fetchedAt;
+        private FutureTask<RedisInfo> inFlight;
+        private long inFlightStartedAt;
+
+        private Endpoint(String key, String host, int port) {
+            this.key = key;
+            this.host = host;
+            this.port = port;
+        }
+    }
+
+    private class Fetch implements Callable<RedisInfo> {
+        private final Endpoint endpoint;
+        private final long startedAt;
+
+        private Fetch(Endpoint endpoint, long startedAt) {
+            this.endpoint = endpoint;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public RedisInfo call() throws Exception {
+            RedisInfo info = null;
+            try {
+                info = new RedisInfo(fetch(endpoint.host, endpoint.port), System.currentTimeMillis());
+                return info;
+            } finally {
+                synchronized (endpoint) {
+                    if (endpoint.inFlight != null && endpoint.inFlightStartedAt == startedAt) {
+                        endpoint.inFlight = null;
+                    }
+                    if (info != null && (endpoint.info == null || startedAt - endpoint.fetchedAt > 0)) {
+                        endpoint.info = info;
+                        endpoint.fetchedAt = startedAt;
+                    }
+                }
+            }
+        }
+    }
+
+    private String fetch(String host, int port) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending INFO to " + host + ":" + port);
+        }
+
+        Jedis jedis = jedisFactory.newInstance(host, port);
+        try {
+            jedis.connect();
+            return jedis.info();
+        } finally {
+            jedis.disconnect();
+        }
+    }
+}
@@ -13,10 +13,11 @@
 package com.netflix.dynomitemanager.sidecore.storage;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.InstanceState;
 import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.sidecore.backup.SnapshotBootstrap;
 import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
 
 import org.slf4j.Logger;
@@ -30,17 +31,13 @@ import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -57,6 +54,8 @@ public class RedisStorageProxy implements IStorageProxy {
     private static final String DYNO_REDIS = "redis";
     private static final String REDIS_ADDRESS = "127.0.0.1";
     private static final int REDIS_PORT = 22122;
+    private static final String WARM_MODE_COPY = "copy";
+    private static final String WARM_MODE_SNAPSHOT = "snapshot";
     private static final long GB_2_IN_KB = 2L * 1024L * 1024L;
     private static final String PROC_MEMINFO_PATH = "/proc/meminfo";
     private static final Pattern MEMINFO_PATTERN = Pattern.compile("MemTotal:\\s*([0-9]*)");
@@ -78,6 +77,21 @@ public class RedisStorageProxy implements IStorageProxy {
     @Inject
     private Sleeper sleeper;
 
+    @Inject
+    private RedisInfoSnapshot redisInfo;
+
+    @Inject
+    private PeerSelectionStrategy peerSelection;
+
+    @Inject
+    private InstanceState instanceState;
+
+    @Inject
+    private PeerThrottle throttle;
+
+    // the keyspace copy whose catch up is left for stopPeerSync()
+    private volatile KeyspaceCopier pendingCopy;
+
     public RedisStorageProxy() {
 	// connect();
     }
@@ -128,10 +142,34 @@ public class RedisStorageProxy implements IStorageProxy {
     }
 
     /**
-     * Turn off Redis' slave replication and switch from slave to master.
+     * Turn off Redis' slave replication and switch from slave to master. After
+     * a keyspace copy, copy again the keys written on the peer since.
      */
     @Override
     public void stopPeerSync() {
+	KeyspaceCopier copier = pendingCopy;
+	pendingCopy = null;
+	if (copier != null) {
+	    catchUp(copier);
+	}
+	slaveOfNoOne();
+    }
+
+    /**
+     * Turn off Redis' slave replication without copying again the keys
+     * written on the peer, e.g. when Dynomite did not start.
+     */
+    @Override
+    public void abortPeerSync() {
+	KeyspaceCopier copier = pendingCopy;
+	pendingCopy = null;
+	if (copier != null) {
+	    copier.stopTracking();
+	}
+	slaveOfNoOne();
+    }
+
+    private void slaveOfNoOne() {
 	boolean isDone = false;
 
 	// Iterate until we succeed the SLAVE NO ONE command
@@ -195,34 +233,27 @@ public class RedisStorageProxy implements IStorageProxy {
 	    logger.warn("Redis: There is already a pending BGREWRITEAOF/BGSAVE.");
 	}
 
-	String peerRedisInfo = null;
 	int retry = 0;
 
 	try {
+	    // The first check must not be served from a snapshot taken before BGREWRITEAOF/BGSAVE was issued.
+	    RedisInfo info = redisInfo.refresh(REDIS_ADDRESS, REDIS_PORT);
 	    while (true) {
-		peerRedisInfo = this.localJedis.info();
-		Iterable<String> result = Splitter.on('\n').split(peerRedisInfo);
-		String pendingPersistence = null;
-
-		for (String line : result) {
-		    if ((line.startsWith("aof_rewrite_in_progress") && config.isRedisAofEnabled())
-			    || (line.startsWith("rdb_bgsave_in_progress") && !config.isRedisAofEnabled())) {
-			String[] items = line.split(":");
-			pendingPersistence = items[1].trim();
-			if (pendingPersistence.equals("0")) {
-			    logger.info("Redis: BGREWRITEAOF/BGSAVE completed.");
-			    return true;
-			} else {
-			    retry++;
-			    logger.warn("Redis: BGREWRITEAOF/BGSAVE pending. Sleeping 30 secs...");
-			    sleeper.sleepQuietly(30000);
-
-			    if (retry > 20) {
-				return false;
-			    }
-			}
-		    }
+		boolean pendingPersistence = config.isRedisAofEnabled() ? info.isAofRewriteInProgress()
+			: info.isRdbBgsaveInProgress();
+		if (!pendingPersistence) {
+		    logger.info("Redis: BGREWRITEAOF/BGSAVE completed.");
+		    return true;
 		}
+
+		retry++;
+		logger.warn("Redis: BGREWRITEAOF/BGSAVE pending. Sleeping 30 secs...");
+		sleeper.sleepQuietly(30000);
+
+		if (retry > 20) {
+		    return false;
+		}
+		info = redisInfo.get(REDIS_ADDRESS, REDIS_PORT);
 	    }
 
 	} catch (JedisConnectionException e) {
@@ -236,34 +267,23 @@ public class RedisStorageProxy implements IStorageProxy {
 
     @Override
     public boolean loadingData() {
-	localRedisConnect();
 	logger.info("loading AOF from the drive");
-	String peerRedisInfo = null;
 	int retry = 0;
 
 	try {
-	    peerRedisInfo = localJedis.info();
-	    Iterable<String> result = Splitter.on('\n').split(peerRedisInfo);
-	    String pendingAOF = null;
-
-	    for (String line : result) {
-		if (line.startsWith("loading")) {
-		    String[] items = line.split(":");
-		    pendingAOF = items[1].trim();
-		    if (pendingAOF.equals("0")) {
-			logger.info("Redis: memory loading completed.");
-			return true;
-		    } else {
-			retry++;
-			logger.warn("Redis: memory pending. Sleeping 30 secs...");
-			sleeper.sleepQuietly(30000);
-
-			if (retry > 20) {
-			    return false;
-			}
-		    }
+	    RedisInfo info = redisInfo.refresh(REDIS_ADDRESS, REDIS_PORT);
+	    while (info.isLoading()) {
+		retry++;
+		logger.warn("Redis: memory pending. Sleeping 30 secs...");
+		sleeper.sleepQuietly(30000);
+
+		if (retry > 20) {
+		    return false;
 		}
+		info = redisInfo.get(REDIS_ADDRESS, REDIS_PORT);
 	    }
+	    logger.info("Redis: memory loading completed.");
+	    return true;
 	} catch (JedisConnectionException e) {
 	    logger.error("Cannot connect to Redis to load the AOF");
 	}
@@ -283,272 +303,299 @@ public class RedisStorageProxy implements IStorageProxy {
 	return 0;
     }
 
-    private class AlivePeer {
-	String selectedPeer;
-	Jedis selectedJedis;
-	Long upTime;
-    }
-
-    private AlivePeer peerNodeSelection(String peer, Jedis peerJedis) {
-	AlivePeer currentAlivePeer = new AlivePeer();
-	currentAlivePeer.selectedPeer = peer;
-	currentAlivePeer.selectedJedis = peerJedis;
-	String s = peerJedis.info(); // Parsing the info command on the peer
-				     // node
-	RedisInfoParser infoParser = new RedisInfoParser();
-	InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(s.getBytes()));
-	try {
-	    Map<String, Long> allInfo = infoParser.parse(reader);
-	    Iterator iter = allInfo.keySet().iterator();
-	    String key = null;
-	    boolean found = false;
-	    while (iter.hasNext()) {
-		key = (String) iter.next();
-		if (key.equals("Redis_Server_uptime_in_seconds")) {
-		    currentAlivePeer.upTime = allInfo.get(key);
-		    found = true;
-		    break;
-		}
-	    }
-	    if (!found) {
-		logger.warn("uptime_in_seconds was not found in Redis info");
-		return null;
-	    }
-	    logger.info("Alive Peer node [" + peer + "] is up for " + currentAlivePeer.upTime + " seconds");
-
-	} catch (Exception e) {
-	    e.printStackTrace();
-	}
-
-	return currentAlivePeer;
-    }
-
     // probably use our Retries Util here
     @Override
     public Bootstrap warmUpStorage(String[] peers) {
-	AlivePeer longestAlivePeer = new AlivePeer();
-	Jedis peerJedis = null;
-
-	for (String peer : peers) { // Looking into the peers with the same
-				    // token
-	    logger.info("Peer node [" + peer + "] has the same token!");
-	    peerJedis = JedisUtils.connect(peer, REDIS_PORT);
-	    if (peerJedis != null && isAlive()) { // Checking if there are
-						  // peers, and if so if they
-						  // are alive
-
-		AlivePeer currentAlivePeer = peerNodeSelection(peer, peerJedis);
-
-		// Checking the one with the longest up time. Disconnect the one
-		// that is not the longest.
-		if (currentAlivePeer.selectedJedis == null) {
-		    logger.error("Cannot find uptime_in_seconds in peer " + peer);
-		    return Bootstrap.CANNOT_CONNECT_FAIL;
-		} else if (longestAlivePeer.selectedJedis == null) {
-		    longestAlivePeer = currentAlivePeer;
-		} else if (currentAlivePeer.upTime > longestAlivePeer.upTime) {
-		    longestAlivePeer.selectedJedis.disconnect();
-		    longestAlivePeer = currentAlivePeer;
-		}
+	// Probe the peers with the same token in parallel, so that an
+	// unresponsive peer cannot stall the bootstrap
+	int timeoutMs = config.getWarmBootstrapProbeTimeoutMs();
+	PeerProber prober = new PeerProber(timeoutMs, timeoutMs);
+	List<PeerProber.PeerStatus> candidates = prober.probe(peers, REDIS_PORT, config.getWarmBootstrapProbePeers(),
+		timeoutMs);
+
+	// Choose the healthy peer with the best score
+	for (PeerProber.PeerStatus candidate : candidates) {
+	    if (!candidate.isHealthy()) {
+		logger.warn("Peer " + candidate.getHost() + " is not ready to be synced from");
 	    }
 	}
+	List<PeerScore> scores = PeerScore.rank(peerSelection, candidates);
+	for (PeerScore score : scores) {
+	    logger.info("Peer selection (" + peerSelection.getName() + "): " + score);
+	}
+	instanceState.setPeerScores(peerSelection.getName(), scores);
 
 	// We check if the select peer is alive and we connect to it.
-	if (longestAlivePeer.selectedJedis == null) {
+	if (scores.isEmpty()) {
 	    logger.error("Cannot connect to peer node to bootstrap");
 	    return Bootstrap.CANNOT_CONNECT_FAIL;
 	} else {
-	    String alivePeer = longestAlivePeer.selectedPeer;
-	    peerJedis = longestAlivePeer.selectedJedis;
+	    String alivePeer = scores.get(0).getPeer().getHost();
+
+	    if (WARM_MODE_COPY.equalsIgnoreCase(config.getWarmBootstrapMode())) {
+		instanceState.setWarmUpPeer(alivePeer);
+		return copyFromPeer(alivePeer, false);
+	    }
+
+	    // Resume the replication stream of a peer if it knows where the
+	    // local Redis is, which is what the local Redis asks it for
+	    ReplicationCheckpoint.Checkpoint position = null;
+	    try {
+		position = ReplicationCheckpoint.of(redisInfo.refresh(REDIS_ADDRESS, REDIS_PORT));
+	    } catch (JedisConnectionException e) {
+		logger.warn("Cannot get INFO from the local storage: " + e.getMessage());
+	    }
+	    ReplicationCheckpoint.Decision resync = ReplicationCheckpoint.decide(position, candidates);
+	    logger.info("Resync decision: " + resync);
+	    instanceState.setResyncDecision(resync);
+	    if (resync.isPartial()) {
+		alivePeer = resync.getPeer();
+	    } else if (WARM_MODE_SNAPSHOT.equalsIgnoreCase(config.getWarmBootstrapMode())) {
+		// A full sync would throw away the backup the storage was
+		// seeded with, replay the peer over it instead
+		SnapshotBootstrap snapshot = instanceState.getSnapshotBootstrap();
+		if (snapshot != null && snapshot.isSeeded()) {
+		    instanceState.setWarmUpPeer(alivePeer);
+		    return copyFromPeer(alivePeer, true);
+		}
+	    }
+	    instanceState.setWarmUpPeer(alivePeer);
+	    long fullSyncs = -1L;
+	    for (PeerProber.PeerStatus candidate : candidates) {
+		if (candidate.getHost().equals(alivePeer)) {
+		    fullSyncs = candidate.getInfo().getLong("sync_full", -1L);
+		}
+	    }
+
+	    // Hold the SLAVEOF back while the peer is overloaded, its fork and
+	    // RDB transfer would add to the load
+	    throttle.start(alivePeer, REDIS_PORT, null);
+	    try {
+		if (!throttle.awaitCalm(config.getWarmBootstrapThrottleMaxWaitMs())) {
+		    logger.warn("Peer " + alivePeer + " is still overloaded (" + throttle.getReason()
+			    + ") --> syncing anyway");
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
 
 	    logger.info("Issue slaveof command on peer [" + alivePeer + "] and port [" + REDIS_PORT + "]");
 	    startPeerSync(alivePeer, REDIS_PORT);
 
-	    long diff = 0;
-	    long previousDiff = 0;
-	    short retry = 0;
+	    // The peer lists the local Redis as a slave by the address our
+	    // connections to it come from
+	    String localIp = ReplicationConvergence.localAddressTowards(alivePeer, REDIS_PORT);
+	    if (localIp == null) {
+		localIp = config.getHostIP();
+	    }
+	    ReplicationConvergence convergence = new ReplicationConvergence(localIp,
+		    config.getAllowableBytesSyncDiff(), config.getMaxTimeToBootstrap(),
+		    config.getWarmBootstrapSyncMinIntervalMs(), config.getWarmBootstrapSyncMaxIntervalMs(),
+		    config.getWarmBootstrapSyncStallMs(), System.currentTimeMillis());
+	    instanceState.setReplicationConvergence(convergence);
+
+	    // Warm up ends when:
+	    // 1. the offset difference is within the allowable bytes (success).
+	    // 2. the offset difference has not been shrinking for the stall
+	    // window, e.g. because clients produce a high load.
+	    // 3. catching up takes more than FP defined minutes (default 20 min).
+	    // 4. the peer does not list the local Redis as a slave.
+	    // 5. the INFO of the peer fails 5 times in a row.
+	    // The tracker samples rarely during the RDB transfer and more often
+	    // as the predicted time to sync gets shorter.
+	    Bootstrap result = null;
 	    short numErrors = 0;
-	    long startTime = System.currentTimeMillis();
-
-	    // Conditions under which warmp up will end
-	    // 1. number of Jedis errors are 5.
-	    // 2. number of consecutive increases of offset differences (caused
-	    // when client produces high load).
-	    // 3. the difference between offsets is very small or zero
-	    // (success).
-	    // 4. warmp up takes more than FP defined minutes (default 20 min).
-	    // 5. Dynomite has started and is healthy.
-	    while (numErrors < 5) {
-		// sleep 10 seconds in between checks
-		sleeper.sleepQuietly(10000);
+	    while (result == null && numErrors < 5) {
+		sleeper.sleepQuietly(convergence.getNextIntervalMs());
+		ReplicationConvergence.Phase phase;
 		try {
-		    diff = canPeerSyncStop(peerJedis, startTime);
-		} catch (Exception e) {
+		    phase = convergence.update(redisInfo.refresh(alivePeer, REDIS_PORT), System.currentTimeMillis());
+		} catch (JedisConnectionException e) {
+		    logger.warn("Cannot get INFO from peer " + alivePeer + ": " + e.getMessage());
 		    numErrors++;
+		    continue;
 		}
+		numErrors = 0;
+		logger.info("Checking for peer syncing: " + convergence);
 
-		// Diff meaning:
-		// a. diff == 0 --> we are either in sync or close to sync.
-		// b. diff == -1 --> there was an error in sync process.
-		// c. diff == -2 --> offset is still zero, peer syncing has not
-		// started.
-		// d. diff == -3 --> warm up lasted more than bootstrapTime
-		if (diff == 0) {
+		switch (phase) {
+		case IN_SYNC:
+		    logger.info("master and slave are in sync!");
+		    result = Bootstrap.IN_SYNC_SUCCESS;
+		    break;
+		case STALLED:
+		    logger.error("Offset difference has not been shrinking for " + config.getWarmBootstrapSyncStallMs()
+			    / 1000 + " seconds, peer syncing cannot complete");
+		    result = Bootstrap.RETRIES_FAIL;
+		    break;
+		case EXPIRED:
+		    logger.warn("Warm up takes more than " + config.getMaxTimeToBootstrap() / 60000
+			    + " minutes --> moving on");
+		    result = Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL;
+		    break;
+		case FAILED:
+		    logger.error("Peer does not list " + localIp + " as a slave - do NOT start Dynomite");
+		    result = Bootstrap.WARMUP_ERROR_FAIL;
+		    break;
+		default:
 		    break;
-		} else if (diff == -1) {
-		    logger.error("There was an error in the warm up process - do NOT start Dynomite");
-		    peerJedis.disconnect();
-		    return Bootstrap.WARMUP_ERROR_FAIL;
-		} else if (diff == -2) {
-		    startTime = System.currentTimeMillis();
-		} else if (diff == -3) {
-		    peerJedis.disconnect();
-		    return Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL;
 		}
+	    }
+	    if (result == null) {
+		logger.error("Cannot get INFO from peer " + alivePeer + " " + numErrors
+			+ " times in a row - do NOT start Dynomite");
+		result = Bootstrap.WARMUP_ERROR_FAIL;
+	    }
 
-		// Exit conditions:
-		// a. retry more than 5 times continuously and if the diff is
-		// larger than the previous diff.
-		if (previousDiff < diff) {
-		    logger.info("Previous diff (" + previousDiff + ") was smaller than current diff (" + diff
-			    + ") ---> Retry effort: " + retry);
-		    retry++;
-		    if (retry == 10) {
-			logger.error("Reached 10 consecutive retries, peer syncing cannot complete");
-			peerJedis.disconnect();
-			return Bootstrap.RETRIES_FAIL;
-		    }
-		} else {
-		    retry = 0;
+	    throttle.stop();
+
+	    // The sync_full counter of the peer tells whether it served a
+	    // partial resync or fell back to a full sync
+	    if (fullSyncs >= 0) {
+		try {
+		    long after = redisInfo.get(alivePeer, REDIS_PORT).getLong("sync_full", -1L);
+		    resync.setOutcome(after > fullSyncs ? "full" : "partial");
+		    logger.info("Peer " + alivePeer + " served a " + resync.getOutcome() + " sync");
+		} catch (JedisConnectionException e) {
+		    logger.warn("Cannot get INFO from peer " + alivePeer + ": " + e.getMessage());
 		}
-		previousDiff = diff;
 	    }
+	    return result;
+	}
+    }
 
-	    peerJedis.disconnect();
+    /**
+     * Warm up by copying the keys of the peer with SCAN, DUMP and RESTORE instead of replicating from it.
+     *
+     * @param peer
+     *            the peer node to copy from
+     * @param prune
+     *            whether to delete the local keys the peer does not have, e.g. when the storage holds a backup
+     * @return the status of the warm up
+     */
+    private Bootstrap copyFromPeer(String peer, boolean prune) {
+	KeyspaceCopier copier = new KeyspaceCopier(peer, REDIS_PORT, REDIS_ADDRESS, REDIS_PORT,
+		config.getWarmBootstrapCopyWorkers(), config.getWarmBootstrapCopyBatchSize(),
+		config.getWarmBootstrapCopyKBytesPerSecond() * 1024L);
+	instanceState.setKeyspaceCopier(copier);
+	KeyspaceCopier previous = pendingCopy;
+	pendingCopy = null;
+	if (previous != null) {
+	    previous.stopTracking();
+	}
 
-	    if (diff > 0) {
-		logger.info("Stopping peer syncing with difference: " + diff);
+	logger.info("Copy the keyspace of peer [" + peer + "] and port [" + REDIS_PORT + "]");
+	// the keys written on the peer during the copy are copied again once
+	// Dynomite delays the local writes, see stopPeerSync()
+	copier.track();
+	throttle.start(peer, REDIS_PORT, copier);
+	long deadline = System.currentTimeMillis() + config.getMaxTimeToBootstrap();
+	try {
+	    if (!copier.copy(config.getMaxTimeToBootstrap())) {
+		copier.stopTracking();
+		return Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL;
+	    }
+	    if (prune && !copier.prune(Math.max(0L, deadline - System.currentTimeMillis()))) {
+		copier.stopTracking();
+		return Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL;
 	    }
+	    pendingCopy = copier;
+	} catch (IOException e) {
+	    logger.error("There was an error in the keyspace copy - do NOT start Dynomite", e);
+	    copier.stopTracking();
+	    return Bootstrap.WARMUP_ERROR_FAIL;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    copier.stopTracking();
+	    return Bootstrap.WARMUP_ERROR_FAIL;
+	} finally {
+	    throttle.stop();
 	}
-
 	return Bootstrap.IN_SYNC_SUCCESS;
     }
 
     /**
-     * Resets Storage to master if it was a slave due to warm up failure.
+     * Copy again the keys written on the peer during the keyspace copy.
+     * Dynomite delays the local writes by now (writes_only), so that the
+     * writes the copy missed are either on the peer or delayed. The catch
+     * up is part of the handoff and takes at most its timeout.
      */
-    @Override
-    public boolean resetStorage() {
-	logger.info("Checking if Storage needs to be reset to master");
-	localRedisConnect();
-	String localRedisInfo = null;
+    private void catchUp(KeyspaceCopier copier) {
+	String peer = instanceState.getWarmUpPeer();
+	logger.info("Copy the keys written on peer [" + peer + "] during the keyspace copy");
+	throttle.start(peer, REDIS_PORT, copier);
 	try {
-	    localRedisInfo = localJedis.info();
-	} catch (JedisConnectionException e) {
-	    // Try to reconnect
-	    try {
-		localRedisConnect();
-		localRedisInfo = localJedis.info();
-	    } catch (JedisConnectionException ex) {
-		logger.error("Cannot connect to Redis");
-		return false;
+	    if (!copier.catchUp(config.getWarmBootstrapHandoffTimeoutMs())) {
+		logger.warn("Keyspace catch up did not finish in " + config.getWarmBootstrapHandoffTimeoutMs()
+			+ " ms --> some keys may be stale");
 	    }
+	} catch (IOException e) {
+	    logger.error("There was an error in the keyspace catch up --> some keys may be stale", e);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} finally {
+	    copier.stopTracking();
+	    throttle.stop();
 	}
-	Iterable<String> result = Splitter.on('\n').split(localRedisInfo);
-
-	String role = null;
-
-	for (String line : result) {
-	    if (line.startsWith("role")) {
-		String[] items = line.split(":");
-		// logger.info(items[0] + ": " + items[1]);
-		role = items[1].trim();
-		if (role.equals("slave")) {
-		    logger.info("Redis: Stop replication. Switch from slave to master");
-		    stopPeerSync();
-		}
+    }
+
+    /**
+     * Stops replicating from the peer of a failed warm up and flushes what it
+     * left. A storage seeded from a backup keeps its data: the keyspace
+     * replay of the next attempt replaces and prunes what is left.
+     */
+    @Override
+    public boolean discardWarmUp() {
+	localRedisConnect();
+	try {
+	    logger.info("calling SLAVEOF NO ONE");
+	    this.localJedis.slaveofNoOne();
+	    SnapshotBootstrap snapshot = instanceState.getSnapshotBootstrap();
+	    if (WARM_MODE_SNAPSHOT.equalsIgnoreCase(config.getWarmBootstrapMode()) && snapshot != null
+		    && snapshot.isSeeded()) {
 		return true;
 	    }
+	    logger.info("Flushing the data of the failed warm up");
+	    this.localJedis.flushAll();
+	    return true;
+	} catch (JedisConnectionException e) {
+	    logger.error("Cannot connect to Redis to discard the warm up: " + e.getMessage());
+	    localRedisDisconnect();
+	} catch (JedisDataException e) {
+	    logger.error("Cannot discard the warm up: " + e.getMessage());
 	}
-
 	return false;
-
     }
 
     /**
-     * Determining if the warm up process can stop
-     *
-     * @param peerJedis
-     *            Jedis connection with the peer node
-     * @param startTime
-     * @return Long status code
-     * @throws RedisSyncException
+     * Resets Storage to master if it was a slave due to warm up failure.
      */
-    private Long canPeerSyncStop(Jedis peerJedis, long startTime) throws RedisSyncException {
-
-	if (System.currentTimeMillis() - startTime > config.getMaxTimeToBootstrap()) {
-	    logger.warn("Warm up takes more than " + config.getMaxTimeToBootstrap() / 60000 + " minutes --> moving on");
-	    return (long) -3;
-	}
-
-	logger.info("Checking for peer syncing");
-	String peerRedisInfo = peerJedis.info();
-
-	Long masterOffset = -1L;
-	Long slaveOffset = -1L;
-
-	// get peer's repl offset
-	Iterable<String> result = Splitter.on('\n').split(peerRedisInfo);
-
-	for (String line : result) {
-	    if (line.startsWith("master_repl_offset")) {
-		String[] items = line.split(":");
-		logger.info(items[0] + ": " + items[1]);
-		masterOffset = Long.parseLong(items[1].trim());
-
-	    }
-
-	    // slave0:ip=10.99.160.121,port=22122,state=online,offset=17279,lag=0
-	    if (line.startsWith("slave0")) {
-		String[] items = line.split(",");
-		for (String item : items) {
-		    if (item.startsWith("offset")) {
-			String[] offset = item.split("=");
-			logger.info(offset[0] + ": " + offset[1]);
-			slaveOffset = Long.parseLong(offset[1].trim());
-		    }
-		}
+    @Override
+    public boolean resetStorage() {
+	logger.info("Checking if Storage needs to be reset to master");
+	RedisInfo info;
+	try {
+	    info = redisInfo.refresh(REDIS_ADDRESS, REDIS_PORT);
+	} catch (JedisConnectionException e) {
+	    // Try once more
+	    try {
+		info = redisInfo.refresh(REDIS_ADDRESS, REDIS_PORT);
+	    } catch (JedisConnectionException ex) {
+		logger.error("Cannot connect to Redis");
+		return false;
 	    }
 	}
 
-	if (slaveOffset == -1) {
-	    logger.error("Slave offset could not be parsed --> check memory overcommit configuration");
-	    return (long) -1;
-	} else if (slaveOffset == 0) {
-	    logger.info("Slave offset is zero ---> Redis master node still dumps data to the disk");
-	    return (long) -2;
+	if (info.getRole() == null) {
+	    return false;
 	}
-	Long diff = Math.abs(masterOffset - slaveOffset);
-
-	logger.info("masterOffset: " + masterOffset + " slaveOffset: " + slaveOffset + " current Diff: " + diff
-		+ " allowable diff: " + config.getAllowableBytesSyncDiff());
-
-	// Allowable bytes sync diff can be configured by a Fast Property.
-	// If the difference is very small, then we return zero.
-	if (diff < config.getAllowableBytesSyncDiff()) {
-	    logger.info("master and slave are in sync!");
-	    return (long) 0;
-	} else if (slaveOffset == 0) {
-	    logger.info("slave has not started syncing");
+	if (info.isSlave()) {
+	    logger.info("Redis: Stop replication. Switch from slave to master");
+	    localRedisConnect();
+	    stopPeerSync();
 	}
-	return diff;
-    }
+	return true;
 
-    private class RedisSyncException extends Exception {
-	/**
-	 * Exception during peer syncing
-	 */
-	private static final long serialVersionUID = -7736577871204223637L;
     }
 
     /**
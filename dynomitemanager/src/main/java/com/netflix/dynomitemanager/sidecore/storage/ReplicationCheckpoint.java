@@ -0,0 +1,188 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.util.List;
+
+/**
+ * Decides whether a warm bootstrap can resume the replication stream of a peer with a partial resynchronization
+ * (PSYNC) instead of a full sync.
+ *
+ * When it is made a slave, Redis asks the peer to resume from its own <code>master_replid</code> and
+ * <code>master_repl_offset</code>, as its INFO reports them: the checkpoint. The peer serves a partial resync only if
+ * that id is its current or previous replication id and its backlog still holds every byte after the offset, see
+ * {@link #decide(Checkpoint, List)}. So the decision is made from the INFO of the local Redis right before the
+ * <code>SLAVEOF</code>, never from a position remembered earlier: <code>SLAVEOF NO ONE</code>, a restart as a master
+ * or a write taken as a master gives the local Redis a replication id that no peer knows, and the peer then does a
+ * full sync whatever was decided. The sync the peer actually did is kept as the outcome of the decision.
+ */
+public class ReplicationCheckpoint {
+
+    /**
+     * A position in a replication stream.
+     */
+    public static class Checkpoint {
+        private final String replId;
+        private final long offset;
+
+        public Checkpoint(String replId, long offset) {
+            this.replId = replId;
+            this.offset = offset;
+        }
+
+        public String getReplId() {
+            return replId;
+        }
+
+        /**
+         * @return the last offset of the stream the local Redis had processed
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public String toString() {
+            return replId + ":" + offset;
+        }
+    }
+
+    /**
+     * Whether a warm bootstrap can resume the replication stream of a peer.
+     */
+    public static class Decision {
+        private final boolean partial;
+        private final String peer;
+        private final String reason;
+        private final long gapBytes;
+        private volatile String outcome;
+
+        public Decision(boolean partial, String peer, String reason, long gapBytes) {
+            this.partial = partial;
+            this.peer = peer;
+            this.reason = reason;
+            this.gapBytes = gapBytes;
+        }
+
+        /**
+         * @return true if the peer can serve a partial resync
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+
+        /**
+         * @return the peer to resync from, or null for the peer chosen by the peer selection
+         */
+        public String getPeer() {
+            return peer;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * @return the bytes of the stream the local Redis misses, or -1 if not known
+         */
+        public long getGapBytes() {
+            return gapBytes;
+        }
+
+        /**
+         * @return the sync the peer did, partial or full, or null if not known yet
+         */
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public void setOutcome(String outcome) {
+            this.outcome = outcome;
+        }
+
+        @Override
+        public String toString() {
+            return (partial ? "partial resync from " + peer : "full sync") + ": " + reason;
+        }
+    }
+
+    private ReplicationCheckpoint() {
+    }
+
+    /**
+     * @param local
+     *            the INFO of the local Redis
+     * @return where the local Redis would ask a peer to resume from, or null if its INFO does not tell (before Redis
+     *         4.0)
+     */
+    public static Checkpoint of(RedisInfo local) {
+        String replId = local.get("master_replid");
+        long offset = local.getMasterReplOffset();
+        if (replId == null || offset < 0) {
+            return null;
+        }
+        return new Checkpoint(replId, offset);
+    }
+
+    /**
+     * Decide whether a peer can serve a partial resync from the checkpoint: its stream must be the one of the
+     * checkpoint (as its current or previous replication id) and its backlog must still hold every byte after the
+     * checkpoint.
+     *
+     * @param checkpoint
+     *            the position of the local Redis, see {@link #of(RedisInfo)}, or null
+     * @param peers
+     *            the peers that answered the probe
+     */
+    public static Decision decide(Checkpoint checkpoint, List<PeerProber.PeerStatus> peers) {
+        if (checkpoint == null) {
+            return new Decision(false, null, "the local Redis has no replication id", -1);
+        }
+        Decision decision = null;
+        for (PeerProber.PeerStatus status : peers) {
+            if (status.isHealthy()) {
+                decision = decide(checkpoint, status);
+                if (decision.isPartial()) {
+                    return decision;
+                }
+            }
+        }
+        if (decision == null) {
+            return new Decision(false, null, "no peer is available", -1);
+        }
+        return decision;
+    }
+
+    private static Decision decide(Checkpoint checkpoint, PeerProber.PeerStatus peer) {
+        RedisInfo info = peer.getInfo();
+        long next = checkpoint.getOffset() + 1;
+        boolean sameStream = checkpoint.getReplId().equals(info.get("master_replid"))
+                || (checkpoint.getReplId().equals(info.get("master_replid2"))
+                        && next <= info.getLong("second_repl_offset", -1L));
+        if (!sameStream) {
+            return new Decision(false, null, "peer " + peer.getHost() + " does not know replication id "
+                    + checkpoint.getReplId(), -1);
+        }
+
+        long gap = info.getMasterReplOffset() - checkpoint.getOffset();
+        if (gap < 0) {
+            return new Decision(false, null, "checkpoint is ahead of peer " + peer.getHost(), gap);
+        }
+        long first = info.getLong("repl_backlog_first_byte_offset", -1L);
+        if (!peer.hasReplBacklog() || first < 0 || next < first) {
+            return new Decision(false, null, "backlog of peer " + peer.getHost() + " does not cover the gap of "
+                    + gap + " bytes", gap);
+        }
+        return new Decision(true, peer.getHost(), "backlog covers the gap of " + gap + " bytes", gap);
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Tracks how the local storage converges on the peer it replicates from during a warm up, from the INFO of the peer.
+ *
+ * The peer lists its slaves as <code>slaveN</code>; the entry of the local storage is found by its IP address. While
+ * the peer writes and sends its RDB the slave is not online yet and there is nothing to measure, so the tracker asks
+ * to be sampled rarely. Once the slave is online, the rate at which the offset difference shrinks is smoothed with an
+ * EWMA, which gives the time until the difference is within the allowable bytes. The tracker asks to be sampled more
+ * often as that time gets shorter, and gives up when the difference has not been shrinking for the stall window. The
+ * EWMA only tends to 0 while the difference stays flat, so a sample that does not shrink the difference, or a rate
+ * below one byte per second, counts as not shrinking.
+ */
+public class ReplicationConvergence {
+
+    // weight of the latest sample in the catch-up rate
+    private static final double ALPHA = 0.3;
+    // below this catch-up rate (in bytes per second) the difference is not shrinking
+    private static final double MIN_RATE = 1.0;
+
+    /**
+     * Where the replication is.
+     */
+    public enum Phase {
+        /** the peer does not list the local storage as a slave yet */
+        WAITING,
+        /** the peer is writing or sending its RDB */
+        TRANSFER,
+        /** the slave is online and catching up with the peer */
+        CATCHING_UP,
+        /** the offset difference is within the allowable bytes */
+        IN_SYNC,
+        /** the offset difference has not been shrinking for the stall window */
+        STALLED,
+        /** the peer has not listed the local storage as a slave for the stall window */
+        FAILED,
+        /** the RDB transfer, or catching up after it, took longer than the maximum bootstrap time */
+        EXPIRED
+    }
+
+    private final String slaveIp;
+    private final long allowableDiff;
+    private final long maxTimeMs;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final long stallMs;
+    private final long startTime;
+
+    private volatile Phase phase = Phase.WAITING;
+    private volatile int slaveIndex = -1;
+    private volatile long offsetDiff = -1;
+    private volatile double rate;
+    private volatile long nextIntervalMs;
+    private long lastListed;
+    private long catchUpStart;
+    private long lastSample;
+    private long lastDiff = -1;
+    private boolean rateKnown;
+    private long notConvergingSince;
+
+    /**
+     * @param slaveIp
+     *            the address the peer sees the local storage connect from
+     * @param allowableDiff
+     *            the offset difference (in bytes) at which the storage is in sync
+     * @param maxTimeMs
+     *            the maximum time to transfer the RDB from the start, and to catch up once it is transferred
+     * @param minIntervalMs
+     *            the shortest time between samples
+     * @param maxIntervalMs
+     *            the longest time between samples
+     * @param stallMs
+     *            the time the difference may not shrink, or the peer may not list the storage, before giving up
+     * @param startTime
+     *            the time replication was started
+     */
+    public ReplicationConvergence(String slaveIp, long allowableDiff, long maxTimeMs, long minIntervalMs,
+            long maxIntervalMs, long stallMs, long startTime) {
+        this.slaveIp = slaveIp;
+        this.allowableDiff = allowableDiff;
+        this.maxTimeMs = maxTimeMs;
+        this.minIntervalMs = Math.max(1L, minIntervalMs);
+        this.maxIntervalMs = Math.max(this.minIntervalMs, maxIntervalMs);
+        this.stallMs = stallMs;
+        this.startTime = startTime;
+        this.lastListed = startTime;
+        this.nextIntervalMs = this.maxIntervalMs;
+    }
+
+    /**
+     * Update the tracker with the INFO of the peer.
+     *
+     * @param peerInfo
+     *            the INFO of the peer
+     * @param now
+     *            the time of the sample
+     * @return the phase of the replication
+     */
+    public synchronized Phase update(RedisInfo peerInfo, long now) {
+        RedisInfo.Slave slave = peerInfo.getSlave(slaveIp);
+        if (slave == null) {
+            slaveIndex = -1;
+            nextIntervalMs = maxIntervalMs;
+            return phase = now - lastListed > stallMs ? Phase.FAILED : Phase.WAITING;
+        }
+        slaveIndex = slave.getIndex();
+        lastListed = now;
+
+        if (!"online".equals(slave.getState()) || slave.getOffset() <= 0) {
+            // wait_bgsave or send_bulk, the catch-up starts once the RDB is loaded
+            catchUpStart = 0;
+            offsetDiff = -1;
+            lastDiff = -1;
+            rate = 0;
+            rateKnown = false;
+            nextIntervalMs = maxIntervalMs;
+            return phase = now - startTime > maxTimeMs ? Phase.EXPIRED : Phase.TRANSFER;
+        }
+
+        long diff = Math.max(0L, peerInfo.getMasterReplOffset() - slave.getOffset());
+        offsetDiff = diff;
+        if (catchUpStart == 0) {
+            catchUpStart = now;
+        }
+        if (diff < allowableDiff) {
+            nextIntervalMs = minIntervalMs;
+            return phase = Phase.IN_SYNC;
+        }
+        if (now - catchUpStart > maxTimeMs) {
+            return phase = Phase.EXPIRED;
+        }
+
+        boolean shrank = true;
+        if (lastDiff >= 0 && now > lastSample) {
+            double sample = (lastDiff - diff) * 1000.0 / (now - lastSample);
+            rate = rateKnown ? ALPHA * sample + (1 - ALPHA) * rate : sample;
+            rateKnown = true;
+            shrank = sample > 0;
+        }
+        lastDiff = diff;
+        lastSample = now;
+
+        if (!shrank || (rateKnown && rate < MIN_RATE)) {
+            if (notConvergingSince == 0) {
+                notConvergingSince = now;
+            } else if (now - notConvergingSince >= stallMs) {
+                return phase = Phase.STALLED;
+            }
+        } else {
+            notConvergingSince = 0;
+        }
+
+        long etaMs = eta() * 1000;
+        // sample a few times before the predicted sync, to stop soon after it
+        nextIntervalMs = etaMs < 0 ? maxIntervalMs : Math.max(minIntervalMs, Math.min(maxIntervalMs, etaMs / 4));
+        return phase = Phase.CATCHING_UP;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return the N of the slaveN entry of the local storage in the INFO of the peer, or -1 if it is not listed
+     */
+    public int getSlaveIndex() {
+        return slaveIndex;
+    }
+
+    /**
+     * @return the bytes between the offset of the peer and the offset of the local storage, or -1 if not known yet
+     */
+    public long getOffsetDiff() {
+        return offsetDiff;
+    }
+
+    /**
+     * @return the smoothed rate (in bytes per second) at which the offset difference shrinks, negative if it grows
+     */
+    public double getRateBytesPerSecond() {
+        return rate;
+    }
+
+    /**
+     * @return the predicted time (in seconds) until the storage is in sync, or -1 if it is not converging
+     */
+    public long getEtaSeconds() {
+        return phase == Phase.IN_SYNC ? 0 : eta();
+    }
+
+    private long eta() {
+        if (offsetDiff < 0 || rate < MIN_RATE) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0L, offsetDiff - allowableDiff) / rate);
+    }
+
+    /**
+     * @return the time (in ms) to wait before the next sample
+     */
+    public long getNextIntervalMs() {
+        return nextIntervalMs;
+    }
+
+    /**
+     * @return the time (in ms) since replication was started
+     */
+    public long getElapsedMs() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Find the local address that connections to a peer come from, which is how the peer lists the local storage as
+     * a slave. No packet is sent.
+     *
+     * @return the address, or null if there is no route to the peer
+     */
+    public static String localAddressTowards(String peer, int port) {
+        DatagramSocket socket = null;
+        try {
+            socket = new DatagramSocket();
+            socket.connect(new InetSocketAddress(peer, port));
+            InetAddress local = socket.getLocalAddress();
+            return local == null || local.isAnyLocalAddress() ? null : local.getHostAddress();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return phase + " (slave" + slaveIndex + ", diff=" + offsetDiff + " bytes, rate="
+                + Math.round(rate) + " bytes/s, eta=" + getEtaSeconds() + "s)";
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal blocking client of the Redis protocol (RESP) for commands that Jedis does not support, e.g.
+ * <code>LATENCY</code>.
+ *
+ * Replies are returned as {@link Long} for integers, {@link String} for status replies, <code>byte[]</code> for bulk
+ * strings, {@link List} for arrays and null for nil replies. Error replies throw a {@link RespException}; the
+ * connection stays usable. Any other failure closes the connection and the next call reconnects.
+ *
+ * Instances are not thread safe, except for {@link #close()}: another thread may close a connection to abort a
+ * connect or call that is blocked on the network.
+ */
+public class RespConnection {
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final String host;
+    private final int port;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    private volatile Socket socket;
+    // the socket being connected, so that close() can abort the connect
+    private volatile Socket connecting;
+    private InputStream in;
+    private OutputStream out;
+
+    /**
+     * An error reply of Redis.
+     */
+    public static class RespException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RespException(String message) {
+            super(message);
+        }
+    }
+
+    public RespConnection(String host, int port, int connectTimeoutMs, int readTimeoutMs) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isConnected() {
+        return socket != null;
+    }
+
+    /**
+     * Connect if not already connected.
+     */
+    public void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        Socket s = new Socket();
+        connecting = s;
+        try {
+            s.setTcpNoDelay(true);
+            s.setKeepAlive(true);
+            s.setSoTimeout(readTimeoutMs);
+            s.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            in = new BufferedInputStream(s.getInputStream(), BUFFER_SIZE);
+            out = new BufferedOutputStream(s.getOutputStream(), BUFFER_SIZE);
+            socket = s;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        } finally {
+            connecting = null;
+        }
+        if (s.isClosed()) {
+            // closed by another thread while connecting
+            socket = null;
+            throw new SocketException("Connection to " + host + ":" + port + " was closed");
+        }
+    }
+
+    /**
+     * Send a command and read its reply, connecting first if needed.
+     *
+     * @throws RespException
+     *             if Redis replied with an error
+     * @throws IOException
+     *             if the connection failed, it is closed
+     */
+    public Object call(String... args) throws IOException {
+        byte[][] bytes = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            bytes[i] = args[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return call(bytes);
+    }
+
+    /**
+     * Send a command with binary arguments and read its reply.
+     *
+     * @see #call(String...)
+     */
+    public Object call(byte[]... args) throws IOException {
+        connect();
+        try {
+            write(args);
+            out.flush();
+            return read();
+        } catch (RespException e) {
+            throw e;
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Send several commands at once and then read their replies, connecting first if needed, so that the commands
+     * share one round trip.
+     *
+     * @return the replies in the order of the commands; error replies are returned as {@link RespException}s
+     * @throws IOException
+     *             if the connection failed, it is closed
+     */
+    public List<Object> pipeline(List<byte[][]> commands) throws IOException {
+        connect();
+        try {
+            for (byte[][] args : commands) {
+                write(args);
+            }
+            out.flush();
+            List<Object> replies = new ArrayList<Object>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                try {
+                    replies.add(read());
+                } catch (RespException e) {
+                    replies.add(e);
+                }
+            }
+            return replies;
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the next message of a subscribed connection, i.e. after <code>SUBSCRIBE</code> or
+     * <code>PSUBSCRIBE</code>. Blocks until a message arrives, the read timeout passes or another thread closes the
+     * connection.
+     *
+     * @throws IOException
+     *             if the connection failed, it is closed
+     */
+    public Object receive() throws IOException {
+        if (socket == null) {
+            throw new SocketException("Not connected to " + host + ":" + port);
+        }
+        try {
+            return read();
+        } catch (RespException e) {
+            throw e;
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the connection. Does nothing if it is not connected.
+     */
+    public void close() {
+        Socket pending = connecting;
+        if (pending != null) {
+            try {
+                pending.close();
+            } catch (IOException e) {
+                // nothing left to clean up
+            }
+        }
+        Socket s = socket;
+        socket = null;
+        in = null;
+        out = null;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // nothing left to clean up
+            }
+        }
+    }
+
+    private void write(byte[][] args) throws IOException {
+        out.write('*');
+        writeNumber(args.length);
+        for (byte[] arg : args) {
+            out.write('$');
+            writeNumber(arg.length);
+            out.write(arg);
+            out.write(CRLF);
+        }
+    }
+
+    private void writeNumber(long n) throws IOException {
+        out.write(Long.toString(n).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private Object read() throws IOException {
+        int type = in.read();
+        switch (type) {
+        case '+':
+            return readLine();
+        case '-':
+            throw new RespException(readLine());
+        case ':':
+            return readLong();
+        case '$': {
+            long length = readLong();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bulk = new byte[(int) length];
+            readFully(bulk);
+            if (in.read() != '\r' || in.read() != '\n') {
+                throw new IOException("Bulk string of " + length + " bytes is not terminated by CRLF");
+            }
+            return bulk;
+        }
+        case '*': {
+            long length = readLong();
+            if (length < 0) {
+                return null;
+            }
+            List<Object> array = new ArrayList<Object>((int) Math.min(length, 1024));
+            for (long i = 0; i < length; i++) {
+                try {
+                    array.add(read());
+                } catch (RespException e) {
+                    // errors nested in arrays, e.g. in EXEC replies, are returned as values
+                    array.add(e);
+                }
+            }
+            return array;
+        }
+        case -1:
+            throw new EOFException("Connection to " + host + ":" + port + " closed");
+        default:
+            throw new IOException("Unexpected reply type '" + (char) type + "' from " + host + ":" + port);
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException("Connection to " + host + ":" + port + " closed");
+            }
+            sb.append((char) c);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Line is not terminated by CRLF");
+        }
+        return sb.toString();
+    }
+
+    private long readLong() throws IOException {
+        String line = readLine();
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number: " + line);
+        }
+    }
+
+    private void readFully(byte[] b) throws IOException {
+        int off = 0;
+        while (off < b.length) {
+            int n = in.read(b, off, b.length - off);
+            if (n < 0) {
+                throw new EOFException("Connection to " + host + ":" + port + " closed");
+            }
+            off += n;
+        }
+    }
+
+    /**
+     * @return a bulk string or status reply as a String, null for nil
+     */
+    public static String asString(Object reply) {
+        if (reply instanceof byte[]) {
+            return new String((byte[]) reply, StandardCharsets.UTF_8);
+        }
+        return reply == null ? null : reply.toString();
+    }
+
+    /**
+     * @return an integer reply, or a bulk string that holds an integer, as a long
+     */
+    public static long asLong(Object reply) throws IOException {
+        if (reply instanceof Long) {
+            return (Long) reply;
+        }
+        String s = asString(reply);
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number: " + s);
+        }
+    }
+
+    /**
+     * @return an array reply, an empty list for nil
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> asList(Object reply) throws IOException {
+        if (reply == null) {
+            return new ArrayList<Object>();
+        }
+        if (!(reply instanceof List)) {
+            throw new IOException("Not an array: " + asString(reply));
+        }
+        return (List<Object>) reply;
+    }
+}
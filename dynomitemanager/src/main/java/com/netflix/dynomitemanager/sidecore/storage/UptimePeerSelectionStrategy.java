@@ -0,0 +1,31 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+/**
+ * Prefers the peer that has been up the longest, the peer that is the most likely to hold the full data set.
+ */
+public class UptimePeerSelectionStrategy implements PeerSelectionStrategy {
+
+    @Override
+    public String getName() {
+        return "uptime";
+    }
+
+    @Override
+    public PeerScore score(PeerProber.PeerStatus peer) {
+        PeerScore score = new PeerScore(peer);
+        score.add("uptime_in_seconds", peer.getUptimeSeconds());
+        return score;
+    }
+}
@@ -19,11 +19,11 @@ import com.netflix.dynomitemanager.InstanceState;
 import com.netflix.dynomitemanager.identity.AppsInstance;
 import com.netflix.dynomitemanager.identity.IAppsInstanceFactory;
 import com.netflix.dynomitemanager.identity.InstanceIdentity;
+import com.netflix.dynomitemanager.sidecore.backup.SnapshotBootstrap;
 import com.netflix.dynomitemanager.sidecore.scheduler.SimpleTimer;
 import com.netflix.dynomitemanager.sidecore.scheduler.Task;
 import com.netflix.dynomitemanager.sidecore.scheduler.TaskTimer;
 import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
-import com.netflix.dynomitemanager.dynomite.DynomiteRest;
 import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
 import com.netflix.dynomitemanager.dynomite.IDynomiteProcess;
 
@@ -36,7 +36,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Warm up the node's storage (i.e. Redis) by syncing data from a peer.
+ * Warm up the node's storage (i.e. Redis) by syncing data from a peer. In
+ * snapshot mode the storage is first seeded from the latest backup, see
+ * {@link SnapshotBootstrap}.
  */
 @Singleton
 public class WarmBootstrapTask extends Task {
@@ -51,11 +53,15 @@ public class WarmBootstrapTask extends Task {
     private final InstanceState state;
     private final Sleeper sleeper;
     private final StorageProcessManager storageProcessMgr;
+    private final WarmupHandoff handoff;
+    private final SnapshotBootstrap snapshotBootstrap;
+    private final PeerFailover failover;
 
     @Inject
     public WarmBootstrapTask(IConfiguration config, IAppsInstanceFactory appsInstanceFactory, InstanceIdentity id,
 	    IDynomiteProcess dynProcess, IStorageProxy storageProxy, InstanceState ss, Sleeper sleeper,
-	    StorageProcessManager storageProcessMgr) {
+	    StorageProcessManager storageProcessMgr, WarmupHandoff handoff, SnapshotBootstrap snapshotBootstrap,
+	    PeerFailover failover) {
 	super(config);
 	this.dynProcess = dynProcess;
 	this.storageProxy = storageProxy;
@@ -64,6 +70,9 @@ public class WarmBootstrapTask extends Task {
 	this.state = ss;
 	this.sleeper = sleeper;
 	this.storageProcessMgr = storageProcessMgr;
+	this.handoff = handoff;
+	this.snapshotBootstrap = snapshotBootstrap;
+	this.failover = failover;
     }
 
     public void execute() throws IOException {
@@ -73,8 +82,14 @@ public class WarmBootstrapTask extends Task {
 
 	// Just to be sure testing again
 	if (!state.isStorageAlive()) {
-	    // starting storage
-	    this.storageProcessMgr.start();
+	    final boolean snapshot = SnapshotBootstrap.MODE.equalsIgnoreCase(config.getWarmBootstrapMode());
+	    if (snapshot) {
+		// restoring the latest backup, it starts the storage
+		this.snapshotBootstrap.seed();
+	    } else {
+		// starting storage
+		this.storageProcessMgr.start();
+	    }
 	    logger.info("Redis is up ---> Starting warm bootstrap.");
 
 	    // setting the status to bootstrapping
@@ -85,15 +100,19 @@ public class WarmBootstrapTask extends Task {
 
 	    String[] peers = getLocalPeersWithSameTokensRange();
 
-	    // try one node only for now
-	    // TODOs: if this peer is not good, try the next one until we can
-	    // get the data
+	    // if a peer is not good, fail over to the next one until we get
+	    // the data
 	    if (peers != null && peers.length != 0) {
 
 		/**
 		 * Check the warm up status.
 		 */
-		Bootstrap bootstrap = this.storageProxy.warmUpStorage(peers);
+		Bootstrap bootstrap = this.failover.warmUp(peers, new PeerFailover.WarmUp() {
+		    @Override
+		    public Bootstrap warmUp(String[] candidates) {
+			return snapshot ? snapshotBootstrap.catchUp(candidates) : storageProxy.warmUpStorage(candidates);
+		    }
+		});
 		if (bootstrap == Bootstrap.IN_SYNC_SUCCESS || bootstrap == Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL
 			|| bootstrap == Bootstrap.RETRIES_FAIL) {
 		    // Since we are ready let us start Dynomite.
@@ -110,21 +129,14 @@ public class WarmBootstrapTask extends Task {
 			// Set the state of bootstrap as successful.
 			this.state.setBootstrapStatus(bootstrap);
 
-			logger.info("Set Dynomite to allow writes only!!!");
-			DynomiteRest.sendCommand("/state/writes_only");
-
-			logger.info("Stop Redis' Peer syncing!!!");
-			this.storageProxy.stopPeerSync();
-
-			logger.info("Set Dynomite to resuming state to allow writes and flush delayed writes");
-			DynomiteRest.sendCommand("/state/resuming");
-
-			// sleep 15s for the flushing to catch up
-			sleeper.sleepQuietly(15000);
-			logger.info("Set Dynomite to normal state");
-			DynomiteRest.sendCommand("/state/normal");
+			// hand over to normal traffic as soon as the delayed writes
+			// are flushed
+			this.handoff.handOff();
 		    } else {
 			logger.error("Dynomite health check and restart attempts failed");
+			// stop replicating from, or tracking the keys of, the peer;
+			// there is no handoff to catch up for
+			this.storageProxy.abortPeerSync();
 		    }
 		} else {
 		    logger.error("Warm up failed: Stop Redis' Peer syncing!!!");
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.IConfiguration;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.dynomitemanager.dynomite.DynomiteRest;
+import com.netflix.dynomitemanager.monitoring.DynomiteInfoParser;
+import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Hands a warmed up node over from the warm up to normal traffic:
+ * <ol>
+ * <li>writes_only: Dynomite takes writes and delays them while the storage still replicates from its peer;</li>
+ * <li>stop_sync: the storage stops replicating, or a keyspace copy copies again the keys written on its peer since,
+ * the phase ends when it reports <code>role:master</code>;</li>
+ * <li>resuming: Dynomite flushes the delayed writes, the phase ends when its queues have drained;</li>
+ * <li>normal.</li>
+ * </ol>
+ * The queues are drained when <code>in_queue</code> of all servers and the <code>server_in_queue_99</code> and
+ * <code>dnode_client_out_queue_99</code> of Dynomite are at most the threshold in two samples in a row. Each phase waits
+ * at most the handoff timeout, after which the node moves on anyway. The time of each phase is kept.
+ */
+@Singleton
+public class WarmupHandoff {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmupHandoff.class);
+
+    public static final String PHASE_WRITES_ONLY = "writes_only";
+    public static final String PHASE_STOP_SYNC = "stop_sync";
+    public static final String PHASE_RESUMING = "resuming";
+
+    private static final String REDIS_ADDRESS = "127.0.0.1";
+    private static final int DRAINED_SAMPLES = 2;
+
+    private final IConfiguration config;
+    private final IStorageProxy storageProxy;
+    private final DynomiteRest dynomiteRest;
+    private final DynomiteAdminClient dynomiteAdmin;
+    private final RedisInfoSnapshot redisInfo;
+    private final Sleeper sleeper;
+    private final InstanceState state;
+    private final DynomiteInfoParser parser = new DynomiteInfoParser();
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private volatile boolean drained;
+    private int drainedSamples;
+    private volatile long queueDepth = -1;
+
+    @Inject
+    public WarmupHandoff(IConfiguration config, IStorageProxy storageProxy, DynomiteRest dynomiteRest,
+            DynomiteAdminClient dynomiteAdmin, RedisInfoSnapshot redisInfo, Sleeper sleeper,
+            InstanceState state) {
+        this.config = config;
+        this.storageProxy = storageProxy;
+        this.dynomiteRest = dynomiteRest;
+        this.dynomiteAdmin = dynomiteAdmin;
+        this.redisInfo = redisInfo;
+        this.sleeper = sleeper;
+        this.state = state;
+    }
+
+    /**
+     * Move Dynomite from writes_only through resuming to normal, as soon as each phase is done.
+     *
+     * @return true if the delayed writes were flushed before the node went normal
+     */
+    public boolean handOff() {
+        synchronized (phases) {
+            phases.clear();
+        }
+        drained = false;
+        drainedSamples = 0;
+        queueDepth = -1;
+        state.setWarmupHandoff(this);
+
+        long start = System.currentTimeMillis();
+        logger.info("Set Dynomite to allow writes only!!!");
+        dynomiteRest.sendCommand("/state/writes_only");
+        endPhase(PHASE_WRITES_ONLY, start);
+
+        start = System.currentTimeMillis();
+        logger.info("Stop Redis' Peer syncing!!!");
+        storageProxy.stopPeerSync();
+        long deadline = start + config.getWarmBootstrapHandoffTimeoutMs();
+        while (!isLocalMaster() && System.currentTimeMillis() < deadline) {
+            sleeper.sleepQuietly(config.getWarmBootstrapHandoffIntervalMs());
+        }
+        endPhase(PHASE_STOP_SYNC, start);
+
+        start = System.currentTimeMillis();
+        logger.info("Set Dynomite to resuming state to allow writes and flush delayed writes");
+        dynomiteRest.sendCommand("/state/resuming");
+        deadline = start + config.getWarmBootstrapHandoffTimeoutMs();
+        while (!drained && System.currentTimeMillis() < deadline) {
+            sleeper.sleepQuietly(config.getWarmBootstrapHandoffIntervalMs());
+            sample();
+        }
+        endPhase(PHASE_RESUMING, start);
+        if (!drained) {
+            logger.warn("Dynomite queues did not drain in " + config.getWarmBootstrapHandoffTimeoutMs()
+                    + " ms (depth " + queueDepth + ") --> moving on");
+        }
+
+        logger.info("Set Dynomite to normal state");
+        dynomiteRest.sendCommand("/state/normal");
+        logger.info("Handoff took " + getPhaseMs() + " ms");
+        return drained;
+    }
+
+    private boolean isLocalMaster() {
+        try {
+            return !redisInfo.refresh(REDIS_ADDRESS, storageProxy.getPort()).isSlave();
+        } catch (JedisConnectionException e) {
+            logger.warn("Cannot get INFO from the local storage: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void sample() {
+        try {
+            dynomiteAdmin.execute(dynomiteAdmin.getAdminUrl() + "/info", "handoff_info",
+                    new DynomiteAdminClient.ResponseHandler<Boolean>() {
+                        @Override
+                        public Boolean handle(int statusCode, InputStream body) throws IOException {
+                            if (statusCode != 200) {
+                                throw new IOException("Status " + statusCode);
+                            }
+                            return update(body);
+                        }
+                    });
+        } catch (IOException e) {
+            logger.warn("Cannot get the Dynomite stats: " + e.getMessage());
+            drainedSamples = 0;
+        }
+    }
+
+    /**
+     * Take a sample of the queues of Dynomite.
+     *
+     * @param info
+     *            the document of Dynomite's <code>/info</code>
+     * @return true if the queues are drained
+     */
+    public synchronized boolean update(InputStream info) throws IOException {
+        long inQueue = 0;
+        long serverInQueue = 0;
+        long dnodeOutQueue = 0;
+        synchronized (parser) {
+            parser.parse(info);
+            for (int i = 0; i < parser.getStatCount(); i++) {
+                DynomiteInfoParser.Metric stat = parser.getStat(i);
+                if ("in_queue".equals(stat.getKey())) {
+                    inQueue += stat.getValue();
+                }
+            }
+            for (DynomiteInfoParser.Metric field : parser.getFields()) {
+                if ("server_in_queue_99".equals(field.getKey())) {
+                    serverInQueue = field.getValue();
+                } else if ("dnode_client_out_queue_99".equals(field.getKey())) {
+                    dnodeOutQueue = field.getValue();
+                }
+            }
+        }
+        return update(inQueue, serverInQueue, dnodeOutQueue);
+    }
+
+    /**
+     * @return true if the queues have been at most the threshold for enough samples in a row
+     */
+    public synchronized boolean update(long inQueue, long serverInQueue99, long dnodeClientOutQueue99) {
+        queueDepth = Math.max(inQueue, Math.max(serverInQueue99, dnodeClientOutQueue99));
+        long threshold = config.getWarmBootstrapHandoffQueueThreshold();
+        if (queueDepth <= threshold) {
+            drainedSamples++;
+        } else {
+            logger.info("Waiting for Dynomite to flush: in_queue " + inQueue + ", server_in_queue_99 "
+                    + serverInQueue99 + ", dnode_client_out_queue_99 " + dnodeClientOutQueue99);
+            drainedSamples = 0;
+        }
+        drained = drainedSamples >= DRAINED_SAMPLES;
+        return drained;
+    }
+
+    private void endPhase(String phase, long start) {
+        long elapsed = System.currentTimeMillis() - start;
+        logger.info("Handoff " + phase + " took " + elapsed + " ms");
+        synchronized (phases) {
+            phases.put(phase, elapsed);
+        }
+    }
+
+    /**
+     * @return true if the delayed writes of the last handoff were flushed
+     */
+    public boolean isDrained() {
+        return drained;
+    }
+
+    /**
+     * @return the deepest queue of the last sample, or -1 if there is none
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the time (in ms) of each phase of the last handoff, in order
+     */
+    public Map<String, Long> getPhaseMs() {
+        synchronized (phases) {
+            return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(phases));
+        }
+    }
+}
@@ -45,14 +45,16 @@ public class ProxyAndStorageResetTask extends Task {
     private final IDynomiteProcess dynProcess;
     private final IStorageProxy storageProxy;
     private final Sleeper sleeper;
+    private final DynomiteRest dynomiteRest;
 
     @Inject
     public ProxyAndStorageResetTask(IConfiguration config, IDynomiteProcess dynProcess, IStorageProxy storageProxy,
-	    Sleeper sleeper) {
+	    Sleeper sleeper, DynomiteRest dynomiteRest) {
 	super(config);
 	this.storageProxy = storageProxy;
 	this.dynProcess = dynProcess;
 	this.sleeper = sleeper;
+	this.dynomiteRest = dynomiteRest;
     }
 
     public void execute() throws IOException {
@@ -68,10 +70,10 @@ public class ProxyAndStorageResetTask extends Task {
 
     private void setConsistency() {
 	logger.info("Setting the consistency level for the cluster");
-	if (!DynomiteRest.sendCommand("/set_consistency/read/" + config.getDynomiteReadConsistency()))
+	if (!dynomiteRest.sendCommand("/set_consistency/read/" + config.getDynomiteReadConsistency()))
 	    logger.error("REST call to Dynomite for read consistency failed --> using the default");
 
-	if (!DynomiteRest.sendCommand("/set_consistency/write/" + config.getDynomiteWriteConsistency()))
+	if (!dynomiteRest.sendCommand("/set_consistency/write/" + config.getDynomiteWriteConsistency()))
 	    logger.error("REST call to Dynomite for write consistency failed --> using the default");
     }
 
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch of the heaviest items of a stream (Metwally et al.), in memory bounded by the number of
+ * counters.
+ *
+ * Every item that is among the heaviest is guaranteed to have a counter. The count of a counter overestimates the
+ * true weight of its item by at most {@link Counter#getError()}. When all counters are taken, the counter with the
+ * smallest count is handed over to the new item.
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<String, Counter>();
+    private long total;
+
+    /**
+     * The estimated weight of an item.
+     */
+    public static class Counter {
+        private final String item;
+        private long count;
+        private long error;
+
+        private Counter(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * @return the estimated weight, at least the true weight
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return by how much the count may overestimate the true weight
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be >= 1");
+        }
+        this.capacity = capacity;
+    }
+
+    public synchronized void offer(String item, long weight) {
+        total += weight;
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(item, new Counter(item, weight, 0L));
+            return;
+        }
+
+        // the number of counters is small, a linear scan for the smallest is cheaper than keeping them ordered
+        Counter min = null;
+        for (Counter c : counters.values()) {
+            if (min == null || c.count < min.count) {
+                min = c;
+            }
+        }
+        counters.remove(min.item);
+        counters.put(item, new Counter(item, min.count + weight, min.count));
+    }
+
+    /**
+     * @return the total weight offered
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return copies of the k counters with the highest counts, highest first
+     */
+    public synchronized List<Counter> top(int k) {
+        List<Counter> list = new ArrayList<Counter>();
+        for (Counter c : counters.values()) {
+            list.add(new Counter(c.item, c.count, c.error));
+        }
+        Collections.sort(list, new Comparator<Counter>() {
+            @Override
+            public int compare(Counter a, Counter b) {
+                return a.count > b.count ? -1 : (a.count == b.count ? 0 : 1);
+            }
+        });
+        return list.size() > k ? new ArrayList<Counter>(list.subList(0, k)) : list;
+    }
+}
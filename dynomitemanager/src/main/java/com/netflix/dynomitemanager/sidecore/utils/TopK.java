@@ -0,0 +1,112 @@
+/**
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.netflix.dynomitemanager.sidecore.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k items with the largest values offered so far, in O(k) memory. Offering an item that is already kept
+ * replaces its value.
+ */
+public class TopK<T> {
+
+    private final int capacity;
+    private final PriorityQueue<Entry<T>> heap;
+    private final Map<String, Entry<T>> entries = new HashMap<String, Entry<T>>();
+
+    /**
+     * An item and the value it is ranked by.
+     */
+    public static class Entry<T> {
+        private final String key;
+        private final T item;
+        private final long value;
+
+        private Entry(String key, T item, long value) {
+            this.key = key;
+            this.item = item;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getValue() {
+            return value;
+        }
+    }
+
+    private static final Comparator<Entry<?>> ASCENDING = new Comparator<Entry<?>>() {
+        @Override
+        public int compare(Entry<?> a, Entry<?> b) {
+            return a.value < b.value ? -1 : (a.value == b.value ? 0 : 1);
+        }
+    };
+
+    public TopK(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be >= 1");
+        }
+        this.capacity = capacity;
+        this.heap = new PriorityQueue<Entry<T>>(capacity, ASCENDING);
+    }
+
+    /**
+     * Offer an item.
+     *
+     * @param key
+     *            identifies the item
+     * @return true if the item is kept
+     */
+    public synchronized boolean offer(String key, T item, long value) {
+        Entry<T> old = entries.get(key);
+        if (old != null) {
+            heap.remove(old);
+            entries.remove(key);
+        } else if (heap.size() >= capacity) {
+            if (heap.peek().value >= value) {
+                return false;
+            }
+            entries.remove(heap.poll().key);
+        }
+
+        Entry<T> entry = new Entry<T>(key, item, value);
+        heap.add(entry);
+        entries.put(key, entry);
+        return true;
+    }
+
+    /**
+     * @return the kept items, largest value first
+     */
+    public synchronized List<Entry<T>> get() {
+        List<Entry<T>> list = new ArrayList<Entry<T>>(heap);
+        Collections.sort(list, Collections.reverseOrder(ASCENDING));
+        return list;
+    }
+
+    public synchronized int size() {
+        return heap.size();
+    }
+}
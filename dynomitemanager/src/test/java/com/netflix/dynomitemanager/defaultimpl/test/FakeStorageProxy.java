@@ -46,6 +46,12 @@ public class FakeStorageProxy implements IStorageProxy {
 	return false;
     }
 
+    @Override
+    public boolean discardWarmUp() {
+	// TODO Auto-generated method stub
+	return false;
+    }
+
     @Override
     public boolean takeSnapshot() {
 	// TODO Auto-generated method stub
@@ -64,6 +70,12 @@ public class FakeStorageProxy implements IStorageProxy {
 
     }
 
+    @Override
+    public void abortPeerSync() {
+	// TODO Auto-generated method stub
+
+    }
+
     @Override
     public String getEngine() {
 	// TODO Auto-generated method stub
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.dynomite.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.dynomitemanager.dynomite.DynomiteRest;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for DynomiteAdminClient and DynomiteRest against a local stand-in of Dynomite's admin port.
+ */
+public class DynomiteAdminClientTest {
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                String path = exchange.getRequestURI().getPath();
+                int status = path.startsWith("/state/") ? 200 : 500;
+                byte[] body = ("OK " + path).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        ConfigurationManager.getConfigInstance().setProperty("florida.metrics.url",
+                "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        ConfigurationManager.getConfigInstance().clearProperty("florida.metrics.url");
+
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().startsWith(DynomiteAdminClient.METRIC_PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    @Test
+    public void testSendCommandReusesConnection() throws Exception {
+        DynomiteAdminClient client = new DynomiteAdminClient(new BlankConfiguration());
+        DynomiteRest rest = new DynomiteRest(client);
+
+        Assert.assertTrue(rest.sendCommand("/state/writes_only"));
+        Assert.assertTrue(rest.sendCommand("/state/writes_only"));
+        Assert.assertTrue(rest.sendCommand("/state/normal"));
+        Assert.assertFalse(rest.sendCommand("/set_consistency/read/DC_ONE"));
+
+        // all calls went over one keep-alive connection
+        Assert.assertEquals(1, clientPorts.size());
+
+        Assert.assertEquals(2L, client.getStats("state_writes_only").getRequests());
+        Assert.assertEquals(0L, client.getStats("state_writes_only").getErrors());
+        Assert.assertEquals(2L, client.getStats("state_writes_only").getLatency().getCount().longValue());
+        Assert.assertEquals(1L, client.getStats("state_normal").getRequests());
+        Assert.assertEquals(1L, client.getStats("set_consistency_read_DC_ONE").getErrors());
+    }
+
+    @Test
+    public void testUnreachableAdminPort() throws Exception {
+        server.stop(0);
+        DynomiteAdminClient client = new DynomiteAdminClient(new BlankConfiguration());
+
+        Assert.assertFalse(new DynomiteRest(client).sendCommand("/state/normal"));
+        Assert.assertEquals(1L, client.getStats("state_normal").getErrors());
+    }
+}
@@ -385,4 +385,274 @@ public class SimpleTestConfiguration implements IConfiguration {
 	    return 0;
 	}
 
+	@Override
+	public int getRedisInfoTtlMs() {
+	    return 0;
+	}
+
+	@Override
+	public int getDynomiteAdminConnectTimeoutMs() {
+	    return 2000;
+	}
+
+	@Override
+	public int getDynomiteAdminMaxConnections() {
+	    return 4;
+	}
+
+	@Override
+	public int getDynomiteAdminReadTimeoutMs() {
+	    return 5000;
+	}
+
+	@Override
+	public boolean isHighResolutionMetricsEnabled() {
+	    return false;
+	}
+
+	@Override
+	public int getHighResolutionMetricsHistorySeconds() {
+	    return 10;
+	}
+
+	@Override
+	public int getHighResolutionMetricsIntervalMs() {
+	    return 250;
+	}
+
+	@Override
+	public String getHighResolutionMetrics() {
+	    return "dynomite__latency_99th,Redis_Stats_instantaneous_ops_per_sec";
+	}
+
+	@Override
+	public boolean isRedisLatencyMetricsEnabled() {
+	    return false;
+	}
+
+	@Override
+	public int getRedisSlowlogMaxEntries() {
+	    return 4;
+	}
+
+	@Override
+	public int getRedisLatencyMaxCommands() {
+	    return 3;
+	}
+
+	@Override
+	public boolean isRedisCommandStatsEnabled() {
+	    return false;
+	}
+
+	@Override
+	public boolean isKeyspaceAnalyzerEnabled() {
+	    return false;
+	}
+
+	@Override
+	public int getKeyspaceAnalyzerOpsPerSecond() {
+	    return 1000;
+	}
+
+	@Override
+	public int getKeyspaceAnalyzerTopKeys() {
+	    return 2;
+	}
+
+	@Override
+	public String getDynomitePidFile() {
+	    return "/var/run/dynomite/dynomite.pid";
+	}
+
+	@Override
+	public String getRedisPidFile() {
+	    return "/var/run/redis/nfredis-server.pid";
+	}
+
+	@Override
+	public boolean isProcessMetricsEnabled() {
+	    return false;
+	}
+
+	@Override
+	public boolean isTcpMetricsEnabled() {
+	    return false;
+	}
+
+	@Override
+	public boolean isMetricsPipelineEnabled() {
+	    return false;
+	}
+
+	@Override
+	public int getMetricsPipelineIntervalMs() {
+	    return 15000;
+	}
+
+	@Override
+	public int getMetricsSourceDeadlineMs() {
+	    return 5000;
+	}
+
+	@Override
+	public int getMetricsPipelineThreads() {
+	    return 4;
+	}
+
+	@Override
+	public String getMetricsPipelineSources() {
+	    return "";
+	}
+
+	@Override
+	public int getWarmBootstrapProbeTimeoutMs() {
+	    return 10000;
+	}
+
+	@Override
+	public int getWarmBootstrapProbePeers() {
+	    return 3;
+	}
+
+	@Override
+	public String getWarmBootstrapMode() {
+	    return "slaveof";
+	}
+
+	@Override
+	public int getWarmBootstrapCopyWorkers() {
+	    return 4;
+	}
+
+	@Override
+	public int getWarmBootstrapCopyBatchSize() {
+	    return 100;
+	}
+
+	@Override
+	public int getWarmBootstrapCopyKBytesPerSecond() {
+	    return 51200;
+	}
+
+	@Override
+	public int getWarmBootstrapSyncMinIntervalMs() {
+	    return 500;
+	}
+
+	@Override
+	public int getWarmBootstrapSyncMaxIntervalMs() {
+	    return 10000;
+	}
+
+	@Override
+	public int getWarmBootstrapSyncStallMs() {
+	    return 120000;
+	}
+
+	@Override
+	public boolean isWarmBootstrapThrottleEnabled() {
+	    return false;
+	}
+
+	@Override
+	public int getWarmBootstrapThrottleIntervalMs() {
+	    return 1000;
+	}
+
+	@Override
+	public int getWarmBootstrapThrottleOpsPerSec() {
+	    return 50000;
+	}
+
+	@Override
+	public int getWarmBootstrapThrottleOutputList() {
+	    return 10000;
+	}
+
+	@Override
+	public int getWarmBootstrapThrottleLatencyUs() {
+	    return 5000;
+	}
+
+	@Override
+	public int getWarmBootstrapThrottleMaxWaitMs() {
+	    return 300000;
+	}
+
+	@Override
+	public int getWarmBootstrapBlacklistMs() {
+	    return 600000;
+	}
+
+	@Override
+	public int getWarmBootstrapDeadlineMs() {
+	    return 3600000;
+	}
+
+	@Override
+	public int getWarmBootstrapHandoffIntervalMs() {
+	    return 500;
+	}
+
+	@Override
+	public int getWarmBootstrapHandoffTimeoutMs() {
+	    return 60000;
+	}
+
+	@Override
+	public int getWarmBootstrapHandoffQueueThreshold() {
+	    return 10;
+	}
+
+	@Override
+	public int getBackupUploadConcurrency() {
+	    return 4;
+	}
+
+	@Override
+	public int getBackupUploadPartSizeMB() {
+	    return 64;
+	}
+
+	@Override
+	public int getBackupUploadRetries() {
+	    return 3;
+	}
+
+	@Override
+	public int getBackupUploadRetryBackoffMs() {
+	    return 1000;
+	}
+
+	@Override
+	public String getBackupCompression() {
+	    return "none";
+	}
+
+	@Override
+	public int getRestoreConcurrency() {
+	    return 4;
+	}
+
+	@Override
+	public int getRestoreRangeSizeMB() {
+	    return 64;
+	}
+
+	@Override
+	public int getRestoreRangeRetries() {
+	    return 3;
+	}
+
+	@Override
+	public int getRestoreRangeRetryBackoffMs() {
+	    return 1000;
+	}
+
+	@Override
+	public String getWarmBootstrapPeerSelection() {
+	    return "uptime";
+	}
+
 }
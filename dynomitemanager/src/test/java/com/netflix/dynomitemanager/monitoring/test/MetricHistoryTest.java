@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.monitoring.MetricHistory;
+import com.netflix.dynomitemanager.monitoring.MetricHistoryStore;
+
+/**
+ * Tests for the high resolution MetricHistory ring buffer.
+ */
+public class MetricHistoryTest {
+
+    @Test
+    public void testReadAfterWrapAround() {
+        MetricHistory history = new MetricHistory("dynomite__latency_99th", 4);
+        long[] timestamps = new long[4];
+        long[] values = new long[4];
+
+        Assert.assertEquals(0, history.read(0, timestamps, values));
+
+        for (long t = 1; t <= 6; t++) {
+            history.record(t * 250, t * 10);
+        }
+
+        Assert.assertEquals(4, history.read(0, timestamps, values));
+        Assert.assertArrayEquals(new long[] { 750, 1000, 1250, 1500 }, timestamps);
+        Assert.assertArrayEquals(new long[] { 30, 40, 50, 60 }, values);
+
+        // only the samples of the requested window
+        Assert.assertEquals(2, history.read(1250, timestamps, values));
+        Assert.assertEquals(1250L, timestamps[0]);
+        Assert.assertEquals(60L, values[1]);
+    }
+
+    @Test
+    public void testConcurrentReaderSeesConsistentSamples() throws Exception {
+        final MetricHistory history = new MetricHistory("Redis_Stats_instantaneous_ops_per_sec", 64);
+        final AtomicBoolean done = new AtomicBoolean();
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long t = 1; t <= 200000; t++) {
+                    history.record(t, -t);
+                }
+                done.set(true);
+            }
+        });
+        writer.start();
+
+        long[] timestamps = new long[64];
+        long[] values = new long[64];
+        while (!done.get()) {
+            int count = history.read(0, timestamps, values);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(-timestamps[i], values[i]);
+                if (i > 0) {
+                    Assert.assertTrue(timestamps[i] > timestamps[i - 1]);
+                }
+            }
+        }
+        writer.join();
+        Assert.assertEquals(200000L, history.getRecorded());
+    }
+
+    @Test
+    public void testStoreSizesHistoryFromConfiguration() {
+        // 10 seconds at 250ms
+        MetricHistoryStore store = new MetricHistoryStore(new BlankConfiguration());
+        MetricHistory history = store.getOrCreate("dynomite__latency_99th");
+
+        Assert.assertEquals(40, history.getCapacity());
+        Assert.assertSame(history, store.get("dynomite__latency_99th"));
+        Assert.assertNull(store.get("dynomite__latency_95th"));
+        Assert.assertEquals("dynomite__latency_99th", store.getNames().get(0));
+    }
+}
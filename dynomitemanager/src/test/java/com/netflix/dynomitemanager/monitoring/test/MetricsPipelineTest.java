@@ -0,0 +1,189 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.monitoring.MetricsCollector;
+import com.netflix.dynomitemanager.monitoring.MetricsPipeline;
+import com.netflix.dynomitemanager.monitoring.MetricsSource;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for MetricsPipeline and MetricsCollector
+ */
+public class MetricsPipelineTest {
+
+    private MetricsPipeline pipeline;
+    private MetricsCollector collector;
+
+    @After
+    public void cleanUp() throws Exception {
+        if (pipeline != null) {
+            pipeline.close();
+            // every pipeline registers the same mbean
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    new ObjectName("com.netflix.dynomitemanager.scheduler:type=" + MetricsPipeline.class.getName()));
+        }
+        if (collector != null) {
+            collector.close();
+        }
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().startsWith(MetricsPipeline.PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSources() throws Exception {
+        pipeline = new MetricsPipeline(new BlankConfiguration() {
+            @Override
+            public int getMetricsPipelineThreads() {
+                return 3;
+            }
+        });
+        // each source waits for the others, so the round only completes if they run at the same time
+        final CountDownLatch latch = new CountDownLatch(3);
+        final AtomicInteger collected = new AtomicInteger();
+        for (String name : Arrays.asList("a", "b", "c")) {
+            pipeline.addSource(new TestSource(name, 2000) {
+                @Override
+                public void collect() throws Exception {
+                    latch.countDown();
+                    if (latch.await(1, TimeUnit.SECONDS)) {
+                        collected.incrementAndGet();
+                    }
+                }
+            });
+        }
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), pipeline.getSourceNames());
+
+        pipeline.execute();
+        Assert.assertEquals(3, collected.get());
+        Assert.assertEquals(0L, monitorValue("Metrics_a_timeouts").longValue());
+        Assert.assertEquals(0L, monitorValue("Metrics_c_errors").longValue());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        pipeline = new MetricsPipeline(new BlankConfiguration());
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger fast = new AtomicInteger();
+        pipeline.addSource(new TestSource("slow", 50) {
+            @Override
+            public void collect() throws Exception {
+                release.await(5, TimeUnit.SECONDS);
+            }
+        });
+        pipeline.addSource(new TestSource("fast", 1000) {
+            @Override
+            public void collect() throws Exception {
+                fast.incrementAndGet();
+            }
+        });
+        pipeline.addSource(new TestSource("broken", 1000) {
+            @Override
+            public void collect() throws Exception {
+                throw new IllegalStateException("broken");
+            }
+        });
+
+        long start = System.currentTimeMillis();
+        pipeline.execute();
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertEquals(1, fast.get());
+        Assert.assertEquals(1L, monitorValue("Metrics_slow_timeouts").longValue());
+        Assert.assertEquals(0L, monitorValue("Metrics_fast_timeouts").longValue());
+        Assert.assertEquals(1L, monitorValue("Metrics_broken_errors").longValue());
+
+        // the slow source is still running, so it is skipped while the others go on
+        pipeline.execute();
+        Assert.assertEquals(2, fast.get());
+        Assert.assertEquals(1L, monitorValue("Metrics_slow_skipped").longValue());
+        Assert.assertEquals(2L, monitorValue("Metrics_broken_errors").longValue());
+
+        // a late collection still reports how long it took
+        Thread.sleep(20);
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (monitorValue("Metrics_slow_collect_ms").longValue() == 0L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(monitorValue("Metrics_slow_collect_ms").longValue() >= 20L);
+    }
+
+    @Test
+    public void testCollectorCounter() {
+        collector = new MetricsCollector();
+        MetricsCollector.Metric counter = collector.counter(MetricsPipeline.PREFIX + "test_counter");
+        Assert.assertSame(counter, collector.counter(MetricsPipeline.PREFIX + "test_counter"));
+
+        counter.set(10L);
+        counter.set(15L);
+        Assert.assertEquals(15L, monitorValue("Metrics_test_counter").longValue());
+        // the raw value started over, the counter keeps counting up
+        counter.set(4L);
+        Assert.assertEquals(19L, monitorValue("Metrics_test_counter").longValue());
+
+        MetricsCollector.Metric gauge = collector.gauge(MetricsPipeline.PREFIX + "test_gauge");
+        gauge.set(7L);
+        gauge.set(3L);
+        Assert.assertEquals(3L, monitorValue("Metrics_test_gauge").longValue());
+
+        collector.close();
+        Assert.assertNull(collector.get(MetricsPipeline.PREFIX + "test_counter"));
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            Assert.assertFalse(monitor.getConfig().getName().startsWith(MetricsPipeline.PREFIX + "test_"));
+        }
+    }
+
+    private abstract static class TestSource implements MetricsSource {
+        private final String name;
+        private final long deadlineMs;
+
+        private TestSource(String name, long deadlineMs) {
+            this.name = name;
+            this.deadlineMs = deadlineMs;
+        }
+
+        @Override
+        public String getSourceName() {
+            return name;
+        }
+
+        @Override
+        public long getDeadlineMs() {
+            return deadlineMs;
+        }
+    }
+
+    private static Number monitorValue(String name) {
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().equals(name)) {
+                return (Number) monitor.getValue();
+            }
+        }
+        Assert.fail("No monitor " + name);
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.monitoring.OpenMetricsRenderer;
+import com.netflix.dynomitemanager.resources.MetricsExposition;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.DoubleGauge;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.NumericMonitor;
+
+/**
+ * Tests for OpenMetricsRenderer and the MetricsExposition resource
+ */
+public class OpenMetricsRendererTest {
+
+    private final ConcurrentHashMap<String, NumericMonitor<Number>> dynomite = new ConcurrentHashMap<String, NumericMonitor<Number>>();
+    private final ConcurrentHashMap<String, NumericMonitor<Number>> redis = new ConcurrentHashMap<String, NumericMonitor<Number>>();
+    private final BasicCounter eof = new BasicCounter(MonitorConfig.builder("dynomite__client_eof").build());
+    private final LongGauge connections = new LongGauge(MonitorConfig.builder("dynomite__127.0.0.1__server_connections")
+            .build());
+    private final DoubleGauge ratio = new DoubleGauge(MonitorConfig.builder("mem_fragmentation_ratio").build());
+    private final LongGauge keys = new LongGauge(MonitorConfig.builder("keys_total").build());
+
+    @SuppressWarnings("unchecked")
+    private OpenMetricsRenderer newRenderer() {
+        dynomite.put("dynomite__client_eof", (NumericMonitor<Number>) (NumericMonitor<?>) eof);
+        dynomite.put("dynomite__127.0.0.1__server_connections", (NumericMonitor<Number>) (NumericMonitor<?>) connections);
+        redis.put("mem_fragmentation_ratio", (NumericMonitor<Number>) (NumericMonitor<?>) ratio);
+        redis.put("keys_total", (NumericMonitor<Number>) (NumericMonitor<?>) keys);
+        return new OpenMetricsRenderer(new BlankConfiguration(), Arrays.asList(dynomite, redis));
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        OpenMetricsRenderer renderer = newRenderer();
+        eof.increment(5);
+        connections.set(12L);
+        ratio.set(1.25);
+        keys.set(7L);
+
+        OpenMetricsRenderer.Snapshot snapshot = renderer.render();
+        String body = new String(snapshot.getBody(), StandardCharsets.US_ASCII);
+        // only counter families lose their _total
+        Assert.assertEquals("# TYPE dynomite__127_0_0_1__server_connections gauge\n"
+                + "dynomite__127_0_0_1__server_connections 12\n"
+                + "# TYPE dynomite__client_eof counter\n"
+                + "dynomite__client_eof_total 5\n"
+                + "# TYPE keys_total gauge\n"
+                + "keys_total 7\n"
+                + "# TYPE mem_fragmentation_ratio gauge\n"
+                + "mem_fragmentation_ratio 1.25\n"
+                + "# EOF\n", body);
+
+        OpenMetricsRenderer.Snapshot text = renderer.getSnapshot(OpenMetricsRenderer.Format.TEXT);
+        Assert.assertEquals("# TYPE dynomite__127_0_0_1__server_connections gauge\n"
+                + "dynomite__127_0_0_1__server_connections 12\n"
+                + "# TYPE dynomite__client_eof_total counter\n"
+                + "dynomite__client_eof_total 5\n"
+                + "# TYPE keys_total gauge\n"
+                + "keys_total 7\n"
+                + "# TYPE mem_fragmentation_ratio gauge\n"
+                + "mem_fragmentation_ratio 1.25\n", new String(text.getBody(), StandardCharsets.US_ASCII));
+        Assert.assertNotEquals(snapshot.getETag(), text.getETag());
+        Assert.assertEquals(body, new String(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(
+                snapshot.getGzipped()))), StandardCharsets.US_ASCII));
+
+        // nothing changed, same exposition and ETag
+        Assert.assertSame(snapshot, renderer.render());
+
+        connections.set(-3L);
+        OpenMetricsRenderer.Snapshot changed = renderer.render();
+        Assert.assertNotEquals(snapshot.getETag(), changed.getETag());
+        Assert.assertTrue(new String(changed.getBody(), StandardCharsets.US_ASCII).contains(
+                "dynomite__127_0_0_1__server_connections -3\n"));
+    }
+
+    @Test
+    public void testResource() throws Exception {
+        OpenMetricsRenderer renderer = newRenderer();
+        eof.increment();
+        MetricsExposition resource = new MetricsExposition(renderer);
+
+        String accept = "application/openmetrics-text;version=1.0.0,text/plain;version=0.0.4;q=0.5,*/*;q=0.1";
+        Response response = resource.metrics(accept, null, null);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(MediaType.valueOf(OpenMetricsRenderer.CONTENT_TYPE),
+                response.getMetadata().getFirst("Content-Type"));
+        String etag = (String) response.getMetadata().getFirst("ETag");
+        Assert.assertNotNull(etag);
+        Assert.assertArrayEquals(renderer.getSnapshot().getBody(), (byte[]) response.getEntity());
+
+        response = resource.metrics(accept, "deflate, gzip", null);
+        Assert.assertEquals("gzip", response.getMetadata().getFirst("Content-Encoding"));
+        Assert.assertArrayEquals(renderer.getSnapshot().getGzipped(), (byte[]) response.getEntity());
+
+        Assert.assertEquals(304, resource.metrics(accept, null, "\"other\", " + etag).getStatus());
+        Assert.assertEquals(304, resource.metrics(accept, null, "W/" + etag).getStatus());
+        Assert.assertEquals(200, resource.metrics(accept, null, "\"other\"").getStatus());
+
+        // scrapers that do not ask for OpenMetrics get the text format
+        response = resource.metrics(null, null, etag);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(MediaType.valueOf(OpenMetricsRenderer.TEXT_CONTENT_TYPE),
+                response.getMetadata().getFirst("Content-Type"));
+        Assert.assertArrayEquals(renderer.getSnapshot(OpenMetricsRenderer.Format.TEXT).getBody(),
+                (byte[]) response.getEntity());
+
+        Assert.assertTrue(MetricsExposition.acceptsOpenMetrics("application/openmetrics-text; version=0.0.1"));
+        Assert.assertFalse(MetricsExposition.acceptsOpenMetrics("application/openmetrics-text;q=0, text/plain"));
+        Assert.assertFalse(MetricsExposition.acceptsOpenMetrics("text/plain;version=0.0.4"));
+
+        Assert.assertTrue(MetricsExposition.acceptsGzip("gzip;q=0.5"));
+        Assert.assertFalse(MetricsExposition.acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(MetricsExposition.acceptsGzip("identity"));
+    }
+}
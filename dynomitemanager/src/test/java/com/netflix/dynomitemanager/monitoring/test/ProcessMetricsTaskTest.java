@@ -0,0 +1,164 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.monitoring.ProcessMetricsTask;
+import com.netflix.dynomitemanager.monitoring.ProcessStats;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for ProcessMetricsTask and ProcessStats against a fake /proc
+ */
+public class ProcessMetricsTaskTest {
+
+    private static final String STATUS = "Name:\tdynomite\nState:\tS (sleeping)\nThreads:\t4\nVmRSS:\t   2048 kB\n"
+            + "voluntary_ctxt_switches:\t1000\nnonvoluntary_ctxt_switches:\t10\n";
+    private static final String IO = "rchar: 500\nwchar: 600\nread_bytes: 4096\nwrite_bytes: 8192\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ProcessMetricsTask task;
+
+    @After
+    public void cleanUp() {
+        if (task != null) {
+            task.close();
+        }
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().startsWith(ProcessMetricsTask.PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        File proc = folder.newFolder("proc");
+        File pidFile = new File(folder.getRoot(), "dynomite.pid");
+        ProcessStats stats = new ProcessStats(proc.getPath(), pidFile.getPath());
+        Assert.assertFalse(stats.read());
+
+        write(pidFile, "1234\n");
+        // stale pid file
+        Assert.assertFalse(stats.read());
+
+        write(new File(proc, "uptime"), "100.50 300.00\n");
+        writeProcess(proc, 1234, 150, 30, 5000);
+        Assert.assertTrue(stats.read());
+        Assert.assertEquals(1234, stats.getPid());
+        Assert.assertEquals(150L, stats.getUserTicks());
+        Assert.assertEquals(30L, stats.getSystemTicks());
+        Assert.assertEquals(50L, stats.getUptimeSeconds());
+        Assert.assertEquals(2048L * 1024, stats.getRssBytes());
+        Assert.assertEquals(4L, stats.getThreads());
+        Assert.assertEquals(1000L, stats.getVoluntaryCtxtSwitches());
+        Assert.assertEquals(10L, stats.getNonvoluntaryCtxtSwitches());
+        Assert.assertEquals(4096L, stats.getReadBytes());
+        Assert.assertEquals(8192L, stats.getWriteBytes());
+        Assert.assertEquals(3L, stats.getOpenFds());
+
+        // io is not readable for processes of other users
+        Files.delete(new File(proc, "1234/io").toPath());
+        Assert.assertTrue(stats.read());
+        Assert.assertEquals(-1L, stats.getReadBytes());
+        Assert.assertEquals(2048L * 1024, stats.getRssBytes());
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        File proc = folder.newFolder("proc");
+        final File dynomitePid = new File(folder.getRoot(), "dynomite.pid");
+        final File redisPid = new File(folder.getRoot(), "redis.pid");
+        write(new File(proc, "uptime"), "100.50 300.00\n");
+        write(dynomitePid, "1234\n");
+        writeProcess(proc, 1234, 150, 30, 5000);
+
+        task = new ProcessMetricsTask(new BlankConfiguration() {
+            @Override
+            public String getDynomitePidFile() {
+                return dynomitePid.getPath();
+            }
+
+            @Override
+            public String getRedisPidFile() {
+                return redisPid.getPath();
+            }
+        }, proc.getPath());
+
+        task.execute();
+        Assert.assertEquals(2048L * 1024, monitorValue("Process_dynomite_rss_bytes"));
+        Assert.assertEquals(3L, monitorValue("Process_dynomite_open_fds"));
+        // no Redis running
+        Assert.assertEquals(0L, monitorValue("Process_redis_rss_bytes"));
+
+        Thread.sleep(20);
+        writeProcess(proc, 1234, 160, 30, 5000);
+        task.execute();
+        Assert.assertTrue(task.getDynomiteRates().getRate(0) > 0);
+        Assert.assertEquals(0.0, task.getDynomiteRates().getRate(1), 0.0);
+        Assert.assertTrue(Double.isNaN(task.getRedisRates().getRate(0)));
+
+        // restarted with a new pid: the counters started over, the rates stay positive
+        Thread.sleep(20);
+        write(dynomitePid, "1300\n");
+        writeProcess(proc, 1300, 1, 1, 9990);
+        task.execute();
+        Assert.assertTrue(task.getDynomiteRates().getRate(0) > 0);
+        Assert.assertTrue(task.getDynomiteRates().getRate(1) > 0);
+
+        // stopped
+        Files.delete(dynomitePid.toPath());
+        task.execute();
+        Assert.assertEquals(0L, monitorValue("Process_dynomite_rss_bytes"));
+        Assert.assertTrue(Double.isNaN(task.getDynomiteRates().getRate(0)));
+    }
+
+    private static void writeProcess(File proc, int pid, long utime, long stime, long starttime) throws IOException {
+        File dir = new File(proc, Integer.toString(pid));
+        File fd = new File(dir, "fd");
+        fd.mkdirs();
+        for (int i = 0; i < 3; i++) {
+            new File(fd, Integer.toString(i)).createNewFile();
+        }
+        // the command name may contain spaces and parentheses
+        write(new File(dir, "stat"), pid + " (dyno (mite)) S 1 " + pid + " " + pid + " 0 -1 4194560 100 0 0 0 "
+                + utime + " " + stime + " 0 0 20 0 4 0 " + starttime + " 1000 200\n");
+        write(new File(dir, "status"), STATUS);
+        write(new File(dir, "io"), IO);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static long monitorValue(String name) {
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().equals(name)) {
+                return ((Number) monitor.getValue()).longValue();
+            }
+        }
+        Assert.fail("No monitor " + name);
+        return 0;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.RateEngine;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for RateEngine
+ */
+public class RateEngineTest {
+
+    private static final double DELTA = 0.0001;
+
+    private final RateEngine rates = new RateEngine();
+
+    @After
+    public void unregisterMonitors() {
+        // the registry is global, don't leak monitors into other tests
+        rates.reset();
+    }
+
+    @Test
+    public void testRate() {
+        int slot = rates.newSlot();
+
+        rates.startSample(10000L, 100L);
+        Assert.assertTrue(Double.isNaN(rates.update(slot, "test_requests", 500L)));
+        Assert.assertFalse(isRegistered("test_requests_rate"));
+
+        rates.startSample(12000L, 102L);
+        Assert.assertEquals(50.0, rates.update(slot, "test_requests", 600L), DELTA);
+        Assert.assertEquals(50.0, rates.getRate(slot), DELTA);
+        Assert.assertTrue(isRegistered("test_requests_rate"));
+
+        // the same sample again, e.g. a cached INFO reply, does not change the rate
+        Assert.assertTrue(Double.isNaN(rates.update(slot, "test_requests", 600L)));
+        Assert.assertEquals(50.0, rates.getRate(slot), DELTA);
+    }
+
+    @Test
+    public void testRestart() {
+        int slot = rates.newSlot();
+
+        rates.startSample(10000L, 100L);
+        rates.update(slot, "test_requests", 500L);
+
+        // restarted 4s ago, the 40 requests since were counted from 0
+        Assert.assertTrue(rates.startSample(20000L, 4L));
+        Assert.assertEquals(10.0, rates.update(slot, "test_requests", 40L), DELTA);
+
+        // a restart that took longer than the interval does not inflate the rate
+        Assert.assertFalse(rates.startSample(21000L, 5L));
+        Assert.assertEquals(10.0, rates.update(slot, "test_requests", 50L), DELTA);
+        Assert.assertTrue(rates.startSample(22000L, 0L));
+        Assert.assertEquals(5.0, rates.update(slot, "test_requests", 5L), DELTA);
+    }
+
+    @Test
+    public void testCounterReset() {
+        int slot = rates.newSlot();
+
+        // no uptime, e.g. CONFIG RESETSTAT
+        rates.startSample(10000L, -1L);
+        rates.update(slot, "test_requests", 500L);
+        Assert.assertFalse(rates.startSample(12000L, -1L));
+        Assert.assertEquals(10.0, rates.update(slot, "test_requests", 20L), DELTA);
+    }
+
+    @Test
+    public void testSlots() {
+        int first = rates.newSlot();
+        int second = rates.newSlot();
+        Assert.assertNotEquals(first, second);
+
+        // callers may also bring their own slots
+        int slot = 1000;
+        rates.startSample(1000L, 1L);
+        rates.update(first, "test_first", 10L);
+        rates.update(slot, "test_other", 10L);
+        rates.startSample(2000L, 2L);
+        Assert.assertEquals(5.0, rates.update(first, "test_first", 15L), DELTA);
+        Assert.assertEquals(1.0, rates.update(slot, "test_other", 11L), DELTA);
+        Assert.assertTrue(Double.isNaN(rates.getRate(second)));
+
+        // a slot that is reused for another counter starts over
+        Assert.assertTrue(Double.isNaN(rates.update(first, "test_renamed", 20L)));
+    }
+
+    private static boolean isRegistered(String name) {
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.defaultimpl.test.FakeStorageProxy;
+import com.netflix.dynomitemanager.monitoring.RedisCommandStatsTask;
+import com.netflix.dynomitemanager.sidecore.storage.RedisCommandStats;
+import com.netflix.dynomitemanager.sidecore.storage.test.FakeRespServer;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for RedisCommandStatsTask and RedisCommandStats
+ */
+public class RedisCommandStatsTaskTest {
+
+    private static final String INFO = "# Commandstats\r\n"
+            + "cmdstat_get:calls=100,usec=1000,usec_per_call=10.00\r\n"
+            + "cmdstat_set:calls=10,usec=500,usec_per_call=50.00\r\n"
+            + "cmdstat_module.cmd:calls=3,usec=30,usec_per_call=10.00\r\n"
+            + "cmdstat_custom:calls=2,usec=20,usec_per_call=10.00\r\n"
+            + "cmdstat_broken:calls=x\r\n";
+
+    private volatile String info = INFO;
+    private FakeRespServer server;
+    private RedisCommandStatsTask task;
+
+    @After
+    public void cleanUp() throws Exception {
+        if (task != null) {
+            task.close();
+            task.getRateEngine().reset();
+        }
+        if (server != null) {
+            server.close();
+        }
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().startsWith(RedisCommandStatsTask.PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    @Test
+    public void testParse() {
+        RedisCommandStats stats = new RedisCommandStats();
+        Assert.assertEquals(4, stats.parse(INFO));
+
+        int get = RedisCommandStats.indexOf("get");
+        Assert.assertTrue(stats.isPresent(get));
+        Assert.assertEquals(100L, stats.getCalls(get));
+        Assert.assertEquals(1000L, stats.getUsec(get));
+        Assert.assertFalse(stats.isPresent(RedisCommandStats.indexOf("hget")));
+
+        // unknown commands share one entry
+        int other = RedisCommandStats.indexOf("module.cmd");
+        Assert.assertEquals(RedisCommandStats.OTHER, RedisCommandStats.getName(other));
+        Assert.assertEquals(5L, stats.getCalls(other));
+        Assert.assertEquals(50L, stats.getUsec(other));
+
+        Assert.assertEquals(0, stats.parse("# Commandstats\r\n"));
+        Assert.assertFalse(stats.isPresent(get));
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                Assert.assertEquals(Arrays.asList("INFO", "commandstats"), request);
+                return FakeRespServer.bulk(info);
+            }
+        });
+        task = new RedisCommandStatsTask(new BlankConfiguration(), new FakeStorageProxy() {
+            @Override
+            public String getIpAddress() {
+                return server.getHost();
+            }
+
+            @Override
+            public int getPort() {
+                return server.getPort();
+            }
+        });
+
+        task.execute();
+        Thread.sleep(20);
+        info = INFO.replace("calls=100,usec=1000", "calls=150,usec=3000");
+        task.execute();
+
+        Assert.assertEquals(40L, monitorValue("Redis_Commandstats_get_usec_per_call"));
+        Assert.assertEquals(0L, monitorValue("Redis_Commandstats_set_usec_per_call"));
+        Assert.assertTrue(monitorValue("Redis_Commandstats_get_calls_rate") > 0L);
+
+        // CONFIG RESETSTAT
+        Thread.sleep(20);
+        info = INFO.replace("calls=100,usec=1000", "calls=4,usec=100");
+        task.execute();
+        Assert.assertEquals(25L, monitorValue("Redis_Commandstats_get_usec_per_call"));
+
+        Assert.assertEquals(1, server.getConnections());
+    }
+
+    private static long monitorValue(String name) {
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().equals(name)) {
+                return ((Number) monitor.getValue()).longValue();
+            }
+        }
+        Assert.fail("No monitor " + name);
+        return 0;
+    }
+}
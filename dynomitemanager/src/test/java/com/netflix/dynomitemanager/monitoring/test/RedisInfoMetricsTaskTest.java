@@ -22,6 +22,7 @@ import com.netflix.dynomitemanager.defaultimpl.test.FakeStorageProxy;
 import com.netflix.dynomitemanager.monitoring.JedisFactory;
 import com.netflix.dynomitemanager.monitoring.RedisInfoMetricsTask;
 import com.netflix.dynomitemanager.sidecore.storage.IStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfoSnapshot;
 import com.netflix.servo.DefaultMonitorRegistry;
 
 import mockit.Expectations;
@@ -69,7 +70,8 @@ public class RedisInfoMetricsTaskTest {
         IConfiguration iConfig = new BlankConfiguration();
         IStorageProxy storageProxy = new FakeStorageProxy();
 
-        RedisInfoMetricsTask mimt = new RedisInfoMetricsTask(iConfig, storageProxy, jedisFactory);
+        RedisInfoMetricsTask mimt = new RedisInfoMetricsTask(iConfig, storageProxy,
+                new RedisInfoSnapshot(iConfig, jedisFactory));
         mimt.execute();
 
         Assert.assertNotNull(DefaultMonitorRegistry.getInstance().getRegisteredMonitors());
@@ -0,0 +1,290 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import static com.netflix.dynomitemanager.sidecore.storage.test.FakeRespServer.bulk;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.defaultimpl.test.FakeStorageProxy;
+import com.netflix.dynomitemanager.monitoring.LatencyHistogram;
+import com.netflix.dynomitemanager.monitoring.RedisLatencyTask;
+import com.netflix.dynomitemanager.sidecore.storage.test.FakeRespServer;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for RedisLatencyTask and LatencyHistogram
+ */
+public class RedisLatencyTaskTest {
+
+    // SLOWLOG GET replies, newest first
+    private final List<Object> slowlog = new ArrayList<Object>();
+    private final List<Object> latest = new ArrayList<Object>();
+    private final Map<String, List<Object>> history = new HashMap<String, List<Object>>();
+
+    private FakeRespServer server;
+    private RedisLatencyTask task;
+
+    @After
+    public void cleanUp() throws Exception {
+        if (task != null) {
+            task.close();
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    new ObjectName("com.netflix.dynomitemanager.scheduler:type=" + RedisLatencyTask.class.getName()));
+        }
+        if (server != null) {
+            server.close();
+        }
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            String name = monitor.getConfig().getName();
+            if (name.startsWith(RedisLatencyTask.SLOWLOG_PREFIX) || name.startsWith(RedisLatencyTask.LATENCY_PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram("get");
+        Assert.assertEquals(0L, histogram.getPercentile(99));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+
+        Assert.assertEquals(101L, histogram.getCount());
+        Assert.assertEquals(5050L, histogram.getSum());
+        Assert.assertEquals(100L, histogram.getMax());
+        Assert.assertEquals(64L, histogram.getPercentile(50));
+        Assert.assertEquals(100L, histogram.getPercentile(99));
+        Assert.assertEquals(1L, histogram.getCounts()[0]);
+        Assert.assertEquals(37L, histogram.getCounts()[7]);
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                String command = request.get(0) + " " + request.get(1);
+                if (command.equals("SLOWLOG GET")) {
+                    int max = Integer.parseInt(request.get(2));
+                    return new ArrayList<Object>(slowlog.subList(0, Math.min(max, slowlog.size())));
+                } else if (command.equals("LATENCY LATEST")) {
+                    return latest;
+                } else if (command.equals("LATENCY HISTORY")) {
+                    return history.get(request.get(2));
+                }
+                throw new Exception("ERR unknown command '" + request.get(0) + "'");
+            }
+        });
+
+        task = new RedisLatencyTask(new BlankConfiguration(), new FakeStorageProxy() {
+            @Override
+            public String getIpAddress() {
+                return server.getHost();
+            }
+
+            @Override
+            public int getPort() {
+                return server.getPort();
+            }
+        });
+
+        addSlowlog(0, 100, "GET", "key");
+        addSlowlog(1, 300, "SET", "key", "value");
+        addSlowlog(2, 5000, "get", "key");
+        latest.add(Arrays.<Object> asList(bulk("command"), 1000L, 5L, 10L));
+        history.put("command", Arrays.<Object> asList(Arrays.<Object> asList(990L, 10L), Arrays.<Object> asList(1000L,
+                5L)));
+
+        task.execute();
+        Assert.assertEquals(2L, task.getLastSlowlogId());
+        Assert.assertEquals(2L, histogram(task.getSlowlogHistograms(), "get").getCount());
+        Assert.assertEquals(5000L, histogram(task.getSlowlogHistograms(), "get").getMax());
+        Assert.assertEquals(1L, histogram(task.getSlowlogHistograms(), "set").getCount());
+        Assert.assertEquals(2L, histogram(task.getLatencyHistograms(), "command").getCount());
+        Assert.assertEquals(10000L, histogram(task.getLatencyHistograms(), "command").getMax());
+        Assert.assertEquals(5000L, monitorValue("Redis_Slowlog_get_max"));
+
+        // only the new entry is read, the unchanged latency event is not read again; the third command goes to other
+        addSlowlog(3, 50, "HGETALL", "key");
+        task.execute();
+        Assert.assertEquals(2L, histogram(task.getSlowlogHistograms(), "get").getCount());
+        Assert.assertEquals(1L, histogram(task.getSlowlogHistograms(), RedisLatencyTask.OTHER).getCount());
+        Assert.assertEquals(2L, histogram(task.getLatencyHistograms(), "command").getCount());
+        Assert.assertEquals(3, task.getSlowlogHistograms().size());
+
+        // the slow log rotated past entries 4 to 6
+        slowlog.clear();
+        for (int id = 7; id <= 10; id++) {
+            addSlowlog(id, 10, "SET", "key", "value");
+        }
+        latest.set(0, Arrays.<Object> asList(bulk("command"), 1010L, 20L, 20L));
+        history.put("command", Arrays.<Object> asList(Arrays.<Object> asList(1000L, 5L), Arrays.<Object> asList(1010L,
+                20L)));
+        task.execute();
+        Assert.assertEquals(10L, task.getLastSlowlogId());
+        Assert.assertEquals(5L, histogram(task.getSlowlogHistograms(), "set").getCount());
+        Assert.assertEquals(3L, monitorValue("Redis_Slowlog_missed"));
+        Assert.assertEquals(3L, histogram(task.getLatencyHistograms(), "command").getCount());
+
+        // Redis restarted, ids start over
+        slowlog.clear();
+        addSlowlog(0, 10, "DEL", "key");
+        task.execute();
+        Assert.assertEquals(0L, task.getLastSlowlogId());
+        Assert.assertEquals(2L, histogram(task.getSlowlogHistograms(), RedisLatencyTask.OTHER).getCount());
+
+        // all runs shared one connection
+        Assert.assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void testLatencyOther() throws Exception {
+        server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                String command = request.get(0) + " " + request.get(1);
+                if (command.equals("SLOWLOG GET")) {
+                    return slowlog;
+                } else if (command.equals("LATENCY LATEST")) {
+                    return latest;
+                } else if (command.equals("LATENCY HISTORY")) {
+                    return history.get(request.get(2));
+                }
+                throw new Exception("ERR unknown command '" + request.get(0) + "'");
+            }
+        });
+
+        task = new RedisLatencyTask(new BlankConfiguration() {
+            @Override
+            public int getRedisLatencyMaxCommands() {
+                return 2;
+            }
+        }, new FakeStorageProxy() {
+            @Override
+            public String getIpAddress() {
+                return server.getHost();
+            }
+
+            @Override
+            public int getPort() {
+                return server.getPort();
+            }
+        });
+
+        for (String name : new String[] { "command", "fast-command", "fork" }) {
+            latest.add(Arrays.<Object> asList(bulk(name), 1000L, 5L, 10L));
+            history.put(name, Arrays.<Object> asList(Arrays.<Object> asList(1000L, 5L)));
+        }
+        task.execute();
+        Assert.assertEquals(1L, histogram(task.getLatencyHistograms(), "command").getCount());
+        Assert.assertEquals(2L, histogram(task.getLatencyHistograms(), RedisLatencyTask.OTHER).getCount());
+
+        // the events counted as other are not read again while they are unchanged
+        task.execute();
+        task.execute();
+        Assert.assertEquals(1L, histogram(task.getLatencyHistograms(), "command").getCount());
+        Assert.assertEquals(2L, histogram(task.getLatencyHistograms(), RedisLatencyTask.OTHER).getCount());
+        Assert.assertEquals(2L, monitorValue("Redis_Latency_other_count"));
+    }
+
+    @Test
+    public void testLatencyHistoryFailure() throws Exception {
+        final List<String> failing = new ArrayList<String>();
+        server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                String command = request.get(0) + " " + request.get(1);
+                if (command.equals("SLOWLOG GET")) {
+                    return slowlog;
+                } else if (command.equals("LATENCY LATEST")) {
+                    return latest;
+                } else if (command.equals("LATENCY HISTORY")) {
+                    if (failing.contains(request.get(2))) {
+                        throw new Exception("ERR history of " + request.get(2) + " is not available");
+                    }
+                    return history.get(request.get(2));
+                }
+                throw new Exception("ERR unknown command '" + request.get(0) + "'");
+            }
+        });
+
+        task = new RedisLatencyTask(new BlankConfiguration(), new FakeStorageProxy() {
+            @Override
+            public String getIpAddress() {
+                return server.getHost();
+            }
+
+            @Override
+            public int getPort() {
+                return server.getPort();
+            }
+        });
+
+        for (String name : new String[] { "command", "fork" }) {
+            latest.add(Arrays.<Object> asList(bulk(name), 1000L, 5L, 10L));
+            history.put(name, Arrays.<Object> asList(Arrays.<Object> asList(990L, 10L), Arrays.<Object> asList(1000L,
+                    5L)));
+        }
+        failing.add("fork");
+        task.execute();
+        Assert.assertEquals(2L, histogram(task.getLatencyHistograms(), "command").getCount());
+        Assert.assertEquals(2L, monitorValue("Redis_Latency_command_count"));
+
+        // the event recorded before the failure is not recorded again, the failed one is read in full
+        failing.clear();
+        task.execute();
+        Assert.assertEquals(2L, histogram(task.getLatencyHistograms(), "command").getCount());
+        Assert.assertEquals(2L, histogram(task.getLatencyHistograms(), "fork").getCount());
+    }
+
+    private void addSlowlog(long id, long micros, String... args) {
+        List<Object> command = new ArrayList<Object>();
+        for (String arg : args) {
+            command.add(bulk(arg));
+        }
+        slowlog.add(0, Arrays.<Object> asList(id, 1400000000L + id, micros, command));
+    }
+
+    private static LatencyHistogram histogram(List<LatencyHistogram> histograms, String name) {
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.getName().equals(name)) {
+                return histogram;
+            }
+        }
+        Assert.fail("No histogram of " + name + " in " + histograms);
+        return null;
+    }
+
+    private static long monitorValue(String name) {
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().equals(name)) {
+                return ((Number) monitor.getValue()).longValue();
+            }
+        }
+        Assert.fail("No monitor " + name);
+        return 0;
+    }
+}
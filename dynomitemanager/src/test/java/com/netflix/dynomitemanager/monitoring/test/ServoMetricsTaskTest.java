@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.dynomitemanager.monitoring.DynomiteInfoParser;
+import com.netflix.dynomitemanager.monitoring.ServoMetricsTask;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.NumericMonitor;
+
+/**
+ * Tests for ServoMetricsTask and the streaming DynomiteInfoParser.
+ */
+public class ServoMetricsTaskTest {
+
+    private static final String INFO = "{\"service\":\"dynomite\", \"source\":\"dynomitemanager-i-16ca1846\", "
+            + "\"version\":\"0.5.7\", \"uptime\":40439, \"timestamp\":1399064677, \"latency_99th\":12.9, "
+            + "\"average_cross_region_rtt\":3e2, \"datacenter\":\"DC1\", \"peers\":[1, {\"a\":2}, \"x\"], "
+            + "\"dyn_o_mite\": {\"client_eof\":3, \"client_connections\":7, \"guage\" : { }, "
+            + "\"enabled\":true, \"127.0.0.1\": {\"server_eof\":0, \"server_connections\":2, "
+            + "\"requests\":12, \"name\":\"local\\\"\\u00e9\"}, \"10.0.0.2\": {\"requests\":-4}}}";
+
+    private ServoMetricsTask task;
+
+    @After
+    public void unregisterMonitors() {
+        // the registry is global, don't leak monitors into other tests
+        if (task != null) {
+            for (NumericMonitor<Number> monitor : task.getMetricsMap().values()) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+            task.getRateEngine().reset();
+        }
+    }
+
+    @Test
+    public void testParser() throws Exception {
+        DynomiteInfoParser parser = new DynomiteInfoParser();
+
+        Assert.assertEquals(6, parser.parse(stream(INFO)));
+        Assert.assertEquals("dynomite", parser.getService());
+        Assert.assertTrue(parser.isStatsPresent());
+        Assert.assertEquals(40439L, parser.getUptime().getValue());
+        Assert.assertEquals("dynomite__uptime", parser.getUptime().getName());
+
+        Assert.assertEquals(34, parser.getFields().length);
+        for (DynomiteInfoParser.Metric field : parser.getFields()) {
+            if (field.getKey().equals("latency_99th")) {
+                Assert.assertEquals(12L, field.getValue());
+            } else if (field.getKey().equals("average_cross_region_rtt")) {
+                Assert.assertEquals(300L, field.getValue());
+            } else {
+                Assert.assertFalse(field.isPresent());
+                Assert.assertEquals(0L, field.getValue());
+            }
+        }
+
+        String[] names = { "dynomite__client_eof", "dynomite__client_connections", "dynomite__127.0.0.1__server_eof",
+                "dynomite__127.0.0.1__server_connections", "dynomite__127.0.0.1__requests",
+                "dynomite__10.0.0.2__requests" };
+        long[] values = { 3, 7, 0, 2, 12, -4 };
+        for (int i = 0; i < names.length; i++) {
+            Assert.assertEquals(names[i], parser.getStat(i).getName());
+            Assert.assertEquals(values[i], parser.getStat(i).getValue());
+        }
+
+        // names are built once and reused by the following polls
+        String name = parser.getStat(4).getName();
+        Assert.assertEquals(6, parser.parse(stream(INFO.replace("\"requests\":12", "\"requests\":15"))));
+        Assert.assertSame(name, parser.getStat(4).getName());
+        Assert.assertEquals(15L, parser.getStat(4).getValue());
+
+        // metrics that disappear are not reported any more
+        Assert.assertEquals(0, parser.parse(stream("{\"service\":\"dynomite\",\"dyn_o_mite\":{}}")));
+        Assert.assertFalse(parser.getUptime().isPresent());
+    }
+
+    @Test
+    public void testEvictDepartedPeers() throws Exception {
+        DynomiteInfoParser parser = new DynomiteInfoParser();
+        Assert.assertEquals(6, parser.parse(stream(INFO)));
+        Assert.assertEquals(11, parser.getNodeCount());
+
+        // the peer 10.0.0.2 left, its nodes are dropped
+        String departed = INFO.replace(", \"10.0.0.2\": {\"requests\":-4}", "");
+        for (int i = 0; i < 2 * DynomiteInfoParser.EVICT_AFTER; i++) {
+            Assert.assertEquals(5, parser.parse(stream(departed)));
+        }
+        Assert.assertEquals(9, parser.getNodeCount());
+        Assert.assertEquals("dynomite__127.0.0.1__requests", parser.getStat(4).getName());
+        Assert.assertEquals(12L, parser.getStat(4).getValue());
+
+        // and added again when it comes back
+        Assert.assertEquals(6, parser.parse(stream(INFO)));
+        Assert.assertEquals(11, parser.getNodeCount());
+        Assert.assertEquals(-4L, parser.getStat(5).getValue());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testMalformedPayload() throws Exception {
+        new DynomiteInfoParser().parse(stream("{\"service\":\"dynomite\",\"uptime\":1"));
+    }
+
+    @Test
+    public void testProcessJsonResponse() throws Exception {
+        BlankConfiguration config = new BlankConfiguration();
+        task = new ServoMetricsTask(config, new InstanceState(), new DynomiteAdminClient(config));
+
+        task.processJsonResponse(INFO);
+        task.processJsonResponse(INFO.replace("\"client_eof\":3", "\"client_eof\":5"));
+
+        Assert.assertEquals(5L, ((Counter) task.getMetricsMap().get("dynomite__client_eof")).getValue().longValue());
+        Assert.assertTrue(task.getMetricsMap().get("dynomite__client_connections") instanceof Gauge);
+        Assert.assertTrue(task.getMetricsMap().get("dynomite__127.0.0.1__server_connections") instanceof Gauge);
+        Assert.assertEquals(12L, task.getMetricsMap().get("dynomite__latency_99th").getValue().longValue());
+        Assert.assertEquals(0L, task.getMetricsMap().get("dynomite__free_mbufs").getValue().longValue());
+        Assert.assertNull(task.getMetricsMap().get("dynomite__timestamp"));
+        Assert.assertNull(task.getMetricsMap().get("dynomite__127.0.0.1__name"));
+
+        // Dynomite restarted and counts from 0 again, the counter keeps counting up
+        Thread.sleep(5);
+        task.processJsonResponse(INFO.replace("\"uptime\":40439", "\"uptime\":2"));
+        Assert.assertEquals(8L, ((Counter) task.getMetricsMap().get("dynomite__client_eof")).getValue().longValue());
+        Assert.assertTrue(task.getRateEngine().getRate(0) > 0.0);
+    }
+
+    private static ByteArrayInputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.monitoring.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.defaultimpl.test.FakeStorageProxy;
+import com.netflix.dynomitemanager.monitoring.TcpMetricsTask;
+import com.netflix.dynomitemanager.monitoring.TcpStats;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for TcpMetricsTask and TcpStats against a fake /proc
+ */
+public class TcpMetricsTaskTest {
+
+    private static final String HEADER = "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt"
+            + "   uid  timeout inode\n";
+    private static final String TAIL = " 00:00000000 00000000   112        0 16419 1 ffff8800b7d4e000 20 4 30 10 -1\n";
+
+    // client port 8102, peer port 8101, storage port 22122
+    private static final String SOCKETS = socket("00000000:1FA6", "00000000:0000", "0A", "00000000:00000003", 0)
+            + socket("0100007F:1FA6", "0A000002:D431", "01", "00000010:00000020", 0)
+            + socket("0100007F:1FA6", "0A000002:D432", "01", "00000100:00000000", 2)
+            + socket("0100007F:1FA6", "0A000002:D433", "06", "00000000:00000000", 0)
+            + socket("0A000001:C000", "0A000003:1FA5", "01", "00000040:00000000", 1)
+            + socket("0100007F:D000", "0100007F:566A", "01", "00000000:00000000", 0);
+    private static final String SOCKETS6 = socket("0000000000000000FFFF00000100007F:566A",
+            "0000000000000000FFFF00000100007F:D000", "01", "00000000:00000008", 0);
+
+    private static final String SNMP_NAMES = "Tcp: RtoAlgorithm RtoMin RtoMax MaxConn ActiveOpens PassiveOpens "
+            + "AttemptFails EstabResets CurrEstab InSegs OutSegs RetransSegs InErrs OutRsts InCsumErrors\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TcpMetricsTask task;
+
+    @After
+    public void cleanUp() {
+        if (task != null) {
+            task.close();
+        }
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().startsWith(TcpMetricsTask.PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        File proc = folder.newFolder("proc");
+        TcpStats stats = new TcpStats(proc.getPath());
+        stats.setPorts(8102, 8101, 22122);
+        Assert.assertFalse(stats.read());
+
+        writeProc(proc, 1000, 0);
+        Assert.assertTrue(stats.read());
+
+        Assert.assertEquals(1L, stats.getStateCount(0, TcpStats.IN, TcpStats.LISTEN));
+        Assert.assertEquals(2L, stats.getStateCount(0, TcpStats.IN, 1));
+        Assert.assertEquals(1L, stats.getStateCount(0, TcpStats.IN, 6));
+        Assert.assertEquals(3L, stats.getAcceptQueue(0));
+        Assert.assertEquals(0x20L, stats.getRxQueue(0, TcpStats.IN));
+        Assert.assertEquals(0x110L, stats.getTxQueue(0, TcpStats.IN));
+        Assert.assertEquals(0x100L, stats.getMaxTxQueue(0, TcpStats.IN));
+        Assert.assertEquals(1L, stats.getRetransmitting(0, TcpStats.IN));
+        Assert.assertEquals(0L, stats.getStateCount(0, TcpStats.OUT, 1));
+
+        Assert.assertEquals(1L, stats.getStateCount(1, TcpStats.OUT, 1));
+        Assert.assertEquals(1L, stats.getRetransmitting(1, TcpStats.OUT));
+        Assert.assertEquals(0L, stats.getStateCount(1, TcpStats.IN, 1));
+
+        // Dynomite to Redis shows on both ends, the Redis end in tcp6
+        Assert.assertEquals(1L, stats.getStateCount(2, TcpStats.IN, 1));
+        Assert.assertEquals(8L, stats.getRxQueue(2, TcpStats.IN));
+        Assert.assertEquals(1L, stats.getStateCount(2, TcpStats.OUT, 1));
+
+        Assert.assertEquals(6L, stats.getSnmpCounter(4));
+        Assert.assertEquals(21689L, stats.getSnmpCounter(6));
+        Assert.assertEquals(0L, stats.getSnmpCounter(7));
+
+        // reading again starts from scratch
+        Assert.assertTrue(stats.read());
+        Assert.assertEquals(2L, stats.getStateCount(0, TcpStats.IN, 1));
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        File proc = folder.newFolder("proc");
+        writeProc(proc, 10, 0);
+        task = new TcpMetricsTask(new BlankConfiguration() {
+            @Override
+            public int getDynomiteClientPort() {
+                return 8102;
+            }
+
+            @Override
+            public int getDynomitePeerPort() {
+                return 8101;
+            }
+        }, new FakeStorageProxy() {
+            @Override
+            public int getPort() {
+                return 22122;
+            }
+        }, proc.getPath());
+
+        task.execute();
+        Assert.assertEquals(2L, monitorValue("Tcp_client_in_established").longValue());
+        Assert.assertEquals(3L, monitorValue("Tcp_client_in_accept_queue").longValue());
+        Assert.assertEquals(1L, monitorValue("Tcp_peer_out_retransmitting").longValue());
+        Assert.assertEquals(6L, monitorValue("Tcp_CurrEstab").longValue());
+        // idle states are not registered
+        Assert.assertFalse(isRegistered("Tcp_client_in_close_wait"));
+
+        Thread.sleep(20);
+        writeProc(proc, 10, 100);
+        task.execute();
+        Assert.assertTrue(task.getRateEngine().getRate(7) > 0);
+        Assert.assertEquals(1.0, monitorValue("Tcp_retransmit_percent").doubleValue(), 0.001);
+    }
+
+    private static void writeProc(File proc, int padding, long retransSegs) throws IOException {
+        File net = new File(proc, "net");
+        net.mkdirs();
+        // unrelated sockets around the ones of our ports, so the table spans several buffers
+        StringBuilder tcp = new StringBuilder(HEADER);
+        for (int i = 0; i < padding; i++) {
+            tcp.append(socket("0100007F:0016", "0A000009:" + Integer.toHexString(0x8000 + i).toUpperCase(), "01",
+                    "00000000:00000000", 0));
+        }
+        tcp.append(SOCKETS);
+        for (int i = 0; i < padding; i++) {
+            tcp.append(socket("0100007F:0050", "0A000009:" + Integer.toHexString(0x8000 + i).toUpperCase(), "01",
+                    "00000000:00000000", 0));
+        }
+        write(new File(net, "tcp"), tcp.toString());
+        write(new File(net, "tcp6"), HEADER + SOCKETS6);
+        write(new File(net, "snmp"), "Ip: Forwarding DefaultTTL\nIp: 1 64\n" + SNMP_NAMES + "Tcp: 1 200 120000 -1 "
+                + "109 40 48 14 6 22936 " + (21689 + retransSegs * 100) + " " + retransSegs + " 0 94 0\n"
+                + "Udp: InDatagrams NoPorts\nUdp: 1 2\n");
+    }
+
+    private static String socket(String local, String remote, String state, String queues, int retransmits) {
+        return "   0: " + local + " " + remote + " " + state + " " + queues + TAIL.replace(" 00000000 ",
+                String.format(" %08X ", retransmits));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static boolean isRegistered(String name) {
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Number monitorValue(String name) {
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().equals(name)) {
+                return (Number) monitor.getValue();
+            }
+        }
+        Assert.fail("No monitor " + name);
+        return null;
+    }
+}
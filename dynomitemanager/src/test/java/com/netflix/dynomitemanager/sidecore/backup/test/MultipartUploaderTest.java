@@ -0,0 +1,222 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.apache.commons.io.IOUtils;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.sidecore.backup.Compression;
+import com.netflix.dynomitemanager.sidecore.backup.LocalObjectStore;
+import com.netflix.dynomitemanager.sidecore.backup.MultipartUploader;
+import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for MultipartUploader, with a local directory for S3
+ */
+public class MultipartUploaderTest {
+
+    private static final String KEY = "backup/us-east-1/us-east-1a/101134286/1475366400000";
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File bucket;
+    private File file;
+    private byte[] content;
+    private final List<Long> sleeps = Collections.synchronizedList(new ArrayList<Long>());
+
+    @Before
+    public void setUp() throws Exception {
+        bucket = folder.newFolder("bucket");
+        // three parts of 5MB, the last one shorter
+        content = new byte[12 * MB + 345];
+        new Random(42).nextBytes(content);
+        file = folder.newFile("appendonly.aof");
+        Files.write(file.toPath(), content);
+    }
+
+    @After
+    public void cleanUp() {
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().startsWith(MultipartUploader.METRIC_PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    private MultipartUploader uploader(LocalObjectStore store) {
+        BlankConfiguration config = new BlankConfiguration() {
+            @Override
+            public int getBackupUploadConcurrency() {
+                return 2;
+            }
+
+            @Override
+            public int getBackupUploadPartSizeMB() {
+                return 5;
+            }
+
+            @Override
+            public int getBackupUploadRetries() {
+                return 2;
+            }
+
+            @Override
+            public int getBackupUploadRetryBackoffMs() {
+                return 100;
+            }
+        };
+        Sleeper sleeper = new Sleeper() {
+            @Override
+            public void sleep(long waitTimeMs) {
+                sleeps.add(waitTimeMs);
+            }
+
+            @Override
+            public void sleepQuietly(long waitTimeMs) {
+                sleep(waitTimeMs);
+            }
+        };
+        return new MultipartUploader(config, store, sleeper);
+    }
+
+    /**
+     * Fails the upload of part 2 the given number of times.
+     */
+    private LocalObjectStore failingStore(final int failures, final AtomicInteger aborts) {
+        final AtomicInteger failed = new AtomicInteger();
+        return new LocalObjectStore(bucket) {
+            @Override
+            public String uploadPart(String key, String uploadId, int partNumber, File file, long offset,
+                    long length) throws IOException {
+                if (partNumber == 2 && failed.getAndIncrement() < failures) {
+                    throw new IOException("Connection reset");
+                }
+                return super.uploadPart(key, uploadId, partNumber, file, offset, length);
+            }
+
+            @Override
+            public String uploadPart(String key, String uploadId, int partNumber, byte[] data, int length)
+                    throws IOException {
+                if (partNumber == 2 && failed.getAndIncrement() < failures) {
+                    throw new IOException("Connection reset");
+                }
+                return super.uploadPart(key, uploadId, partNumber, data, length);
+            }
+
+            @Override
+            public void abortUpload(String key, String uploadId) throws IOException {
+                aborts.incrementAndGet();
+                super.abortUpload(key, uploadId);
+            }
+        };
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(bucket);
+        MultipartUploader uploader = uploader(store);
+        Assert.assertTrue(uploader.upload(file, KEY));
+
+        Assert.assertArrayEquals(content, Files.readAllBytes(new File(bucket, KEY).toPath()));
+        Assert.assertEquals(Collections.singletonList(KEY), store.list("backup/"));
+        Assert.assertEquals(content.length, uploader.getBytesUploaded());
+        Assert.assertTrue(uploader.getThroughput() > 0);
+    }
+
+    @Test
+    public void testRetryPart() throws Exception {
+        AtomicInteger aborts = new AtomicInteger();
+        MultipartUploader uploader = uploader(failingStore(2, aborts));
+        Assert.assertTrue(uploader.upload(file, KEY));
+
+        Assert.assertArrayEquals(content, Files.readAllBytes(new File(bucket, KEY).toPath()));
+        Assert.assertEquals(2, uploader.getPartRetries());
+        Assert.assertEquals(0, aborts.get());
+        // exponential backoff
+        Assert.assertEquals(100L, (long) sleeps.get(0));
+        Assert.assertEquals(200L, (long) sleeps.get(1));
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        AtomicInteger aborts = new AtomicInteger();
+        LocalObjectStore store = failingStore(3, aborts);
+        MultipartUploader uploader = uploader(store);
+        Assert.assertFalse(uploader.upload(file, KEY));
+
+        Assert.assertEquals(1, aborts.get());
+        Assert.assertFalse(new File(bucket, KEY).exists());
+        // the parts that were uploaded are dropped
+        Assert.assertEquals(0, new File(bucket, ".uploads").list().length);
+    }
+
+    @Test
+    public void testCompressedUpload() throws Exception {
+        for (Compression compression : new Compression[] { Compression.SNAPPY, Compression.LZF }) {
+            LocalObjectStore store = new LocalObjectStore(bucket);
+            MultipartUploader uploader = uploader(store);
+            long stored = uploader.upload(file, KEY, compression);
+
+            // random data does not compress, it still takes three parts
+            File object = new File(bucket, KEY);
+            Assert.assertEquals(object.length(), stored);
+            Assert.assertTrue(stored > 10 * MB);
+            InputStream in = compression.decompress(Files.newInputStream(object.toPath()));
+            try {
+                Assert.assertArrayEquals(compression.name(), content, IOUtils.toByteArray(in));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedAbort() throws Exception {
+        AtomicInteger aborts = new AtomicInteger();
+        MultipartUploader uploader = uploader(failingStore(3, aborts));
+        Assert.assertEquals(-1, uploader.upload(file, KEY, Compression.SNAPPY));
+
+        Assert.assertEquals(1, aborts.get());
+        Assert.assertFalse(new File(bucket, KEY).exists());
+        Assert.assertEquals(0, new File(bucket, ".uploads").list().length);
+    }
+
+    @Test
+    public void testPartSize() {
+        long gb = 1024L * MB;
+        Assert.assertEquals(64L * MB, MultipartUploader.partSize(60 * gb, 64L * MB));
+        Assert.assertEquals(MultipartUploader.MIN_PART_SIZE, MultipartUploader.partSize(gb, MB));
+
+        // a file that would need more than 10,000 parts gets larger parts
+        long partSize = MultipartUploader.partSize(1024 * gb, 64L * MB);
+        Assert.assertEquals(105L * MB, partSize);
+        Assert.assertTrue((1024 * gb + partSize - 1) / partSize <= MultipartUploader.MAX_PARTS);
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup.test;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.sidecore.backup.LocalObjectStore;
+import com.netflix.dynomitemanager.sidecore.backup.RangeDownloader;
+import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
+
+/**
+ * Tests for RangeDownloader, with a local directory for S3
+ */
+public class RangeDownloaderTest {
+
+    private static final String KEY = "backup/us-east-1/us-east-1a/101134286/1475366400000";
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File bucket;
+    private byte[] content;
+    private final InstanceState state = new InstanceState();
+    private final List<Long> sleeps = Collections.synchronizedList(new ArrayList<Long>());
+
+    @Before
+    public void setUp() throws Exception {
+        bucket = folder.newFolder("bucket");
+        // six ranges of 1MB, the last one shorter
+        content = new byte[5 * MB + 345];
+        new Random(42).nextBytes(content);
+        File object = new File(bucket, KEY);
+        object.getParentFile().mkdirs();
+        Files.write(object.toPath(), content);
+    }
+
+    private RangeDownloader downloader(LocalObjectStore store) {
+        BlankConfiguration config = new BlankConfiguration() {
+            @Override
+            public int getRestoreConcurrency() {
+                return 3;
+            }
+
+            @Override
+            public int getRestoreRangeSizeMB() {
+                return 1;
+            }
+
+            @Override
+            public int getRestoreRangeRetries() {
+                return 2;
+            }
+
+            @Override
+            public int getRestoreRangeRetryBackoffMs() {
+                return 100;
+            }
+        };
+        Sleeper sleeper = new Sleeper() {
+            @Override
+            public void sleep(long waitTimeMs) {
+                sleeps.add(waitTimeMs);
+            }
+
+            @Override
+            public void sleepQuietly(long waitTimeMs) {
+                sleep(waitTimeMs);
+            }
+        };
+        return new RangeDownloader(config, store, state, sleeper);
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        RangeDownloader downloader = downloader(new LocalObjectStore(bucket));
+        File file = new File(folder.getRoot(), "appendonly.aof");
+        // a longer file is overwritten
+        Files.write(file.toPath(), new byte[6 * MB]);
+
+        Assert.assertEquals(content.length, downloader.download(KEY, file));
+        Assert.assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        Assert.assertEquals(content.length, downloader.getBytesDone());
+        Assert.assertEquals(100, downloader.getPercentDone());
+        Assert.assertSame(downloader, state.getRangeDownloader());
+    }
+
+    @Test
+    public void testObjectChanged() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(bucket) {
+            @Override
+            public InputStream get(String key, long offset, long length, String tag) throws IOException {
+                // the object is replaced after the download started
+                return super.get(key, offset, length, offset >= 3 * MB ? tag + "-old" : tag);
+            }
+        };
+        try {
+            downloader(store).download(KEY, new File(folder.getRoot(), "appendonly.aof"));
+            Assert.fail("Download of a changed object");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("changed"));
+        }
+        // the ranges of the changed object are retried, then the download fails
+        Assert.assertTrue(sleeps.containsAll(Arrays.asList(100L, 200L)));
+    }
+
+    @Test
+    public void testRangeRetried() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        LocalObjectStore store = new LocalObjectStore(bucket) {
+            @Override
+            public InputStream get(String key, long offset, long length, String tag) throws IOException {
+                requests.add(offset + "+" + length + "@" + tag);
+                InputStream in = super.get(key, offset, length, tag);
+                if (offset != 2 * MB || !failed.compareAndSet(false, true)) {
+                    return in;
+                }
+                // the connection drops after 1000 bytes of the third range
+                return new FilterInputStream(in) {
+                    private int read;
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        if (read >= 1000) {
+                            throw new IOException("Connection reset");
+                        }
+                        int n = super.read(b, off, Math.min(len, 1000 - read));
+                        read += n;
+                        return n;
+                    }
+                };
+            }
+        };
+        File file = new File(folder.getRoot(), "appendonly.aof");
+        String tag = store.stat(KEY).getTag();
+
+        RangeDownloader downloader = downloader(store);
+        Assert.assertEquals(content.length, downloader.download(KEY, file));
+        Assert.assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        Assert.assertEquals(content.length, downloader.getBytesDone());
+        Assert.assertEquals(Arrays.asList(100L), sleeps);
+        // the rest of the range is read again, from the same version of the object
+        Assert.assertTrue(requests.toString(), requests.contains((2 * MB + 1000) + "+" + (MB - 1000) + "@" + tag));
+    }
+}
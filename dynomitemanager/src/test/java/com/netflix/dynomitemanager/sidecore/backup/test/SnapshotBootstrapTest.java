@@ -0,0 +1,190 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.backup.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.defaultimpl.test.FakeInstanceIdentity;
+import com.netflix.dynomitemanager.defaultimpl.test.FakeStorageProxy;
+import com.netflix.dynomitemanager.identity.AppsInstance;
+import com.netflix.dynomitemanager.sidecore.backup.BackupMetadata;
+import com.netflix.dynomitemanager.sidecore.backup.Compression;
+import com.netflix.dynomitemanager.sidecore.backup.LocalObjectStore;
+import com.netflix.dynomitemanager.sidecore.backup.RangeDownloader;
+import com.netflix.dynomitemanager.sidecore.backup.S3Restore;
+import com.netflix.dynomitemanager.sidecore.backup.SnapshotBootstrap;
+import com.netflix.dynomitemanager.sidecore.storage.Bootstrap;
+import com.netflix.dynomitemanager.sidecore.storage.StorageProcessManager;
+import com.netflix.dynomitemanager.sidecore.utils.ThreadSleeper;
+
+/**
+ * Tests for SnapshotBootstrap, with a local directory for S3
+ */
+public class SnapshotBootstrapTest {
+
+    private static final String REPL_ID = "8f2b1c0e5a7d4e6f9b3a2c1d0e4f5a6b7c8d9e0f";
+    private static final String PREFIX = "backup/us-east-1/us-east-1a/101134286/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File bucket;
+    private File dataDir;
+    private boolean started;
+    private final List<String> warmedUpFrom = new ArrayList<String>();
+
+    @Before
+    public void setUp() throws Exception {
+        bucket = folder.newFolder("bucket");
+        dataDir = folder.newFolder("data");
+    }
+
+    private SnapshotBootstrap snapshotBootstrap() throws Exception {
+        BlankConfiguration config = new BlankConfiguration() {
+            @Override
+            public String getBackupLocation() {
+                return "backup";
+            }
+
+            @Override
+            public String getRedisDataDir() {
+                return dataDir.getPath();
+            }
+        };
+        FakeInstanceIdentity iid = new FakeInstanceIdentity() {
+            @Override
+            public AppsInstance getInstance() {
+                AppsInstance instance = new AppsInstance();
+                instance.setDatacenter("us-east-1");
+                instance.setRack("us-east-1a");
+                instance.setToken("101134286");
+                return instance;
+            }
+        };
+        StorageProcessManager storageProcessMgr = new StorageProcessManager(null, null, null) {
+            @Override
+            public void start() {
+                started = true;
+            }
+        };
+        FakeStorageProxy storageProxy = new FakeStorageProxy() {
+            @Override
+            public boolean loadingData() {
+                return true;
+            }
+
+            @Override
+            public Bootstrap warmUpStorage(String[] peers) {
+                warmedUpFrom.addAll(Arrays.asList(peers));
+                return Bootstrap.IN_SYNC_SUCCESS;
+            }
+        };
+        InstanceState state = new InstanceState();
+        LocalObjectStore store = new LocalObjectStore(bucket);
+        RangeDownloader downloader = new RangeDownloader(config, store, state, new ThreadSleeper());
+        return new SnapshotBootstrap(new S3Restore(config, iid, store, downloader), storageProcessMgr, storageProxy,
+                state);
+    }
+
+    @Test
+    public void testSeedFromLatestBackup() throws Exception {
+        backup("1475280000000", rdb("0", 10));
+        byte[] latest = rdb(REPL_ID, 5000);
+        backup("1475366400000", latest);
+        backup("1475366400000.tmp", rdb("0", 20));
+
+        SnapshotBootstrap bootstrap = snapshotBootstrap();
+        Assert.assertTrue(bootstrap.seed());
+        Assert.assertTrue(started);
+        Assert.assertArrayEquals(latest, Files.readAllBytes(new File(dataDir, "nfredis.rdb").toPath()));
+
+        Assert.assertTrue(bootstrap.isSeeded());
+
+        Assert.assertEquals(Bootstrap.IN_SYNC_SUCCESS, bootstrap.catchUp(new String[] { "10.0.0.1" }));
+        Assert.assertEquals(Arrays.asList("10.0.0.1"), warmedUpFrom);
+        Assert.assertEquals(Arrays.asList(SnapshotBootstrap.PHASE_DOWNLOAD, SnapshotBootstrap.PHASE_LOAD,
+                SnapshotBootstrap.PHASE_CATCH_UP), Arrays.asList(bootstrap.getPhaseMs().keySet().toArray()));
+    }
+
+    @Test
+    public void testSeedFromCompressedBackup() throws Exception {
+        byte[] latest = rdb(REPL_ID, 5000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = Compression.LZF.compress(compressed);
+        out.write(latest);
+        out.close();
+        backup("1475366400000", compressed.toByteArray());
+        backup("1475366400000" + BackupMetadata.SUFFIX,
+                new BackupMetadata(Compression.LZF, latest.length, compressed.size()).toBytes());
+
+        Assert.assertTrue(snapshotBootstrap().seed());
+        Assert.assertArrayEquals(latest, Files.readAllBytes(new File(dataDir, "nfredis.rdb").toPath()));
+    }
+
+    @Test
+    public void testNoBackup() throws Exception {
+        SnapshotBootstrap bootstrap = snapshotBootstrap();
+        Assert.assertFalse(bootstrap.seed());
+        // the storage starts anyway, to sync from a peer
+        Assert.assertTrue(started);
+        Assert.assertFalse(bootstrap.isSeeded());
+        Assert.assertFalse(new File(dataDir, "nfredis.rdb").exists());
+    }
+
+    private void backup(String time, byte[] content) throws IOException {
+        File file = new File(bucket, PREFIX + time);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+    }
+
+    /**
+     * The start of an RDB file with its replication id and offset, the offset saved as an integer.
+     */
+    private static byte[] rdb(String replId, int offset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("REDIS0008".getBytes(StandardCharsets.US_ASCII));
+        aux(out, "redis-ver", string("4.0.14"));
+        aux(out, "repl-id", string(replId));
+        aux(out, "repl-offset", new byte[] { (byte) 0xC2, (byte) offset, (byte) (offset >> 8),
+                (byte) (offset >> 16), (byte) (offset >> 24) });
+        // SELECTDB 0, then the end of the file
+        out.write(new byte[] { (byte) 0xFE, 0, (byte) 0xFF });
+        return out.toByteArray();
+    }
+
+    private static void aux(ByteArrayOutputStream out, String key, byte[] value) throws IOException {
+        out.write(0xFA);
+        out.write(string(key));
+        out.write(value);
+    }
+
+    private static byte[] string(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        byte[] encoded = new byte[bytes.length + 1];
+        encoded[0] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, encoded, 1, bytes.length);
+        return encoded;
+    }
+}
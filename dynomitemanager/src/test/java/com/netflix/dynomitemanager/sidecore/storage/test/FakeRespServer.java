@@ -0,0 +1,238 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for a Redis server. It speaks enough of the protocol (RESP) for tests: requests must be arrays of
+ * bulk strings, replies are produced by a {@link Handler}.
+ */
+public class FakeRespServer {
+
+    /**
+     * Produces the reply of a request: a Long, a String (status reply), a byte[] (bulk string), a List (array), null
+     * (nil) or an Exception (error reply).
+     */
+    public interface Handler {
+        Object reply(List<String> request) throws Exception;
+    }
+
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<List<String>> requests = Collections.synchronizedList(new ArrayList<List<String>>());
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+    // the connections that sent SUBSCRIBE or PSUBSCRIBE
+    private final List<OutputStream> subscribers = Collections.synchronizedList(new ArrayList<OutputStream>());
+
+    public FakeRespServer(Handler handler) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "fake-resp-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return "127.0.0.1";
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of connections accepted so far
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return the requests received so far
+     */
+    public List<List<String>> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<List<String>>(requests);
+        }
+    }
+
+    /**
+     * Send a message, e.g. a pub/sub message, to all connections that subscribed.
+     */
+    public void publish(Object message) throws IOException {
+        synchronized (subscribers) {
+            for (OutputStream out : subscribers) {
+                synchronized (out) {
+                    writeReply(out, message);
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connections.incrementAndGet();
+            sockets.add(socket);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "fake-resp-connection");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (true) {
+                List<String> request = readRequest(in);
+                if (request == null) {
+                    return;
+                }
+                requests.add(request);
+                Object reply;
+                try {
+                    reply = handler.reply(request);
+                } catch (Exception e) {
+                    reply = e;
+                }
+                synchronized (out) {
+                    writeReply(out, reply);
+                    out.flush();
+                }
+                if (request.get(0).equalsIgnoreCase("SUBSCRIBE") || request.get(0).equalsIgnoreCase("PSUBSCRIBE")) {
+                    subscribers.add(out);
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static List<String> readRequest(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Expected an array, got " + (char) type);
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<String> request = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            byte[] arg = new byte[Integer.parseInt(readLine(in))];
+            int off = 0;
+            while (off < arg.length) {
+                int n = in.read(arg, off, arg.length - off);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of request");
+                }
+                off += n;
+            }
+            in.read();
+            in.read();
+            request.add(new String(arg, StandardCharsets.UTF_8));
+        }
+        return request;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Unexpected end of request");
+            }
+            line.write(c);
+        }
+        in.read();
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof Long || reply instanceof Integer) {
+            out.write((":" + reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof String) {
+            out.write(("+" + reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof byte[]) {
+            byte[] bulk = (byte[]) reply;
+            out.write(("$" + bulk.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(bulk);
+            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof List) {
+            List<?> array = (List<?>) reply;
+            out.write(("*" + array.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (Object element : array) {
+                writeReply(out, element);
+            }
+        } else if (reply instanceof Exception) {
+            out.write(("-" + ((Exception) reply).getMessage() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else {
+            throw new IOException("Cannot encode " + reply.getClass());
+        }
+    }
+
+    /**
+     * @return a bulk string reply
+     */
+    public static byte[] bulk(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.defaultimpl.test.FakeStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.KeyspaceAnalyzerTask;
+import com.netflix.dynomitemanager.sidecore.utils.SpaceSaving;
+import com.netflix.dynomitemanager.sidecore.utils.TopK;
+
+/**
+ * Tests for KeyspaceAnalyzerTask and its sketches
+ */
+public class KeyspaceAnalyzerTaskTest {
+
+    private static final int PAGE = 2;
+
+    // key -> type, memory usage, elements, LFU frequency
+    private final Map<String, Object[]> keyspace = new LinkedHashMap<String, Object[]>();
+    private volatile boolean redis4 = true;
+
+    private FakeRespServer server;
+    private KeyspaceAnalyzerTask task;
+
+    @After
+    public void cleanUp() throws Exception {
+        if (task != null) {
+            task.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testSketches() {
+        TopK<String> top = new TopK<String>(2);
+        Assert.assertTrue(top.offer("a", "hash", 10));
+        Assert.assertTrue(top.offer("b", "set", 5));
+        Assert.assertFalse(top.offer("c", "set", 1));
+        Assert.assertTrue(top.offer("c", "set", 20));
+        // offering a kept item again replaces it
+        Assert.assertTrue(top.offer("c", "set", 30));
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("c", top.get().get(0).getKey());
+        Assert.assertEquals(30L, top.get().get(0).getValue());
+        Assert.assertEquals("a", top.get().get(1).getKey());
+
+        SpaceSaving sketch = new SpaceSaving(2);
+        sketch.offer("user", 5);
+        sketch.offer("session", 3);
+        sketch.offer("cache", 1);
+        sketch.offer("user", 5);
+        Assert.assertEquals(14L, sketch.getTotal());
+        List<SpaceSaving.Counter> hot = sketch.top(1);
+        Assert.assertEquals(1, hot.size());
+        Assert.assertEquals("user", hot.get(0).getItem());
+        Assert.assertEquals(10L, hot.get(0).getCount());
+        Assert.assertEquals(0L, hot.get(0).getError());
+        // cache took over the counter of session
+        Assert.assertEquals("cache", sketch.top(2).get(1).getItem());
+        Assert.assertEquals(4L, sketch.top(2).get(1).getCount());
+        Assert.assertEquals(3L, sketch.top(2).get(1).getError());
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        keyspace.put("user:1", new Object[] { "hash", 500L, 10L, 5L });
+        keyspace.put("user:2", new Object[] { "string", 100L, 80L, 5L });
+        keyspace.put("session:a", new Object[] { "string", 50L, 20L, 100L });
+        keyspace.put("big", new Object[] { "set", 10000L, 300L, 1L });
+        keyspace.put("cache:x", new Object[] { "zset", 70L, 4L, 2L });
+
+        server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                String command = request.get(0);
+                if (command.equals("SCAN")) {
+                    List<String> keys = new ArrayList<String>(keyspace.keySet());
+                    int from = Integer.parseInt(request.get(1));
+                    int to = Math.min(from + PAGE, keys.size());
+                    List<Object> page = new ArrayList<Object>();
+                    for (String key : keys.subList(from, to)) {
+                        page.add(FakeRespServer.bulk(key));
+                    }
+                    String next = to == keys.size() ? "0" : Integer.toString(to);
+                    return Arrays.<Object> asList(FakeRespServer.bulk(next), page);
+                }
+
+                Object[] key = keyspace.get(request.get(request.size() - 1));
+                if (command.equals("TYPE")) {
+                    return key == null ? "none" : key[0];
+                } else if (command.equals("MEMORY") && redis4) {
+                    return key[1];
+                } else if (command.equals("OBJECT") && redis4) {
+                    return key[3];
+                } else if (command.equals("STRLEN") || command.equals("HLEN") || command.equals("SCARD")
+                        || command.equals("ZCARD")) {
+                    return key[2];
+                }
+                throw new Exception("ERR unknown command '" + command + "'");
+            }
+        });
+
+        InstanceState state = new InstanceState();
+        task = new KeyspaceAnalyzerTask(new BlankConfiguration(), new FakeStorageProxy() {
+            @Override
+            public String getIpAddress() {
+                return server.getHost();
+            }
+
+            @Override
+            public int getPort() {
+                return server.getPort();
+            }
+        }, state);
+
+        // paused while bootstrapping
+        state.setBootstrapping(true);
+        task.execute();
+        Assert.assertEquals(0, server.getRequests().size());
+        state.setBootstrapping(false);
+
+        task.execute();
+        KeyspaceAnalyzerTask.Analysis analysis = task.getLastComplete();
+        Assert.assertNotNull(analysis);
+        Assert.assertTrue(analysis.getCompletedAt() > 0);
+        Assert.assertEquals(5L, analysis.getScanned());
+        Assert.assertEquals(5L, analysis.getSampled());
+        Assert.assertEquals(KeyspaceAnalyzerTask.UNIT_BYTES, analysis.getSizeUnit());
+        Assert.assertTrue(analysis.isWeighedByFrequency());
+
+        List<TopK.Entry<String>> bigKeys = analysis.getBigKeys();
+        Assert.assertEquals(2, bigKeys.size());
+        Assert.assertEquals("big", bigKeys.get(0).getKey());
+        Assert.assertEquals("set", bigKeys.get(0).getItem());
+        Assert.assertEquals(10000L, bigKeys.get(0).getValue());
+        Assert.assertEquals("user:1", bigKeys.get(1).getKey());
+
+        List<SpaceSaving.Counter> prefixes = analysis.getHotPrefixes();
+        Assert.assertEquals(2, prefixes.size());
+        Assert.assertEquals("session", prefixes.get(0).getItem());
+        Assert.assertEquals("user", prefixes.get(1).getItem());
+        Assert.assertEquals(10L, prefixes.get(1).getCount());
+
+        // Redis before 4.0: sizes are element counts and prefixes are weighed by their number of keys
+        redis4 = false;
+        task.execute();
+        analysis = task.getLastComplete();
+        Assert.assertEquals(KeyspaceAnalyzerTask.UNIT_ELEMENTS, analysis.getSizeUnit());
+        Assert.assertFalse(analysis.isWeighedByFrequency());
+        Assert.assertEquals("big", analysis.getBigKeys().get(0).getKey());
+        Assert.assertEquals(300L, analysis.getBigKeys().get(0).getValue());
+        Assert.assertEquals("user:2", analysis.getBigKeys().get(1).getKey());
+        Assert.assertEquals("user", analysis.getHotPrefixes().get(0).getItem());
+        Assert.assertEquals(2L, analysis.getHotPrefixes().get(0).getCount());
+
+        Assert.assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void testPauseMidBatch() throws Exception {
+        keyspace.put("user:1", new Object[] { "hash", 500L, 10L, 5L });
+        keyspace.put("user:2", new Object[] { "string", 100L, 80L, 5L });
+        keyspace.put("session:a", new Object[] { "string", 50L, 20L, 100L });
+        keyspace.put("big", new Object[] { "set", 10000L, 300L, 1L });
+        keyspace.put("cache:x", new Object[] { "zset", 70L, 4L, 2L });
+
+        final InstanceState state = new InstanceState();
+        server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                String command = request.get(0);
+                if (command.equals("SCAN")) {
+                    List<String> keys = new ArrayList<String>(keyspace.keySet());
+                    int from = Integer.parseInt(request.get(1));
+                    int to = Math.min(from + PAGE, keys.size());
+                    List<Object> page = new ArrayList<Object>();
+                    for (String key : keys.subList(from, to)) {
+                        page.add(FakeRespServer.bulk(key));
+                    }
+                    String next = to == keys.size() ? "0" : Integer.toString(to);
+                    return Arrays.<Object> asList(FakeRespServer.bulk(next), page);
+                }
+
+                String name = request.get(request.size() - 1);
+                Object[] key = keyspace.get(name);
+                if (command.equals("TYPE")) {
+                    // a backup starts between the two keys of the second batch
+                    if (name.equals("session:a")) {
+                        state.setBackingup(true);
+                    }
+                    return key[0];
+                } else if (command.equals("OBJECT")) {
+                    return key[3];
+                } else if (command.equals("ZCARD")) {
+                    // replaced by a key of another type after TYPE
+                    throw new Exception("WRONGTYPE Operation against a key holding the wrong kind of value");
+                } else if (command.equals("STRLEN") || command.equals("HLEN") || command.equals("SCARD")) {
+                    return key[2];
+                }
+                throw new Exception("ERR unknown command '" + command + "'");
+            }
+        });
+
+        task = new KeyspaceAnalyzerTask(new BlankConfiguration(), new FakeStorageProxy() {
+            @Override
+            public String getIpAddress() {
+                return server.getHost();
+            }
+
+            @Override
+            public int getPort() {
+                return server.getPort();
+            }
+        }, state);
+
+        task.execute();
+        Assert.assertNull(task.getLastComplete());
+        Assert.assertEquals(3L, task.getCurrent().getScanned());
+
+        state.setBackingup(false);
+        task.execute();
+        KeyspaceAnalyzerTask.Analysis analysis = task.getLastComplete();
+        Assert.assertNotNull(analysis);
+        // every key is counted once: the paused batch is not scanned again and the failing key is skipped
+        Assert.assertEquals(5L, analysis.getScanned());
+        Assert.assertEquals(4L, analysis.getSampled());
+        int scans = 0;
+        for (List<String> request : server.getRequests()) {
+            if (request.get(0).equals("SCAN")) {
+                scans++;
+            }
+        }
+        Assert.assertEquals(3, scans);
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.sidecore.storage.KeyspaceCopier;
+
+/**
+ * Tests for KeyspaceCopier between two fake Redis servers
+ */
+public class KeyspaceCopierTest {
+
+    private final List<FakeRespServer> servers = new ArrayList<FakeRespServer>();
+
+    @After
+    public void cleanUp() throws Exception {
+        for (FakeRespServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        ConcurrentSkipListMap<String, String> peer = new ConcurrentSkipListMap<String, String>();
+        Map<String, Long> ttls = new ConcurrentHashMap<String, Long>();
+        for (int i = 0; i < 250; i++) {
+            peer.put("key" + i, "value" + i);
+        }
+        ttls.put("key7", 60000L);
+        // expired between SCAN and DUMP
+        ttls.put("key8", -2L);
+
+        Map<String, String> local = new ConcurrentHashMap<String, String>();
+        Map<String, Long> localTtls = new ConcurrentHashMap<String, Long>();
+        FakeRespServer source = source(peer, ttls);
+        FakeRespServer target = target(local, localTtls, null);
+
+        KeyspaceCopier copier = new KeyspaceCopier(source.getHost(), source.getPort(), target.getHost(),
+                target.getPort(), 3, 20, 0);
+        Assert.assertTrue(copier.copy(10000));
+
+        Assert.assertEquals(249, local.size());
+        Assert.assertEquals("value0", local.get("key0"));
+        Assert.assertEquals("value249", local.get("key249"));
+        Assert.assertFalse(local.containsKey("key8"));
+        Assert.assertEquals(Long.valueOf(60000L), localTtls.get("key7"));
+        Assert.assertEquals(Long.valueOf(0L), localTtls.get("key0"));
+
+        Assert.assertEquals(250L, copier.getTotalKeys());
+        Assert.assertEquals(249L, copier.getKeysCopied());
+        Assert.assertEquals(1L, copier.getKeysSkipped());
+        Assert.assertEquals(100, copier.getPercentDone());
+        Assert.assertEquals(0L, copier.getEtaSeconds());
+        Assert.assertTrue(copier.getBytesCopied() > 0);
+    }
+
+    @Test
+    public void testBytesPerSecond() throws Exception {
+        ConcurrentSkipListMap<String, String> peer = new ConcurrentSkipListMap<String, String>();
+        char[] value = new char[1000];
+        Arrays.fill(value, 'x');
+        for (int i = 0; i < 4; i++) {
+            peer.put("key" + i, new String(value));
+        }
+        Map<String, String> local = new ConcurrentHashMap<String, String>();
+        FakeRespServer source = source(peer, new ConcurrentHashMap<String, Long>());
+        FakeRespServer target = target(local, new ConcurrentHashMap<String, Long>(), null);
+
+        // 4000 bytes at 2000 bytes/s, in batches of 1000 bytes
+        KeyspaceCopier copier = new KeyspaceCopier(source.getHost(), source.getPort(), target.getHost(),
+                target.getPort(), 1, 1, 2000);
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(copier.copy(10000));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+        Assert.assertEquals(4, local.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRestoreFails() throws Exception {
+        ConcurrentSkipListMap<String, String> peer = new ConcurrentSkipListMap<String, String>();
+        for (int i = 0; i < 100; i++) {
+            peer.put("key" + i, "value" + i);
+        }
+        FakeRespServer source = source(peer, new ConcurrentHashMap<String, Long>());
+        FakeRespServer target = target(new ConcurrentHashMap<String, String>(), new ConcurrentHashMap<String, Long>(),
+                "ERR DUMP payload version or checksum are wrong");
+
+        new KeyspaceCopier(source.getHost(), source.getPort(), target.getHost(), target.getPort(), 2, 10, 0)
+                .copy(10000);
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        ConcurrentSkipListMap<String, String> peer = new ConcurrentSkipListMap<String, String>();
+        final ConcurrentSkipListMap<String, String> local = new ConcurrentSkipListMap<String, String>();
+        for (int i = 0; i < 50; i++) {
+            peer.put("key" + i, "value" + i);
+            local.put("key" + i, "value" + i);
+        }
+        // deleted on the peer since the backup of the local storage
+        for (int i = 0; i < 7; i++) {
+            local.put("gone" + i, "value" + i);
+        }
+        FakeRespServer source = source(peer, new ConcurrentHashMap<String, Long>());
+        final FakeRespServer.Handler scan = handler(local, new ConcurrentHashMap<String, Long>());
+        FakeRespServer target = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                if (request.get(0).equals("DEL")) {
+                    return local.remove(request.get(1)) == null ? 0L : 1L;
+                }
+                return scan.reply(request);
+            }
+        });
+        servers.add(target);
+
+        KeyspaceCopier copier = new KeyspaceCopier(source.getHost(), source.getPort(), target.getHost(),
+                target.getPort(), 1, 10, 0);
+        Assert.assertTrue(copier.prune(10000));
+        Assert.assertEquals(7L, copier.getKeysPruned());
+        Assert.assertEquals(peer, local);
+    }
+
+    @Test
+    public void testReplayOverBackup() throws Exception {
+        ConcurrentSkipListMap<String, String> peer = new ConcurrentSkipListMap<String, String>();
+        ConcurrentSkipListMap<String, String> local = new ConcurrentSkipListMap<String, String>();
+        for (int i = 0; i < 40; i++) {
+            peer.put("key" + i, "value" + i);
+        }
+        // the backup misses the latest writes and holds keys deleted since
+        for (int i = 0; i < 30; i++) {
+            local.put("key" + i, i < 20 ? "value" + i : "old" + i);
+        }
+        local.put("gone", "value");
+        FakeRespServer source = source(peer, new ConcurrentHashMap<String, Long>());
+        FakeRespServer target = store(local);
+
+        KeyspaceCopier copier = new KeyspaceCopier(source.getHost(), source.getPort(), target.getHost(),
+                target.getPort(), 2, 10, 0);
+        Assert.assertTrue(copier.copy(10000));
+        Assert.assertTrue(copier.prune(10000));
+        Assert.assertEquals(peer, local);
+        Assert.assertEquals(1L, copier.getKeysPruned());
+        // the backup is replaced key by key, never flushed
+        for (List<String> request : target.getRequests()) {
+            Assert.assertFalse(request.get(0).startsWith("FLUSH"));
+        }
+    }
+
+    @Test
+    public void testCatchUp() throws Exception {
+        final ConcurrentSkipListMap<String, String> peer = new ConcurrentSkipListMap<String, String>();
+        for (int i = 0; i < 30; i++) {
+            peer.put("key" + i, "value" + i);
+        }
+        final List<String> settings = Collections.synchronizedList(new ArrayList<String>());
+        final FakeRespServer.Handler data = handler(peer, new ConcurrentHashMap<String, Long>());
+        final FakeRespServer[] server = new FakeRespServer[1];
+        server[0] = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                String command = request.get(0);
+                if (command.equals("CONFIG") && request.get(1).equals("GET")) {
+                    return Arrays.asList(FakeRespServer.bulk(request.get(2)), FakeRespServer.bulk("x"));
+                } else if (command.equals("CONFIG")) {
+                    settings.add(request.get(3));
+                    return "OK";
+                } else if (command.equals("PSUBSCRIBE") || command.equals("SUBSCRIBE")) {
+                    String kind = command.equals("PSUBSCRIBE") ? "psubscribe" : "subscribe";
+                    return Arrays.asList(FakeRespServer.bulk(kind), FakeRespServer.bulk(request.get(1)), 1L);
+                } else if (command.equals("PUBLISH")) {
+                    server[0].publish(Arrays.asList(FakeRespServer.bulk("message"),
+                            FakeRespServer.bulk(request.get(1)), FakeRespServer.bulk(request.get(2))));
+                    return 1L;
+                }
+                return data.reply(request);
+            }
+        });
+        servers.add(server[0]);
+        ConcurrentSkipListMap<String, String> local = new ConcurrentSkipListMap<String, String>();
+        FakeRespServer target = store(local);
+
+        KeyspaceCopier copier = new KeyspaceCopier(server[0].getHost(), server[0].getPort(), target.getHost(),
+                target.getPort(), 2, 10, 0);
+        Assert.assertTrue(copier.track());
+        Assert.assertEquals(Arrays.asList("xEA"), settings);
+        Assert.assertTrue(copier.copy(10000));
+
+        // written on the peer after their batch was copied
+        peer.put("key1", "changed");
+        peer.remove("key2");
+        peer.put("new", "value");
+        for (String key : Arrays.asList("key1", "key2", "new")) {
+            server[0].publish(Arrays.asList(FakeRespServer.bulk("pmessage"), FakeRespServer.bulk("__keyevent@0__:*"),
+                    FakeRespServer.bulk("__keyevent@0__:set"), FakeRespServer.bulk(key)));
+        }
+        Assert.assertFalse(peer.equals(local));
+
+        Assert.assertTrue(copier.catchUp(10000));
+        Assert.assertEquals(peer, local);
+        Assert.assertEquals(32L, copier.getKeysCopied());
+        Assert.assertEquals(1L, copier.getKeysPruned());
+        // the notifications of the peer are restored
+        Assert.assertEquals(Arrays.asList("xEA", "x"), settings);
+    }
+
+    @Test
+    public void testCatchUpWithoutNotifications() throws Exception {
+        ConcurrentSkipListMap<String, String> peer = new ConcurrentSkipListMap<String, String>();
+        for (int i = 0; i < 30; i++) {
+            peer.put("key" + i, "value" + i);
+        }
+        FakeRespServer source = source(peer, new ConcurrentHashMap<String, Long>());
+        ConcurrentSkipListMap<String, String> local = new ConcurrentSkipListMap<String, String>();
+        FakeRespServer target = store(local);
+
+        KeyspaceCopier copier = new KeyspaceCopier(source.getHost(), source.getPort(), target.getHost(),
+                target.getPort(), 2, 10, 0);
+        // CONFIG is not supported
+        Assert.assertFalse(copier.track());
+        Assert.assertTrue(copier.copy(10000));
+        peer.put("key1", "changed");
+        peer.remove("key2");
+
+        // the changes are not known, the keys are not copied again within the handoff
+        Assert.assertFalse(copier.catchUp(10000));
+        Assert.assertEquals("value1", local.get("key1"));
+        Assert.assertEquals(30, local.size());
+        Assert.assertEquals(0L, copier.getKeysPruned());
+    }
+
+    /**
+     * A peer that scans its keys in order, the cursor is the index of the next key.
+     */
+    private FakeRespServer source(ConcurrentSkipListMap<String, String> data, Map<String, Long> ttls)
+            throws Exception {
+        FakeRespServer server = new FakeRespServer(handler(data, ttls));
+        servers.add(server);
+        return server;
+    }
+
+    private static FakeRespServer.Handler handler(final ConcurrentSkipListMap<String, String> data,
+            final Map<String, Long> ttls) {
+        return new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                String command = request.get(0);
+                if (command.equals("DBSIZE")) {
+                    return (long) data.size();
+                } else if (command.equals("SCAN")) {
+                    int cursor = Integer.parseInt(request.get(1));
+                    int count = Integer.parseInt(request.get(3));
+                    List<String> keys = new ArrayList<String>(data.keySet());
+                    List<Object> batch = new ArrayList<Object>();
+                    int next = Math.min(keys.size(), cursor + count);
+                    for (String key : keys.subList(cursor, next)) {
+                        batch.add(FakeRespServer.bulk(key));
+                    }
+                    return Arrays.asList(FakeRespServer.bulk(next == keys.size() ? "0" : Integer.toString(next)),
+                            batch);
+                } else if (command.equals("DUMP")) {
+                    String value = data.get(request.get(1));
+                    Long ttl = ttls.get(request.get(1));
+                    return value == null || (ttl != null && ttl == -2L) ? null : FakeRespServer.bulk(value);
+                } else if (command.equals("PTTL")) {
+                    Long ttl = ttls.get(request.get(1));
+                    return ttl == null ? -1L : ttl;
+                } else if (command.equals("EXISTS")) {
+                    return data.containsKey(request.get(1)) ? 1L : 0L;
+                }
+                return new Exception("ERR unknown command '" + command + "'");
+            }
+        };
+    }
+
+    /**
+     * A local storage that takes RESTORE and DEL and scans its keys like a peer.
+     */
+    private FakeRespServer store(final ConcurrentSkipListMap<String, String> data) throws Exception {
+        final FakeRespServer.Handler scan = handler(data, new ConcurrentHashMap<String, Long>());
+        FakeRespServer server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                if (request.get(0).equals("RESTORE")) {
+                    data.put(request.get(1), request.get(3));
+                    return "OK";
+                } else if (request.get(0).equals("DEL")) {
+                    return data.remove(request.get(1)) == null ? 0L : 1L;
+                }
+                return scan.reply(request);
+            }
+        });
+        servers.add(server);
+        return server;
+    }
+
+    private FakeRespServer target(final Map<String, String> data, final Map<String, Long> ttls, final String error)
+            throws Exception {
+        FakeRespServer server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                if (!request.get(0).equals("RESTORE") || !request.get(4).equals("REPLACE")) {
+                    return new Exception("ERR unexpected " + request);
+                }
+                if (error != null) {
+                    return new Exception(error);
+                }
+                data.put(request.get(1), request.get(3));
+                ttls.put(request.get(1), Long.parseLong(request.get(2)));
+                return "OK";
+            }
+        });
+        servers.add(server);
+        return server;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.defaultimpl.test.FakeStorageProxy;
+import com.netflix.dynomitemanager.sidecore.storage.Bootstrap;
+import com.netflix.dynomitemanager.sidecore.storage.PeerFailover;
+import com.netflix.dynomitemanager.sidecore.utils.Sleeper;
+
+/**
+ * Tests for PeerFailover
+ */
+public class PeerFailoverTest {
+
+    private final InstanceState state = new InstanceState();
+    private final List<List<String>> offered = new ArrayList<List<String>>();
+    private final List<Long> sleeps = new ArrayList<Long>();
+    private int discarded;
+
+    private PeerFailover failover(final int blacklistMs, final int deadlineMs) {
+        BlankConfiguration config = new BlankConfiguration() {
+            @Override
+            public int getWarmBootstrapBlacklistMs() {
+                return blacklistMs;
+            }
+
+            @Override
+            public int getWarmBootstrapDeadlineMs() {
+                return deadlineMs;
+            }
+        };
+        FakeStorageProxy storageProxy = new FakeStorageProxy() {
+            @Override
+            public boolean discardWarmUp() {
+                discarded++;
+                return true;
+            }
+        };
+        Sleeper sleeper = new Sleeper() {
+            @Override
+            public void sleep(long waitTimeMs) throws InterruptedException {
+                sleeps.add(waitTimeMs);
+                Thread.sleep(waitTimeMs);
+            }
+
+            @Override
+            public void sleepQuietly(long waitTimeMs) {
+                try {
+                    sleep(waitTimeMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        return new PeerFailover(config, storageProxy, state, sleeper);
+    }
+
+    /**
+     * Warms up from the first peer offered, with the given results in turn.
+     */
+    private PeerFailover.WarmUp warmUp(final Bootstrap... results) {
+        return new PeerFailover.WarmUp() {
+            @Override
+            public Bootstrap warmUp(String[] peers) {
+                Bootstrap result = results[Math.min(offered.size(), results.length - 1)];
+                offered.add(Arrays.asList(peers));
+                state.setWarmUpPeer(result == Bootstrap.CANNOT_CONNECT_FAIL ? null : peers[0]);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testFailOverToNextPeer() {
+        PeerFailover failover = failover(600000, 3600000);
+        Bootstrap result = failover.warmUp(new String[] { "10.0.0.1", "10.0.0.2", "10.0.0.3" },
+                warmUp(Bootstrap.WARMUP_ERROR_FAIL, Bootstrap.IN_SYNC_SUCCESS));
+
+        Assert.assertEquals(Bootstrap.IN_SYNC_SUCCESS, result);
+        Assert.assertEquals(Arrays.asList("10.0.0.2", "10.0.0.3"), offered.get(1));
+        Assert.assertEquals(1, discarded);
+        Assert.assertTrue(failover.getBlacklist().containsKey("10.0.0.1"));
+
+        List<PeerFailover.Attempt> attempts = failover.getAttempts();
+        Assert.assertEquals(2, attempts.size());
+        Assert.assertEquals("10.0.0.1", attempts.get(0).getPeer());
+        Assert.assertEquals(Bootstrap.WARMUP_ERROR_FAIL, attempts.get(0).getResult());
+        Assert.assertEquals("10.0.0.2", attempts.get(1).getPeer());
+        Assert.assertSame(failover, state.getPeerFailover());
+    }
+
+    @Test
+    public void testNoPeerLeft() {
+        // no peer comes off the blacklist before the deadline
+        PeerFailover failover = failover(600000, 60000);
+        Bootstrap result = failover.warmUp(new String[] { "10.0.0.1", "10.0.0.2" },
+                warmUp(Bootstrap.WARMUP_ERROR_FAIL, Bootstrap.CANNOT_CONNECT_FAIL));
+
+        // the second attempt could not use the peer that is left either
+        Assert.assertEquals(Bootstrap.CANNOT_CONNECT_FAIL, result);
+        Assert.assertEquals(2, failover.getAttempts().size());
+        Assert.assertNull(failover.getAttempts().get(1).getPeer());
+        Assert.assertEquals(2, failover.getBlacklist().size());
+        Assert.assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    public void testRetryAfterBlacklist() {
+        PeerFailover failover = failover(50, 60000);
+        Bootstrap result = failover.warmUp(new String[] { "10.0.0.1" },
+                warmUp(Bootstrap.WARMUP_ERROR_FAIL, Bootstrap.WARMUP_ERROR_FAIL, Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL));
+
+        // the peer is tried again once it is off the blacklist, an expired
+        // warm up is not retried
+        Assert.assertEquals(Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL, result);
+        Assert.assertEquals(3, failover.getAttempts().size());
+        Assert.assertEquals(2, sleeps.size());
+        Assert.assertEquals(2, discarded);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.sidecore.storage.PeerProber;
+
+/**
+ * Tests for PeerProber against fake peers
+ */
+public class PeerProberTest {
+
+    private final List<FakeRespServer> servers = new ArrayList<FakeRespServer>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void cleanUp() throws Exception {
+        release.countDown();
+        for (FakeRespServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testProbe() throws Exception {
+        String healthy = peer(info("master", 3600, 0), false);
+        String loading = peer(info("master", 10, 1), false);
+        String stuck = peer(info("master", 7200, 0), true);
+
+        PeerProber prober = new PeerProber(1000, 5000);
+        long start = System.currentTimeMillis();
+        List<PeerProber.PeerStatus> peers = prober.probe(new String[] { healthy, loading, stuck }, 0, 3, 300);
+        // the stuck peer does not hold up the probe beyond its deadline
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+
+        Assert.assertEquals(2, peers.size());
+        PeerProber.PeerStatus status = peers.get(0).isHealthy() ? peers.get(0) : peers.get(1);
+        Assert.assertEquals("127.0.0.1", status.getHost());
+        Assert.assertEquals(3600L, status.getUptimeSeconds());
+        Assert.assertEquals("master", status.getRole());
+        Assert.assertTrue(status.hasReplBacklog());
+        Assert.assertEquals(1048576L, status.getReplBacklogBytes());
+        Assert.assertEquals(1500L, status.getOpsPerSecond());
+        Assert.assertFalse((peers.get(0).isHealthy() ? peers.get(1) : peers.get(0)).isHealthy());
+    }
+
+    @Test
+    public void testEnoughHealthyPeers() throws Exception {
+        String stuck = peer(info("master", 7200, 0), true);
+        String healthy = peer(info("slave", 60, 0), false);
+
+        long start = System.currentTimeMillis();
+        List<PeerProber.PeerStatus> peers = new PeerProber(1000, 5000).probe(new String[] { stuck, healthy }, 0, 1,
+                5000);
+        // returned on the first healthy answer instead of waiting for the deadline
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(1, peers.size());
+        Assert.assertEquals("slave", peers.get(0).getRole());
+
+        Assert.assertTrue(new PeerProber(1000, 1000).probe(new String[0], 0, 1, 1000).isEmpty());
+    }
+
+    private String peer(final String info, final boolean stuck) throws Exception {
+        FakeRespServer server = new FakeRespServer(new FakeRespServer.Handler() {
+            @Override
+            public Object reply(List<String> request) throws Exception {
+                if (stuck) {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                return info.getBytes(StandardCharsets.UTF_8);
+            }
+        });
+        servers.add(server);
+        return server.getHost() + ":" + server.getPort();
+    }
+
+    private static String info(String role, long uptime, int loading) {
+        return "# Server\r\nredis_version:3.2.8\r\nuptime_in_seconds:" + uptime + "\r\n# Clients\r\n"
+                + "connected_clients:12\r\n# Persistence\r\nloading:" + loading + "\r\n# Stats\r\n"
+                + "instantaneous_ops_per_sec:1500\r\n# Replication\r\nrole:" + role + "\r\nmaster_repl_offset:42\r\n"
+                + "repl_backlog_active:1\r\nrepl_backlog_size:1048576\r\nrepl_backlog_histlen:1048576\r\n";
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.sidecore.storage.LoadAwarePeerSelectionStrategy;
+import com.netflix.dynomitemanager.sidecore.storage.PeerProber;
+import com.netflix.dynomitemanager.sidecore.storage.PeerScore;
+import com.netflix.dynomitemanager.sidecore.storage.PeerSelectionStrategyProvider;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfo;
+import com.netflix.dynomitemanager.sidecore.storage.UptimePeerSelectionStrategy;
+
+/**
+ * Tests for the peer selection strategies of warm bootstrap
+ */
+public class PeerSelectionStrategyTest {
+
+    // busy and up the longest
+    private final PeerProber.PeerStatus busy = peer("10.0.0.1", 86400, 40000, 0, 5);
+    // idle, but a BGSAVE is running
+    private final PeerProber.PeerStatus saving = peer("10.0.0.2", 3600, 100, 1, 5);
+    // lightly loaded
+    private final PeerProber.PeerStatus idle = peer("10.0.0.3", 7200, 500, 0, 5);
+    private final PeerProber.PeerStatus loading = new PeerProber.PeerStatus("10.0.0.4", new RedisInfo(
+            "uptime_in_seconds:999999\r\nloading:1\r\nrole:master\r\n", 0L), 1L);
+
+    @Test
+    public void testUptime() {
+        List<PeerScore> scores = PeerScore.rank(new UptimePeerSelectionStrategy(), Arrays.asList(saving, idle, busy,
+                loading));
+        Assert.assertEquals(3, scores.size());
+        Assert.assertEquals("10.0.0.1", scores.get(0).getPeer().getHost());
+        Assert.assertEquals(86400.0, scores.get(0).getComponents().get("uptime_in_seconds"), 0.0);
+    }
+
+    @Test
+    public void testLoadAware() {
+        List<PeerScore> scores = PeerScore.rank(new LoadAwarePeerSelectionStrategy(), Arrays.asList(busy, saving, idle,
+                loading));
+        Assert.assertEquals(3, scores.size());
+        Assert.assertEquals("10.0.0.3", scores.get(0).getPeer().getHost());
+        Assert.assertEquals("10.0.0.1", scores.get(1).getPeer().getHost());
+        Assert.assertEquals("10.0.0.2", scores.get(2).getPeer().getHost());
+
+        PeerScore best = scores.get(0);
+        Assert.assertEquals(-0.5, best.getComponents().get("ops_per_sec"), 0.001);
+        Assert.assertEquals(-5.0, best.getComponents().get("memory"), 0.001);
+        Assert.assertEquals(-1.2, best.getComponents().get("latest_fork"), 0.001);
+        Assert.assertEquals(-0.5, best.getComponents().get("rtt"), 0.001);
+        Assert.assertEquals(0.0, best.getComponents().get("persistence"), 0.0);
+        Assert.assertEquals(-7.2, best.getScore(), 0.001);
+    }
+
+    @Test
+    public void testProvider() {
+        Assert.assertEquals("uptime", provider("uptime").get().getName());
+        Assert.assertEquals("load", provider("Load").get().getName());
+        Assert.assertEquals("uptime", provider("fastest").get().getName());
+    }
+
+    private static PeerSelectionStrategyProvider provider(final String name) {
+        return new PeerSelectionStrategyProvider(new BlankConfiguration() {
+            @Override
+            public String getWarmBootstrapPeerSelection() {
+                return name;
+            }
+        });
+    }
+
+    private static PeerProber.PeerStatus peer(String host, long uptime, long ops, int bgsave, long rttMs) {
+        String info = "uptime_in_seconds:" + uptime + "\r\nused_memory:536870912\r\nmaxmemory:1073741824\r\n"
+                + "loading:0\r\nrdb_bgsave_in_progress:" + bgsave + "\r\naof_rewrite_in_progress:0\r\n"
+                + "latest_fork_usec:12000\r\ninstantaneous_ops_per_sec:" + ops + "\r\nrole:master\r\n";
+        return new PeerProber.PeerStatus(host, new RedisInfo(info, 0L), rttMs);
+    }
+}
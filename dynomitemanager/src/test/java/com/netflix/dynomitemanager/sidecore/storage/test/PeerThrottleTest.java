@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.sidecore.storage.KeyspaceCopier;
+import com.netflix.dynomitemanager.sidecore.storage.PeerThrottle;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
+
+/**
+ * Tests for PeerThrottle
+ */
+public class PeerThrottleTest {
+
+    /**
+     * Samples are fed by the test, not by the throttle thread.
+     */
+    private static class TestConfiguration extends BlankConfiguration {
+        @Override
+        public boolean isWarmBootstrapThrottleEnabled() {
+            return false;
+        }
+    }
+
+    @After
+    public void cleanUp() {
+        // the registry is global, don't leak monitors into other tests
+        for (Monitor<?> monitor : DefaultMonitorRegistry.getInstance().getRegisteredMonitors()) {
+            if (monitor.getConfig().getName().startsWith(PeerThrottle.PREFIX)) {
+                DefaultMonitorRegistry.getInstance().unregister(monitor);
+            }
+        }
+    }
+
+    @Test
+    public void testSlowDownCopy() {
+        PeerThrottle throttle = new PeerThrottle(new TestConfiguration(), null, null);
+        KeyspaceCopier copier = new KeyspaceCopier("127.0.0.1", 1, "127.0.0.1", 2, 1, 10, 1024 * 1024);
+        throttle.start("127.0.0.1", 1, copier);
+
+        Assert.assertTrue(throttle.update(60000, 10, 1000));
+        Assert.assertTrue(throttle.getReason().startsWith("instantaneous_ops_per_sec"));
+        Assert.assertEquals(512 * 1024, copier.getBytesPerSecond());
+        Assert.assertTrue(throttle.update(100, 20000, 1000));
+        Assert.assertTrue(throttle.getReason().startsWith("client_longest_output_list"));
+        Assert.assertEquals(256 * 1024, copier.getBytesPerSecond());
+        Assert.assertTrue(throttle.update(100, 10, 6000));
+        Assert.assertEquals(128 * 1024, copier.getBytesPerSecond());
+        Assert.assertEquals(3L, throttle.getEvents());
+
+        // speeds up again, but not beyond the configured rate
+        Assert.assertFalse(throttle.update(100, 10, -1));
+        Assert.assertNull(throttle.getReason());
+        Assert.assertEquals(160 * 1024, copier.getBytesPerSecond());
+        for (int i = 0; i < 20; i++) {
+            throttle.update(100, 10, 1000);
+        }
+        Assert.assertEquals(1024 * 1024, copier.getBytesPerSecond());
+        Assert.assertEquals(3L, throttle.getEvents());
+        throttle.stop();
+    }
+
+    @Test
+    public void testFloor() {
+        PeerThrottle throttle = new PeerThrottle(new TestConfiguration(), null, null);
+        KeyspaceCopier copier = new KeyspaceCopier("127.0.0.1", 1, "127.0.0.1", 2, 1, 10, 100 * 1024);
+        throttle.start("127.0.0.1", 1, copier);
+        for (int i = 0; i < 10; i++) {
+            throttle.update(100000, 0, 0);
+        }
+        Assert.assertEquals(64 * 1024, copier.getBytesPerSecond());
+        throttle.stop();
+    }
+
+    @Test
+    public void testUnlimitedCopy() {
+        PeerThrottle throttle = new PeerThrottle(new TestConfiguration(), null, null);
+        KeyspaceCopier copier = new KeyspaceCopier("127.0.0.1", 1, "127.0.0.1", 2, 1, 10, 0);
+        throttle.start("127.0.0.1", 1, copier);
+
+        // nothing copied yet, there is no throughput to limit the copy to
+        Assert.assertTrue(throttle.update(60000, 10, 1000));
+        Assert.assertEquals(0, copier.getBytesPerSecond());
+
+        // a limit above what the copy copies is dropped
+        copier.setBytesPerSecond(1024 * 1024);
+        Assert.assertFalse(throttle.update(100, 10, 1000));
+        Assert.assertEquals(0, copier.getBytesPerSecond());
+        throttle.stop();
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.monitoring.JedisFactory;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfo;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfoSnapshot;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Tests for RedisInfoSnapshot and the RedisInfo model.
+ */
+public class RedisInfoSnapshotTest {
+
+    private static final String INFO = "# Server\r\nuptime_in_seconds:18803\r\n\r\n# Memory\r\nused_memory:2504768\r\n"
+            + "maxmemory:0\r\n\r\n# Persistence\r\nloading:0\r\nrdb_bgsave_in_progress:1\r\naof_enabled:0\r\n"
+            + "aof_rewrite_in_progress:0\r\n\r\n# Replication\r\nrole:master\r\nconnected_slaves:2\r\n"
+            + "slave1:ip=10.0.0.2,port=22122,state=online,offset=300,lag=1\r\n"
+            + "slave0:ip=10.0.0.1,port=22122,state=online,offset=200,lag=0\r\nmaster_repl_offset:400\r\n";
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private volatile CountDownLatch release;
+
+    private final JedisFactory jedisFactory = new JedisFactory() {
+        @Override
+        public Jedis newInstance(String hostname, int port) {
+            return new Jedis(hostname, port) {
+                @Override
+                public void connect() {
+                }
+
+                @Override
+                public void disconnect() {
+                }
+
+                @Override
+                public String info() {
+                    fetches.incrementAndGet();
+                    if (release != null) {
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return INFO;
+                }
+            };
+        }
+    };
+
+    private static class TtlConfiguration extends BlankConfiguration {
+        @Override
+        public int getRedisInfoTtlMs() {
+            return 60000;
+        }
+    }
+
+    @Test
+    public void testTypedModel() {
+        RedisInfo info = new RedisInfo(INFO, 0L);
+
+        Assert.assertTrue(info.isMaster());
+        Assert.assertEquals(18803L, info.getUptimeInSeconds());
+        Assert.assertEquals(2504768L, info.getUsedMemory());
+        Assert.assertEquals(0L, info.getMaxMemory());
+        Assert.assertFalse(info.isLoading());
+        Assert.assertTrue(info.isRdbBgsaveInProgress());
+        Assert.assertFalse(info.isAofRewriteInProgress());
+        Assert.assertEquals(400L, info.getMasterReplOffset());
+        Assert.assertEquals(2, info.getSlaves().size());
+        Assert.assertEquals("10.0.0.1", info.getSlaves().get(0).getIp());
+        Assert.assertEquals(300L, info.getSlave("10.0.0.2").getOffset());
+        Assert.assertNull(info.getSlave("10.0.0.3"));
+        Assert.assertEquals(2L, info.getLong("connected_slaves", -1L));
+        Assert.assertEquals(-1L, info.getLong("role", -1L));
+    }
+
+    @Test
+    public void testSnapshotIsCachedPerEndpoint() {
+        RedisInfoSnapshot snapshot = new RedisInfoSnapshot(new TtlConfiguration(), jedisFactory);
+
+        RedisInfo first = snapshot.get("127.0.0.1", 22122);
+        Assert.assertSame(first, snapshot.get("127.0.0.1", 22122));
+        Assert.assertEquals(1, fetches.get());
+
+        snapshot.get("10.0.0.1", 22122);
+        Assert.assertEquals(2, fetches.get());
+
+        Assert.assertNotSame(first, snapshot.refresh("127.0.0.1", 22122));
+        Assert.assertEquals(3, fetches.get());
+    }
+
+    @Test
+    public void testConcurrentCallersAreCoalesced() throws Exception {
+        final RedisInfoSnapshot snapshot = new RedisInfoSnapshot(new TtlConfiguration(), jedisFactory);
+        release = new CountDownLatch(1);
+
+        final AtomicReference<RedisInfo> other = new AtomicReference<RedisInfo>();
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other.set(snapshot.get("127.0.0.1", 22122));
+            }
+        });
+        owner.start();
+
+        while (fetches.get() == 0) {
+            Thread.sleep(1);
+        }
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                snapshot.get("127.0.0.1", 22122);
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        release.countDown();
+
+        owner.join(5000);
+        waiter.join(5000);
+        Assert.assertEquals(1, fetches.get());
+        Assert.assertSame(other.get(), snapshot.get("127.0.0.1", 22122));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.sidecore.storage.PeerProber;
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfo;
+import com.netflix.dynomitemanager.sidecore.storage.ReplicationCheckpoint;
+
+/**
+ * Tests for ReplicationCheckpoint
+ */
+public class ReplicationCheckpointTest {
+
+    private static final String REPL_ID = "8f2b1c0e5a7d4e6f9b3a2c1d0e4f5a6b7c8d9e0f";
+    private static final String OLD_REPL_ID = "1111111111111111111111111111111111111111";
+
+    @Test
+    public void testOf() {
+        // what the local Redis asks for, as a master or as a slave
+        ReplicationCheckpoint.Checkpoint checkpoint = ReplicationCheckpoint.of(new RedisInfo(
+                "role:master\r\nmaster_replid:" + REPL_ID + "\r\nmaster_replid2:" + OLD_REPL_ID
+                        + "\r\nmaster_repl_offset:5000\r\n", 0));
+        Assert.assertEquals(REPL_ID, checkpoint.getReplId());
+        Assert.assertEquals(5000L, checkpoint.getOffset());
+
+        // before Redis 4.0
+        Assert.assertNull(ReplicationCheckpoint.of(new RedisInfo("role:master\r\nmaster_repl_offset:0\r\n", 0)));
+    }
+
+    @Test
+    public void testDecide() {
+        ReplicationCheckpoint.Checkpoint checkpoint = new ReplicationCheckpoint.Checkpoint(REPL_ID, 5000);
+
+        // any peer in the stream can serve it
+        ReplicationCheckpoint.Decision decision = ReplicationCheckpoint.decide(checkpoint,
+                Arrays.asList(peer("10.0.0.2", OLD_REPL_ID, null, 9000, 1000), peer("10.0.0.1", REPL_ID, null, 9000,
+                        1000)));
+        Assert.assertTrue(decision.isPartial());
+        Assert.assertEquals("10.0.0.1", decision.getPeer());
+        Assert.assertEquals(4000L, decision.getGapBytes());
+
+        // the peer was promoted since, its previous id is the stream of the checkpoint
+        Assert.assertTrue(ReplicationCheckpoint.decide(checkpoint,
+                Arrays.asList(peer("10.0.0.1", OLD_REPL_ID, REPL_ID, 9000, 1000))).isPartial());
+
+        // the backlog starts after the checkpoint
+        decision = ReplicationCheckpoint.decide(checkpoint, Arrays.asList(peer("10.0.0.1", REPL_ID, null, 9000, 6000)));
+        Assert.assertFalse(decision.isPartial());
+        Assert.assertNull(decision.getPeer());
+
+        // the local Redis was promoted or restarted since, the peer does not know its id
+        Assert.assertFalse(ReplicationCheckpoint.decide(checkpoint,
+                Arrays.asList(peer("10.0.0.1", OLD_REPL_ID, null, 9000, 1000))).isPartial());
+        // the local Redis is ahead of the previous stream of the peer
+        Assert.assertFalse(ReplicationCheckpoint.decide(new ReplicationCheckpoint.Checkpoint(REPL_ID, 8000),
+                Arrays.asList(peer("10.0.0.1", OLD_REPL_ID, REPL_ID, 9000, 1000))).isPartial());
+        Assert.assertFalse(ReplicationCheckpoint.decide(null,
+                Arrays.asList(peer("10.0.0.1", REPL_ID, null, 9000, 1000))).isPartial());
+    }
+
+    private static PeerProber.PeerStatus peer(String host, String replId, String replId2, long offset,
+            long backlogFirstByte) {
+        String raw = "uptime_in_seconds:3600\r\nloading:0\r\nrole:master\r\nmaster_replid:" + replId + "\r\n"
+                + (replId2 == null ? "" : "master_replid2:" + replId2 + "\r\nsecond_repl_offset:7001\r\n")
+                + "master_repl_offset:" + offset + "\r\nrepl_backlog_active:1\r\nrepl_backlog_first_byte_offset:"
+                + backlogFirstByte + "\r\nrepl_backlog_histlen:" + (offset - backlogFirstByte + 1) + "\r\n";
+        return new PeerProber.PeerStatus(host, new RedisInfo(raw, 0), 1);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.sidecore.storage.RedisInfo;
+import com.netflix.dynomitemanager.sidecore.storage.ReplicationConvergence;
+import com.netflix.dynomitemanager.sidecore.storage.ReplicationConvergence.Phase;
+
+/**
+ * Tests for ReplicationConvergence
+ */
+public class ReplicationConvergenceTest {
+
+    private static final String LOCAL = "10.0.0.2";
+
+    @Test
+    public void testConverge() {
+        ReplicationConvergence tracker = new ReplicationConvergence(LOCAL, 1000, 600000, 500, 10000, 60000, 0);
+
+        Assert.assertEquals(Phase.WAITING, tracker.update(info(100, null, null, 0), 1000));
+        Assert.assertEquals(10000, tracker.getNextIntervalMs());
+
+        // another slave is slave0, the local storage is slave1
+        Assert.assertEquals(Phase.TRANSFER, tracker.update(info(100, "send_bulk", "online", 0), 11000));
+        Assert.assertEquals(1, tracker.getSlaveIndex());
+        Assert.assertEquals(-1L, tracker.getEtaSeconds());
+        Assert.assertEquals(10000, tracker.getNextIntervalMs());
+
+        Assert.assertEquals(Phase.CATCHING_UP, tracker.update(info(1001000, "online", "online", 1000), 21000));
+        Assert.assertEquals(1000000L, tracker.getOffsetDiff());
+        Assert.assertEquals(-1L, tracker.getEtaSeconds());
+
+        // 100000 bytes/s closer
+        Assert.assertEquals(Phase.CATCHING_UP, tracker.update(info(1101000, "online", "online", 201000), 23000));
+        Assert.assertEquals(900000L, tracker.getOffsetDiff());
+        Assert.assertEquals(50000.0, tracker.getRateBytesPerSecond(), 0.1);
+        Assert.assertEquals(18L, tracker.getEtaSeconds());
+        Assert.assertEquals(4500, tracker.getNextIntervalMs());
+
+        Assert.assertEquals(Phase.CATCHING_UP, tracker.update(info(1201000, "online", "online", 1151000), 28000));
+        Assert.assertEquals(50000L, tracker.getOffsetDiff());
+        // samples more often as the sync gets close
+        Assert.assertEquals(500, tracker.getNextIntervalMs());
+
+        Assert.assertEquals(Phase.IN_SYNC, tracker.update(info(1201000, "online", "online", 1200500), 28500));
+        Assert.assertEquals(0L, tracker.getEtaSeconds());
+    }
+
+    @Test
+    public void testStalled() {
+        ReplicationConvergence tracker = new ReplicationConvergence(LOCAL, 1000, 600000, 500, 10000, 30000, 0);
+        long offset = 100000;
+        long now = 0;
+        Phase phase = tracker.update(info(offset + 50000, null, "online", offset), now);
+        // the peer takes writes faster than the local storage catches up
+        while (phase == Phase.CATCHING_UP && now < 120000) {
+            now += 10000;
+            offset += 1000;
+            phase = tracker.update(info(offset + 50000 + now, null, "online", offset), now);
+            Assert.assertEquals(-1L, tracker.getEtaSeconds());
+        }
+        Assert.assertEquals(Phase.STALLED, phase);
+        Assert.assertTrue(tracker.getRateBytesPerSecond() < 0);
+        Assert.assertEquals(40000L, now);
+    }
+
+    @Test
+    public void testFlat() {
+        ReplicationConvergence tracker = new ReplicationConvergence(LOCAL, 1000, 600000, 500, 10000, 30000, 0);
+        Assert.assertEquals(Phase.CATCHING_UP, tracker.update(info(1000000, null, "online", 1), 0));
+        Assert.assertEquals(Phase.CATCHING_UP, tracker.update(info(1000000, null, "online", 100001), 10000));
+        // the difference stops shrinking, the smoothed rate only tends to 0
+        long now = 10000;
+        Phase phase = Phase.CATCHING_UP;
+        while (phase == Phase.CATCHING_UP && now < 120000) {
+            now += 10000;
+            phase = tracker.update(info(1000000, null, "online", 100001), now);
+        }
+        Assert.assertEquals(Phase.STALLED, phase);
+        Assert.assertTrue(tracker.getRateBytesPerSecond() > 0);
+        Assert.assertEquals(50000L, now);
+    }
+
+    @Test
+    public void testNotListed() {
+        ReplicationConvergence tracker = new ReplicationConvergence(LOCAL, 1000, 600000, 500, 10000, 30000, 0);
+        Assert.assertEquals(Phase.WAITING, tracker.update(info(100, "online", null, 0), 20000));
+        Assert.assertEquals(Phase.FAILED, tracker.update(info(100, "online", null, 0), 40000));
+    }
+
+    @Test
+    public void testTransferExpires() {
+        ReplicationConvergence tracker = new ReplicationConvergence(LOCAL, 1000, 600000, 500, 10000, 30000, 0);
+        Assert.assertEquals(Phase.TRANSFER, tracker.update(info(100, null, "send_bulk", 0), 10000));
+        Assert.assertEquals(Phase.TRANSFER, tracker.update(info(100, null, "send_bulk", 0), 600000));
+        // the RDB has been sent for longer than the maximum time
+        Assert.assertEquals(Phase.EXPIRED, tracker.update(info(100, null, "send_bulk", 0), 600001));
+    }
+
+    /**
+     * The INFO of a peer with an optional other slave and the local storage as a slave.
+     */
+    private static RedisInfo info(long masterOffset, String otherState, String localState, long localOffset) {
+        StringBuilder sb = new StringBuilder("# Replication\r\nrole:master\r\n");
+        int index = 0;
+        if (otherState != null) {
+            sb.append("slave").append(index++).append(":ip=10.0.0.9,port=22122,state=").append(otherState)
+                    .append(",offset=").append(masterOffset).append(",lag=0\r\n");
+        }
+        if (localState != null) {
+            sb.append("slave").append(index).append(":ip=").append(LOCAL).append(",port=22122,state=")
+                    .append(localState).append(",offset=").append(localOffset).append(",lag=1\r\n");
+        }
+        sb.append("master_repl_offset:").append(masterOffset).append("\r\n");
+        return new RedisInfo(sb.toString(), 0);
+    }
+}
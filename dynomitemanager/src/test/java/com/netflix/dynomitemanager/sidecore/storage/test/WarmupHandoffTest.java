@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016 Netflix, Inc. <p/> Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0 <p/> Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.netflix.dynomitemanager.sidecore.storage.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.InstanceState;
+import com.netflix.dynomitemanager.defaultimpl.test.BlankConfiguration;
+import com.netflix.dynomitemanager.sidecore.storage.WarmupHandoff;
+
+/**
+ * Tests for WarmupHandoff
+ */
+public class WarmupHandoffTest {
+
+    private WarmupHandoff handoff() {
+        BlankConfiguration config = new BlankConfiguration() {
+            @Override
+            public int getWarmBootstrapHandoffQueueThreshold() {
+                return 10;
+            }
+        };
+        return new WarmupHandoff(config, null, null, null, null, null, new InstanceState());
+    }
+
+    @Test
+    public void testDrainedAfterTwoSamples() {
+        WarmupHandoff handoff = handoff();
+        Assert.assertFalse(handoff.update(500, 40, 3));
+        Assert.assertEquals(500, handoff.getQueueDepth());
+        Assert.assertFalse(handoff.update(2, 0, 0));
+        // a queue that fills up again starts over
+        Assert.assertFalse(handoff.update(0, 0, 11));
+        Assert.assertFalse(handoff.update(0, 10, 0));
+        Assert.assertTrue(handoff.update(0, 0, 0));
+        Assert.assertTrue(handoff.isDrained());
+    }
+
+    @Test
+    public void testQueuesFromInfo() throws IOException {
+        WarmupHandoff handoff = handoff();
+        Assert.assertFalse(handoff.update(info(0, 8, 7)));
+        // in_queue of both servers
+        Assert.assertEquals(15, handoff.getQueueDepth());
+        Assert.assertFalse(handoff.update(info(12, 1, 0)));
+        Assert.assertEquals(12, handoff.getQueueDepth());
+        Assert.assertFalse(handoff.update(info(0, 3, 4)));
+        Assert.assertTrue(handoff.update(info(0, 0, 0)));
+        Assert.assertEquals(0, handoff.getQueueDepth());
+    }
+
+    private static InputStream info(int serverInQueue99, int inQueue1, int inQueue2) {
+        String json = "{\"service\":\"dynomite\", \"uptime\":120, \"server_in_queue_99\":" + serverInQueue99
+                + ", \"dnode_client_out_queue_99\":0, \"dyn_o_mite\": {\"client_connections\":7, "
+                + "\"127.0.0.1:22122\": {\"server_connections\":1, \"in_queue\":" + inQueue1 + "}, "
+                + "\"10.0.0.2:8101\": {\"server_connections\":1, \"in_queue\":" + inQueue2 + "}}}";
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
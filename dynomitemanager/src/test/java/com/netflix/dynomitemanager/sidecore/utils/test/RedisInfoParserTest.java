@@ -8,9 +8,13 @@
  */
 package com.netflix.dynomitemanager.sidecore.utils.test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -78,4 +82,98 @@ public class RedisInfoParserTest {
 		Assert.assertEquals(null, metrics.get("Redis_key_does_not_exists"));
 	}
 
+	/**
+	 * What the line based parser that RedisInfoParser replaced returned for redis_info.txt, every metric of it.
+	 */
+	private static Map<String, Long> baseline() {
+		Map<String, Long> expected = new HashMap<String, Long>();
+		expected.put("Redis_CPU_used_cpu_sys", 14L);
+		expected.put("Redis_CPU_used_cpu_user", 5L);
+		expected.put("Redis_Clients_blocked_clients", 0L);
+		expected.put("Redis_Clients_client_biggest_input_buf", 0L);
+		expected.put("Redis_Clients_client_longest_output_list", 0L);
+		expected.put("Redis_Clients_connected_clients", 1L);
+		expected.put("Redis_Keyspace_db0_avg_ttl", 0L);
+		expected.put("Redis_Keyspace_db0_expires", 0L);
+		expected.put("Redis_Keyspace_db0_keys", 16850L);
+		expected.put("Redis_Memory_mem_fragmentation_ratio", 360L);
+		expected.put("Redis_Memory_used_memory", 2504768L);
+		expected.put("Redis_Memory_used_memory_lua", 36864L);
+		expected.put("Redis_Memory_used_memory_rss", 9011200L);
+		expected.put("Redis_Persistence_aof_enabled", 0L);
+		expected.put("Redis_Persistence_aof_rewrite_in_progress", 0L);
+		expected.put("Redis_Persistence_rdb_changes_since_last_save", 0L);
+		expected.put("Redis_Persistence_rdb_last_save_time", 1468428979L);
+		expected.put("Redis_Server_uptime_in_seconds", 18803L);
+		expected.put("Redis_Stats_evicted_keys", 0L);
+		expected.put("Redis_Stats_expired_keys", 0L);
+		expected.put("Redis_Stats_instantaneous_ops_per_sec", 0L);
+		expected.put("Redis_Stats_keyspace_hits", 0L);
+		expected.put("Redis_Stats_keyspace_misses", 0L);
+		expected.put("Redis_Stats_rejected_connections", 0L);
+		expected.put("Redis_Stats_total_commands_processed", 0L);
+		expected.put("Redis_Stats_total_connections_received", 1L);
+		return expected;
+	}
+
+	@Test
+	public void testParserMatchesBaseline() throws Exception {
+		File file = new File(new File(".").getCanonicalPath() + "/src/test/resources/redis_info.txt");
+
+		Assert.assertEquals(baseline(), new RedisInfoParser().parse(new FileReader(file)));
+	}
+
+	@Test
+	public void testStreamingParserReusesNames() throws Exception {
+		File file = new File(new File(".").getCanonicalPath() + "/src/test/resources/redis_info.txt");
+		String info = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+		RedisInfoParser parser = new RedisInfoParser();
+		int count = parser.parse(info);
+		Map<String, Long> first = parser.toMap();
+		String firstName = parser.getName(0);
+
+		Assert.assertEquals(baseline().size(), count);
+		Assert.assertEquals(baseline(), first);
+
+		Assert.assertEquals(count, parser.parse(info.replace("\n", "\r\n")));
+		Assert.assertEquals(baseline(), parser.toMap());
+		Assert.assertSame(firstName, parser.getName(0));
+	}
+
+	@Test
+	public void testParseBulkReply() throws Exception {
+		String info = "# Server\r\nuptime_in_seconds:42\r\n\r\n# Memory\r\nused_memory:1.5M\r\n"
+				+ "mem_fragmentation_ratio:1.13\r\n\r\n# Keyspace\r\ndb0:keys=7,expires=1,avg_ttl=3\r\n";
+		byte[] reply = ("$" + info.length() + "\r\n" + info + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+		RedisInfoParser parser = new RedisInfoParser();
+		Assert.assertEquals(6, parser.parseBulkReply(new ByteArrayInputStream(reply)));
+
+		Map<String, Long> metrics = parser.toMap();
+		Assert.assertEquals(Long.valueOf(42), metrics.get("Redis_Server_uptime_in_seconds"));
+		Assert.assertEquals(Long.valueOf(1), metrics.get("Redis_Memory_used_memory"));
+		Assert.assertEquals(Long.valueOf(113), metrics.get("Redis_Memory_mem_fragmentation_ratio"));
+		Assert.assertEquals(Long.valueOf(7), metrics.get("Redis_Keyspace_db0_keys"));
+		Assert.assertEquals(Long.valueOf(1), metrics.get("Redis_Keyspace_db0_expires"));
+		Assert.assertEquals(Long.valueOf(3), metrics.get("Redis_Keyspace_db0_avg_ttl"));
+
+		Assert.assertEquals(0, parser.parseBulkReply(new ByteArrayInputStream("$-1\r\n".getBytes())));
+	}
+
+	@Test
+	public void testParseOverflow() throws Exception {
+		String info = "# Memory\r\nused_memory:9223372036854775807\r\nused_memory_rss:9223372036854775808\r\n"
+				+ "mem_fragmentation_ratio:92233720368547758.08\r\n";
+		byte[] reply = ("$" + info.length() + "\r\n" + info + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+		// values that do not fit in a long are skipped
+		RedisInfoParser parser = new RedisInfoParser();
+		Assert.assertEquals(1, parser.parseBulkReply(new ByteArrayInputStream(reply)));
+		Map<String, Long> metrics = parser.toMap();
+		Assert.assertEquals(Long.valueOf(Long.MAX_VALUE), metrics.get("Redis_Memory_used_memory"));
+		Assert.assertNull(metrics.get("Redis_Memory_used_memory_rss"));
+		Assert.assertNull(metrics.get("Redis_Memory_mem_fragmentation_ratio"));
+	}
+
 }